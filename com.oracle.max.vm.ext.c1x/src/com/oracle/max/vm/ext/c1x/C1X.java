@@ -47,6 +47,7 @@ import com.sun.max.vm.*;
 import com.sun.max.vm.MaxineVM.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.code.*;
 import com.sun.max.vm.compiler.*;
 import com.sun.max.vm.compiler.deopt.*;
 import com.sun.max.vm.compiler.deps.*;
@@ -57,7 +58,7 @@ import com.sun.max.vm.thread.*;
 /**
  * Integration of the C1X compiler into Maxine's compilation framework.
  */
-public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCompiler {
+public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCompiler, OSRCompiler {
 
     /**
      * The Maxine specific implementation of the {@linkplain RiRuntime runtime interface} needed by C1X.
@@ -124,6 +125,26 @@ public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCo
 
             map.put("UseStackMapTableLiveness", "Use liveness information derived from StackMapTable class file attribute.");
 
+            map.put("OptProfileGuided", "Use the profiles collected by baseline code to speculatively devirtualize calls, to " +
+                            "replace never taken branches by deoptimization and to lay out rarely executed blocks last.");
+
+            map.put("ProfileMaturityThreshold", "Minimum number of executions recorded in a profile before it is used for speculation.");
+
+            map.put("ProfiledTypeCoverage", "Minimum fraction of the calls at a site that the (at most two) receiver types a call " +
+                            "is speculatively devirtualized for must cover.");
+
+            map.put("RareBranchProbability", "Branch probability below which the branch target is laid out as rarely executed.");
+
+            map.put("OptEscapeAnalysis", "Replace allocations that do not escape the compiled method by their fields and " +
+                            "remove the locking of them.");
+
+            map.put("MaximumVirtualObjectSize", "Maximum number of fields or array elements of an allocation replaced by escape analysis.");
+
+            map.put("OptLoopInvariantCodeMotion", "Hoist loop invariant computations and loads out of innermost loops.");
+
+            map.put("OptRangeCheckElimination", "Eliminate the bounds checks of array accesses indexed by the induction variable " +
+                            "of a counted loop, or replace them by checks before the loop if the profile allows speculation.");
+
             for (String name : map.keySet()) {
                 try {
                     C1XOptions.class.getField(name);
@@ -176,6 +197,8 @@ public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCo
         if (phase == Phase.STARTING) {
             // Speculative opts are ok provided the compilation broker can handle deopt
             C1XOptions.UseAssumptions = vm().compilationBroker.isDeoptSupported() && Deoptimization.UseDeopt;
+            // Profile-guided speculation relies on deopt in the same way
+            C1XOptions.OptProfileGuided &= C1XOptions.UseAssumptions;
         } else if (phase == Phase.TERMINATING) {
             if (C1XOptions.PrintMetrics) {
                 C1XMetrics.print();
@@ -251,10 +274,20 @@ public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCo
     }
 
     public TargetMethod compile(final ClassMethodActor method, boolean isDeopt, boolean install, CiStatistics stats) {
-        CiTargetMethod compiledMethod;
+        boolean persistable = install && !isDeopt && !method.isTemplate();
+        CiTargetMethod compiledMethod = persistable ? PersistentCodeCache.lookup(method) : null;
+        boolean reused = compiledMethod != null;
         do {
-            DebugInfoLevel debugInfoLevel = method.isTemplate() ? DebugInfoLevel.REF_MAPS : DebugInfoLevel.FULL;
-            compiledMethod = compiler().compileMethod(method, -1, stats, debugInfoLevel).targetMethod();
+            PersistentCodeCache.Recording recording = null;
+            if (!reused) {
+                DebugInfoLevel debugInfoLevel = method.isTemplate() ? DebugInfoLevel.REF_MAPS : DebugInfoLevel.FULL;
+                recording = persistable ? PersistentCodeCache.startRecording() : null;
+                try {
+                    compiledMethod = compiler().compileMethod(method, -1, stats, debugInfoLevel).targetMethod();
+                } finally {
+                    PersistentCodeCache.stopRecording(recording);
+                }
+            }
 
             Dependencies deps = Dependencies.validateDependencies(compiledMethod.assumptions());
             if (deps != Dependencies.INVALID) {
@@ -268,6 +301,7 @@ public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCo
                 if (deps != null) {
                     Dependencies.registerValidatedTarget(deps, maxTargetMethod);
                 }
+                PersistentCodeCache.store(method, compiledMethod, recording);
                 TTY.Filter filter = new TTY.Filter(C1XOptions.PrintFilter, method);
                 try {
                     printMachineCode(compiledMethod, maxTargetMethod, false);
@@ -279,9 +313,34 @@ public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCo
 
             }
             // Loop back and recompile.
+            reused = false;
         } while (true);
     }
 
+    /**
+     * Compiles a method for on-stack replacement. Code compiled for OSR has no deoptimization support for the
+     * OSR activation, so compilations that rely on {@linkplain Dependencies dependencies} are rejected.
+     */
+    public TargetMethod compileForOSR(ClassMethodActor method, int osrBCI) {
+        CiTargetMethod compiledMethod;
+        try {
+            compiledMethod = compiler().compileMethod(method, osrBCI, null, DebugInfoLevel.FULL).targetMethod();
+        } catch (CiBailout bailout) {
+            return null;
+        }
+        if (compiledMethod.osrEntryOffset() < 0 || Dependencies.validateDependencies(compiledMethod.assumptions()) != null) {
+            return null;
+        }
+        MaxTargetMethod maxTargetMethod = new MaxTargetMethod(method, compiledMethod, true);
+        TTY.Filter filter = new TTY.Filter(C1XOptions.PrintFilter, method);
+        try {
+            printMachineCode(compiledMethod, maxTargetMethod, false);
+        } finally {
+            filter.remove();
+        }
+        return maxTargetMethod;
+    }
+
     void printMachineCode(CiTargetMethod ciTM, MaxTargetMethod maxTM, boolean reentrant) {
         if (!C1XOptions.PrintCFGToFile || C1XOptions.OmmitAssembly || reentrant || TTY.isSuppressed()) {
             return;
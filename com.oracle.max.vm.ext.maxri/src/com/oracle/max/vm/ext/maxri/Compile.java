@@ -25,6 +25,8 @@ import static com.sun.max.vm.MaxineVM.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import com.oracle.max.asm.*;
 import com.sun.cri.ci.*;
@@ -66,6 +68,8 @@ public class Compile {
     private static final Option<Boolean> helpOption = options.newBooleanOption("help", false, "Show help message and exit.");
     private static final Option<Boolean> profOption = options.newBooleanOption("prof", true, "Emit method profiling in baseline compiled methods.");
     private static final Option<Boolean> validateInline = options.newBooleanOption("validate-inline", true, "Validate INLINE semantics for boot image methods");
+    private static final Option<Integer> threadsOption = options.newIntegerOption("threads", 1,
+                    "Compile the methods with the given number of threads in parallel and report the compile throughput.");
 
     static void addFieldOptions(String prefix, String optionsClassName) {
         Class< ? > optionsClass = Classes.forName(optionsClassName);
@@ -311,16 +315,21 @@ public class Compile {
             out.println("REFLECTION STUBS ADDED!");
         }
 
-        doCompile(compiler, methods, progress);
-
-        if (verboseOption.getValue() > 0) {
-            progress.report();
+        int failed;
+        if (threadsOption.getValue() > 1) {
+            failed = doCompileInParallel(compiler, methods, threadsOption.getValue());
+        } else {
+            doCompile(compiler, methods, progress);
+            if (verboseOption.getValue() > 0) {
+                progress.report();
+            }
+            failed = progress.failed();
         }
 
         compiler.initialize(Phase.TERMINATING);
 
         // Non-zero exit code indicates number of failures
-        System.exit(progress.failed());
+        System.exit(failed);
     }
 
     protected static void addReflectionStubs(final List<MethodActor> methods) {
@@ -368,6 +377,47 @@ public class Compile {
         }
     }
 
+    /**
+     * Compiles the methods with several threads at once, which stresses the thread safety of the compiler
+     * (e.g. {@code -threads=8 jtt.}), and reports the compile throughput.
+     *
+     * @return the number of methods that failed to compile
+     */
+    private static int doCompileInParallel(final RuntimeCompiler compiler, List<MethodActor> methods, int threadCount) {
+        final ConcurrentLinkedQueue<MethodActor> queue = new ConcurrentLinkedQueue<MethodActor>(methods);
+        final AtomicInteger failed = new AtomicInteger();
+        Thread[] threads = new Thread[threadCount];
+        long start = System.nanoTime();
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread("compile-" + i) {
+                @Override
+                public void run() {
+                    MethodActor methodActor;
+                    while ((methodActor = queue.poll()) != null) {
+                        if (compile(compiler, methodActor, true) != null) {
+                            failed.incrementAndGet();
+                            if (failFastOption.getValue()) {
+                                queue.clear();
+                            }
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        long time = (System.nanoTime() - start) / 1000000;
+        out.printf("Compiled %d methods with %d threads in %d ms (%.1f methods/s), %d failed%n",
+                        methods.size(), threadCount, time, methods.size() * 1000.0 / Math.max(time, 1), failed.get());
+        return failed.get();
+    }
+
     /**
      * Generates a binary file with the generated code and the corresponding assembly of it for inspection.
      *
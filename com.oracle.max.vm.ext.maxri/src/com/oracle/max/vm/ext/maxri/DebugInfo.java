@@ -528,6 +528,13 @@ public final class DebugInfo {
             }
         } else if (value.isIllegal()) {
             value = WordUtil.ZERO;
+        } else if (value instanceof CiVirtualObject) {
+            CiVirtualObject vobj = (CiVirtualObject) value;
+            CiValue[] values = new CiValue[vobj.values().length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = toLiveSlot(fa, vobj.values()[i]);
+            }
+            value = CiVirtualObject.get(vobj.type(), values, vobj.id());
         } else {
             assert value.isConstant();
         }
@@ -57,6 +57,7 @@ import com.sun.max.vm.actor.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.bytecode.*;
+import com.sun.max.vm.code.*;
 import com.sun.max.vm.compiler.*;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.runtime.*;
@@ -348,6 +349,7 @@ public class MaxRuntime implements RiRuntime {
         if (!isHosted()) {
             CachedInvocation cachedInvocation = cache.get(methodActor);
             if (cachedInvocation != null && Arrays.equals(values, cachedInvocation.args)) {
+                PersistentCodeCache.recordFoldedMethod(methodActor, cachedInvocation.result);
                 return cachedInvocation.result;
             }
         }
@@ -360,6 +362,7 @@ public class MaxRuntime implements RiRuntime {
 
             if (!isHosted()) {
                 cache.put(methodActor, new CachedInvocation(values, result));
+                PersistentCodeCache.recordFoldedMethod(methodActor, result);
             }
 
             return result;
@@ -28,6 +28,8 @@ import java.lang.reflect.*;
 
 import com.sun.cri.ci.*;
 import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.ClassActor;
 import com.sun.max.vm.actor.member.*;
@@ -172,9 +174,16 @@ public class MaxRuntimeCalls {
         Throw.raise(throwable);
     }
 
+    /**
+     * Called by code compiled for on-stack replacement once the locals have been loaded from the OSR buffer.
+     * Frees the buffer and re-enables the safepoints that were disabled while the buffer was holding references.
+     */
     @MAX_RUNTIME_ENTRYPOINT(runtimeCall = CiRuntimeCall.OSRMigrationEnd)
-    public static void runtimeOSRMigrationEnd() {
+    public static void runtimeOSRMigrationEnd(Pointer osrBuffer) {
         verifyRefMaps();
+        Memory.deallocate(osrBuffer);
+        // Must be last: the refs loaded from the buffer are only described by the ref map of the caller's frame
+        SafepointPoll.enable();
     }
 
     @MAX_RUNTIME_ENTRYPOINT(runtimeCall = CiRuntimeCall.JavaTimeMillis)
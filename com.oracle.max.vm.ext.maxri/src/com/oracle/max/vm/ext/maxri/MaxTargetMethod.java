@@ -108,6 +108,11 @@ public class MaxTargetMethod extends TargetMethod implements Cloneable {
 
     private final CodeAnnotation[] annotations;
 
+    /**
+     * The position of the OSR entry point in the code or -1 if this method was not compiled for on-stack replacement.
+     */
+    private int osrEntryPos = -1;
+
     @HOSTED_ONLY
     private CiTargetMethod bootstrappingCiTargetMethod;
 
@@ -143,6 +148,7 @@ public class MaxTargetMethod extends TargetMethod implements Cloneable {
 
         initCodeBuffer(ciTargetMethod, install);
         initFrameLayout(ciTargetMethod);
+        osrEntryPos = ciTargetMethod.osrEntryOffset();
         CiDebugInfo[] debugInfos = initSafepoints(ciTargetMethod);
         initExceptionTable(ciTargetMethod);
 
@@ -160,6 +166,19 @@ public class MaxTargetMethod extends TargetMethod implements Cloneable {
         return Lifespan.LONG;
     }
 
+    /**
+     * Gets the OSR entry point of this method. The OSR entry point expects a pointer to the OSR buffer,
+     * which holds one word per local variable, in the first argument register.
+     *
+     * @return the OSR entry point or {@link CodePointer#zero()} if this method was not compiled for on-stack replacement
+     */
+    public CodePointer osrEntryPoint() {
+        if (osrEntryPos < 0) {
+            return CodePointer.zero();
+        }
+        return codeAt(osrEntryPos);
+    }
+
     @Override
     public CodeAnnotation[] annotations() {
         return annotations;
@@ -129,6 +129,7 @@ public class MaxXirGenerator implements RiXirGenerator {
 
     private XirPair invokeVirtualTemplates;
     private XirPair invokeInterfaceTemplates;
+    private XirTemplate invokeInterfaceCachedTemplate;
     private InvokeSpecialTemplates invokeSpecialTemplates;
     private XirPair invokeStaticTemplates;
     private XirPair[] newArrayTemplates;
@@ -139,6 +140,7 @@ public class MaxXirGenerator implements RiXirGenerator {
     private XirTemplate[] arrayStoreNoBoundsCheckTemplates;
     private XirTemplate arrayStoreNoStoreCheckTemplate;
     private XirTemplate arrayStoreNoBoundsOrStoreCheckTemplate;
+    private XirTemplate preWriteBarrierTemplate;
 
     private DynamicHub[] arrayHubs;
 
@@ -166,6 +168,7 @@ public class MaxXirGenerator implements RiXirGenerator {
     private XirPair materializedInstanceofForNonLeafTemplate;
 
     private XirTemplate typeAssertTemplate;
+    private XirTemplate bimorphicTypeAssertTemplate;
 
     private XirTemplate exceptionObjectTemplate;
 
@@ -253,6 +256,7 @@ public class MaxXirGenerator implements RiXirGenerator {
         arrayStoreNoBoundsCheckTemplates = new XirTemplate[kinds.length];
         arrayStoreNoBoundsOrStoreCheckTemplate = buildArrayStore(CiKind.Object, asm, false, false, true);
         arrayStoreNoStoreCheckTemplate = buildArrayStore(CiKind.Object, asm, true, false, true);
+        preWriteBarrierTemplate = buildPreWriteBarrier();
 
         arrayHubs = new DynamicHub[kinds.length];
 
@@ -289,6 +293,7 @@ public class MaxXirGenerator implements RiXirGenerator {
 
         invokeVirtualTemplates = buildInvokeVirtual();
         invokeInterfaceTemplates = buildInvokeInterface();
+        invokeInterfaceCachedTemplate = buildInvokeInterfaceCached();
         invokeSpecialTemplates = buildInvokeSpecial();
         invokeStaticTemplates = buildInvokeStatic();
 
@@ -328,6 +333,7 @@ public class MaxXirGenerator implements RiXirGenerator {
         materializedInstanceofForNonLeafTemplate = buildMaterializeInstanceOf(false, false);
 
         typeAssertTemplate = buildTypeAssert();
+        bimorphicTypeAssertTemplate = buildBimorphicTypeAssert();
 
         exceptionObjectTemplate = buildExceptionObject();
 
@@ -432,6 +438,10 @@ public class MaxXirGenerator implements RiXirGenerator {
             InterfaceMethodActor methodActor = (InterfaceMethodActor) method;
             XirArgument interfaceID = XirArgument.forInt(methodActor.holder().id);
             XirArgument methodIndex = XirArgument.forInt(methodActor.iIndexInInterface());
+            if (InterfaceCallCache.UseInterfaceCallCaches) {
+                XirArgument cache = XirArgument.forObject(new InterfaceCallCache(methodActor));
+                return new XirSnippet(invokeInterfaceCachedTemplate, receiver, cache, interfaceID, methodIndex);
+            }
             return new XirSnippet(pair.resolved, receiver, interfaceID, methodIndex);
         }
         XirArgument guard = XirArgument.forObject(guardFor(method));
@@ -722,6 +732,13 @@ public class MaxXirGenerator implements RiXirGenerator {
         return new XirSnippet(typeAssertTemplate, object, hub);
     }
 
+    @Override
+    public XirSnippet genTypeCheck(XirSite site, XirArgument object, XirArgument hub, XirArgument otherHub, RiType type) {
+        assert type instanceof RiResolvedType;
+        assert site.isNonNull(object);
+        return new XirSnippet(bimorphicTypeAssertTemplate, object, hub, otherHub);
+    }
+
     @Override
     public XirSnippet genArrayLoad(XirSite site, XirArgument array, XirArgument index, CiKind elementKind, RiType elementType) {
         XirTemplate template;
@@ -839,6 +856,14 @@ public class MaxXirGenerator implements RiXirGenerator {
         return finishTemplate(asm, "arraylength");
     }
 
+    @HOSTED_ONLY
+    private XirTemplate buildPreWriteBarrier() {
+        asm.restart(CiKind.Void);
+        XirParameter address = asm.createInputParameter("address", WordUtil.archKind());
+        writeBarrierSpecification().barrierGenerator(WriteBarrierSpecification.PRECISE_PRE_BARRIER).genWriteBarrier(asm, address);
+        return finishTemplate(asm, "prewritebarrier");
+    }
+
     @HOSTED_ONLY
     private XirTemplate buildArrayStore(CiKind kind, CiXirAssembler asm, boolean genBoundsCheck, boolean genStoreCheck, boolean genWriteBarrier) {
         XirWriteBarrierSpecification writeBarrierSpecification = writeBarrierSpecification();
@@ -1026,6 +1051,76 @@ public class MaxXirGenerator implements RiXirGenerator {
         return new XirPair(resolved, unresolved);
     }
 
+    /**
+     * Builds the template for a resolved invokeinterface that dispatches through an {@link InterfaceCallCache}.
+     * The most recently cached receiver hub is checked inline, the other cached hubs out of line. Misses call
+     * into the runtime to update the cache, except at megamorphic call sites which dispatch through the itable.
+     */
+    @HOSTED_ONLY
+    private XirTemplate buildInvokeInterfaceCached() {
+        ClassActor cacheActor = ClassActor.fromJava(InterfaceCallCache.class);
+        ClassActor entryActor = ClassActor.fromJava(InterfaceCallCache.Entry.class);
+
+        asm.restart();
+        XirConstant firstOffset = asm.i(FieldActor.findInstance(cacheActor, "first").offset());
+        XirConstant megamorphicOffset = asm.i(FieldActor.findInstance(cacheActor, "megamorphic").offset());
+        XirConstant entryHubOffset = asm.i(FieldActor.findInstance(entryActor, "hub").offset());
+        XirConstant entryIndexOffset = asm.i(FieldActor.findInstance(entryActor, "index").offset());
+        XirConstant entryNextOffset = asm.i(FieldActor.findInstance(entryActor, "next").offset());
+        XirParameter receiver = asm.createInputParameter("receiver", CiKind.Object); // receiver object
+        XirParameter cache = asm.createConstantInputParameter("cache", CiKind.Object);
+        XirParameter interfaceID = asm.createConstantInputParameter("interfaceID", CiKind.Int);
+        XirParameter methodIndex = asm.createConstantInputParameter("methodIndex", CiKind.Int);
+        XirOperand hub = asm.createTemp("hub", CiKind.Object);
+        XirOperand entry = asm.createTemp("entry", CiKind.Object);
+        XirOperand entryHub = asm.createTemp("entryHub", CiKind.Object);
+        XirOperand mtableLengthOrStartIndex = asm.createTemp("mtableLength/StartIndex", CiKind.Int);
+        XirOperand a = asm.createTemp("a", CiKind.Int);
+        XirOperand result = asm.createTemp("result", WordUtil.archKind());
+        XirLabel hit = asm.createInlineLabel("hit");
+        XirLabel dispatch = asm.createInlineLabel("dispatch");
+        XirLabel miss = asm.createOutOfLineLabel("miss");
+        XirLabel notCached = asm.createOutOfLineLabel("notCached");
+        XirLabel megamorphic = asm.createOutOfLineLabel("megamorphic");
+
+        asm.pload(CiKind.Object, hub, receiver, asm.i(hubOffset()), true);
+        asm.pload(CiKind.Object, entry, cache, firstOffset, false);
+        asm.pload(CiKind.Object, entryHub, entry, entryHubOffset, false);
+        asm.jneq(miss, entryHub, hub);
+        asm.bindInline(hit);
+        asm.pload(CiKind.Int, a, entry, entryIndexOffset, false);
+        asm.bindInline(dispatch);
+        asm.pload(WordUtil.archKind(), result, hub, a, offsetOfFirstArrayElement(), Scale.fromInt(Word.size()), false);
+
+        // -- out of line -------------------------------------------------------
+        // search the other cached hubs
+        asm.bindOutOfLine(miss);
+        asm.pload(CiKind.Object, entry, entry, entryNextOffset, false);
+        asm.jeq(notCached, entry, asm.o(null));
+        asm.pload(CiKind.Object, entryHub, entry, entryHubOffset, false);
+        asm.jneq(miss, entryHub, hub);
+        asm.jmp(hit);
+
+        asm.bindOutOfLine(notCached);
+        asm.pload(CiKind.Int, a, cache, megamorphicOffset, false);
+        asm.jneq(megamorphic, a, asm.i(0));
+        callRuntimeThroughStub(asm, "interfaceCallCacheMiss", a, cache, receiver);
+        // the runtime call may have moved the receiver
+        asm.pload(CiKind.Object, hub, receiver, asm.i(hubOffset()), false);
+        asm.jmp(dispatch);
+
+        asm.bindOutOfLine(megamorphic);
+        asm.pload(CiKind.Int, mtableLengthOrStartIndex, hub, asm.i(offsetOfMTableLength()), false);
+        asm.mod(a, interfaceID, mtableLengthOrStartIndex);
+        asm.pload(CiKind.Int, mtableLengthOrStartIndex, hub, asm.i(offsetOfMTableStartIndex()), false);
+        asm.add(a, a, mtableLengthOrStartIndex);
+        asm.pload(CiKind.Int, a, hub, a, offsetOfFirstArrayElement(), Scale.Times4, false);
+        asm.add(a, a, methodIndex);
+        asm.jmp(dispatch);
+
+        return finishTemplate(asm, result, "invokeinterface-cached");
+    }
+
     @HOSTED_ONLY
     private XirPair buildInvokeVirtual() {
         XirTemplate resolved;
@@ -1530,7 +1625,7 @@ public class MaxXirGenerator implements RiXirGenerator {
             XirParameter value = asm.createInputParameter("value", kind);
             XirParameter fieldOffset = asm.createConstantInputParameter("fieldOffset", CiKind.Int);
             if (genWriteBarrier) {
-                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_PRE_BARRIER).genWriteBarrier(asm, object);
+                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_PRE_BARRIER).genWriteBarrier(asm, object, fieldOffset);
             }
             asm.pstore(kind, object, fieldOffset, value, true);
             if (genWriteBarrier) {
@@ -1550,9 +1645,12 @@ public class MaxXirGenerator implements RiXirGenerator {
             } else {
                 callRuntimeThroughStub(asm, "resolvePutField", fieldOffset, guard);
             }
+            if (genWriteBarrier) {
+                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_PRE_BARRIER).genWriteBarrier(asm, object, fieldOffset);
+            }
             asm.pstore(kind, object, fieldOffset, value, true);
             if (genWriteBarrier) {
-                writeBarrier(asm, object, null, value);
+                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_POST_BARRIER).genWriteBarrier(asm, object);
             }
             maybeInvokeNUMAProfiler(kind, object, "callProfileWriteTuple", false);
             xirTemplate = finishTemplate(asm, "putfield<" + kind + ", " + genWriteBarrier + ">-unresolved");
@@ -1859,6 +1957,31 @@ public class MaxXirGenerator implements RiXirGenerator {
         return asm.finishTemplate(object, "typeCheck");
     }
 
+    @HOSTED_ONLY
+    private XirTemplate buildBimorphicTypeAssert() {
+        asm.restart();
+        XirParameter object = asm.createInputParameter("object", CiKind.Object);
+        XirOperand hub = asm.createConstantInputParameter("hub", CiKind.Object);
+        XirOperand otherHub = asm.createConstantInputParameter("otherHub", CiKind.Object);
+
+        XirOperand objHub = asm.createTemp("objHub", CiKind.Object);
+        XirLabel done = asm.createInlineLabel("done");
+        XirLabel slowPath = asm.createOutOfLineLabel("deopt");
+
+        asm.pload(CiKind.Object, objHub, object, asm.i(hubOffset()), false);
+        // if we get an exact match with either hub: continue
+        asm.jeq(done, objHub, hub);
+        asm.jneq(slowPath, objHub, otherHub);
+        asm.bindInline(done);
+
+        // -- out of line -------------------------------------------------------
+        asm.bindOutOfLine(slowPath);
+        asm.callRuntime(CiRuntimeCall.Deoptimize, null);
+        asm.shouldNotReachHere();
+
+        return asm.finishTemplate(object, "bimorphicTypeCheck");
+    }
+
     @HOSTED_ONLY
     private XirPair buildInstanceofForNonLeaf(boolean nonnull) {
         XirTemplate resolved;
@@ -1954,10 +2077,6 @@ public class MaxXirGenerator implements RiXirGenerator {
         return template;
     }
 
-    private void writeBarrier(CiXirAssembler asm, XirOperand object, XirOperand fieldOffset, XirOperand value) {
-        // XXX: add write barrier mechanism
-    }
-
     @HOSTED_ONLY
     private void callRuntimeThroughStub(CiXirAssembler asm, String method, XirOperand result, XirOperand... args) {
         XirTemplate stub = runtimeCallStubs.get(method);
@@ -2050,6 +2169,14 @@ public class MaxXirGenerator implements RiXirGenerator {
         return null;
     }
 
+    @Override
+    public XirSnippet genPreWriteBarrier(XirArgument address) {
+        if (!vmConfig().heapScheme().needsBarrier(WriteBarrierSpecification.PRECISE_PRE_BARRIER)) {
+            return null;
+        }
+        return new XirSnippet(preWriteBarrierTemplate, address);
+    }
+
     @Override
     public XirSnippet genArrayCopy(XirSite site, XirArgument src, XirArgument srcPos, XirArgument dest, XirArgument destPos, XirArgument length, RiType elementType, boolean inputsDifferent, boolean inputsSame) {
         return null;
@@ -2142,6 +2269,10 @@ public class MaxXirGenerator implements RiXirGenerator {
             return Snippets.resolveInterfaceMethod(guard).holder().id;
         }
 
+        public static int interfaceCallCacheMiss(InterfaceCallCache cache, Object receiver) {
+            return cache.miss(ObjectAccess.readHub(receiver));
+        }
+
         public static Word invokeHandle(ClassMethodActor actor) {
             return Snippets.makeEntrypoint(actor, OPTIMIZED_ENTRY_POINT);
         }
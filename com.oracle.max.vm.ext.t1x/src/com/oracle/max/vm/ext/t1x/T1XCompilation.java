@@ -1803,7 +1803,7 @@ public abstract class T1XCompilation {
 
     void do_profileMethodEntry() {
         if (methodProfileBuilder != null) {
-            methodProfileBuilder.addEntryBackedgeCounter(MethodInstrumentation.initialEntryBackedgeCount);
+            methodProfileBuilder.addEntryBackedgeCounter(CompilationBroker.recompilationThreshold(null));
             if (method.isStatic()) {
                 start(PROFILE_STATIC_METHOD_ENTRY);
                 assignObject(0, "mpo", methodProfileBuilder.methodProfileObject());
@@ -2052,11 +2052,12 @@ public abstract class T1XCompilation {
         emitEpilogue();
     }
 
-    protected void do_profileBackwardBranch() {
+    protected void do_profileBackwardBranch(int targetBCI) {
         if (methodProfileBuilder != null) {
             // Profiling of backward branches.
             start(PROFILE_BACKWARD_BRANCH);
             assignObject(0, "mpo", methodProfileBuilder.methodProfileObject());
+            assignInt(1, "targetBCI", targetBCI);
             finish();
         }
     }
@@ -2136,7 +2137,7 @@ public abstract class T1XCompilation {
             finish();
 
             if (bci >= targetBCI) {
-                do_profileBackwardBranch();
+                do_profileBackwardBranch(targetBCI);
             }
         }
     }
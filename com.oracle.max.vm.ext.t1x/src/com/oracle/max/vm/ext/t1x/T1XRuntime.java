@@ -21,19 +21,26 @@
 package com.oracle.max.vm.ext.t1x;
 
 import static com.sun.max.vm.compiler.CallEntryPoint.*;
+import static com.sun.max.vm.intrinsics.Infopoints.*;
+import static com.sun.max.vm.runtime.VMRegister.*;
 import static com.sun.max.vm.stack.JVMSFrameLayout.*;
 
 import com.oracle.max.cri.intrinsics.*;
+import com.oracle.max.vm.ext.maxri.*;
 import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
 import com.sun.max.program.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.Log;
 import com.sun.max.vm.MaxineVM;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.methodhandle.*;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.profilers.tracing.numa.NUMAProfiler;
 import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.stack.*;
 import com.sun.max.vm.thread.VmThread;
 import com.sun.max.vm.thread.VmThreadLocal;
 
@@ -259,4 +266,136 @@ public class T1XRuntime {
     public static long d2l(double value) {
         return (long) value;
     }
+
+    // ==========================================================================================================
+    // == On-stack replacement ==================================================================================
+    // ==========================================================================================================
+
+    /**
+     * Finds the T1X frame that called {@link T1XRuntime#osrBackedgeCounterOverflow} and the state of its caller.
+     */
+    private static final class OSRFrameFinder extends RawStackFrameVisitor {
+        T1XTargetMethod tm;
+        Pointer fp;
+        Pointer callerSP;
+        Pointer callerFP;
+        Pointer returnAddressPointer;
+
+        @Override
+        public boolean visitFrame(StackFrameCursor current, StackFrameCursor callee) {
+            if (current.isTopFrame()) {
+                // The frame of osrBackedgeCounterOverflow
+                return true;
+            }
+            if (tm == null) {
+                if (!(current.targetMethod() instanceof T1XTargetMethod)) {
+                    return false;
+                }
+                tm = (T1XTargetMethod) current.targetMethod();
+                fp = current.fp();
+                return true;
+            }
+            callerSP = current.sp();
+            callerFP = current.fp();
+            // The return address is read when returning to the caller, as it is patched to
+            // denote a deopt stub if the caller is marked for deoptimization in the meantime.
+            returnAddressPointer = callee.targetMethod().returnAddressPointer(callee);
+            return false;
+        }
+    }
+
+    /**
+     * Called by a T1X method when its {@linkplain MethodProfile#osrBackedgeCount OSR counter} overflows at the
+     * backward branch to the loop header at {@code osrBCI}. If the method can be compiled for on-stack replacement
+     * at this loop header, the activation continues in the compiled code and this method does not return: the value
+     * returned (or the exception thrown) by the compiled code is returned (or thrown) directly to the caller of the
+     * T1X frame. The T1X frame stays on the stack until then but is no longer executed.
+     * Otherwise, the T1X method simply continues execution.
+     *
+     * @param mpo the profile of the T1X method
+     * @param osrBCI the bytecode index of the loop header
+     */
+    @NEVER_INLINE
+    public static void osrBackedgeCounterOverflow(MethodProfile mpo, int osrBCI) {
+        mpo.osrBackedgeCount = MethodInstrumentation.initialOSRBackedgeCount;
+        if (!MethodInstrumentation.isOSREnabled()) {
+            return;
+        }
+
+        OSRFrameFinder finder = new OSRFrameFinder();
+        new VmStackFrameWalker(VmThread.current().tla()).inspect(Pointer.fromLong(here()), getCpuStackPointer(), getCpuFramePointer(), finder);
+        T1XTargetMethod tm = finder.tm;
+        if (tm == null || tm.profile != mpo || finder.returnAddressPointer == null || tm.classMethodActor.isSynchronized()) {
+            return;
+        }
+        MaxTargetMethod osrMethod = tm.osrMethod(osrBCI);
+        if (osrMethod == null) {
+            return;
+        }
+
+        int maxLocals = tm.codeAttribute.maxLocals;
+        Pointer osrBuffer = Memory.allocate(Size.fromInt(Math.max(maxLocals, 1) * Word.size()));
+        if (osrBuffer.isZero()) {
+            return;
+        }
+
+        // References in the OSR buffer are not visible to the GC. Safepoints are re-enabled by
+        // the OSR code once it has loaded the local variables (see CiRuntimeCall.OSRMigrationEnd).
+        SafepointPoll.disable();
+        for (int i = 0; i < maxLocals; i++) {
+            osrBuffer.setWord(i, finder.fp.readWord(tm.frame.localVariableOffset(i)));
+        }
+        Address osrEntry = osrMethod.osrEntryPoint().toAddress();
+        Pointer returnAddressPointer = finder.returnAddressPointer;
+        Pointer callerSP = finder.callerSP;
+        Pointer callerFP = finder.callerFP;
+
+        // The return address is only read once the OSR code has returned, as the caller may have
+        // been deoptimized while the OSR code was running.
+        // Checkstyle: stop
+        try {
+            switch (tm.classMethodActor.resultKind().asEnum) {
+                case VOID:
+                    Stubs.osrInvoke(osrEntry, osrBuffer);
+                    Stubs.unwind(returnAddressPointer.readWord(0).asPointer(), callerSP, callerFP);
+                    break;
+                case BOOLEAN:
+                case BYTE:
+                case SHORT:
+                case CHAR:
+                case INT: {
+                    int result = Stubs.osrInvokeInt(osrEntry, osrBuffer);
+                    Stubs.unwindInt(returnAddressPointer.readWord(0).asPointer(), callerSP, callerFP, result);
+                    break;
+                }
+                case FLOAT: {
+                    float result = Stubs.osrInvokeFloat(osrEntry, osrBuffer);
+                    Stubs.unwindFloat(returnAddressPointer.readWord(0).asPointer(), callerSP, callerFP, result);
+                    break;
+                }
+                case LONG: {
+                    long result = Stubs.osrInvokeLong(osrEntry, osrBuffer);
+                    Stubs.unwindLong(returnAddressPointer.readWord(0).asPointer(), callerSP, callerFP, result);
+                    break;
+                }
+                case DOUBLE: {
+                    double result = Stubs.osrInvokeDouble(osrEntry, osrBuffer);
+                    Stubs.unwindDouble(returnAddressPointer.readWord(0).asPointer(), callerSP, callerFP, result);
+                    break;
+                }
+                case REFERENCE: {
+                    Object result = Stubs.osrInvokeObject(osrEntry, osrBuffer);
+                    Stubs.unwindObject(returnAddressPointer.readWord(0).asPointer(), callerSP, callerFP, result);
+                    break;
+                }
+                default:
+                    throw FatalError.unexpected("unexpected return kind: " + tm.classMethodActor.resultKind());
+            }
+        } catch (Throwable throwable) {
+            // Exceptions not handled by the OSR code propagate to the caller of the T1X frame.
+            Throw.raise(throwable, callerSP, callerFP, CodePointer.from(returnAddressPointer.readWord(0).asPointer()));
+        }
+        // Checkstyle: resume
+        throw FatalError.unexpected("should not reach here");
+    }
 }
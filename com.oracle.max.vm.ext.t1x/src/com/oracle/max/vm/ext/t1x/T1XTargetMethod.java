@@ -35,6 +35,7 @@ import java.util.*;
 
 import com.oracle.max.asm.target.riscv64.RISCV64;
 import com.oracle.max.criutils.TTY;
+import com.oracle.max.vm.ext.maxri.*;
 import com.oracle.max.vm.ext.t1x.T1XTemplate.*;
 import com.sun.cri.bytecode.*;
 import com.sun.cri.ci.*;
@@ -184,6 +185,12 @@ public class T1XTargetMethod extends TargetMethod {
      */
     private int survivedEvictions = 0;
 
+    /**
+     * Code compiled for on-stack replacement at loop headers of this method, keyed by the bytecode index
+     * of the loop header. A {@code null} value records a failed OSR compilation so that it is not retried.
+     */
+    private HashMap<Integer, MaxTargetMethod> osrMethods;
+
     public T1XTargetMethod(T1XCompilation comp, boolean install) {
         super(comp.method, CallEntryPoint.BASELINE_ENTRY_POINT);
         codeAttribute = comp.codeAttribute;
@@ -319,6 +326,30 @@ public class T1XTargetMethod extends TargetMethod {
         return profile;
     }
 
+    /**
+     * Gets the code compiled for on-stack replacement at a given loop header of this method,
+     * compiling it first if this has not yet been attempted.
+     *
+     * @param osrBCI the bytecode index of the loop header
+     * @return {@code null} if this method cannot be compiled for on-stack replacement at {@code osrBCI}
+     */
+    public MaxTargetMethod osrMethod(int osrBCI) {
+        synchronized (this) {
+            if (osrMethods == null) {
+                osrMethods = new HashMap<Integer, MaxTargetMethod>();
+            } else if (osrMethods.containsKey(osrBCI)) {
+                return osrMethods.get(osrBCI);
+            }
+        }
+        // Compile outside the lock; a racing compilation for the same loop header is harmless.
+        TargetMethod tm = vm().compilationBroker.compileForOSR(classMethodActor, osrBCI);
+        MaxTargetMethod osrMethod = tm instanceof MaxTargetMethod && !((MaxTargetMethod) tm).osrEntryPoint().isZero() ? (MaxTargetMethod) tm : null;
+        synchronized (this) {
+            osrMethods.put(osrBCI, osrMethod);
+        }
+        return osrMethod;
+    }
+
     @Override
     public int[] bciToPosMap() {
         return bciToPos;
@@ -72,10 +72,13 @@ public class T1XTemplateSource {
     }
 
     @T1X_TEMPLATE(PROFILE_BACKWARD_BRANCH)
-    public static void profileBackwardBranch(MethodProfile mpo) {
+    public static void profileBackwardBranch(MethodProfile mpo, int targetBCI) {
         // entrypoint counters count down to zero ("overflow")
-        // Currently, there is no reason to use a separate counter for backward branches.
         MethodInstrumentation.recordBackwardBranch(mpo);
+        // the OSR counter is separate as the entrypoint counter is reset when the method is recompiled
+        if (--mpo.osrBackedgeCount <= 0) {
+            osrBackedgeCounterOverflow(mpo, targetBCI);
+        }
     }
 
     @T1X_TEMPLATE(PROFILE_TAKEN_BRANCH)
@@ -622,7 +622,7 @@ public class AMD64T1XCompilation extends T1XCompilation {
             // Compute relative offset
             final int target = bciToPos[targetBCI];
             if (cc == null) {
-                do_profileBackwardBranch();
+                do_profileBackwardBranch(targetBCI);
                 do_safepointAtBackwardBranch(bci);
                 asm.jmp(target, false);
             } else {
@@ -631,20 +631,21 @@ public class AMD64T1XCompilation extends T1XCompilation {
                 final int placeholderForShortJumpDisp = jumpNotTakenPos + 2;
                 int fallThroughPos;
 
-                // If condition is false jump to "not taken" code
-                asm.jcc(ccNeg, placeholderForShortJumpDisp, false);
-                assert buf.position() - jumpNotTakenPos == 2;
+                // If condition is false jump to "not taken" code. The jump must be a long
+                // jump as the backward branch profiling code may not fit a short jump.
+                asm.jcc(ccNeg, placeholderForShortJumpDisp, true);
+                assert buf.position() - jumpNotTakenPos == 6;
 
                 // Start of "taken" code
-                do_profileBackwardBranch();
+                do_profileBackwardBranch(targetBCI);
                 do_safepointAtBackwardBranch(bci);
                 asm.jmp(target, false);
 
                 // Start of "not taken" code
                 fallThroughPos = buf.position();
                 buf.setPosition(jumpNotTakenPos);
-                asm.jcc(ccNeg, fallThroughPos, false);
-                assert buf.position() - jumpNotTakenPos == 2;
+                asm.jcc(ccNeg, fallThroughPos, true);
+                assert buf.position() - jumpNotTakenPos == 6;
                 buf.setPosition(fallThroughPos);
             }
         }
@@ -657,6 +658,8 @@ public class AMD64T1XCompilation extends T1XCompilation {
         boolean isForwardBranch = bci < targetBCI;
         boolean isConditionalBranch = cc != null;
         final int relativeOffset = isForwardBranch ? 0 : bciToPos[targetBCI];
+        // The backward branch profiling code may not fit a short jump over the "taken" code
+        final boolean forceLongJump = MaxineVM.useNUMAProfiler || !isForwardBranch;
         int jumpTakenPos = buf.position();
         int jumpNotTakenPos = buf.position();
         int fallThroughPos;
@@ -673,8 +676,8 @@ public class AMD64T1XCompilation extends T1XCompilation {
             do_profileNotTakenBranch(bci);
             jumpNotTakenPos = buf.position();
             placeholderForShortJumpDisp = jumpNotTakenPos + 2;
-            asm.jmp(placeholderForShortJumpDisp, MaxineVM.useNUMAProfiler);
-            assert buf.position() - jumpNotTakenPos == (MaxineVM.useNUMAProfiler ? 5 : 2);
+            asm.jmp(placeholderForShortJumpDisp, forceLongJump);
+            assert buf.position() - jumpNotTakenPos == (forceLongJump ? 5 : 2);
         }
 
         // Start of "taken" code
@@ -700,8 +703,8 @@ public class AMD64T1XCompilation extends T1XCompilation {
         if (isConditionalBranch) {
             fallThroughPos = buf.position();
             buf.setPosition(jumpNotTakenPos);
-            asm.jmp(fallThroughPos, MaxineVM.useNUMAProfiler);
-            assert buf.position() - jumpNotTakenPos == (MaxineVM.useNUMAProfiler ? 5 : 2);
+            asm.jmp(fallThroughPos, forceLongJump);
+            assert buf.position() - jumpNotTakenPos == (forceLongJump ? 5 : 2);
             buf.setPosition(fallThroughPos);
         }
 
@@ -718,10 +721,11 @@ public class AMD64T1XCompilation extends T1XCompilation {
         int jumpNotTakenPos = buf.position();
 
         if (isConditionalBranch) {
-            // If condition is false jump to "not taken" code
+            // If condition is false jump to "not taken" code. The backward branch profiling
+            // code may not fit a short jump over the "taken" code.
             final int placeholderForShortJumpDisp = jumpNotTakenPos + 2;
-            asm.jcc(ccNeg, placeholderForShortJumpDisp, false);
-            assert buf.position() - jumpNotTakenPos == 2;
+            asm.jcc(ccNeg, placeholderForShortJumpDisp, !isForwardBranch);
+            assert buf.position() - jumpNotTakenPos == (isForwardBranch ? 2 : 6);
         }
 
         // Start of "taken" code
@@ -740,8 +744,8 @@ public class AMD64T1XCompilation extends T1XCompilation {
             // Patch the jump to "not taken" code now that we know where it is going
             int notTakenCodePos = buf.position();
             buf.setPosition(jumpNotTakenPos);
-            asm.jcc(ccNeg, notTakenCodePos, false);
-            assert buf.position() - jumpNotTakenPos == 2;
+            asm.jcc(ccNeg, notTakenCodePos, !isForwardBranch);
+            assert buf.position() - jumpNotTakenPos == (isForwardBranch ? 2 : 6);
             buf.setPosition(notTakenCodePos);
             do_profileNotTakenBranch(bci);
         }
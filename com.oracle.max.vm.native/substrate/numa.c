@@ -45,4 +45,12 @@ int numaNodeOfCPU(int cpuID) {
 
 int numaPageSize() {
     return numa_pagesize();
-}
\ No newline at end of file
+}
+
+int numaConfiguredNodes() {
+    return numa_num_configured_nodes();
+}
+
+void numaBindMemory(jlong address, jlong size, int node) {
+    numa_tonode_memory((void *) address, (size_t) size, node);
+}
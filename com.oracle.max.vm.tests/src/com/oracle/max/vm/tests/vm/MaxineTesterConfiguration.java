@@ -359,6 +359,9 @@ public class MaxineTesterConfiguration {
         maxvmConfig("opt", "-Xms2g", "-Xmx2g", "-Xopt");
         maxvmConfig("mx256m", "-Xmx256m");
         maxvmConfig("mx512m", "-Xmx512m");
+        maxvmConfig("pargc", "-Xmx256m", "-XX:ParallelGCThreads=4");
+        // Only for images built with -heap=gcx.mse (see the "mse" and "msed" image configurations)
+        maxvmConfig("compact", "-Xmx256m", "-XX:+CompactSparseRegions");
 
         // VEE 2010 benchmarking configurations
         maxvmConfig("noGC", "-XX:+DisableGC", "-Xmx3g");
@@ -368,6 +371,10 @@ public class MaxineTesterConfiguration {
         maxvmConfig("forceT1X", "-XX:RCT=0");
         maxvmConfig("forceC1X", "-XX:RCT=1");
 
+        // Configuration to test the persistent code cache: the tests must be run at least twice with it
+        // (e.g. -maxvm-configs=codecache,codecache) so that code saved by one run is reused or invalidated by the next
+        maxvmConfig("codecache", "-Xms1g", "-Xmx1g", "-XX:CodeCacheFile=maxine-code-cache");
+
         imageConfig("baseline-c1x0", "--C1X:OptLevel=0");
         imageConfig("baseline-c1x1", "--C1X:OptLevel=1");
         imageConfig("baseline-c1x2", "--C1X:OptLevel=2");
@@ -395,6 +402,9 @@ public class MaxineTesterConfiguration {
         imageConfig("mse", opt_c1x, "-run=java", "-heap=gcx.mse");
         imageConfig("gmse", opt_c1x, "-run=java", "-heap=gcx.gen.mse");
         imageConfig("gmsed", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "-build=DEBUG");
+        // Alternate monitor configurations
+        imageConfig("ebti", opt_c1x, "-run=java", "-monitor=modal.schemes.epochbiased_thin_inflated");
+        imageConfig("ebtid", opt_c1x, "-run=java", "-monitor=modal.schemes.epochbiased_thin_inflated", "-build=DEBUG");
 
         // VMA configurations
         final String vmaT1X = "com.oracle.max.vm.ext.vma.t1x.VMAT1X";
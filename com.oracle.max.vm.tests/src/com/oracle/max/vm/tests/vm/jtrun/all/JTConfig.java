@@ -600,6 +600,8 @@ public class JTConfig {
         jtt.optimize.ABCE_01.class,
         jtt.optimize.ABCE_02.class,
         jtt.optimize.ABCE_03.class,
+        jtt.optimize.ABCE_04.class,
+        jtt.optimize.ABCE_05.class,
         jtt.optimize.ArrayCopy01.class,
         jtt.optimize.ArrayLength01.class,
         jtt.optimize.BC_idiv_16.class,
@@ -619,6 +621,10 @@ public class JTConfig {
         jtt.optimize.Conditional01.class,
         jtt.optimize.DeadCode01.class,
         jtt.optimize.DeadCode02.class,
+        jtt.optimize.EA_01.class,
+        jtt.optimize.EA_02.class,
+        jtt.optimize.EA_03.class,
+        jtt.optimize.EA_04.class,
         jtt.optimize.Fold_Cast01.class,
         jtt.optimize.Fold_Convert01.class,
         jtt.optimize.Fold_Convert02.class,
@@ -637,6 +643,8 @@ public class JTConfig {
         jtt.optimize.Fold_Math01.class,
         jtt.optimize.Inline01.class,
         jtt.optimize.Inline02.class,
+        jtt.optimize.LICM_01.class,
+        jtt.optimize.LICM_02.class,
         jtt.optimize.LLE_01.class,
         jtt.optimize.List_reorder_bug.class,
         jtt.optimize.NCE_01.class,
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.max.vm.tests.vm.output;
+
+import static com.sun.max.vm.intrinsics.Infopoints.*;
+
+import com.sun.max.annotate.*;
+
+/**
+ * Tests the reallocation of objects removed by escape analysis when optimized code is deoptimized,
+ * and the re-locking of the objects whose locking was removed.
+ */
+public class EscapeAnalysisDeopt {
+
+    static final class Point {
+        int x;
+        long y;
+        double z;
+        char c;
+    }
+
+    public static void main(String[] args) {
+        for (int i = 0; i < 10000000; i++) {
+            fields(i, true);
+            locked(i, true);
+        }
+        // By now 'fields()' and 'locked()' should have been recompiled.
+        System.out.println("fields: " + fields(42, false));
+        System.out.println("locked: " + locked(7, false));
+    }
+
+    @NEVER_INLINE
+    private static String fields(int i, boolean warmup) {
+        // Only loads follow the allocations, so that neither the point nor the array escape.
+        Point p = new Point();
+        p.x = i;
+        p.y = i * 1000000007L;
+        p.z = i / 4.0;
+        p.c = (char) ('a' + i % 26);
+        int[] array = new int[3];
+        array[0] = i + 1;
+        array[2] = i + 2;
+        if (warmup) {
+            return null;
+        }
+        uncommonTrap();
+        return p.x + ", " + p.y + ", " + p.z + ", " + p.c + ", [" + array[0] + ", " + array[1] + ", " + array[2] + "], " + array.length;
+    }
+
+    @NEVER_INLINE
+    private static int locked(int i, boolean warmup) {
+        Point p = new Point();
+        p.x = i;
+        synchronized (p) {
+            if (!warmup) {
+                // The deoptimized frame exits the monitor of the point, which must have been acquired for it.
+                uncommonTrap();
+            }
+            return p.x * 3;
+        }
+    }
+}
@@ -130,6 +130,17 @@ public final class C1XCompilation {
         return osrBCI >= 0;
     }
 
+    /**
+     * Checks whether this compilation may speculate on the profile collected by baseline code and guard the
+     * speculation with a deoptimization. This is not the case for an on-stack replacement, whose activation
+     * cannot be deoptimized.
+     *
+     * @return {@code true} if profile-guided speculation is enabled for this compilation
+     */
+    public boolean canSpeculate() {
+        return C1XOptions.OptProfileGuided && !isOsrCompilation();
+    }
+
     /**
      * Records an assumption that the specified type has no finalizable subclasses.
      *
@@ -163,11 +174,9 @@ public final class C1XCompilation {
     public BlockMap getBlockMap(RiResolvedMethod method, int osrBCI) {
         // PERF: cache the block map for methods that are compiled or inlined often
         BlockMap map = new BlockMap(method, hir.numberOfBlocks());
-        boolean isOsrCompilation = false;
-        if (osrBCI >= 0) {
-            map.addEntrypoint(osrBCI, BlockBegin.BlockFlag.OsrEntry);
-            isOsrCompilation = true;
-        }
+        // The OSR entry block is created by the graph builder and jumps to the block at osrBCI.
+        // Every local needs a phi at loop headers so that the OSR entry can merge its state.
+        boolean isOsrCompilation = osrBCI >= 0;
         if (!map.build(!isOsrCompilation && C1XOptions.PhiLoopStores)) {
             throw new CiBailout("build of BlockMap failed for " + method);
         } else {
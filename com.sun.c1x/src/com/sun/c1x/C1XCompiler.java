@@ -37,9 +37,9 @@ import com.sun.cri.xir.XirTemplate;
 import com.sun.max.platform.*;
 
 import java.lang.management.PlatformManagedObject;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class implements the compiler interface for C1X.
@@ -48,7 +48,10 @@ public class C1XCompiler extends ObservableCompiler implements CiCompiler {
 
     public final IntrinsicImpl.Registry intrinsicRegistry = new IntrinsicImpl.Registry();
 
-    public final Map<Object, CompilerStub> stubs = new HashMap<Object, CompilerStub>();
+    /**
+     * The compiler stubs. Stubs for runtime calls are created lazily, possibly by concurrent compilations.
+     */
+    public final Map<Object, CompilerStub> stubs = new ConcurrentHashMap<Object, CompilerStub>();
 
     /**
      * The target that this compiler has been configured for.
@@ -65,7 +68,7 @@ public class C1XCompiler extends ObservableCompiler implements CiCompiler {
      */
     public final RiXirGenerator xir;
 
-    private CompilationObserver cfgPrinterObserver;
+    private volatile CompilationObserver cfgPrinterObserver;
 
     /**
      * The backend that this compiler has been configured for.
@@ -187,8 +190,13 @@ public class C1XCompiler extends ObservableCompiler implements CiCompiler {
     public CompilerStub lookupStub(CiRuntimeCall runtimeCall) {
         CompilerStub stub = stubs.get(runtimeCall);
         if (stub == null) {
-            stub = backend.emit(runtimeCall);
-            stubs.put(runtimeCall, stub);
+            synchronized (stubs) {
+                stub = stubs.get(runtimeCall);
+                if (stub == null) {
+                    stub = backend.emit(runtimeCall);
+                    stubs.put(runtimeCall, stub);
+                }
+            }
         }
 
         assert stub != null : "could not find compiler stub for runtime call: " + runtimeCall;
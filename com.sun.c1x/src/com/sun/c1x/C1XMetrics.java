@@ -27,7 +27,8 @@ import com.oracle.max.criutils.*;
 
 /**
  * This class contains a number of fields that collect metrics about compilation, particularly
- * the number of times certain optimizations are performed.
+ * the number of times certain optimizations are performed. The fields are updated without synchronization,
+ * so the counts are approximate when several compilations run in parallel.
  */
 public class C1XMetrics {
     public static int CompiledMethods;
@@ -40,6 +41,13 @@ public class C1XMetrics {
     public static int InlineForcedMethods;
     public static int InlineForbiddenMethods;
     public static int InlinedJsrs;
+    public static int ProfiledCallsDevirtualized;
+    public static int ProfiledBranchesPruned;
+    public static int AllocationsEliminated;
+    public static int LocksElided;
+    public static int CountedLoops;
+    public static int LoopInvariantsHoisted;
+    public static int BoundsChecksPredicated;
     public static int NullCheckIterations;
     public static int NullCheckEliminations;
     public static int NullChecksRedundant;
@@ -119,10 +119,22 @@ public final class C1XOptions {
     public static boolean OptDeadCodeElimination2;
     public static boolean OptControlFlow;
     public static boolean OptMoveElimination;
+    public static boolean OptEscapeAnalysis;
+    public static boolean OptLoopInvariantCodeMotion;
+    public static boolean OptRangeCheckElimination;
+
+    // escape analysis settings
+    public static int     MaximumVirtualObjectSize      = 32;
 
     // optimistic optimization settings
     public static boolean UseAssumptions                = true;
 
+    // profile-guided optimization settings
+    public static boolean OptProfileGuided              = ____;
+    public static int     ProfileMaturityThreshold      = 1000;
+    public static float   ProfiledTypeCoverage          = 0.99f;
+    public static float   RareBranchProbability         = 0.05f;
+
     // state merging settings
     public static boolean AssumeVerifiedBytecode        = ____;
     public static boolean PhiSimplify                   = true;
@@ -222,6 +234,7 @@ public final class C1XOptions {
         OptInlineSynchronized           = lll;
         UseStackMapTableLiveness        = lll;
         UseAssumptions                  = lll;
+        OptProfileGuided                = lll;
         OptIterativeNCE                 = lll;
         OptFlowSensitiveNCE             = lll;
         OptDeadCodeElimination1         = lll;
@@ -230,5 +243,8 @@ public final class C1XOptions {
         OptDiamondElimination           = lll;
         OptCEElimination                = lll;
         OptBlockSkipping                = lll;
+        OptEscapeAnalysis               = lll;
+        OptLoopInvariantCodeMotion      = lll;
+        OptRangeCheckElimination        = lll;
     }
 }
@@ -22,11 +22,13 @@
  */
 package com.sun.c1x;
 
+import java.util.concurrent.atomic.*;
+
 import com.oracle.max.criutils.*;
 
 /**
  * This class contains timers that record the amount of time spent in various
- * parts of the compiler.
+ * parts of the compiler. The timers can be used by concurrent compilations.
  */
 public enum C1XTimers {
     HIR_CREATE("Create HIR"),
@@ -40,32 +42,41 @@ public enum C1XTimers {
     CODE_CREATE("Create Code"),
     INSTALL("Install");
 
+    /**
+     * The start times of the timers in the current thread, indexed by {@linkplain #ordinal() ordinal}.
+     */
+    private static final ThreadLocal<long[]> starts = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[values().length];
+        }
+    };
+
     private final String name;
-    private long start;
-    private long total;
+    private final AtomicLong total = new AtomicLong();
 
     C1XTimers(String name) {
         this.name = name;
     }
 
     public void start() {
-        start = System.nanoTime();
+        starts.get()[ordinal()] = System.nanoTime();
     }
 
     public void stop() {
-        total += System.nanoTime() - start;
+        total.addAndGet(System.nanoTime() - starts.get()[ordinal()]);
     }
 
     public static void reset() {
         for (C1XTimers t : values()) {
-            t.total = 0;
+            t.total.set(0);
         }
     }
 
     public static void print() {
         long total = 0;
         for (C1XTimers timer : C1XTimers.values()) {
-            total += timer.total;
+            total += timer.total.get();
         }
         if (total == 0) {
             return;
@@ -73,8 +84,8 @@ public enum C1XTimers {
 
         TTY.println();
         for (C1XTimers timer : C1XTimers.values()) {
-            TTY.println("%-20s: %7.4f s (%5.2f%%)", timer.name, timer.total / 1000000000.0, timer.total * 100.0 / total);
-            timer.total = 0;
+            long time = timer.total.getAndSet(0);
+            TTY.println("%-20s: %7.4f s (%5.2f%%)", timer.name, time / 1000000000.0, time * 100.0 / total);
         }
         TTY.println();
     }
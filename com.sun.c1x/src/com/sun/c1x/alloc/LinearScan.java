@@ -656,7 +656,7 @@ public final class LinearScan {
                 // Add uses of live locals from interpreter's point of view for proper debug information generation
                 LIRDebugInfo info = op.info;
                 if (info != null) {
-                    info.state.forEachLiveStateValue(new ValueProcedure() {
+                    info.forEachLiveStateValue(new ValueProcedure() {
 
                         public void doValue(Value value) {
                             CiValue operand = value.operand();
@@ -1303,7 +1303,7 @@ public final class LinearScan {
                 // to a call site, the value would be in a register at the call otherwise)
                 LIRDebugInfo info = op.info;
                 if (info != null) {
-                    info.state.forEachLiveStateValue(new ValueProcedure() {
+                    info.forEachLiveStateValue(new ValueProcedure() {
 
                         public void doValue(Value value) {
                             CiValue operand = value.operand();
@@ -2136,20 +2136,63 @@ public final class LinearScan {
         }
     }
 
-    CiFrame computeFrameForState(int opId, FrameState state, CiBitMap frameRefMap) {
+    /**
+     * Gets the debug info value for a value of a frame state, which may be a {@linkplain Value#virtualObject virtual object}.
+     *
+     * @param topState the innermost frame state of the debug info being computed
+     */
+    CiValue toCiValue(int opId, FrameState topState, Value value) {
+        if (value != null && value.virtualObject != null) {
+            return toCiVirtualObject(opId, topState, value);
+        }
+        return toCiValue(opId, value);
+    }
+
+    /**
+     * The virtual objects of the debug info currently being computed. A virtual object referenced
+     * more than once in the debug info must be described by the same {@link CiVirtualObject}.
+     */
+    private IdentityHashMap<Value, CiVirtualObject> virtualObjects;
+
+    private CiVirtualObject toCiVirtualObject(int opId, FrameState topState, Value value) {
+        if (virtualObjects == null) {
+            virtualObjects = new IdentityHashMap<Value, CiVirtualObject>();
+        }
+        CiVirtualObject vobj = virtualObjects.get(value);
+        if (vobj == null) {
+            VirtualObject virtualObject = value.virtualObject;
+            Value[] fieldValues = virtualObject.valuesAt(topState);
+            CiValue[] values = new CiValue[fieldValues.length];
+            for (int i = 0; i < fieldValues.length; i++) {
+                Value fieldValue = fieldValues[i];
+                if (fieldValue == null) {
+                    values[i] = virtualObject.defaultValue(i);
+                } else if (fieldValue instanceof Constant) {
+                    values[i] = fieldValue.asConstant();
+                } else {
+                    values[i] = toCiValue(opId, fieldValue);
+                }
+            }
+            vobj = CiVirtualObject.get(virtualObject.type, values, virtualObjects.size());
+            virtualObjects.put(value, vobj);
+        }
+        return vobj;
+    }
+
+    CiFrame computeFrameForState(int opId, FrameState state, FrameState topState, CiBitMap frameRefMap) {
         CiFrame callerFrame = null;
 
         FrameState callerState = state.callerState();
         if (callerState != null) {
             // process recursively to compute outermost scope first
-            callerFrame = computeFrameForState(opId, callerState, frameRefMap);
+            callerFrame = computeFrameForState(opId, callerState, topState, frameRefMap);
         }
 
         CiValue[] values = new CiValue[state.valuesSize() + state.locksSize()];
         int valueIndex = 0;
 
         for (int i = 0; i < state.valuesSize(); i++) {
-            values[valueIndex++] = toCiValue(opId, state.valueAt(i));
+            values[valueIndex++] = toCiValue(opId, topState, state.valueAt(i));
         }
 
         for (int i = 0; i < state.locksSize(); i++) {
@@ -2165,7 +2208,7 @@ public final class LinearScan {
                     // lock on class for synchronized static method
                     values[valueIndex++] = lock.asConstant();
                 } else {
-                    values[valueIndex++] = toCiValue(opId, lock);
+                    values[valueIndex++] = toCiValue(opId, topState, lock);
                 }
             }
         }
@@ -2203,7 +2246,8 @@ public final class LinearScan {
         if (C1XOptions.TraceLinearScanLevel >= 3) {
             TTY.println("creating debug information at opId %d", opId);
         }
-        return computeFrameForState(opId, state, frameRefMap);
+        virtualObjects = null;
+        return computeFrameForState(opId, state, state, frameRefMap);
     }
 
     private void assignLocations(List<LIRInstruction> instructions, IntervalWalker iw) {
@@ -435,7 +435,7 @@ public abstract class LIRGenerator extends ValueVisitor {
         if (currentBlock.next() instanceof OsrEntry) {
             // need to free up storage used for OSR entry point
             CiValue osrBuffer = currentBlock.next().operand();
-            callRuntime(CiRuntimeCall.OSRMigrationEnd, null, osrBuffer);
+            callRuntime(CiRuntimeCall.OSRMigrationEnd, stateFor(x, x.stateAfter()), osrBuffer);
             emitXir(xir.genSafepointPoll(site(x)), x, stateFor(x, x.stateAfter()), null, false);
         } else if (x.isSafepointPoll()) {
             emitXir(xir.genSafepointPoll(site(x)), x, stateFor(x, x.stateAfter()), null, false);
@@ -1949,7 +1949,21 @@ public abstract class LIRGenerator extends ValueVisitor {
         }
     }
 
+    /**
+     * Emits the runtime's barrier, if any, required before a reference is stored at a given address.
+     * The barrier may call the runtime, so it must not be emitted while a value is held in a fixed register.
+     *
+     * @param addrOpr the address or a pointer to the location of the reference about to be overwritten
+     */
     protected void preGCWriteBarrier(CiValue addrOpr, boolean patch, LIRDebugInfo info) {
+        CiValue pointer = addrOpr instanceof CiAddress ? newVariable(compilation.target.wordKind) : addrOpr;
+        XirSnippet writeBarrier = xir.genPreWriteBarrier(toXirArgument(pointer));
+        if (writeBarrier != null) {
+            if (pointer != addrOpr) {
+                lir.lea(addrOpr, pointer);
+            }
+            emitXir(writeBarrier, null, info, null, false);
+        }
     }
 
     protected void setNoResult(Instruction x) {
@@ -1996,7 +2010,7 @@ public abstract class LIRGenerator extends ValueVisitor {
             return;
         }
         for (int index = 0; index < state.stackSize(); index++) {
-            walkStateValue(state.stackAt(index));
+            walkStateValue(state, state.stackAt(index));
         }
         FrameState s = state;
         int bci = x.bci();
@@ -2014,20 +2028,34 @@ public abstract class LIRGenerator extends ValueVisitor {
                 final Value value = s.localAt(index);
                 if (value != null) {
                     if (!value.isIllegal()) {
-                        walkStateValue(value);
+                        walkStateValue(state, value);
                     }
                 }
             }
+            for (int index = 0; index < s.locksSize(); index++) {
+                final Value lock = s.lockAt(index);
+                if (lock != null && lock.virtualObject != null) {
+                    // the fields of an object whose lock was elided must be available
+                    walkStateValue(state, lock);
+                }
+            }
             bci = scope.callerBCI();
             s = s.callerState();
         }
     }
 
-    private void walkStateValue(Value value) {
+    private void walkStateValue(FrameState topState, Value value) {
         if (value != null) {
             assert !value.hasSubst() : "missed substitution";
             assert value.isLive() : "value must be marked live in frame state";
-            if (value instanceof Phi && !value.isIllegal()) {
+            if (value.virtualObject != null) {
+                // the allocation was removed, the object is described by its fields
+                for (Value fieldValue : value.virtualObject.valuesAt(topState)) {
+                    if (fieldValue != null && !(fieldValue instanceof Constant)) {
+                        walkStateValue(topState, fieldValue);
+                    }
+                }
+            } else if (value instanceof Phi && !value.isIllegal()) {
                 // phi's are special
                 operandForPhi((Phi) value);
             } else if (value.operand().isIllegal() && !(value instanceof UnsafeCast)) {
@@ -2278,4 +2306,31 @@ public abstract class LIRGenerator extends ValueVisitor {
         lir.cmp(typeEqualityCheck.condition.negate(), leftValue, rightValue);
         emitGuard(typeEqualityCheck);
     }
+
+    @Override
+    public void visitTypeGuard(TypeGuard typeGuard) {
+        XirArgument object = toXirArgument(typeGuard.object());
+        XirArgument hub = XirArgument.forObject(typeGuard.types[0].getEncoding(RiType.Representation.ObjectHub).asObject());
+        XirSnippet snippet;
+        if (typeGuard.types.length == 1) {
+            snippet = xir.genTypeCheck(site(typeGuard), object, hub, typeGuard.types[0]);
+        } else {
+            XirArgument otherHub = XirArgument.forObject(typeGuard.types[1].getEncoding(RiType.Representation.ObjectHub).asObject());
+            snippet = xir.genTypeCheck(site(typeGuard), object, hub, otherHub, typeGuard.types[0]);
+        }
+        emitXir(snippet, typeGuard, stateFor(typeGuard), null, false);
+    }
+
+    @Override
+    public void visitBranchGuard(BranchGuard branchGuard) {
+        CiValue left = load(branchGuard.x());
+        CiValue right;
+        if (canInlineAsConstant(branchGuard.y())) {
+            right = makeOperand(branchGuard.y());
+        } else {
+            right = load(branchGuard.y());
+        }
+        lir.cmp(branchGuard.condition.negate(), left, right);
+        emitGuard(branchGuard);
+    }
 }
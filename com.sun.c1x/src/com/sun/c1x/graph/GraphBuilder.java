@@ -123,7 +123,17 @@ public final class GraphBuilder {
         // 2. compute the block map and get the entrypoint(s)
         BlockMap blockMap = compilation.getBlockMap(scope.method, compilation.osrBCI);
         BlockBegin stdEntry = blockMap.get(0);
-        BlockBegin osrEntry = compilation.osrBCI < 0 ? null : blockMap.get(compilation.osrBCI);
+        BlockBegin osrEntry = null;
+        if (compilation.isOsrCompilation()) {
+            if (blockMap.get(compilation.osrBCI) == null) {
+                throw new CiBailout("OSR bci is not the start of a block");
+            }
+            // the OSR entry is a separate block that loads the locals from the OSR buffer
+            // and jumps to the block at the OSR bci
+            osrEntry = new BlockBegin(compilation.osrBCI, ir.nextBlockNumber());
+            osrEntry.setOsrEntry(true);
+            ir.osrEntryBlock = osrEntry;
+        }
         pushRootScope(scope, blockMap, startBlock);
         MutableFrameState initialState = stateAtEntry(rootMethod);
         startBlock.mergeOrClone(initialState);
@@ -205,13 +215,57 @@ public final class GraphBuilder {
             fillSyncHandler(rootMethodSynchronizedObject, syncHandler, false);
         }
 
-        if (compilation.osrBCI >= 0) {
-            BlockBegin osrBlock = blockMap.get(compilation.osrBCI);
-            assert osrBlock.wasVisited();
-            if (!osrBlock.stateBefore().stackEmpty()) {
-                throw new CiBailout("cannot OSR with non-empty stack");
+        if (osrEntry != null) {
+            fillOsrEntry(osrEntry, blockMap.get(compilation.osrBCI));
+        }
+    }
+
+    /**
+     * Fills the OSR entry block. The block loads the value of each live local from the OSR buffer,
+     * which holds one word per local variable index, and jumps to the block at the OSR bci.
+     *
+     * @param osrEntry the OSR entry block
+     * @param target the block at the OSR bci
+     */
+    private void fillOsrEntry(BlockBegin osrEntry, BlockBegin target) {
+        if (!target.wasVisited()) {
+            throw new CiBailout("OSR bci is not reachable");
+        }
+        FrameState targetState = target.stateBefore();
+        if (!targetState.stackEmpty()) {
+            throw new CiBailout("cannot OSR with non-empty stack");
+        }
+        if (targetState.locksSize() != 0) {
+            throw new CiBailout("cannot OSR with locked monitors");
+        }
+        if (!target.isParserLoopHeader()) {
+            throw new CiBailout("OSR bci is not a loop header");
+        }
+
+        int bci = compilation.osrBCI;
+        osrEntry.setWasVisited(true);
+        killMemoryMap();
+        curBlock = osrEntry;
+        curState = targetState.copy();
+        lastInstr = osrEntry;
+        osrEntry.setNext(null, -1);
+
+        Value buffer = appendWithoutOptimization(new OsrEntry(compilation.target.wordKind), bci);
+        int wordSize = compilation.target.wordSize;
+        for (int i = 0; i < targetState.localsSize(); i++) {
+            Value local = targetState.localAt(i);
+            if (local != null) {
+                Value offset = appendWithoutOptimization(new Constant(CiConstant.forInt(i * wordSize)), bci);
+                LoadPointer load = new LoadPointer(compilation.runtime.asRiType(local.kind), buffer, null, offset, null, false);
+                curState.storeLocal(i, appendWithoutOptimization(load, bci));
             }
         }
+
+        Goto end = new Goto(target, null, false);
+        appendWithoutOptimization(end, bci);
+        end.setStateAfter(curState.immutableCopy(bci));
+        osrEntry.setEnd(end);
+        target.mergeOrClone(end.stateAfter());
     }
 
     private void closeAccessorScope(RiType accessor) {
@@ -699,9 +753,44 @@ public final class GraphBuilder {
         BlockBegin fsucc = blockAt(stream().nextBCI());
         int bci = stream().currentBCI();
         boolean isSafepointPoll = !scopeData.noSafepointPolls() && tsucc.bci() <= bci || fsucc.bci() <= bci;
+        if (compilation.canSpeculate() && !isSafepointPoll && tryProfiledBranch(x, cond, y, tsucc, fsucc, stateBefore)) {
+            return;
+        }
         append(new If(x, cond, false, y, tsucc, fsucc, isSafepointPoll ? stateBefore : null, isSafepointPoll));
     }
 
+    /**
+     * Uses the branch profile of the current bytecode. A branch that has never been seen going one way is replaced by a
+     * {@link BranchGuard} and a {@link Goto} to the other successor, so that the unseen successor is not compiled unless it
+     * is reachable otherwise. Otherwise, a successor that the profile has seen rarely is marked as such, which makes the
+     * {@linkplain ComputeLinearScanOrder block order} place it after the frequently executed blocks.
+     *
+     * @return {@code true} if the branch was replaced
+     */
+    private boolean tryProfiledBranch(Value x, Condition cond, Value y, BlockBegin tsucc, BlockBegin fsucc, FrameState stateBefore) {
+        int bci = bci();
+        if (method().executionCount(bci) < C1XOptions.ProfileMaturityThreshold) {
+            return false;
+        }
+        double probability = method().branchProbability(bci);
+        if (probability < 0) {
+            return false;
+        }
+        if ((probability == 0.0d || probability == 1.0d) && (x.kind.isInt() || x.kind.isObject())) {
+            boolean taken = probability == 1.0d;
+            append(new BranchGuard(x, taken ? cond : cond.negate(), y, stateBefore));
+            append(new Goto(taken ? tsucc : fsucc, null, false));
+            C1XMetrics.ProfiledBranchesPruned++;
+            return true;
+        }
+        if (probability < C1XOptions.RareBranchProbability) {
+            tsucc.setBlockFlag(BlockBegin.BlockFlag.RarelyExecuted);
+        } else if (1.0d - probability < C1XOptions.RareBranchProbability) {
+            fsucc.setBlockFlag(BlockBegin.BlockFlag.RarelyExecuted);
+        }
+        return false;
+    }
+
     void genIfZero(Condition cond) {
         Value y = appendConstant(CiConstant.INT_0);
         FrameState stateBefore = curState.immutableCopy(bci());
@@ -924,9 +1013,10 @@ public final class GraphBuilder {
         if (target == null) {
             return;
         }
+        FrameState stateBefore = compilation.canSpeculate() ? curState.immutableCopy(bci()) : null;
         Value[] args = curState.popArguments(target.signature().argumentSlots(true));
         if (!tryRemoveCall(target, args, false)) {
-            genInvokeIndirect(INVOKEINTERFACE, target, args, cpi, constantPool);
+            genInvokeIndirect(INVOKEINTERFACE, target, args, cpi, constantPool, stateBefore);
         }
     }
 
@@ -964,9 +1054,10 @@ public final class GraphBuilder {
             }
         }
 
+        FrameState stateBefore = compilation.canSpeculate() ? curState.immutableCopy(bci()) : null;
         Value[] args = curState.popArguments(target.signature().argumentSlots(true));
         if (!tryRemoveCall(target, args, false)) {
-            genInvokeIndirect(INVOKEVIRTUAL, target, args, cpi, constantPool);
+            genInvokeIndirect(INVOKEVIRTUAL, target, args, cpi, constantPool, stateBefore);
         }
     }
 
@@ -1039,7 +1130,13 @@ public final class GraphBuilder {
         return false;
     }
 
-    private void genInvokeIndirect(int opcode, RiMethod target, Value[] args, int cpi, RiConstantPool constantPool) {
+    /**
+     * Generates an invokevirtual or invokeinterface, devirtualizing the call if possible.
+     *
+     * @param stateBefore the frame state before the invoke, with the arguments still on the stack, or {@code null} if
+     *            the call must not be devirtualized speculatively
+     */
+    private void genInvokeIndirect(int opcode, RiMethod target, Value[] args, int cpi, RiConstantPool constantPool, FrameState stateBefore) {
         Value receiver = args[0];
 
         assert target.holder().kind(false) == CiKind.Object;
@@ -1098,12 +1195,65 @@ public final class GraphBuilder {
                 assert result : "Inlining must succeed";
                 return;
             }
+            // 4. speculate on the receiver types recorded in the profile
+            if (stateBefore != null && tryProfiledInvoke(resolvedTarget, args, cpi, constantPool, stateBefore)) {
+                return;
+            }
         }
 
         // devirtualization failed, produce an actual invokevirtual
         appendInvoke(opcode, target, args, false, cpi, constantPool);
     }
 
+    /**
+     * Devirtualizes a call if the receiver type profile of the current bytecode shows that at most two receiver types cover
+     * the calls, and all of them dispatch to the same method. The call is then made directly, and inlined if possible,
+     * after a {@link TypeGuard} that deoptimizes if the receiver has another type.
+     * Calls whose profiled receiver types dispatch to different methods are left alone, as the parser only inlines
+     * along a single path.
+     *
+     * @return {@code true} if the call was devirtualized
+     */
+    private boolean tryProfiledInvoke(RiResolvedMethod target, Value[] args, int cpi, RiConstantPool constantPool, FrameState stateBefore) {
+        RiTypeProfile profile = method().typeProfile(bci());
+        if (profile == null || profile.count < C1XOptions.ProfileMaturityThreshold || profile.types.length == 0) {
+            return false;
+        }
+        // the types are sorted by decreasing probability
+        int typesNum = 0;
+        float coverage = 0f;
+        while (typesNum < 2 && typesNum < profile.types.length && coverage < C1XOptions.ProfiledTypeCoverage) {
+            coverage += profile.probabilities[typesNum];
+            typesNum++;
+        }
+        if (coverage < C1XOptions.ProfiledTypeCoverage) {
+            return false;
+        }
+        RiResolvedType[] types = Arrays.copyOf(profile.types, typesNum);
+        RiResolvedMethod concrete = null;
+        for (RiResolvedType type : types) {
+            if (!type.isInstanceClass() || !type.isSubtypeOf(target.holder())) {
+                return false;
+            }
+            RiResolvedMethod impl = type.resolveMethodImpl(target);
+            if (impl == null || isAbstract(impl.accessFlags()) || (concrete != null && !concrete.equals(impl))) {
+                return false;
+            }
+            concrete = impl;
+        }
+        if (C1XOptions.PrintAssumptions) {
+            TTY.println("Speculative invoke direct because of receiver type profile to " + concrete);
+        }
+        Value receiver = args[0];
+        if (!receiver.isNonNull()) {
+            args[0] = append(new NullCheck(receiver, null));
+        }
+        append(new TypeGuard(args[0], types, stateBefore));
+        C1XMetrics.ProfiledCallsDevirtualized++;
+        invokeDirect(concrete, args, types.length == 1 ? types[0] : null, cpi, constantPool);
+        return true;
+    }
+
     private CiKind returnKind(RiMethod target) {
         return target.signature().returnKind(false);
     }
@@ -2101,10 +2251,6 @@ public final class GraphBuilder {
         BlockBegin b;
         while ((b = scopeData.removeFromWorkList()) != null) {
             if (!b.wasVisited()) {
-                if (b.isOsrEntry()) {
-                    // OSR not yet supported
-                    Util.shouldNotReachHere();
-                }
                 b.setWasVisited(true);
                 // now parse the block
                 killMemoryMap();
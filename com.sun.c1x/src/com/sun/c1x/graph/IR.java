@@ -163,10 +163,20 @@ public class IR {
             new GlobalValueNumberer(this);
             observeCompilationEvent("After global value numbering");
         }
+        if (C1XOptions.OptLoopInvariantCodeMotion || C1XOptions.OptRangeCheckElimination) {
+            makeLinearScanOrder();
+            new LoopOptimizer(this);
+            observeCompilationEvent("After loop optimizations");
+        }
         if (C1XOptions.OptDeadCodeElimination2) {
             new LivenessMarker(this).removeDeadCode();
             observeCompilationEvent("After dead code elimination 2");
         }
+        if (C1XOptions.OptEscapeAnalysis) {
+            makeLinearScanOrder();
+            new EscapeAnalyzer(this);
+            observeCompilationEvent("After escape analysis");
+        }
 
     }
 
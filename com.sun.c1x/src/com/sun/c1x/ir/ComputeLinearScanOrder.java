@@ -420,6 +420,12 @@ public final class ComputeLinearScanOrder {
         }
         curBit--;
 
+        // blocks the profile has seen rarely executed are added after the frequently executed ones
+        if (!cur.checkBlockFlag(BlockBegin.BlockFlag.RarelyExecuted)) {
+            weight |= 1 << curBit;
+        }
+        curBit--;
+
         // exceptions handlers are added as late as possible
         if (!cur.checkBlockFlag(BlockBegin.BlockFlag.ExceptionEntry)) {
             weight |= 1 << curBit;
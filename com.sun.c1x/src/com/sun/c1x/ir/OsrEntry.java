@@ -26,16 +26,19 @@ import com.oracle.max.criutils.*;
 import com.sun.cri.ci.*;
 
 /**
- * The {@code OsrEntry} instruction represents the buffer for an OSR.
+ * The {@code OsrEntry} instruction represents the buffer for an OSR. The buffer holds the values
+ * of the local variables at the OSR entry, one word per local variable index.
  */
 public final class OsrEntry extends Instruction {
 
     /**
      * Constructs a new OsrEntry instruction.
+     *
+     * @param wordKind the kind of a machine word on the target
      */
-    public OsrEntry() {
-        // TODO: this should be a CiKind.Word
-        super(CiKind.Jsr);
+    public OsrEntry(CiKind wordKind) {
+        super(wordKind);
+        setFlag(Flag.NonNull);
     }
 
     @Override
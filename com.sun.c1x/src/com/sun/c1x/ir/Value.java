@@ -27,6 +27,7 @@ import static com.sun.c1x.ir.Value.Flag.*;
 import com.sun.c1x.*;
 import com.oracle.max.criutils.*;
 import com.sun.c1x.opt.*;
+import com.sun.c1x.value.*;
 import com.sun.cri.ci.*;
 import com.sun.cri.ri.*;
 
@@ -103,6 +104,11 @@ public abstract class Value {
      */
     public Value subst;
 
+    /**
+     * The description of this allocation if it was removed by {@link EscapeAnalyzer}, {@code null} otherwise.
+     */
+    public VirtualObject virtualObject;
+
     public abstract BlockBegin block();
 
     /**
@@ -27,6 +27,7 @@ import java.util.*;
 import com.sun.c1x.*;
 import com.sun.c1x.ir.*;
 import com.sun.c1x.value.*;
+import com.sun.c1x.value.FrameState.ValueProcedure;
 import com.sun.cri.ci.*;
 
 /**
@@ -92,6 +93,28 @@ public class LIRDebugInfo {
         }
     }
 
+    /**
+     * Traverses all live values of the frame state of this debug info. The fields of a
+     * {@linkplain Value#virtualObject virtual object} are traversed instead of the virtual object itself.
+     *
+     * @param proc the call back called to process each live value traversed
+     */
+    public void forEachLiveStateValue(final ValueProcedure proc) {
+        state.forEachLiveStateValue(new ValueProcedure() {
+            public void doValue(Value value) {
+                if (value.virtualObject != null) {
+                    for (Value fieldValue : value.virtualObject.valuesAt(state)) {
+                        if (fieldValue != null && fieldValue.isLive()) {
+                            proc.doValue(fieldValue);
+                        }
+                    }
+                } else {
+                    proc.doValue(value);
+                }
+            }
+        });
+    }
+
     public CiDebugInfo debugInfo() {
         assert debugInfo != null : "debug info not allocated yet";
         return debugInfo;
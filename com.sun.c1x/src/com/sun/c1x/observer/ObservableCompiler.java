@@ -21,21 +21,23 @@
 package com.sun.c1x.observer;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Base class for compilers that notify subscribed {@link CompilationObserver CompilationObservers} of
- * {@link CompilationEvent CompilationEvents} that occur during their compilations.
+ * {@link CompilationEvent CompilationEvents} that occur during their compilations. Observers may be added and
+ * removed while other threads are compiling.
  */
 public class ObservableCompiler {
 
-    private List<CompilationObserver> observers;
+    private final List<CompilationObserver> observers = new CopyOnWriteArrayList<CompilationObserver>();
 
     /**
      * @return {@code true} if one or more observers are subscribed to receive notifications from this compiler,
      *         {@code false} otherwise.
      */
     public boolean isObserved() {
-        return observers != null;
+        return !observers.isEmpty();
     }
 
     /**
@@ -45,10 +47,6 @@ public class ObservableCompiler {
      */
     public void addCompilationObserver(CompilationObserver observer) {
         assert observer != null;
-
-        if (observers == null) {
-            observers = new LinkedList<CompilationObserver>();
-        }
         observers.add(observer);
     }
 
@@ -83,19 +81,13 @@ public class ObservableCompiler {
      * @param observer The observer to remove.
      */
     public void removeCompilationObserver(CompilationObserver observer) {
-        if (observers != null) {
-            observers.remove(observer);
-            if (observers.size() == 0) {
-                observers = null;
-            }
-        }
+        observers.remove(observer);
     }
 
     /**
      * Gets an iterable view over the observers currently attached to this compiler.
      */
     public Iterable<CompilationObserver> observers() {
-        List<CompilationObserver> empty = Collections.emptyList();
-        return observers == null ? empty : observers;
+        return observers;
     }
 }
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.c1x.opt;
+
+import java.util.*;
+
+import com.sun.c1x.*;
+import com.sun.c1x.graph.*;
+import com.sun.c1x.ir.*;
+import com.sun.c1x.ir.Value.Flag;
+import com.sun.c1x.value.*;
+import com.sun.c1x.value.FrameState.PhiProcedure;
+import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
+
+/**
+ * Removes allocations of objects and small arrays that do not escape the compiled method, replacing the loads
+ * from them by the values stored to them (scalar replacement) and removing the locking of them.
+ * <p>
+ * The analysis is flow-insensitive: an allocation is replaced only if every use of it is a field access, an access of
+ * an array element at a constant index, an array length or a monitor operation, and if all stores to it are in the
+ * block of the allocation. Any other use, including flowing into a {@linkplain Phi phi} or being stored somewhere,
+ * makes the allocation escape. Frame states may still refer to a replaced allocation, which is described to the
+ * runtime as a {@link VirtualObject} so that it can be rematerialized when the compiled code is deoptimized.
+ */
+public final class EscapeAnalyzer {
+
+    final IR ir;
+
+    /**
+     * The allocations that have not (yet) been found to escape, mapped to their state during the analysis.
+     */
+    final IdentityHashMap<Value, Candidate> candidates = new IdentityHashMap<Value, Candidate>();
+
+    /**
+     * The state of an allocation during the analysis.
+     */
+    static final class Candidate {
+        final StateSplit alloc;
+        final BlockBegin block;
+        final RiResolvedType type;
+        final RiResolvedField[] fields;
+        final CiKind[] kinds;
+        final List<Instruction> accesses = new ArrayList<Instruction>();
+
+        Candidate(StateSplit alloc, BlockBegin block, RiResolvedType type, RiResolvedField[] fields, CiKind[] kinds) {
+            this.alloc = alloc;
+            this.block = block;
+            this.type = type;
+            this.fields = fields;
+            this.kinds = kinds;
+        }
+
+        int indexOf(RiField field) {
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i].equals(field)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Performs escape analysis and scalar replacement on a given IR.
+     */
+    public EscapeAnalyzer(IR ir) {
+        this.ir = ir;
+        for (BlockBegin block : ir.linearScanOrder()) {
+            for (Instruction i = block.next(); i != null; i = i.next()) {
+                addCandidate(i, block);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        for (BlockBegin block : ir.linearScanOrder()) {
+            block.stateBefore().forEachPhi(block, new PhiProcedure() {
+                public boolean doPhi(Phi phi) {
+                    for (int j = 0; j < phi.inputCount(); j++) {
+                        escape(phi.inputAt(j));
+                    }
+                    return true;
+                }
+            });
+            for (Instruction i = block.next(); i != null; i = i.next()) {
+                checkUses(i, block);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        InstructionSubstituter subst = new InstructionSubstituter(ir);
+        IdentityHashMap<Instruction, Instruction> removed = new IdentityHashMap<Instruction, Instruction>();
+        List<VirtualObject> virtualObjects = new ArrayList<VirtualObject>();
+        for (Candidate c : candidates.values()) {
+            VirtualObject virtualObject = replace(c, subst, removed);
+            if (virtualObject != null) {
+                c.alloc.virtualObject = virtualObject;
+                virtualObjects.add(virtualObject);
+            }
+        }
+        for (BlockBegin block : ir.linearScanOrder()) {
+            Instruction last = block;
+            for (Instruction i = block.next(); i != null; i = i.next()) {
+                if (removed.containsKey(i)) {
+                    last.resetNext(i.next());
+                } else {
+                    last = i;
+                }
+            }
+        }
+        subst.finish();
+        for (VirtualObject virtualObject : virtualObjects) {
+            resolveSubstitutions(virtualObject.values);
+            for (Value[] values : virtualObject.valuesAtState.values()) {
+                resolveSubstitutions(values);
+            }
+        }
+    }
+
+    /**
+     * Gets the instance fields of a given type, in the order of the superclass chain starting with the root class
+     * and in the order of {@link RiResolvedType#declaredFields()} within each class. This is the order of the values
+     * of a {@link CiVirtualObject} of an instance type.
+     */
+    public static RiResolvedField[] fieldsOf(RiResolvedType type) {
+        LinkedList<RiResolvedType> hierarchy = new LinkedList<RiResolvedType>();
+        for (RiResolvedType t = type; t != null; t = t.superType()) {
+            hierarchy.addFirst(t);
+        }
+        List<RiResolvedField> fields = new ArrayList<RiResolvedField>();
+        for (RiResolvedType t : hierarchy) {
+            for (RiResolvedField field : t.declaredFields()) {
+                if (!java.lang.reflect.Modifier.isStatic(field.accessFlags())) {
+                    fields.add(field);
+                }
+            }
+        }
+        return fields.toArray(new RiResolvedField[fields.size()]);
+    }
+
+    private void addCandidate(Instruction i, BlockBegin block) {
+        if (!block.exceptionHandlerBlocks().isEmpty()) {
+            return;
+        }
+        if (i instanceof NewInstance) {
+            RiResolvedType type = i.exactType();
+            if (type == null || !type.isInstanceClass() || !type.isInitialized() || type.hasFinalizer()) {
+                return;
+            }
+            RiResolvedField[] fields = fieldsOf(type);
+            if (fields.length > C1XOptions.MaximumVirtualObjectSize) {
+                return;
+            }
+            CiKind[] kinds = new CiKind[fields.length];
+            for (int j = 0; j < fields.length; j++) {
+                kinds[j] = fields[j].kind(false);
+                if (fields[j].kind(true) != kinds[j]) {
+                    // a word field, whose values are not described precisely enough by the debug info
+                    return;
+                }
+            }
+            candidates.put(i, new Candidate((StateSplit) i, block, type, fields, kinds));
+        } else if (i instanceof NewTypeArray) {
+            NewTypeArray newArray = (NewTypeArray) i;
+            RiResolvedType type = newArray.exactType();
+            Value length = newArray.length();
+            if (type == null || !length.isConstant() || length.kind != CiKind.Int) {
+                return;
+            }
+            int n = length.asConstant().asInt();
+            if (n < 0 || n > C1XOptions.MaximumVirtualObjectSize) {
+                return;
+            }
+            CiKind[] kinds = new CiKind[n];
+            Arrays.fill(kinds, newArray.elementKind());
+            candidates.put(i, new Candidate(newArray, block, type, null, kinds));
+        }
+    }
+
+    void escape(Value value) {
+        if (value != null) {
+            candidates.remove(value);
+        }
+    }
+
+    private final ValueClosure escaper = new ValueClosure() {
+        public Value apply(Value value) {
+            escape(value);
+            return value;
+        }
+    };
+
+    private void checkUses(Instruction i, BlockBegin block) {
+        if (i instanceof AccessField && !((AccessField) i).isStatic()) {
+            AccessField access = (AccessField) i;
+            Candidate c = candidates.get(access.object());
+            if (i instanceof StoreField) {
+                StoreField store = (StoreField) i;
+                escape(store.value());
+                if (c != null && (block != c.block || !store.isLoaded() || !fits(store.value(), c.kinds, c.indexOf(store.field())))) {
+                    escape(c.alloc);
+                    c = null;
+                }
+            } else if (c != null && (!access.isLoaded() || c.indexOf(access.field()) < 0)) {
+                escape(c.alloc);
+                c = null;
+            }
+            if (c != null) {
+                c.accesses.add(i);
+            }
+        } else if (i instanceof AccessIndexed) {
+            AccessIndexed access = (AccessIndexed) i;
+            Candidate c = candidates.get(access.array());
+            escape(access.index());
+            if (i instanceof StoreIndexed) {
+                StoreIndexed store = (StoreIndexed) i;
+                escape(store.value());
+                if (c != null && (block != c.block || !fits(store.value(), c.kinds, constantIndex(access, c)))) {
+                    escape(c.alloc);
+                    c = null;
+                }
+            } else if (c != null && constantIndex(access, c) < 0) {
+                escape(c.alloc);
+                c = null;
+            }
+            if (c != null) {
+                c.accesses.add(i);
+            }
+        } else if (i instanceof ArrayLength) {
+            Candidate c = candidates.get(((ArrayLength) i).array());
+            if (c != null) {
+                c.accesses.add(i);
+            }
+        } else if (i instanceof AccessMonitor) {
+            AccessMonitor monitor = (AccessMonitor) i;
+            Candidate c = candidates.get(monitor.object());
+            if (c != null) {
+                if (monitor.lockAddress() != null || ir.compilation.runtime.sizeOfBasicObjectLock() != 0) {
+                    escape(c.alloc);
+                } else {
+                    c.accesses.add(i);
+                }
+            }
+        } else {
+            i.inputValuesDo(escaper);
+        }
+    }
+
+    /**
+     * Gets the index of the element accessed by a given array access, or -1 if it is not a constant within bounds.
+     */
+    private static int constantIndex(AccessIndexed access, Candidate c) {
+        Value index = access.index();
+        if (index.isConstant() && index.kind == CiKind.Int) {
+            int n = index.asConstant().asInt();
+            if (n >= 0 && n < c.kinds.length && access.elementKind() == c.kinds[n]) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Determines if a value stored to a given field or array element of a virtual object can be used unchanged as
+     * the value of the field. Stores to fields and array elements of sub-int kinds implicitly narrow the value, which
+     * a scalar replacement of the field cannot do.
+     */
+    private static boolean fits(Value value, CiKind[] kinds, int index) {
+        if (index < 0) {
+            return false;
+        }
+        CiKind kind = kinds[index];
+        switch (kind) {
+            case Boolean:
+            case Byte:
+            case Short:
+            case Char:
+                break;
+            default:
+                return true;
+        }
+        if (value.isConstant()) {
+            int v = value.asConstant().asInt();
+            switch (kind) {
+                case Boolean: return v == 0 || v == 1;
+                case Byte:    return v == (byte) v;
+                case Short:   return v == (short) v;
+                default:      return v == (char) v;
+            }
+        }
+        if (value instanceof Convert) {
+            Convert.Op op = ((Convert) value).opcode;
+            return (kind == CiKind.Byte && op == Convert.Op.I2B) || (kind == CiKind.Short && op == Convert.Op.I2S) || (kind == CiKind.Char && op == Convert.Op.I2C);
+        }
+        if (value instanceof LoadField) {
+            return ((LoadField) value).field().kind(false) == kind;
+        }
+        if (value instanceof LoadIndexed) {
+            return ((LoadIndexed) value).elementKind() == kind;
+        }
+        return false;
+    }
+
+    private int indexOf(Candidate c, Instruction access) {
+        if (access instanceof AccessField) {
+            return c.indexOf(((AccessField) access).field());
+        }
+        return constantIndex((AccessIndexed) access, c);
+    }
+
+    /**
+     * Replaces a non-escaping allocation by its fields.
+     *
+     * @return the description of the replaced allocation, or {@code null} if it could not be replaced
+     */
+    private VirtualObject replace(Candidate c, InstructionSubstituter subst, IdentityHashMap<Instruction, Instruction> removed) {
+        // Simulate the stores in the block of the allocation, recording the values of the fields at each frame state
+        IdentityHashMap<FrameState, Value[]> valuesAtState = new IdentityHashMap<FrameState, Value[]>();
+        IdentityHashMap<Instruction, Value[]> valuesAtLoad = new IdentityHashMap<Instruction, Value[]>();
+        Set<Instruction> accesses = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        accesses.addAll(c.accesses);
+        Value[] values = new Value[c.kinds.length];
+        for (Instruction i = c.alloc.next(); i != null; i = i.next()) {
+            if (!record(valuesAtState, i.stateBefore(), values)) {
+                return null;
+            }
+            if (accesses.contains(i)) {
+                if (i instanceof StoreField || i instanceof StoreIndexed) {
+                    values = values.clone();
+                    values[indexOf(c, i)] = i instanceof StoreField ? ((StoreField) i).value() : ((StoreIndexed) i).value();
+                } else if (i instanceof LoadField || i instanceof LoadIndexed) {
+                    valuesAtLoad.put(i, values);
+                }
+            }
+            if (!record(valuesAtState, i.stateAfter(), values)) {
+                return null;
+            }
+        }
+        for (Iterator<Value[]> iter = valuesAtState.values().iterator(); iter.hasNext();) {
+            if (iter.next() == values) {
+                iter.remove();
+            }
+        }
+
+        for (Instruction i : c.accesses) {
+            if (i instanceof LoadField || i instanceof LoadIndexed) {
+                Value[] current = valuesAtLoad.get(i);
+                Value value = (current == null ? values : current)[indexOf(c, i)];
+                if (value == null) {
+                    value = new Constant(CiConstant.defaultValue(c.kinds[indexOf(c, i)]));
+                    value.setFlag(Flag.LiveValue);
+                }
+                subst.setSubst(i, value);
+            } else if (i instanceof ArrayLength) {
+                Constant length = new Constant(CiConstant.forInt(c.kinds.length));
+                length.setFlag(Flag.LiveValue);
+                subst.setSubst(i, length);
+            } else {
+                if (i instanceof AccessMonitor) {
+                    C1XMetrics.LocksElided++;
+                }
+                removed.put(i, i);
+            }
+        }
+        removed.put(c.alloc, c.alloc);
+        C1XMetrics.AllocationsEliminated++;
+        return new VirtualObject(c.type, c.kinds, values, valuesAtState);
+    }
+
+    /**
+     * Records the values of the fields at a given frame state.
+     *
+     * @return {@code false} if different values were already recorded for the frame state
+     */
+    private static boolean record(IdentityHashMap<FrameState, Value[]> valuesAtState, FrameState state, Value[] values) {
+        if (state != null) {
+            Value[] existing = valuesAtState.put(state, values);
+            return existing == null || existing == values;
+        }
+        return true;
+    }
+
+    private static void resolveSubstitutions(Value[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                values[i] = values[i].subst();
+            }
+        }
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.c1x.opt;
+
+import static com.sun.cri.bytecode.Bytecodes.*;
+
+import java.util.*;
+
+import com.sun.c1x.*;
+import com.sun.c1x.graph.*;
+import com.sun.c1x.ir.*;
+import com.sun.c1x.value.*;
+import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
+
+/**
+ * Optimizes the innermost loops of a method that have a single entry and a single back edge.
+ * <p>
+ * Instructions of a loop that compute the same value in every iteration and cannot trap are hoisted into the block
+ * that enters the loop. Loads of fields are only hoisted out of loops that do not write memory.
+ * <p>
+ * A loop whose header exits the loop unless {@code i < limit}, where {@code i} is a phi incremented by a positive
+ * constant on the back edge and {@code limit} is loop invariant, is a counted loop. In the body of a counted loop,
+ * {@code init <= i < limit} holds. The bounds checks of array accesses indexed by {@code i} are eliminated if
+ * {@code limit} is the length of the accessed array and {@code init} is a non-negative constant. Otherwise, if the
+ * profile of the method may be used for speculation, they are replaced by guards before the loop that deoptimize unless
+ * {@code 0 <= init} and {@code limit <= array.length} (loop predication).
+ */
+public final class LoopOptimizer {
+
+    final IR ir;
+
+    /**
+     * The blocks of the loop being optimized.
+     */
+    final Set<BlockBegin> loopBlocks = Collections.newSetFromMap(new IdentityHashMap<BlockBegin, Boolean>());
+
+    /**
+     * The values defined in the loop being optimized.
+     */
+    final Set<Value> loopValues = Collections.newSetFromMap(new IdentityHashMap<Value, Boolean>());
+
+    /**
+     * The block through which the loop being optimized is entered.
+     */
+    BlockBegin preHeader;
+
+    /**
+     * The lengths of arrays loaded in {@link #preHeader}, keyed by array.
+     */
+    final IdentityHashMap<Value, Value> lengthsInPreHeader = new IdentityHashMap<Value, Value>();
+
+    /**
+     * The arrays whose accesses in the loop being optimized are guarded by a check in {@link #preHeader}.
+     */
+    final Set<Value> predicatedArrays = Collections.newSetFromMap(new IdentityHashMap<Value, Boolean>());
+
+    /**
+     * Optimizes the loops of a given IR.
+     */
+    public LoopOptimizer(IR ir) {
+        this.ir = ir;
+        for (BlockBegin block : ir.linearScanOrder()) {
+            if (block.isLinearScanLoopHeader()) {
+                optimizeLoop(block);
+            }
+        }
+    }
+
+    private void optimizeLoop(BlockBegin header) {
+        if (!findLoop(header)) {
+            return;
+        }
+        boolean writesMemory = false;
+        for (BlockBegin block : loopBlocks) {
+            for (Instruction i = block.next(); i != null; i = i.next()) {
+                loopValues.add(i);
+                writesMemory |= !isReadOnly(i);
+            }
+        }
+        header.stateBefore().forEachPhi(header, new FrameState.PhiProcedure() {
+            public boolean doPhi(Phi phi) {
+                loopValues.add(phi);
+                return true;
+            }
+        });
+
+        if (C1XOptions.OptLoopInvariantCodeMotion) {
+            hoistInvariants(header, writesMemory);
+        }
+        if (C1XOptions.OptRangeCheckElimination && header.end() instanceof If) {
+            eliminateRangeChecks(header, (If) header.end());
+        }
+        lengthsInPreHeader.clear();
+        predicatedArrays.clear();
+    }
+
+    /**
+     * Computes the blocks of the loop with a given header, if it is an innermost loop with a single entry from a block
+     * ending with a {@link Goto} and a single back edge.
+     */
+    private boolean findLoop(BlockBegin header) {
+        loopBlocks.clear();
+        loopValues.clear();
+        preHeader = null;
+        List<BlockBegin> preds = header.predecessors();
+        if (preds.size() != 2 || header.isExceptionEntry()) {
+            return false;
+        }
+        BlockBegin loopEnd;
+        if (dominates(header, preds.get(1))) {
+            preHeader = preds.get(0);
+            loopEnd = preds.get(1);
+        } else {
+            preHeader = preds.get(1);
+            loopEnd = preds.get(0);
+        }
+        if (dominates(header, preHeader) || !dominates(header, loopEnd) || !(preHeader.end() instanceof Goto)) {
+            return false;
+        }
+        ArrayList<BlockBegin> worklist = new ArrayList<BlockBegin>();
+        loopBlocks.add(header);
+        loopBlocks.add(loopEnd);
+        worklist.add(loopEnd);
+        while (!worklist.isEmpty()) {
+            BlockBegin block = worklist.remove(worklist.size() - 1);
+            if (block != header) {
+                for (BlockBegin pred : block.predecessors()) {
+                    if (loopBlocks.add(pred)) {
+                        worklist.add(pred);
+                    }
+                }
+            }
+        }
+        for (BlockBegin block : loopBlocks) {
+            if (block != header) {
+                if (block.isLinearScanLoopHeader() || block.isExceptionEntry()) {
+                    // an inner loop, or a block that is entered from outside the loop
+                    return false;
+                }
+                for (BlockBegin pred : block.predecessors()) {
+                    if (!loopBlocks.contains(pred)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean dominates(BlockBegin dominator, BlockBegin block) {
+        for (BlockBegin b = block; b != null; b = b.dominator()) {
+            if (b == dominator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines if a given instruction does not write memory, so that loads may be hoisted out of a loop containing it.
+     */
+    private static boolean isReadOnly(Instruction i) {
+        return i instanceof Op2 || i instanceof NegateOp || i instanceof Convert || i instanceof Constant ||
+               i instanceof LoadField || i instanceof LoadIndexed || i instanceof ArrayLength || i instanceof NullCheck ||
+               i instanceof Guard || i instanceof Goto || i instanceof If;
+    }
+
+    /**
+     * Determines if a given instruction computes a pure function of its inputs that may be computed before the loop.
+     */
+    private static boolean isHoistable(Instruction i, boolean writesMemory) {
+        if (i.canTrap() || i.stateBefore() != null || i.checkFlag(Value.Flag.LiveSideEffect) || i.checkFlag(Value.Flag.LiveStore)) {
+            return false;
+        }
+        if (i instanceof ArithmeticOp || i instanceof LogicOp || i instanceof ShiftOp || i instanceof NegateOp || i instanceof Convert) {
+            return true;
+        }
+        // the object must be non-null everywhere, not just where the null check was eliminated
+        if (i instanceof ArrayLength) {
+            return ((ArrayLength) i).array().isNonNull();
+        }
+        if (i instanceof LoadField) {
+            LoadField load = (LoadField) i;
+            return !writesMemory && load.isLoaded() && !load.isVolatile() && !load.needsPatching() && (load.isStatic() || load.object().isNonNull());
+        }
+        return false;
+    }
+
+    private void hoistInvariants(BlockBegin header, boolean writesMemory) {
+        final List<Value> inputs = new ArrayList<Value>();
+        ValueClosure collector = new ValueClosure() {
+            public Value apply(Value value) {
+                inputs.add(value);
+                return value;
+            }
+        };
+        for (BlockBegin block : ir.linearScanOrder()) {
+            if (!loopBlocks.contains(block)) {
+                continue;
+            }
+            Instruction i = block.next();
+            while (!(i instanceof BlockEnd)) {
+                Instruction next = i.next();
+                if (!(i instanceof Constant) && isHoistable(i, writesMemory)) {
+                    inputs.clear();
+                    i.inputValuesDo(collector);
+                    boolean invariant = true;
+                    for (Value input : inputs) {
+                        if (!isInvariant(input)) {
+                            invariant = false;
+                            break;
+                        }
+                    }
+                    if (invariant) {
+                        // constants of the loop used by a hoisted instruction are hoisted along with it
+                        for (Value input : inputs) {
+                            if (loopValues.contains(input)) {
+                                moveToPreHeader((Instruction) input, ((Instruction) input).block());
+                            }
+                        }
+                        moveToPreHeader(i, block);
+                        C1XMetrics.LoopInvariantsHoisted++;
+                    }
+                }
+                i = next;
+            }
+        }
+    }
+
+    /**
+     * Moves an instruction of the loop to the end of {@link #preHeader}.
+     */
+    private void moveToPreHeader(Instruction i, BlockBegin block) {
+        i.prev(block).resetNext(i.next());
+        insertInPreHeader(i);
+        loopValues.remove(i);
+    }
+
+    /**
+     * Appends a new instruction to {@link #preHeader}.
+     */
+    private <T extends Instruction> T appendToPreHeader(T i) {
+        i.setBCI(preHeader.end().bci());
+        insertInPreHeader(i);
+        return i;
+    }
+
+    private void insertInPreHeader(Instruction i) {
+        BlockEnd end = preHeader.end();
+        end.prev(preHeader).resetNext(i);
+        i.resetNext(end);
+    }
+
+    private boolean isInvariant(Value value) {
+        return !loopValues.contains(value) || value instanceof Constant;
+    }
+
+    /**
+     * Determines if a value is loop invariant, or the length of a loop invariant array.
+     */
+    private boolean isInvariantLength(Value value) {
+        return isInvariant(value) || (value instanceof ArrayLength && isInvariant(((ArrayLength) value).array()));
+    }
+
+    private void eliminateRangeChecks(BlockBegin header, If test) {
+        // Normalize the test to "iv < limit" holding in the loop
+        Condition cond = test.condition();
+        Value iv = test.x();
+        Value limit = test.y();
+        if (!(iv instanceof Phi) || ((Phi) iv).block() != header) {
+            iv = test.y();
+            limit = test.x();
+            cond = cond.mirror();
+        }
+        if (!(iv instanceof Phi) || ((Phi) iv).block() != header || iv.kind != CiKind.Int || !isInvariantLength(limit)) {
+            return;
+        }
+        boolean trueInLoop = loopBlocks.contains(test.trueSuccessor());
+        if (trueInLoop == loopBlocks.contains(test.falseSuccessor())) {
+            return;
+        }
+        if ((trueInLoop ? cond : cond.negate()) != Condition.LT) {
+            return;
+        }
+
+        // Recognize "iv = init" on entry and "iv = iv + stride" on the back edge
+        Phi phi = (Phi) iv;
+        Value init = null;
+        Value next = null;
+        for (int j = 0; j < phi.inputCount(); j++) {
+            if (header.predecessors().get(j) == preHeader) {
+                init = phi.inputAt(j);
+            } else {
+                next = phi.inputAt(j);
+            }
+        }
+        if (init == null || !(next instanceof ArithmeticOp) || ((ArithmeticOp) next).opcode != IADD) {
+            return;
+        }
+        ArithmeticOp add = (ArithmeticOp) next;
+        Value strideValue = add.x() == phi ? add.y() : add.y() == phi ? add.x() : null;
+        if (strideValue == null || !strideValue.isConstant() || strideValue.asConstant().asInt() <= 0) {
+            return;
+        }
+        int stride = strideValue.asConstant().asInt();
+        C1XMetrics.CountedLoops++;
+
+        FrameState state = preHeader.end().stateAfter();
+        boolean canSpeculate = state != null && canSpeculate(state, test);
+        boolean initIsNonNegative = init.isConstant() && init.asConstant().asInt() >= 0;
+        // "iv + stride" cannot overflow if stride is 1, as iv < limit
+        boolean cannotOverflow = stride == 1 || (limit.isConstant() && limit.asConstant().asInt() <= Integer.MAX_VALUE - stride + 1);
+        boolean predicated = false;
+
+        for (BlockBegin block : ir.linearScanOrder()) {
+            if (block == header || !loopBlocks.contains(block)) {
+                continue;
+            }
+            for (Instruction i = block.next(); i != null; i = i.next()) {
+                if (!(i instanceof AccessIndexed) || ((AccessIndexed) i).index() != phi || !((AccessIndexed) i).needsBoundsCheck()) {
+                    continue;
+                }
+                AccessIndexed access = (AccessIndexed) i;
+                Value array = access.array();
+                if (initIsNonNegative && cannotOverflow && limit instanceof ArrayLength && ((ArrayLength) limit).array() == array) {
+                    access.eliminateBoundsCheck();
+                } else if (canSpeculate && isInvariant(array) && isInvariant(init)) {
+                    if (!predicated) {
+                        if (!initIsNonNegative) {
+                            appendToPreHeader(new BoundsCheck(init, appendToPreHeader(Constant.forInt(0)), state, Condition.GE));
+                        }
+                        if (!cannotOverflow) {
+                            appendToPreHeader(new BoundsCheck(limitInPreHeader(limit, state), appendToPreHeader(Constant.forInt(Integer.MAX_VALUE - stride + 1)), state, Condition.LE));
+                        }
+                        predicated = true;
+                    }
+                    if (predicatedArrays.add(array)) {
+                        Value length = lengthInPreHeader(array, state);
+                        Value limitValue = limitInPreHeader(limit, state);
+                        if (limitValue != length) {
+                            appendToPreHeader(new BoundsCheck(limitValue, length, state, Condition.LE));
+                        }
+                    }
+                    access.eliminateBoundsCheck();
+                    C1XMetrics.BoundsChecksPredicated++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if the optimized code may speculate on the behavior of the loop with a given exit test. This is the
+     * case if the profile of the method containing the loop is mature and has not recorded an uncommon trap, and
+     * the compilation {@linkplain C1XCompilation#canSpeculate() can speculate}.
+     */
+    private boolean canSpeculate(FrameState state, If test) {
+        if (!ir.compilation.canSpeculate() || test.stateAfter() == null || test.stateAfter().scope() != state.scope()) {
+            return false;
+        }
+        RiResolvedMethod method = state.scope().method;
+        return method.executionCount(test.bci()) >= C1XOptions.ProfileMaturityThreshold;
+    }
+
+    /**
+     * Gets the value of a loop invariant limit in {@link #preHeader}.
+     */
+    private Value limitInPreHeader(Value limit, FrameState state) {
+        if (isInvariant(limit)) {
+            return limit;
+        }
+        return lengthInPreHeader(((ArrayLength) limit).array(), state);
+    }
+
+    /**
+     * Gets the length of a loop invariant array in {@link #preHeader}, guarding against the array being {@code null}.
+     */
+    private Value lengthInPreHeader(Value array, FrameState state) {
+        Value length = lengthsInPreHeader.get(array);
+        if (length == null) {
+            ArrayLength arrayLength = new ArrayLength(array, state);
+            if (arrayLength.needsNullCheck()) {
+                appendToPreHeader(new BranchGuard(array, Condition.NE, appendToPreHeader(Constant.forObject(null)), state));
+                arrayLength.eliminateNullCheck();
+            }
+            length = appendToPreHeader(arrayLength);
+            lengthsInPreHeader.put(array, length);
+        }
+        return length;
+    }
+}
@@ -76,7 +76,44 @@ public final class AMD64LIRAssembler extends LIRAssembler {
 
     @Override
     protected void emitOsrEntry() {
-        throw Util.unimplemented();
+        // The OSR entry is called with the OSR buffer as the only argument and
+        // must therefore build the frame just like the standard method prologue.
+        tasm.targetMethod.setOsrEntryOffset(codePos());
+        emitStackOverflowCheck();
+        emitPushFrame();
+    }
+
+    private void emitStackOverflowCheck() {
+        int frameSize = initialFrameSizeInBytes();
+        int lastFramePage = frameSize / target.pageSize;
+        // emit multiple stack bangs for methods with frames larger than a page
+        for (int i = 0; i <= lastFramePage; i++) {
+            int offset = (i + C1XOptions.StackShadowPages) * target.pageSize;
+            // Deduct 'frameSize' to handle frames larger than the shadow
+            bangStackWithOffset(offset - frameSize);
+        }
+    }
+
+    private void emitPushFrame() {
+        int frameSize = initialFrameSizeInBytes();
+        masm.decrementq(AMD64.rsp, frameSize); // does not emit code for frameSize == 0
+        if (C1XOptions.ZapStackOnMethodEntry) {
+            final int intSize = 4;
+            for (int i = 0; i < frameSize / intSize; ++i) {
+                masm.movl(new CiAddress(CiKind.Int, AMD64.rsp.asValue(), i * intSize), 0xC1C1C1C1);
+            }
+        }
+        CiCalleeSaveLayout csl = compilation.registerConfig.getCalleeSaveLayout();
+        if (csl != null && csl.size != 0) {
+            int frameToCSA = frameMap.offsetToCalleeSaveAreaStart();
+            assert frameToCSA >= 0;
+            masm.save(csl, frameToCSA);
+        }
+
+        if (C1XOptions.DebugMethods) {
+            masm.movl(compilation.registerConfig.getScratchRegister(), methodID);
+            debugMethodWriter.append(compilation.method.holder() + "." + compilation.method.name() + ";" + compilation.method.signature(), methodID);
+        }
     }
 
     @Override
@@ -2056,36 +2093,11 @@ public final class AMD64LIRAssembler extends LIRAssembler {
                     break;
                 }
                 case StackOverflowCheck: {
-                    int frameSize = initialFrameSizeInBytes();
-                    int lastFramePage = frameSize / target.pageSize;
-                    // emit multiple stack bangs for methods with frames larger than a page
-                    for (int i = 0; i <= lastFramePage; i++) {
-                        int offset = (i + C1XOptions.StackShadowPages) * target.pageSize;
-                        // Deduct 'frameSize' to handle frames larger than the shadow
-                        bangStackWithOffset(offset - frameSize);
-                    }
+                    emitStackOverflowCheck();
                     break;
                 }
                 case PushFrame: {
-                    int frameSize = initialFrameSizeInBytes();
-                    masm.decrementq(AMD64.rsp, frameSize); // does not emit code for frameSize == 0
-                    if (C1XOptions.ZapStackOnMethodEntry) {
-                        final int intSize = 4;
-                        for (int i = 0; i < frameSize / intSize; ++i) {
-                            masm.movl(new CiAddress(CiKind.Int, AMD64.rsp.asValue(), i * intSize), 0xC1C1C1C1);
-                        }
-                    }
-                    CiCalleeSaveLayout csl = compilation.registerConfig.getCalleeSaveLayout();
-                    if (csl != null && csl.size != 0) {
-                        int frameToCSA = frameMap.offsetToCalleeSaveAreaStart();
-                        assert frameToCSA >= 0;
-                        masm.save(csl, frameToCSA);
-                    }
-
-                    if (C1XOptions.DebugMethods) {
-                        masm.movl(compilation.registerConfig.getScratchRegister(), methodID);
-                        debugMethodWriter.append(compilation.method.holder() + "." + compilation.method.name() + ";" + compilation.method.signature(), methodID);
-                    }
+                    emitPushFrame();
                     break;
                 }
                 case PopFrame: {
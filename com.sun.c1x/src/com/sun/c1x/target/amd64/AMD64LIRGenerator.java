@@ -436,15 +436,15 @@ public class AMD64LIRGenerator extends LIRGenerator {
         CiValue tempPointer = load(x.pointer());
         CiAddress addr = getAddressForPointerOp(x, dataKind, tempPointer);
 
-        CiValue expectedValue = force(x.expectedValue(), AMD64.rax.asValue(dataKind));
-        CiValue newValue = load(x.newValue());
-        assert Util.archKindsEqual(newValue.kind, dataKind) : "invalid type";
-
         if (dataKind.isObject()) { // Write-barrier needed for Object fields.
-            // Do the pre-write barrier : if any.
+            // Do the pre-write barrier, if any, before the expected value is held in a fixed register.
             preGCWriteBarrier(addr, false, null);
         }
 
+        CiValue expectedValue = force(x.expectedValue(), AMD64.rax.asValue(dataKind));
+        CiValue newValue = load(x.newValue());
+        assert Util.archKindsEqual(newValue.kind, dataKind) : "invalid type";
+
         CiValue pointer = newVariable(compilation.target.wordKind);
         lir.lea(addr, pointer);
         CiValue result = createResultVariable(x);
@@ -488,6 +488,11 @@ public class AMD64LIRGenerator extends LIRGenerator {
             addr = new CiAddress(kind, obj.result(), offset.result());
         }
 
+        if (kind.isObject()) { // Write-barrier needed for Object fields.
+            // Do the pre-write barrier, if any, before the compare operand is held in a fixed register.
+            preGCWriteBarrier(addr, false, null);
+        }
+
         // Compare operand needs to be in RAX.
         CiValue cmp = force(x.argumentAt(3), AMD64.rax.asValue(kind));
         val.loadItem();
@@ -495,11 +500,6 @@ public class AMD64LIRGenerator extends LIRGenerator {
         CiValue pointer = newVariable(compilation.target.wordKind);
         lir.lea(addr, pointer);
 
-        if (kind.isObject()) { // Write-barrier needed for Object fields.
-            // Do the pre-write barrier : if any.
-            preGCWriteBarrier(pointer, false, null);
-        }
-
         if (kind.isObject()) {
             lir.casObj(pointer, cmp, val.result());
         } else if (kind.isInt()) {
@@ -692,7 +692,9 @@ public class AMD64LIRGenerator extends LIRGenerator {
 
     @Override
     protected CiValue osrBufferPointer() {
-        return Util.nonFatalUnimplemented(null);
+        // the OSR buffer is passed in the first argument register of the Java calling convention
+        CiRegister[] args = compilation.registerConfig.getCallingConventionRegisters(CiCallingConvention.Type.JavaCall, CiRegister.RegisterFlag.CPU);
+        return args[0].asValue(compilation.target.wordKind);
     }
 
     @Override
@@ -451,15 +451,15 @@ public class RISCV64LIRGenerator extends LIRGenerator {
         CiValue tempPointer = load(x.pointer());
         CiAddress addr = getAddressForPointerOp(x, dataKind, tempPointer);
 
-        CiValue expectedValue = load(x.expectedValue());
-        CiValue newValue = load(x.newValue());
-        assert Util.archKindsEqual(newValue.kind, dataKind) : "invalid type";
-
         if (dataKind.isObject()) { // Write-barrier needed for Object fields.
-            // Do the pre-write barrier : if any.
+            // Do the pre-write barrier, if any, before the expected value is held in a fixed register.
             preGCWriteBarrier(addr, false, null);
         }
 
+        CiValue expectedValue = load(x.expectedValue());
+        CiValue newValue = load(x.newValue());
+        assert Util.archKindsEqual(newValue.kind, dataKind) : "invalid type";
+
         CiValue pointer = newVariable(compilation.target.wordKind);
         lir.lea(addr, pointer);
         CiValue result = createResultVariable(x);
@@ -502,6 +502,11 @@ public class RISCV64LIRGenerator extends LIRGenerator {
             addr = new CiAddress(kind, obj.result(), offset.result());
         }
 
+        if (kind.isObject()) { // Write-barrier needed for Object fields.
+            // Do the pre-write barrier, if any, before the compare operand is held in a fixed register.
+            preGCWriteBarrier(addr, false, null);
+        }
+
         // Compare operand needs to be in ScratchRegister
         CiValue cmp = force(x.argumentAt(3), compilation.registerConfig.getScratchRegister().asValue(kind));
         val.loadItem();
@@ -509,11 +514,6 @@ public class RISCV64LIRGenerator extends LIRGenerator {
         CiValue pointer = newVariable(compilation.target.wordKind);
         lir.lea(addr, pointer);
 
-        if (kind.isObject()) { // Write-barrier needed for Object fields.
-            // Do the pre-write barrier : if any.
-            preGCWriteBarrier(pointer, false, null);
-        }
-
         if (kind.isObject()) {
             lir.casObj(pointer, cmp, val.result());
         } else if (kind.isInt()) {
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.c1x.value;
+
+import java.util.*;
+
+import com.sun.c1x.ir.*;
+import com.sun.c1x.opt.*;
+import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
+
+/**
+ * Describes an allocation that was removed by {@link EscapeAnalyzer}. Frame states still refer to the
+ * allocation, and the debug info describes the object by the values of its fields (or array elements) at
+ * the frame state so that it can be rematerialized when the compiled code is deoptimized.
+ */
+public final class VirtualObject {
+
+    /**
+     * The type of the allocated object.
+     */
+    public final RiResolvedType type;
+
+    /**
+     * The kinds of the fields, ordered as described in {@link EscapeAnalyzer#fieldsOf(RiResolvedType)},
+     * or of the array elements.
+     */
+    public final CiKind[] kinds;
+
+    /**
+     * The values of the fields once the object is fully initialized. A {@code null} entry denotes the default value.
+     */
+    public final Value[] values;
+
+    /**
+     * The values of the fields at the frame states recorded while the object is being initialized.
+     */
+    public final IdentityHashMap<FrameState, Value[]> valuesAtState;
+
+    public VirtualObject(RiResolvedType type, CiKind[] kinds, Value[] values, IdentityHashMap<FrameState, Value[]> valuesAtState) {
+        this.type = type;
+        this.kinds = kinds;
+        this.values = values;
+        this.valuesAtState = valuesAtState;
+    }
+
+    /**
+     * Gets the values of the fields at a given frame state.
+     *
+     * @param state the innermost frame state of a debug info
+     * @return the values of the fields, where a {@code null} entry denotes the default value
+     */
+    public Value[] valuesAt(FrameState state) {
+        Value[] result = valuesAtState.get(state);
+        return result == null ? values : result;
+    }
+
+    /**
+     * Gets the default value of the field at a given index.
+     */
+    public CiConstant defaultValue(int index) {
+        return CiConstant.defaultValue(kinds[index]);
+    }
+}
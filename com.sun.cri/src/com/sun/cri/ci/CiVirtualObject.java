@@ -93,16 +93,25 @@ public final class CiVirtualObject extends CiValue {
 
     @Override
     public boolean equals(Object o) {
+        return equals(o, false);
+    }
+
+    @Override
+    public boolean equalsIgnoringKind(CiValue o) {
+        return equals(o, true);
+    }
+
+    private boolean equals(Object o, boolean ignoreKinds) {
         if (o == this) {
             return true;
         }
         if (o instanceof CiVirtualObject) {
             CiVirtualObject l = (CiVirtualObject) o;
-            if (l.type != type || l.values.length != values.length) {
+            if (l.type != type || l.id != id || l.values.length != values.length) {
                 return false;
             }
             for (int i = 0; i < values.length; i++) {
-                if (values[i] != l.values[i]) {
+                if (ignoreKinds ? !values[i].equalsIgnoringKind(l.values[i]) : !values[i].equals(l.values[i])) {
                     return false;
                 }
             }
@@ -111,11 +120,6 @@ public final class CiVirtualObject extends CiValue {
         return false;
     }
 
-    @Override
-    public boolean equalsIgnoringKind(CiValue o) {
-        return equals(o);
-    }
-
     /**
      * This is a helper class used to create virtual objects for a number of different JDK classes.
      */
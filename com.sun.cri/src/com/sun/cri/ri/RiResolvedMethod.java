@@ -175,6 +175,13 @@ public interface RiResolvedMethod extends RiMethod {
      */
     RiTypeProfile typeProfile(int bci);
 
+    /**
+     * Returns how often the instruction at the given byte code was executed, which may be used to judge the maturity
+     * of the {@linkplain #branchProbability(int) branch} or {@linkplain #switchProbability(int) switch} profile of the instruction.
+     * @return The execution count, or -1 if this information isn't available.
+     */
+    int executionCount(int bci);
+
     /**
      * Returns an estimate of how often the branch at the given byte code was taken.
      * @return The estimated probability, with 0.0 meaning never and 1.0 meaning always, or -1 if this information isn't available.
@@ -105,6 +105,15 @@ public interface RiXirGenerator {
 
     XirSnippet genWriteBarrier(XirArgument object);
 
+    /**
+     * Generates the barrier required before a reference is stored at a precise address, as done by unsafe stores and
+     * compare-and-swap operations.
+     * Note: may return {@code null} if the runtime doesn't need such a barrier.
+     *
+     * @param address the address of the reference about to be overwritten
+     */
+    XirSnippet genPreWriteBarrier(XirArgument address);
+
     XirSnippet genArrayCopy(XirSite site, XirArgument src, XirArgument srcPos, XirArgument dest, XirArgument destPos, XirArgument length, RiType elementType, boolean inputsSame, boolean inputsDifferent);
 
     XirSnippet genCurrentThread(XirSite site);
@@ -123,6 +132,18 @@ public interface RiXirGenerator {
      */
     XirSnippet genTypeCheck(XirSite site, XirArgument object, XirArgument hub, RiType type);
 
+    /**
+     * Generates code that checks that the {@linkplain Representation#ObjectHub hub} of
+     * an object is identical to one of two given hub constants. In pseudo code:
+     * <pre>
+     *     if (object.getHub() != hub && object.getHub() != otherHub) {
+     *         uncommonTrap();
+     *     }
+     * </pre>
+     * This snippet should only be used when the object is guaranteed not to be null.
+     */
+    XirSnippet genTypeCheck(XirSite site, XirArgument object, XirArgument hub, XirArgument otherHub, RiType type);
+
     /**
      * Gets the list of XIR templates, using the given XIR assembler to create them if
      * they haven't yet been created.
@@ -28,13 +28,13 @@ import com.sun.max.vm.heap.gcx.*;
 
 
 /**
- * @see NoAgingRegionalizedNursery
+ * @see RegionalizedNursery
  */
-public class TeleNoAgingRegionalizedNursery extends TeleTupleObject {
+public class TeleRegionalizedNursery extends TeleTupleObject {
 
     private TeleBaseAtomicBumpPointerAllocator allocator;
 
-    public TeleNoAgingRegionalizedNursery(TeleVM vm, RemoteReference reference) {
+    public TeleRegionalizedNursery(TeleVM vm, RemoteReference reference) {
         super(vm, reference);
     }
 
@@ -44,7 +44,7 @@ public class TeleNoAgingRegionalizedNursery extends TeleTupleObject {
             return false;
         }
         if (allocator == null) {
-            final RemoteReference nurseryAllocatorRef = fields().NoAgingRegionalizedNursery_allocator.readRemoteReference(reference());
+            final RemoteReference nurseryAllocatorRef = fields().RegionalizedNursery_allocator.readRemoteReference(reference());
             allocator = (TeleBaseAtomicBumpPointerAllocator) objects().makeTeleObject(nurseryAllocatorRef);
         }
         return true;
@@ -71,4 +71,14 @@ public class NUMALib {
 
     @C_FUNCTION
     public static native int numaPageSize();
+
+    @C_FUNCTION
+    public static native int numaConfiguredNodes();
+
+    /**
+     * Set the memory policy of a range of virtual memory so that its pages are allocated on the specified NUMA node.
+     * The range must be page aligned. Pages already touched are not moved.
+     */
+    @C_FUNCTION
+    public static native void numaBindMemory(long address, long size, int node);
 }
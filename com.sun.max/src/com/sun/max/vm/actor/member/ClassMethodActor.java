@@ -40,6 +40,7 @@ import com.sun.max.vm.classfile.constant.*;
 import com.sun.max.vm.compiler.RuntimeCompiler.*;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.jni.*;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.object.ObjectAccess;
 import com.sun.max.vm.runtime.FatalError;
 import com.sun.max.vm.type.*;
@@ -405,6 +406,87 @@ public abstract class ClassMethodActor extends MethodActor {
         return Compilations.currentTargetMethod(compiledState, null);
     }
 
+    /**
+     * Gets the profile collected by the baseline version of this method, if the profile may be used by the optimizing
+     * compiler to speculate. This is not the case if optimized code of this method has already hit an
+     * {@linkplain MethodProfile#uncommonTrapCount uncommon trap}.
+     *
+     * @return {@code null} if there is no baseline profile or if it must not be used for speculation
+     */
+    public final MethodProfile compilerProfile() {
+        TargetMethod tm = Compilations.currentTargetMethod(compiledState, Nature.BASELINE);
+        if (tm == null) {
+            return null;
+        }
+        MethodProfile mp = tm.profile();
+        if (mp == null || mp.rawData() == null || mp.uncommonTrapCount != 0) {
+            return null;
+        }
+        return mp;
+    }
+
+    @Override
+    public int executionCount(int bci) {
+        MethodProfile mp = compilerProfile();
+        return mp == null ? -1 : mp.getExecutionCount(bci);
+    }
+
+    @Override
+    public RiTypeProfile typeProfile(int bci) {
+        MethodProfile mp = compilerProfile();
+        Integer[] typeProfile = mp == null ? null : mp.getTypeProfile(bci);
+        if (typeProfile == null) {
+            return null;
+        }
+        int typesNum = typeProfile.length / 2;
+        long totalCount = 0;
+        int recordedTypesNum = 0;
+        for (int i = 0; i < typesNum; i++) {
+            totalCount += typeProfile[i * 2 + 1];
+            if (typeProfile[i * 2] != MethodProfile.UNDEFINED_TYPE_ID) {
+                recordedTypesNum++;
+            }
+        }
+        if (totalCount <= 0) {
+            return null;
+        }
+        RiTypeProfile result = new RiTypeProfile();
+        result.count = (int) Math.min(totalCount, Integer.MAX_VALUE);
+        result.morphism = typesNum;
+        result.types = new RiResolvedType[recordedTypesNum];
+        result.probabilities = new float[recordedTypesNum];
+        int j = 0;
+        for (int i = 0; i < typesNum; i++) {
+            int typeId = typeProfile[i * 2];
+            if (typeId != MethodProfile.UNDEFINED_TYPE_ID) {
+                float probability = (float) (typeProfile[i * 2 + 1] / (double) totalCount);
+                // keep the types sorted by decreasing probability
+                int k = j;
+                while (k > 0 && result.probabilities[k - 1] < probability) {
+                    result.types[k] = result.types[k - 1];
+                    result.probabilities[k] = result.probabilities[k - 1];
+                    k--;
+                }
+                result.types[k] = ClassIDManager.toClassActor(typeId);
+                result.probabilities[k] = probability;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public double branchProbability(int bci) {
+        MethodProfile mp = compilerProfile();
+        return mp == null ? -1 : mp.getBranchTakenProbability(bci);
+    }
+
+    @Override
+    public double[] switchProbability(int bci) {
+        MethodProfile mp = compilerProfile();
+        return mp == null ? null : mp.getSwitchProbabilities(bci);
+    }
+
     /**
      * Records if this object returned {@code true} for a call to {@link #canBePermanentlyLinked()} during
      * boot image building.
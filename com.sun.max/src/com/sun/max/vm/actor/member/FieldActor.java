@@ -40,6 +40,7 @@ import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.classfile.constant.*;
+import com.sun.max.vm.code.*;
 import com.sun.max.vm.compiler.*;
 import com.sun.max.vm.hosted.*;
 import com.sun.max.vm.hosted.JDKInterceptor.InterceptedField;
@@ -750,9 +751,12 @@ public class FieldActor extends MemberActor implements RiResolvedField {
                     return v.asCiConstant();
                 }
             }
-            v = getValue((receiver == null) ? null : receiver.asObject());
+            Object object = (receiver == null) ? null : receiver.asObject();
+            v = getValue(object);
             if (!isConstantWhenNotZero() || !v.isZero()) {
-                return v.asCiConstant();
+                CiConstant value = v.asCiConstant();
+                PersistentCodeCache.recordFoldedField(this, object, value);
+                return value;
             }
         }
         return null;
@@ -664,6 +664,10 @@ public abstract class MethodActor extends MemberActor implements RiResolvedMetho
         return null;
     }
 
+    public int executionCount(int bci) {
+        return -1;
+    }
+
     public double branchProbability(int bci) {
         return -1;
     }
@@ -0,0 +1,821 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.code;
+
+import static com.sun.max.platform.Platform.*;
+import static com.sun.max.vm.type.ClassRegistry.Property.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.sun.cri.ci.*;
+import com.sun.cri.ci.CiAssumptions.Assumption;
+import com.sun.cri.ci.CiTargetMethod.Safepoint;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.classfile.constant.*;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.object.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * A cache of optimized code that persists across VM runs, enabled by {@code -XX:CodeCacheFile=<path>}.
+ * <p>
+ * The output of the optimizing compiler ({@link CiTargetMethod}) is saved when the VM exits and is reused instead of
+ * compiling a method again in a later run. The saved code refers to classes, methods, fields, hubs and static tuples
+ * symbolically and is installed like freshly compiled code, which allocates it in the {@link CodeManager}, patches its
+ * reference literals and links its direct calls.
+ * <p>
+ * Saved code is only reused if it is still valid:
+ * <ul>
+ * <li>The file was written by the same boot image with the same VM arguments and the same
+ * {@linkplain #recordStartupConstant startup constants}.</li>
+ * <li>Every class the code may depend on (the classes referenced from the constant pools of the compiled and inlined
+ * methods, their supertypes, and the classes referenced by the code itself) is loaded with the same class file bytes
+ * and class ID, and is initialized if it was initialized when the code was compiled.</li>
+ * <li>The static fields whose values were folded into the code still have the same values.</li>
+ * <li>The {@linkplain CiAssumptions assumptions} of the code are valid, which the compiler checks as for new code.</li>
+ * </ul>
+ * Code is not saved if it embeds objects that cannot be described symbolically or values that may differ from one run
+ * to the next, such as addresses. Saved code is used at most once per run: if it is invalidated, the method is
+ * recompiled, and the new code replaces the saved code when the VM exits.
+ */
+public final class PersistentCodeCache {
+
+    private static String CodeCacheFile;
+    private static boolean TraceCodeCacheFile;
+    static {
+        VMOptions.addFieldOption("-XX:", "CodeCacheFile", PersistentCodeCache.class,
+            "Save optimized code to the given file when the VM exits and reuse it in later runs.");
+        VMOptions.addFieldOption("-XX:", "TraceCodeCacheFile", PersistentCodeCache.class,
+            "Trace loading, reuse and saving of the code in the -XX:CodeCacheFile.");
+    }
+
+    private static final int MAGIC = 0x4d584343;
+    private static final int VERSION = 1;
+
+    /**
+     * Identifies the boot image. This is computed while building the boot image.
+     */
+    private static final long BUILD_ID = new Random().nextLong();
+
+    /**
+     * A class that saved code depends on.
+     */
+    private static final class Dependency {
+        final String type;
+        final long digest;
+        final int id;
+        final boolean initialized;
+
+        Dependency(String type, long digest, int id, boolean initialized) {
+            this.type = type;
+            this.digest = digest;
+            this.id = id;
+            this.initialized = initialized;
+        }
+    }
+
+    /**
+     * A static field whose value was folded into saved code.
+     */
+    private static final class FoldedField {
+        final String holder;
+        final String name;
+        final String type;
+        final long value;
+
+        FoldedField(String holder, String name, String type, long value) {
+            this.holder = holder;
+            this.name = name;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    private static final class Entry {
+        final Dependency[] dependencies;
+        final FoldedField[] foldedFields;
+        final byte[] code;
+
+        Entry(Dependency[] dependencies, FoldedField[] foldedFields, byte[] code) {
+            this.dependencies = dependencies;
+            this.foldedFields = foldedFields;
+            this.code = code;
+        }
+    }
+
+    /**
+     * The values folded into the code produced by a compilation.
+     */
+    public static final class Recording {
+        final Recording outer;
+        final ArrayList<FoldedField> foldedFields = new ArrayList<FoldedField>();
+        boolean persistable = true;
+
+        Recording(Recording outer) {
+            this.outer = outer;
+        }
+    }
+
+    /**
+     * The code to be saved when the VM exits, keyed by method.
+     */
+    private static final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * The keys of the loaded entries that have not yet been used.
+     */
+    private static final Set<String> unused = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private static final ThreadLocal<Recording> recordings = new ThreadLocal<Recording>();
+
+    private static volatile boolean initialized;
+
+    /**
+     * A hash of the {@linkplain #recordStartupConstant startup constants} of this run.
+     */
+    private static long startupConstants;
+
+    private PersistentCodeCache() {
+    }
+
+    /**
+     * Determines if the code of methods compiled by the optimizing compiler is persisted.
+     */
+    public static boolean isEnabled() {
+        return CodeCacheFile != null;
+    }
+
+    /**
+     * Loads the code saved by a previous run and arranges for the code cache to be saved when the VM exits.
+     */
+    public static void initialize() {
+        if (!isEnabled()) {
+            return;
+        }
+        File file = new File(CodeCacheFile);
+        if (file.exists()) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    read(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                Log.println("Error reading " + CodeCacheFile + ": " + e);
+                entries.clear();
+                unused.clear();
+            }
+        }
+        initialized = true;
+        Runtime.getRuntime().addShutdownHook(new Thread("CodeCacheFileWriter") {
+            @Override
+            public void run() {
+                save();
+            }
+        });
+    }
+
+    private static int configuration() {
+        return VMOptions.getVmArguments().hashCode();
+    }
+
+    /**
+     * Notifies the code cache of a value that is computed at VM startup and embedded in compiled code by an XIR
+     * template, such as the biased address of the card table used by a write barrier. Such values are not seen by
+     * the compiler as folded fields, so saved code is only reused by a run with the same startup constants.
+     * This must be called before the code cache is {@linkplain #initialize() initialized}.
+     */
+    public static void recordStartupConstant(long value) {
+        FatalError.check(!initialized, "startup constant recorded after the code cache was loaded");
+        startupConstants = startupConstants * 31 + value;
+    }
+
+    private static void read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != BUILD_ID || in.readInt() != configuration() || in.readLong() != startupConstants) {
+            if (TraceCodeCacheFile) {
+                Log.println("CodeCacheFile: ignoring " + CodeCacheFile + " written by a different VM, with different VM arguments or with different startup constants");
+            }
+            return;
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            Dependency[] dependencies = new Dependency[in.readInt()];
+            for (int j = 0; j < dependencies.length; j++) {
+                dependencies[j] = new Dependency(in.readUTF(), in.readLong(), in.readInt(), in.readBoolean());
+            }
+            FoldedField[] foldedFields = new FoldedField[in.readInt()];
+            for (int j = 0; j < foldedFields.length; j++) {
+                foldedFields[j] = new FoldedField(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong());
+            }
+            byte[] code = new byte[in.readInt()];
+            in.readFully(code);
+            entries.put(key, new Entry(dependencies, foldedFields, code));
+            unused.add(key);
+        }
+        if (TraceCodeCacheFile) {
+            Log.println("CodeCacheFile: loaded " + count + " methods from " + CodeCacheFile);
+        }
+    }
+
+    private static void save() {
+        File file = new File(CodeCacheFile);
+        File temp = new File(CodeCacheFile + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            int count = 0;
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(BUILD_ID);
+                out.writeInt(configuration());
+                out.writeLong(startupConstants);
+                Map<String, Entry> snapshot = new HashMap<String, Entry>(entries);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.writeUTF(e.getKey());
+                    out.writeInt(entry.dependencies.length);
+                    for (Dependency d : entry.dependencies) {
+                        out.writeUTF(d.type);
+                        out.writeLong(d.digest);
+                        out.writeInt(d.id);
+                        out.writeBoolean(d.initialized);
+                    }
+                    out.writeInt(entry.foldedFields.length);
+                    for (FoldedField f : entry.foldedFields) {
+                        out.writeUTF(f.holder);
+                        out.writeUTF(f.name);
+                        out.writeUTF(f.type);
+                        out.writeLong(f.value);
+                    }
+                    out.writeInt(entry.code.length);
+                    out.write(entry.code);
+                    count++;
+                }
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("could not rename " + temp + " to " + file);
+                }
+            }
+            if (TraceCodeCacheFile) {
+                Log.println("CodeCacheFile: saved " + count + " methods to " + CodeCacheFile);
+            }
+        } catch (IOException e) {
+            Log.println("Error writing " + CodeCacheFile + ": " + e);
+        }
+    }
+
+    private static String key(ClassMethodActor method) {
+        return method.holder().typeDescriptor.string + method.name.string + method.descriptor().string;
+    }
+
+    /**
+     * Computes the digest of the class file bytes of a class.
+     */
+    private static long digest(byte[] bytes, int offset, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * 0x100000001b3L;
+        }
+        return hash == 0L ? 1L : hash;
+    }
+
+    /**
+     * Records the digest of the class file bytes of a newly defined class.
+     */
+    public static void classDefined(ClassActor classActor, byte[] bytes, int offset, int length) {
+        if (isEnabled()) {
+            classActor.classRegistry().set(CLASSFILE_DIGEST, classActor, digest(bytes, offset, length));
+        }
+    }
+
+    /**
+     * Gets the digest of the class file bytes of a class, or 0 if it is not known. Classes in the boot image are
+     * identified by the boot image.
+     */
+    private static long digest(ClassActor classActor) {
+        ClassActor c = classActor.isArrayClass() ? classActor.elementClassActor() : classActor;
+        Long digest = c.classRegistry().get(CLASSFILE_DIGEST, c);
+        if (digest != null) {
+            return digest;
+        }
+        if (Heap.isInBootImage(c)) {
+            return BUILD_ID;
+        }
+        return 0L;
+    }
+
+    /**
+     * Determines if code saved by a previous run can be used for a given method.
+     */
+    public static boolean contains(ClassMethodActor method) {
+        if (!initialized || unused.isEmpty()) {
+            return false;
+        }
+        String key = key(method);
+        if (!unused.contains(key)) {
+            return false;
+        }
+        Entry entry = entries.get(key);
+        return entry != null && isValid(method, entry);
+    }
+
+    /**
+     * Gets the code saved by a previous run for a given method, if it is still valid. The saved code is only returned
+     * once, so that the method is compiled again if the code is invalidated.
+     *
+     * @return the saved code or {@code null}
+     */
+    public static CiTargetMethod lookup(ClassMethodActor method) {
+        if (!initialized || unused.isEmpty()) {
+            return null;
+        }
+        String key = key(method);
+        if (!unused.remove(key)) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null || !isValid(method, entry)) {
+            return null;
+        }
+        try {
+            ObjectInputStream in = new SymbolicInputStream(new ByteArrayInputStream(entry.code), method.holder().classLoader);
+            CiTargetMethod code = (CiTargetMethod) in.readObject();
+            if (TraceCodeCacheFile) {
+                Log.println("CodeCacheFile: reusing code of " + method);
+            }
+            return code;
+        } catch (Exception e) {
+            if (TraceCodeCacheFile) {
+                Log.println("CodeCacheFile: could not read code of " + method + ": " + e);
+            }
+            entries.remove(key, entry);
+            return null;
+        }
+    }
+
+    private static ClassActor lookupClass(ClassLoader loader, String type) {
+        return ClassRegistry.get(loader, JavaTypeDescriptor.parseTypeDescriptor(type), true);
+    }
+
+    private static boolean isValid(ClassMethodActor method, Entry entry) {
+        ClassLoader loader = method.holder().classLoader;
+        for (Dependency d : entry.dependencies) {
+            ClassActor c = lookupClass(loader, d.type);
+            if (c == null || (d.initialized && !c.isInitialized())) {
+                // may become valid later in this run
+                return false;
+            }
+            if (c.id != d.id || digest(c) != d.digest) {
+                return invalid(method, entry, d.type + " changed");
+            }
+        }
+        for (FoldedField f : entry.foldedFields) {
+            ClassActor holder = lookupClass(loader, f.holder);
+            if (holder != null && !holder.isInitialized()) {
+                return false;
+            }
+            FieldActor field = holder == null ? null : holder.findLocalStaticFieldActor(SymbolTable.makeSymbol(f.name), JavaTypeDescriptor.parseTypeDescriptor(f.type));
+            if (field == null) {
+                return invalid(method, entry, f.holder + "." + f.name + " not found");
+            }
+            CiConstant value = field.constantValue(null);
+            if (value == null || value.asPrimitive() != f.value) {
+                return invalid(method, entry, f.holder + "." + f.name + " changed");
+            }
+        }
+        return true;
+    }
+
+    private static boolean invalid(ClassMethodActor method, Entry entry, String reason) {
+        if (TraceCodeCacheFile) {
+            Log.println("CodeCacheFile: discarding code of " + method + ": " + reason);
+        }
+        entries.remove(key(method), entry);
+        unused.remove(key(method));
+        return false;
+    }
+
+    /**
+     * Starts recording the values folded into the code produced by a compilation on the current thread.
+     *
+     * @return the recording, or {@code null} if the code cache is not enabled
+     */
+    public static Recording startRecording() {
+        if (!initialized) {
+            return null;
+        }
+        Recording recording = new Recording(recordings.get());
+        recordings.set(recording);
+        return recording;
+    }
+
+    /**
+     * Stops a recording started by {@link #startRecording()}.
+     */
+    public static void stopRecording(Recording recording) {
+        if (recording != null) {
+            recordings.set(recording.outer);
+        }
+    }
+
+    /**
+     * Notifies the code cache that the value of a field has been folded by the compiler.
+     *
+     * @param field the field
+     * @param receiver the object whose field was read, or {@code null} for a static field
+     * @param value the value of the field
+     */
+    public static void recordFoldedField(FieldActor field, Object receiver, CiConstant value) {
+        if (!initialized) {
+            return;
+        }
+        Recording recording = recordings.get();
+        if (recording == null || !recording.persistable) {
+            return;
+        }
+        if (field.kind.isWord) {
+            recording.persistable = false;
+        } else if (!field.isStatic()) {
+            // final fields of objects in the boot image never change
+            recording.persistable = field.isFinal() && receiver != null && Heap.isInBootImage(receiver) && isStable(value);
+        } else if (field.kind.isReference) {
+            recording.persistable = field.isFinal() && Heap.isInBootImage(field.holder()) && isStable(value);
+        } else {
+            recording.foldedFields.add(new FoldedField(field.holder().typeDescriptor.string, field.name.string, field.descriptor().string, value.asPrimitive()));
+        }
+    }
+
+    /**
+     * Notifies the code cache that a call to a {@linkplain com.sun.max.annotate.FOLD foldable} method has been folded
+     * by the compiler.
+     */
+    public static void recordFoldedMethod(MethodActor method, CiConstant value) {
+        if (!initialized) {
+            return;
+        }
+        Recording recording = recordings.get();
+        if (recording != null && recording.persistable) {
+            recording.persistable = !method.descriptor().resultKind().isWord && isStable(value);
+        }
+    }
+
+    /**
+     * Determines if a folded value is the same in every run of the boot image.
+     */
+    private static boolean isStable(CiConstant value) {
+        return !value.kind.isObject() || value.isNull() || Heap.isInBootImage(value.asObject());
+    }
+
+    /**
+     * Saves the code produced by the optimizing compiler for a given method so that it can be reused by later runs.
+     *
+     * @param method the compiled method
+     * @param code the compiled code, which has been installed
+     * @param recording the values folded into the code
+     */
+    public static void store(ClassMethodActor method, CiTargetMethod code, Recording recording) {
+        if (recording == null || !recording.persistable) {
+            return;
+        }
+        String key = key(method);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            SymbolicOutputStream out = new SymbolicOutputStream(bytes);
+            out.writeObject(code);
+            out.close();
+
+            Set<ClassActor> classes = new HashSet<ClassActor>();
+            addConstantPoolReferences(method, classes);
+            CiAssumptions assumptions = code.assumptions();
+            if (assumptions != null) {
+                for (Assumption a : assumptions) {
+                    if (a instanceof CiAssumptions.InlinedMethod) {
+                        addConstantPoolReferences((MethodActor) ((CiAssumptions.InlinedMethod) a).dependee, classes);
+                    }
+                }
+            }
+            for (Safepoint safepoint : code.safepoints) {
+                if (safepoint.debugInfo != null) {
+                    for (CiCodePos pos = safepoint.debugInfo.codePos; pos != null; pos = pos.caller) {
+                        addConstantPoolReferences((MethodActor) pos.method, classes);
+                    }
+                }
+            }
+            classes.addAll(out.classes);
+            for (ClassActor c : new ArrayList<ClassActor>(classes)) {
+                addSupertypes(c, classes);
+            }
+
+            Dependency[] dependencies = new Dependency[classes.size()];
+            int i = 0;
+            for (ClassActor c : classes) {
+                long digest = digest(c);
+                if (digest == 0L) {
+                    if (TraceCodeCacheFile) {
+                        Log.println("CodeCacheFile: not saving code of " + method + ": depends on " + c);
+                    }
+                    return;
+                }
+                dependencies[i++] = new Dependency(c.typeDescriptor.string, digest, c.id, c.isInitialized());
+            }
+            FoldedField[] foldedFields = recording.foldedFields.toArray(new FoldedField[recording.foldedFields.size()]);
+            entries.put(key, new Entry(dependencies, foldedFields, bytes.toByteArray()));
+            unused.remove(key);
+        } catch (IOException e) {
+            if (TraceCodeCacheFile) {
+                Log.println("CodeCacheFile: not saving code of " + method + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Adds the classes referenced by the resolved entries of the constant pool of a method's holder. The compiler
+     * only relies on the layout of classes it has resolved.
+     */
+    private static void addConstantPoolReferences(MethodActor method, Set<ClassActor> classes) {
+        ClassActor holder = method.holder();
+        if (!classes.add(holder) || holder.isArrayClass()) {
+            return;
+        }
+        ConstantPool pool = holder.constantPool();
+        if (pool == null) {
+            return;
+        }
+        for (int i = 1; i < pool.numberOfConstants(); i++) {
+            PoolConstant constant = pool.at(i);
+            if (constant instanceof ClassConstant.Resolved) {
+                classes.add(((ClassConstant.Resolved) constant).classActor);
+            } else if (constant instanceof FieldRefConstant.Resolved) {
+                classes.add(((FieldRefConstant.Resolved) constant).fieldActor().holder());
+            } else if (constant instanceof ResolvedMethodRefConstant) {
+                classes.add(((ResolvedMethodRefConstant) constant).methodActor().holder());
+            }
+        }
+    }
+
+    private static void addSupertypes(ClassActor classActor, Set<ClassActor> classes) {
+        for (ClassActor c = classActor.superClassActor; c != null; c = c.superClassActor) {
+            classes.add(c);
+        }
+        classes.addAll(classActor.getAllInterfaceActors());
+    }
+
+    /**
+     * A symbolic reference to a VM object in saved code.
+     */
+    private abstract static class Symbol implements Serializable {
+        private static final long serialVersionUID = -8137218405573283001L;
+
+        abstract Object resolve(ClassLoader loader) throws IOException;
+
+        static ClassActor resolveClass(ClassLoader loader, String type) throws IOException {
+            ClassActor classActor = lookupClass(loader, type);
+            if (classActor == null) {
+                throw new InvalidObjectException(type + " is not loaded");
+            }
+            return classActor;
+        }
+    }
+
+    private static final class TypeSymbol extends Symbol {
+        private static final long serialVersionUID = 2790616398751102410L;
+        static final int ACTOR = 0;
+        static final int DYNAMIC_HUB = 1;
+        static final int STATIC_HUB = 2;
+        static final int MIRROR = 3;
+        static final int STATIC_TUPLE = 4;
+
+        final String type;
+        final int representation;
+
+        TypeSymbol(ClassActor classActor, int representation) {
+            this.type = classActor.typeDescriptor.string;
+            this.representation = representation;
+        }
+
+        @Override
+        Object resolve(ClassLoader loader) throws IOException {
+            ClassActor classActor = resolveClass(loader, type);
+            switch (representation) {
+                case ACTOR: return classActor;
+                case DYNAMIC_HUB: return classActor.dynamicHub();
+                case STATIC_HUB: return classActor.staticHub();
+                case MIRROR: return classActor.toJava();
+                case STATIC_TUPLE: return classActor.staticTuple();
+                default: throw new InvalidObjectException("unknown representation " + representation);
+            }
+        }
+    }
+
+    private static final class MemberSymbol extends Symbol {
+        private static final long serialVersionUID = -1949361226125651460L;
+        final String holder;
+        final String name;
+        final String descriptor;
+        final boolean isField;
+        final boolean isInterfaceCallCache;
+
+        MemberSymbol(MemberActor member, boolean isInterfaceCallCache) {
+            this.holder = member.holder().typeDescriptor.string;
+            this.name = member.name.string;
+            this.isField = member instanceof FieldActor;
+            this.descriptor = isField ? ((FieldActor) member).descriptor().string : ((MethodActor) member).descriptor().string;
+            this.isInterfaceCallCache = isInterfaceCallCache;
+        }
+
+        @Override
+        Object resolve(ClassLoader loader) throws IOException {
+            ClassActor classActor = resolveClass(loader, holder);
+            Object member;
+            if (isField) {
+                member = classActor.findLocalFieldActor(SymbolTable.makeSymbol(name), JavaTypeDescriptor.parseTypeDescriptor(descriptor));
+            } else {
+                member = classActor.findLocalMethodActor(SymbolTable.makeSymbol(name), SignatureDescriptor.create(descriptor));
+            }
+            if (member == null) {
+                throw new InvalidObjectException(holder + "." + name + descriptor + " not found");
+            }
+            if (isInterfaceCallCache) {
+                // each call site gets a new, empty cache
+                return new InterfaceCallCache((InterfaceMethodActor) member);
+            }
+            return member;
+        }
+    }
+
+    private static final class BootObjectSymbol extends Symbol {
+        private static final long serialVersionUID = 6235520390188327457L;
+        final long offset;
+
+        BootObjectSymbol(long offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        Object resolve(ClassLoader loader) {
+            return Reference.fromOrigin(Heap.bootHeapRegion.start().plus(offset).asPointer()).toJava();
+        }
+    }
+
+    private static final class RegisterSymbol extends Symbol {
+        private static final long serialVersionUID = 3958187734802546601L;
+        final int number;
+
+        RegisterSymbol(int number) {
+            this.number = number;
+        }
+
+        @Override
+        Object resolve(ClassLoader loader) {
+            return target().arch.registers[number];
+        }
+    }
+
+    private static final class IllegalValueSymbol extends Symbol {
+        private static final long serialVersionUID = -5013318813434478226L;
+
+        @Override
+        Object resolve(ClassLoader loader) {
+            return CiValue.IllegalValue;
+        }
+    }
+
+    /**
+     * Writes compiled code, replacing references to VM objects by {@linkplain Symbol symbols}.
+     */
+    private static final class SymbolicOutputStream extends ObjectOutputStream {
+        /**
+         * The classes referenced by the written code.
+         */
+        final Set<ClassActor> classes = new HashSet<ClassActor>();
+
+        SymbolicOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        private TypeSymbol typeSymbol(ClassActor classActor, int representation) {
+            classes.add(classActor);
+            return new TypeSymbol(classActor, representation);
+        }
+
+        private MemberSymbol memberSymbol(MemberActor member, boolean isInterfaceCallCache) {
+            classes.add(member.holder());
+            return new MemberSymbol(member, isInterfaceCallCache);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj instanceof ClassActor) {
+                return typeSymbol((ClassActor) obj, TypeSymbol.ACTOR);
+            } else if (obj instanceof MemberActor) {
+                return memberSymbol((MemberActor) obj, false);
+            } else if (obj instanceof Hub) {
+                Hub hub = (Hub) obj;
+                return typeSymbol(hub.classActor, hub instanceof StaticHub ? TypeSymbol.STATIC_HUB : TypeSymbol.DYNAMIC_HUB);
+            } else if (obj instanceof Class) {
+                return typeSymbol(ClassActor.fromJava((Class) obj), TypeSymbol.MIRROR);
+            } else if (obj instanceof InterfaceCallCache) {
+                return memberSymbol(((InterfaceCallCache) obj).interfaceMethod, true);
+            } else if (obj instanceof CiRegister) {
+                return new RegisterSymbol(((CiRegister) obj).number);
+            } else if (obj == CiValue.IllegalValue) {
+                return new IllegalValueSymbol();
+            } else if (obj instanceof Symbol) {
+                return obj;
+            }
+            Pointer origin = Reference.fromJava(obj).toOrigin();
+            if (Heap.bootHeapRegion.contains(origin)) {
+                // preserves the identity of objects in the boot image, such as interned strings and shared constants
+                return new BootObjectSymbol(origin.minus(Heap.bootHeapRegion.start()).toLong());
+            }
+            Hub hub = ObjectAccess.readHub(obj);
+            if (hub instanceof StaticHub) {
+                return typeSymbol(hub.classActor, TypeSymbol.STATIC_TUPLE);
+            }
+            if (obj instanceof CiConstant) {
+                CiConstant constant = (CiConstant) obj;
+                if (constant.kind.isObject() && !constant.isNull() && !isPersistableConstant(constant.asObject())) {
+                    throw new NotSerializableException("constant of type " + constant.asObject().getClass().getName());
+                }
+                return obj;
+            }
+            Class<?> javaClass = obj.getClass();
+            if (obj instanceof String || obj instanceof Enum || obj instanceof Number || obj instanceof Boolean || obj instanceof Character ||
+                javaClass.isArray() || javaClass == ArrayList.class || javaClass.getName().startsWith("com.sun.cri.ci.")) {
+                return obj;
+            }
+            throw new NotSerializableException(javaClass.getName());
+        }
+
+        /**
+         * Determines if an object embedded in the code can be replaced by an equivalent object in a later run.
+         */
+        private boolean isPersistableConstant(Object obj) {
+            if (obj instanceof String) {
+                return ((String) obj).intern() == obj;
+            }
+            return obj instanceof ClassActor || obj instanceof MemberActor || obj instanceof Hub || obj instanceof Class || obj instanceof InterfaceCallCache ||
+                   obj instanceof Enum || ObjectAccess.readHub(obj) instanceof StaticHub || Heap.bootHeapRegion.contains(Reference.fromJava(obj).toOrigin());
+        }
+    }
+
+    /**
+     * Reads code written by a {@link SymbolicOutputStream}, resolving {@linkplain Symbol symbols} with a given class
+     * loader.
+     */
+    private static final class SymbolicInputStream extends ObjectInputStream {
+        final ClassLoader loader;
+
+        SymbolicInputStream(InputStream in, ClassLoader loader) throws IOException {
+            super(in);
+            this.loader = loader;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj instanceof Symbol) {
+                return ((Symbol) obj).resolve(loader);
+            } else if (obj instanceof String) {
+                return ((String) obj).intern();
+            }
+            return obj;
+        }
+    }
+}
@@ -39,6 +39,7 @@ import com.sun.max.vm.thread.VmThread;
 import com.oracle.max.asm.target.aarch64.Aarch64MacroAssembler;
 import com.sun.cri.ci.*;
 import com.sun.max.annotate.*;
+import com.sun.max.lang.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.*;
@@ -109,6 +110,38 @@ public class CompilationBroker {
     private static boolean BackgroundCompilation = false;
     private static boolean backgroundCompilationInitialized = false;
 
+    /**
+     * Enables on-stack replacement of long running baseline activations by optimized code.
+     */
+    private static boolean UseOSR = false;
+
+    /**
+     * The number of backward branches taken in a baseline method before a loop is compiled for on-stack replacement.
+     */
+    private static int OSRThreshold = 10000;
+
+    /**
+     * Scales the recompilation threshold with the load of the {@linkplain CompilationThreadPool compilation queue}
+     * and backs off the threshold of methods that were deoptimized repeatedly. See {@link #recompilationThreshold}.
+     */
+    private static boolean TieredThresholds = true;
+
+    /**
+     * The expected queue delay (in milliseconds) of a compilation for which the recompilation threshold is
+     * increased by another {@link #RCT}. With an empty queue the threshold is half of {@link #RCT}.
+     */
+    private static int TieredQueueDelay = 20;
+
+    /**
+     * The maximum factor by which the load of the compilation queue scales the recompilation threshold.
+     */
+    private static int TieredMaxScale = 16;
+
+    /**
+     * The maximum number of deoptimizations of a method for which its recompilation threshold is doubled.
+     */
+    private static int DeoptBackoffLimit = 8;
+
     static {
         addFieldOption("-X", "opt", CompilationBroker.class, "Select optimizing compiler whenever possible.");
         addFieldOption("-XX:", "RCT", CompilationBroker.class, "Set the recompilation threshold for methods. Use 0 to disable recompilation. (default: " + RCT + ").");
@@ -120,6 +153,16 @@ public class CompilationBroker {
         addFieldOption("-XX:", "NUMAProfilerExitPoint", CompilationBroker.class, "Define the method upon whose invocation profiling should end");
         addFieldOption("-XX:", "LogCompiledMethods", CompilationBroker.class, "Log the names of compiled methods (default: false)");
         addFieldOption("-XX:", "BackgroundCompilation", CompilationBroker.class, "Enable background compilation (default: false)");
+        addFieldOption("-XX:", "UseOSR", CompilationBroker.class, "Enable on-stack replacement of baseline methods in long running loops (default: false)");
+        addFieldOption("-XX:", "OSRThreshold", CompilationBroker.class, "Set the number of backward branches after which a loop is compiled for on-stack replacement (default: " + OSRThreshold + ").");
+        addFieldOption("-XX:", "TieredThresholds", CompilationBroker.class, "Scale the recompilation threshold with the load of the background compilation queue " +
+            "and with the number of deoptimizations of a method (default: true).");
+        addFieldOption("-XX:", "TieredQueueDelay", CompilationBroker.class, "Set the expected compilation queue delay in milliseconds " +
+            "for which the recompilation threshold is increased by another RCT (default: " + TieredQueueDelay + ").");
+        addFieldOption("-XX:", "TieredMaxScale", CompilationBroker.class, "Set the maximum factor by which the compilation queue load " +
+            "scales the recompilation threshold (default: " + TieredMaxScale + ").");
+        addFieldOption("-XX:", "DeoptBackoffLimit", CompilationBroker.class, "Set the maximum number of deoptimizations of a method " +
+            "for which its recompilation threshold is doubled (default: " + DeoptBackoffLimit + ").");
     }
 
     @RESET
@@ -356,8 +399,21 @@ public class CompilationBroker {
 
             if (RCT != 0 && baselineCompiler != null) {
                 MethodInstrumentation.enable(RCT);
+                if (TieredQueueDelay <= 0 || TieredMaxScale <= 0 || DeoptBackoffLimit < 0) {
+                    Log.println("-XX:TieredQueueDelay and -XX:TieredMaxScale must be positive, -XX:DeoptBackoffLimit must not be negative");
+                    MaxineVM.native_exit(1);
+                }
+                if (UseOSR && platform().isa == ISA.AMD64 && optimizingCompiler instanceof OSRCompiler) {
+                    if (OSRThreshold <= 0) {
+                        Log.println("-XX:OSRThreshold must be positive");
+                        MaxineVM.native_exit(1);
+                    }
+                    MethodInstrumentation.enableOSR(OSRThreshold);
+                }
             }
         } else if (phase == Phase.RUNNING) {
+            PersistentCodeCache.initialize();
+            CompilationEventLog.initialize();
             if (BackgroundCompilation) {
                 backgroundCompilationInitialized = true;
                 compilationThreadPool = new CompilationThreadPool();
@@ -385,6 +441,39 @@ public class CompilationBroker {
         return compile(cma, nature, false);
     }
 
+    /**
+     * Compiles a method with the optimizing compiler for on-stack replacement at a given loop header.
+     * A failed OSR compilation is not fatal: the baseline code simply continues to run.
+     *
+     * @param cma the method to compile
+     * @param osrBCI the bytecode index of the loop header
+     * @return the compiled code or {@code null} if the method could not be compiled for on-stack replacement
+     */
+    public TargetMethod compileForOSR(ClassMethodActor cma, int osrBCI) {
+        TargetMethod tm = null;
+        try {
+            tm = ((OSRCompiler) optimizingCompiler).compileForOSR(cma, osrBCI);
+        } catch (Throwable t) {
+            if (VMOptions.verboseOption.verboseCompilation) {
+                boolean lockDisabledSafepoints = Log.lock();
+                Log.printCurrentThread(false);
+                Log.println(": OSR compilation of " + cma + " at bci " + osrBCI + " by " + optimizingCompiler + " failed with:");
+                t.printStackTrace(Log.out);
+                Log.unlock(lockDisabledSafepoints);
+            }
+        }
+        if (VMOptions.verboseOption.verboseCompilation) {
+            boolean lockDisabledSafepoints = Log.lock();
+            Log.printCurrentThread(false);
+            Log.print(tm == null ? ": Could not compile " : ": OSR compiled ");
+            Log.printMethod(cma, false);
+            Log.print(" at bci ");
+            Log.println(osrBCI);
+            Log.unlock(lockDisabledSafepoints);
+        }
+        return tm;
+    }
+
     /**
      * Perform deoptimization actions.
      * <ol>
@@ -395,6 +484,9 @@ public class CompilationBroker {
      * @param deoptReasonId deoptimization reason identificator
      */
     public void deoptimize(ClassMethodActor cma, int deoptReasonId) {
+        if (CompilationEventLog.isEnabled()) {
+            CompilationEventLog.deoptimized(cma, deoptReasonId);
+        }
         TargetMethod tm = Compilations.currentTargetMethod(cma.compiledState, Nature.BASELINE);
         if (tm != null) {
             assert tm.invalidated() == null && tm.isBaseline();
@@ -402,7 +494,7 @@ public class CompilationBroker {
             if (mp != null) {
                 mp.incrementDeoptimizationCount(deoptReasonId);
                 if (mp.entryBackedgeCount <= 0) {
-                    mp.entryBackedgeCount = MethodInstrumentation.initialEntryBackedgeCount;
+                    mp.entryBackedgeCount = recompilationThreshold(mp);
                 }
             }
         }
@@ -594,6 +686,10 @@ public class CompilationBroker {
                             // compile VM extensions with the opt compiler (cf isHosted)
                             reason = "vm";
                             compiler = optimizingCompiler;
+                        } else if (!isDeopt && PersistentCodeCache.contains(cma)) {
+                            // reuse the optimized code saved by a previous run
+                            reason = "CodeCacheFile";
+                            compiler = optimizingCompiler;
                         } else {
                             compiler = defaultCompiler;
                         }
@@ -648,6 +744,46 @@ public class CompilationBroker {
         cma.compiledState = Compilations.EMPTY;
     }
 
+    /**
+     * Gets the number of invocations and backward branches after which a baseline method is recompiled.
+     * <p>
+     * Without {@link #TieredThresholds} this is the fixed {@link #RCT}. Otherwise, when compiling in the background,
+     * the threshold is half of {@link #RCT} while the compilation queue is empty, so that hot methods do not wait
+     * unnecessarily long in steady state, and grows by another {@link #RCT} for every {@link #TieredQueueDelay}
+     * milliseconds a compilation is {@linkplain CompilationThreadPool#expectedQueueDelay() expected to wait},
+     * up to {@link #TieredMaxScale} times {@link #RCT}, so that the queue does not overflow under startup load.
+     * The threshold of a method is further doubled for each of its deoptimizations, up to {@link #DeoptBackoffLimit}
+     * times, so that a method whose optimized code is repeatedly invalidated is not recompiled at the same rate.
+     *
+     * @param mpo the profile of the baseline method or {@code null} if it is being created
+     */
+    public static int recompilationThreshold(MethodProfile mpo) {
+        int rct = MethodInstrumentation.initialEntryBackedgeCount;
+        if (!TieredThresholds || isHosted()) {
+            return rct;
+        }
+        long threshold = rct;
+        CompilationThreadPool pool = vm().compilationBroker.compilationThreadPool;
+        if (pool != null) {
+            long delay = pool.expectedQueueDelay();
+            long target = TieredQueueDelay * 1000000L;
+            threshold = Math.max(1, rct / 2 + Math.min(rct * delay / target, (long) rct * TieredMaxScale));
+        }
+        if (mpo != null) {
+            threshold <<= Math.min(mpo.totalDeoptimizationCount(), DeoptBackoffLimit);
+        }
+        return (int) Math.min(threshold, Integer.MAX_VALUE / 2);
+    }
+
+    /**
+     * Determines if the background compilation queue is so long that an overflowing method should not be added
+     * to it yet, i.e. if the recompilation threshold is at {@link #TieredMaxScale} times {@link #RCT}.
+     */
+    private static boolean compilationQueueSaturated() {
+        CompilationThreadPool pool = vm().compilationBroker.compilationThreadPool;
+        return TieredThresholds && pool != null && pool.expectedQueueDelay() >= TieredQueueDelay * 1000000L * TieredMaxScale;
+    }
+
     /**
      * Handles an instrumentation counter overflow upon entry to a profiled method.
      * This method must be called on the thread that overflowed the counter.
@@ -656,6 +792,7 @@ public class CompilationBroker {
      * @param receiver the receiver object of the profiled method. This will be {@code null} if the profiled method is static.
      */
     public static void instrumentationCounterOverflow(MethodProfile mpo, Object receiver) {
+        mpo.overflowCount++;
         if (mpo.compilationDisabled) {
             mpo.entryBackedgeCount = Integer.MAX_VALUE;
             return;
@@ -679,6 +816,12 @@ public class CompilationBroker {
 
         if (oldMethod == newMethod || newMethod == null) {
             if (!(cma.compiledState instanceof Compilation)) {
+                if (compilationQueueSaturated()) {
+                    logCounterOverflow(mpo, "Deferred recompilation because the compilation queue is saturated");
+                    // The overflow count keeps accumulating, so the method is prioritized once it is queued
+                    mpo.entryBackedgeCount = recompilationThreshold(mpo);
+                    return;
+                }
                 // There is no newer compiled version available yet that we could just patch to, so recompile
                 logCounterOverflow(mpo, "");
                 try {
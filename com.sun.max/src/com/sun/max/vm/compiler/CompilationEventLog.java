@@ -0,0 +1,600 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.compiler;
+
+import java.io.*;
+import java.util.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.log.*;
+import com.sun.max.vm.log.VMLog.Record;
+import com.sun.max.vm.log.hosted.*;
+import com.sun.max.vm.log.java.*;
+import com.sun.max.vm.log.java.VMLogArray.Record8;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * A stream of compilation and deoptimization events, one per compiled or deoptimized method, for finding the methods
+ * that dominate compile time and code cache consumption. A compilation event records the method, the compiler, the tier
+ * (1 for baseline and 2 for optimized code), the time the compilation waited in the
+ * {@linkplain CompilationThreadPool background compilation queue}, the compile time, the bytecode size, the code size
+ * and the number of inlined methods. A deoptimization event records the method and the deoptimization reason.
+ * <p>
+ * The events are recorded by a hidden {@link VMLogger} in a dedicated {@link VMLog} ring buffer, so recording an event
+ * does not allocate. The size of the buffer is fixed when the boot image is built by the
+ * {@value #LOG_ENTRIES_PROPERTY} system property. The events are written as CSV, or as one JSON object per line:
+ * <ul>
+ * <li>With {@code -XX:CompilationEventsFile}, every event is written to the file by a dedicated writer thread, which is
+ * woken whenever the buffer is half full and every {@value #WRITE_INTERVAL_MS} ms, and when the VM exits. Threads recording
+ * events never format or write them, so the compiler threads and the
+ * {@linkplain com.sun.max.vm.runtime.VmOperationThread VM operation thread} only pay for filling a record. If the writer
+ * is so far behind that the buffer is full, an event is dropped instead, and the number of dropped events is reported
+ * when the VM exits.</li>
+ * <li>Otherwise, the buffer keeps the most recent events, which are written to the {@link Log} when the VM exits
+ * and can be written at any time with {@link #dump}.</li>
+ * </ul>
+ * An event is written at most once, and only once it and all the events before it are completely recorded: a record is
+ * only marked complete after all its arguments are stored.
+ */
+public final class CompilationEventLog {
+
+    private static boolean LogCompilationEvents;
+    private static String CompilationEventsFile;
+    private static String CompilationEventsFormat = "csv";
+    static {
+        VMOptions.addFieldOption("-XX:", "LogCompilationEvents", CompilationEventLog.class,
+            "Record an event for every compilation and deoptimization, written as CSV or JSON when the VM exits.");
+        VMOptions.addFieldOption("-XX:", "CompilationEventsFile", CompilationEventLog.class,
+            "Write every compilation event to the given file instead of keeping only the most recent events (implies -XX:+LogCompilationEvents).");
+        VMOptions.addFieldOption("-XX:", "CompilationEventsFormat", CompilationEventLog.class,
+            "Format of the written compilation events: csv or json (default: csv).");
+    }
+
+    private static final String LOG_ENTRIES_PROPERTY = "max.compilationevents.entries";
+    private static final int DEFAULT_LOG_ENTRIES = 4096;
+
+    /**
+     * The maximum time between two writes of the events by the writer thread.
+     */
+    private static final int WRITE_INTERVAL_MS = 1000;
+
+    /**
+     * The values of the tier column.
+     */
+    public static final int BASELINE_TIER = 1;
+    public static final int OPTIMIZED_TIER = 2;
+
+    private static final String CSV_HEADER = "id,thread,event,method,compiler,tier,queueWaitNs,compileTimeNs,bytecodeSize,codeSize,inlinedMethods,deoptReason";
+
+    private static final CompilationEventLogger logger = new CompilationEventLogger();
+
+    private static final EventLog log = new EventLog();
+
+    static {
+        log.initialize(MaxineVM.Phase.BOOTSTRAPPING);
+        log.registerCustom(logger, new VMLog.Flusher() {
+            @Override
+            public void flushRecord(VmThread vmThread, Record r, int uuid) {
+                logger.write(r, uuid);
+            }
+        });
+    }
+
+    private CompilationEventLog() {
+    }
+
+    /**
+     * Starts recording events if requested on the command line.
+     */
+    public static void initialize() {
+        if (CompilationEventsFile != null) {
+            LogCompilationEvents = true;
+        }
+        if (!LogCompilationEvents) {
+            return;
+        }
+        if (!CompilationEventsFormat.equals("csv") && !CompilationEventsFormat.equals("json")) {
+            Log.println("-XX:CompilationEventsFormat must be csv or json");
+            MaxineVM.native_exit(1);
+        }
+        boolean json = CompilationEventsFormat.equals("json");
+        if (CompilationEventsFile != null) {
+            try {
+                log.stream(new PrintStream(new BufferedOutputStream(new FileOutputStream(CompilationEventsFile))), json);
+            } catch (IOException e) {
+                Log.println("Error opening " + CompilationEventsFile + ": " + e);
+                MaxineVM.native_exit(1);
+            }
+            Thread writer = new Thread("CompilationEventsWriter") {
+                @Override
+                public void run() {
+                    while (log.awaitWriteRequest()) {
+                        log.dump(null, false);
+                    }
+                }
+            };
+            writer.setDaemon(true);
+            writer.start();
+        }
+        logger.enable(true);
+        Runtime.getRuntime().addShutdownHook(new Thread("CompilationEventsFlusher") {
+            @Override
+            public void run() {
+                logger.enable(false);
+                if (log.streaming()) {
+                    log.closeStream();
+                    if (log.dropped != 0) {
+                        Log.println("Dropped " + log.dropped + " compilation events while " + CompilationEventsFile + " was behind");
+                    }
+                } else {
+                    dump(Log.out, CompilationEventsFormat.equals("json"));
+                }
+            }
+        });
+    }
+
+    /**
+     * Determines if events are being recorded.
+     */
+    @INLINE
+    public static boolean isEnabled() {
+        return logger.enabled();
+    }
+
+    /**
+     * Writes the events recorded since the last time events were written. With {@code -XX:CompilationEventsFile},
+     * the events are not written to the file any more.
+     *
+     * @param out the stream to write to
+     * @param json specifies if the events are written as JSON instead of CSV
+     */
+    public static void dump(PrintStream out, boolean json) {
+        log.dump(out, json);
+    }
+
+    /**
+     * Records the event for a completed compilation.
+     *
+     * @param compilation a compilation that produced a {@linkplain Compilation#result target method}
+     * @param startTime the {@linkplain System#nanoTime() time} the compiler was invoked
+     * @param endTime the time the compiler returned
+     */
+    public static void compiled(Compilation compilation, long startTime, long endTime) {
+        TargetMethod tm = compilation.result;
+        ClassMethodActor cma = compilation.classMethodActor;
+        long queueWait = compilation.queuedTime == 0L ? 0L : startTime - compilation.queuedTime;
+        int bytecodeSize = cma.codeAttribute() == null ? 0 : cma.codeAttribute().code().length;
+        HashSet<MethodActor> inlinedMethods = new HashSet<MethodActor>();
+        tm.gatherCalls(new HashSet<MethodActor>(), new HashSet<MethodActor>(), new HashSet<MethodActor>(), inlinedMethods);
+        logger.logCompilation(cma, compilation.compiler.name(cma), tm.isBaseline() ? BASELINE_TIER : OPTIMIZED_TIER,
+                        queueWait, endTime - startTime, bytecodeSize, tm.codeLength(), inlinedMethods.size());
+    }
+
+    /**
+     * Records the event for a deoptimization of a method.
+     *
+     * @param cma the deoptimized method
+     * @param deoptReasonId the deoptimization reason identifier, as passed to {@link CompilationBroker#deoptimize}
+     */
+    public static void deoptimized(ClassMethodActor cma, int deoptReasonId) {
+        logger.logDeoptimization(cma, deoptReasonId);
+    }
+
+    /**
+     * Quotes a string value, escaping quotes as in CSV or JSON.
+     */
+    private static String quote(String s, boolean json) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                sb.append(json ? '\\' : '"');
+            } else if (c == '\\' && json) {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * A record of the {@link EventLog} that knows when all its arguments are stored.
+     */
+    private static final class EventRecord extends Record8 {
+
+        /**
+         * The id of the event being recorded in this record.
+         */
+        int pendingId = -1;
+
+        /**
+         * The id of the last event completely recorded in this record.
+         */
+        volatile int completeId = -1;
+
+        @Override
+        public void setArgs(Word arg1, Word arg2) {
+            super.setArgs(arg1, arg2);
+            completeId = pendingId;
+        }
+
+        @Override
+        public void setArgs(Word arg1, Word arg2, Word arg3, Word arg4, Word arg5, Word arg6, Word arg7, Word arg8) {
+            super.setArgs(arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8);
+            completeId = pendingId;
+        }
+    }
+
+    /**
+     * The ring buffer of the events. Without a stream for all events, it overwrites the oldest events when full.
+     */
+    private static final class EventLog extends VMLogArray {
+
+        /**
+         * The id of the oldest event that was not written yet.
+         */
+        private volatile int writtenId;
+
+        /**
+         * The id of the first event not to write in {@link #flushRecords}.
+         */
+        private int flushLimit;
+
+        /**
+         * The number of events dropped because the buffer was full.
+         */
+        volatile int dropped;
+
+        /**
+         * The record that dropped events are recorded in.
+         */
+        private EventRecord droppedRecord;
+
+        private PrintStream stream;
+        private boolean streamJson;
+
+        /**
+         * The lock the writer thread waits on for {@link #writeRequested}.
+         */
+        private final Object writerLock = new Object();
+
+        private volatile boolean writeRequested;
+
+        @FOLD
+        private static int nextIdOffset() {
+            return ClassActor.fromJava(VMLog.class).findLocalInstanceFieldActor("nextId").offset();
+        }
+
+        @FOLD
+        private static int droppedOffset() {
+            return ClassActor.fromJava(EventLog.class).findLocalInstanceFieldActor("dropped").offset();
+        }
+
+        @Override
+        public void initialize(MaxineVM.Phase phase) {
+            super.initialize(phase);
+            if (MaxineVM.isHosted() && phase == MaxineVM.Phase.BOOTSTRAPPING) {
+                for (int i = 0; i < buffer.length; i++) {
+                    buffer[i] = new EventRecord();
+                }
+                droppedRecord = new EventRecord();
+            }
+        }
+
+        @Override
+        protected void setLogEntries() {
+            logEntries = Integer.getInteger(LOG_ENTRIES_PROPERTY, DEFAULT_LOG_ENTRIES);
+        }
+
+        @Override
+        protected boolean isPerThread() {
+            return false;
+        }
+
+        void stream(PrintStream out, boolean json) {
+            stream = out;
+            streamJson = json;
+        }
+
+        boolean streaming() {
+            return stream != null;
+        }
+
+        /**
+         * Writes the events that were not written yet to the stream of all events, then closes it.
+         */
+        synchronized void closeStream() {
+            dump(null, false);
+            stream.close();
+            stream = null;
+            requestWrite();
+        }
+
+        /**
+         * Waits until the events must be written by the writer thread.
+         *
+         * @return {@code false} if the stream of all events was closed
+         */
+        boolean awaitWriteRequest() {
+            synchronized (writerLock) {
+                if (!writeRequested) {
+                    try {
+                        writerLock.wait(WRITE_INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                    }
+                }
+                writeRequested = false;
+            }
+            return streaming();
+        }
+
+        private void requestWrite() {
+            synchronized (writerLock) {
+                writeRequested = true;
+                writerLock.notify();
+            }
+        }
+
+        /**
+         * Allocates the id of an event, unless the event would overwrite an event that was not written yet.
+         *
+         * @return the id of the event or -1 if the buffer is full
+         */
+        private int reserveId() {
+            int myId;
+            do {
+                myId = nextId;
+                if (myId - writtenId >= logEntries) {
+                    return -1;
+                }
+            } while (Reference.fromJava(this).compareAndSwapInt(nextIdOffset(), myId, myId + 1) != myId);
+            return myId;
+        }
+
+        @Override
+        protected Record getRecord(int argCount) {
+            if (stream == null) {
+                return record(getUniqueId());
+            }
+            int myId = reserveId();
+            if (myId < 0) {
+                int n;
+                do {
+                    n = dropped;
+                } while (Reference.fromJava(this).compareAndSwapInt(droppedOffset(), n, n + 1) != n);
+                return droppedRecord;
+            }
+            if (myId - writtenId >= logEntries / 2 && !writeRequested && !VmThread.current().isVmOperationThread()) {
+                // Writing before the buffer is full leaves room for the events recorded while the writer is busy.
+                // The VM operation thread must not take the lock, as a stopped thread may hold it.
+                requestWrite();
+            }
+            return record(myId);
+        }
+
+        private Record record(int id) {
+            EventRecord r = (EventRecord) buffer[id % logEntries];
+            r.pendingId = id;
+            return r;
+        }
+
+        /**
+         * Writes the events that were not written yet.
+         *
+         * @param out the stream to write to or {@code null} for the stream of all events
+         */
+        synchronized void dump(PrintStream out, boolean json) {
+            if (out == null) {
+                if (stream == null) {
+                    return;
+                }
+                out = stream;
+                json = streamJson;
+            }
+            logger.begin(out, json, out != stream || writtenId == 0);
+            flushLimit = nextId;
+            flush(FLUSHMODE_FULL);
+            logger.end();
+        }
+
+        /**
+         * Writes the completely recorded events from the oldest one not written yet, and stops at the first event still
+         * being recorded. The events in the buffer before {@link #flushLimit} that are not written yet are either complete
+         * or being recorded, as an event is only allocated a record once the event {@code logEntries} before was written.
+         */
+        @Override
+        protected void flushRecords(VmThread vmThread) {
+            int limit = flushLimit;
+            int id = Math.max(writtenId, limit - logEntries);
+            while (id < limit) {
+                EventRecord r = (EventRecord) buffer[id % logEntries];
+                if (r.completeId != id) {
+                    break;
+                }
+                flusher.flushRecord(null, r, id);
+                id++;
+            }
+            writtenId = Math.max(writtenId, id);
+        }
+    }
+
+    @HOSTED_ONLY
+    @VMLoggerInterface(hidden = true, traceThread = true)
+    private interface CompilationEventLoggerInterface {
+
+        void compilation(@VMLogParam(name = "method") ClassMethodActor method, @VMLogParam(name = "compiler") String compiler, @VMLogParam(name = "tier") int tier,
+                        @VMLogParam(name = "queueWait") long queueWait, @VMLogParam(name = "compileTime") long compileTime, @VMLogParam(name = "bytecodeSize") int bytecodeSize,
+                        @VMLogParam(name = "codeSize") int codeSize, @VMLogParam(name = "inlinedMethods") int inlinedMethods);
+
+        void deoptimization(@VMLogParam(name = "method") ClassMethodActor method, @VMLogParam(name = "reason") int reason);
+    }
+
+    /**
+     * Writes the events as CSV or JSON. Only used with the lock on {@link CompilationEventLog#log} held.
+     */
+    private static final class CompilationEventLogger extends CompilationEventLoggerAuto {
+
+        private PrintStream out;
+        private boolean json;
+        private int id;
+
+        CompilationEventLogger() {
+            super("CompilationEvent");
+        }
+
+        void begin(PrintStream out, boolean json, boolean header) {
+            this.out = out;
+            this.json = json;
+            if (header && !json) {
+                out.println(CSV_HEADER);
+            }
+        }
+
+        void end() {
+            out.flush();
+            out = null;
+        }
+
+        void write(Record r, int uuid) {
+            id = uuid;
+            trace(r);
+        }
+
+        private void row(int threadId, String event, ClassMethodActor method, String compiler, int tier, long queueWait, long compileTime,
+                        int bytecodeSize, int codeSize, int inlinedMethods, int reason) {
+            String thread = toVmThreadName(threadId);
+            String methodName = method.format("%H.%n(%p)");
+            boolean compilation = compiler != null;
+            if (json) {
+                StringBuilder sb = new StringBuilder("{\"id\":").append(id);
+                sb.append(",\"thread\":").append(quote(thread, json));
+                sb.append(",\"event\":").append(quote(event, json));
+                sb.append(",\"method\":").append(quote(methodName, json));
+                if (compilation) {
+                    sb.append(",\"compiler\":").append(quote(compiler, json));
+                    sb.append(",\"tier\":").append(tier);
+                    sb.append(",\"queueWaitNs\":").append(queueWait);
+                    sb.append(",\"compileTimeNs\":").append(compileTime);
+                    sb.append(",\"bytecodeSize\":").append(bytecodeSize);
+                    sb.append(",\"codeSize\":").append(codeSize);
+                    sb.append(",\"inlinedMethods\":").append(inlinedMethods);
+                } else {
+                    sb.append(",\"deoptReason\":").append(reason);
+                }
+                out.println(sb.append('}'));
+            } else {
+                StringBuilder sb = new StringBuilder().append(id);
+                sb.append(',').append(quote(thread, json));
+                sb.append(',').append(event);
+                sb.append(',').append(quote(methodName, json));
+                if (compilation) {
+                    sb.append(',').append(quote(compiler, json));
+                    sb.append(',').append(tier);
+                    sb.append(',').append(queueWait);
+                    sb.append(',').append(compileTime);
+                    sb.append(',').append(bytecodeSize);
+                    sb.append(',').append(codeSize);
+                    sb.append(',').append(inlinedMethods);
+                    sb.append(',');
+                } else {
+                    sb.append(",,,,,,,,").append(reason);
+                }
+                out.println(sb);
+            }
+        }
+
+        @Override
+        protected void traceCompilation(int threadId, ClassMethodActor method, String compiler, int tier, long queueWait,
+                        long compileTime, int bytecodeSize, int codeSize, int inlinedMethods) {
+            if (out != null) {
+                row(threadId, "compile", method, compiler, tier, queueWait, compileTime, bytecodeSize, codeSize, inlinedMethods, 0);
+            }
+        }
+
+        @Override
+        protected void traceDeoptimization(int threadId, ClassMethodActor method, int reason) {
+            if (out != null) {
+                row(threadId, "deopt", method, null, 0, 0L, 0L, 0, 0, 0, reason);
+            }
+        }
+    }
+
+// START GENERATED CODE
+    private static abstract class CompilationEventLoggerAuto extends com.sun.max.vm.log.VMLogger {
+        public enum Operation {
+            Compilation, Deoptimization;
+
+            @SuppressWarnings("hiding")
+            public static final Operation[] VALUES = values();
+        }
+
+        private static final int[] REFMAPS = new int[] {0x2, 0x0};
+
+        protected CompilationEventLoggerAuto(String name) {
+            super(name, Operation.VALUES.length, REFMAPS);
+        }
+
+        @Override
+        public String operationName(int opCode) {
+            return Operation.VALUES[opCode].name();
+        }
+
+        @INLINE
+        public final void logCompilation(ClassMethodActor method, String compiler, int tier, long queueWait, long compileTime,
+                int bytecodeSize, int codeSize, int inlinedMethods) {
+            log(Operation.Compilation.ordinal(), methodActorArg(method), objectArg(compiler), intArg(tier), longArg(queueWait), longArg(compileTime),
+                intArg(bytecodeSize), intArg(codeSize), intArg(inlinedMethods));
+        }
+        protected abstract void traceCompilation(int threadId, ClassMethodActor method, String compiler, int tier, long queueWait,
+                long compileTime, int bytecodeSize, int codeSize, int inlinedMethods);
+
+        @INLINE
+        public final void logDeoptimization(ClassMethodActor method, int reason) {
+            log(Operation.Deoptimization.ordinal(), methodActorArg(method), intArg(reason));
+        }
+        protected abstract void traceDeoptimization(int threadId, ClassMethodActor method, int reason);
+
+        @Override
+        protected void trace(Record r) {
+            int threadId = r.getThreadId();
+            switch (r.getOperation()) {
+                case 0: { //Compilation
+                    traceCompilation(threadId, toClassMethodActor(r, 1), toString(r, 2), toInt(r, 3), toLong(r, 4), toLong(r, 5), toInt(r, 6), toInt(r, 7), toInt(r, 8));
+                    break;
+                }
+                case 1: { //Deoptimization
+                    traceDeoptimization(threadId, toClassMethodActor(r, 1), toInt(r, 2));
+                    break;
+                }
+            }
+        }
+    }
+
+// END GENERATED CODE
+}
@@ -23,23 +23,55 @@ package com.sun.max.vm.compiler;
 import static com.sun.max.vm.VMOptions.*;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.Log;
 import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.thread.*;
 import com.sun.max.vm.ti.*;
 
 /**
  * This class implements a thread pool that maintains a variable number of compilation threads.
+ * <p>
+ * Pending compilations are not served in FIFO order. A compilation thread takes the pending compilation of the
+ * hottest method, as measured by the {@linkplain MethodProfile#overflowCount counter overflows} of the method's
+ * baseline code, so that a burst of compilations of lukewarm methods does not delay the recompilation of hot methods.
+ * The hotness is evaluated when a compilation is taken, as it keeps increasing while the compilation waits.
+ * Compilations of methods that were compiled by some other means in the meantime are dropped.
  */
 public class CompilationThreadPool {
 
     /**
-     * A queue of pending compilations.
+     * Compilations added since a compilation thread last took a compilation. Adding a compilation
+     * does not take a lock, as it is done by application threads.
      */
-    private final LinkedList<Compilation> pending = new LinkedList<Compilation>();
+    private final ConcurrentLinkedQueue<Compilation> incoming = new ConcurrentLinkedQueue<Compilation>();
+
+    /**
+     * Pending compilations in the order they were added. Only accessed by compilation threads holding the lock on this list.
+     */
+    private final ArrayList<Compilation> pending = new ArrayList<Compilation>();
+
+    /**
+     * Counts the compilations that were added and not taken yet. There may be more permits than compilations,
+     * as dropped compilations do not consume a permit.
+     */
+    private final Semaphore available = new Semaphore(0);
+
+    /**
+     * The number of compilations that were added and neither taken nor dropped yet.
+     */
+    private final AtomicInteger queueLength = new AtomicInteger();
+
+    /**
+     * A moving average of the time (in nanoseconds) taken by a compilation. It is seeded with an estimate
+     * so that the {@linkplain #expectedQueueDelay() queue delay} is meaningful before the first compilation completes.
+     */
+    private volatile long averageCompileTime = 1000000L;
 
     private CompilationThread[] threadPool;
 
@@ -75,10 +107,85 @@ public class CompilationThreadPool {
     }
 
     public void addCompilationToQueue(Compilation compilation) {
-        synchronized (pending) {
-            pending.add(compilation);
-            pending.notify();
+        compilation.queuedTime = System.nanoTime();
+        queueLength.incrementAndGet();
+        incoming.add(compilation);
+        available.release();
+    }
+
+    /**
+     * Gets the number of compilations waiting to be taken by a compilation thread.
+     */
+    public int queueLength() {
+        return queueLength.get();
+    }
+
+    /**
+     * Estimates how long (in nanoseconds) a compilation added now waits before a compilation thread takes it,
+     * based on the length of the queue, the {@linkplain #averageCompileTime average compile time} and the number
+     * of compilation threads.
+     */
+    public long expectedQueueDelay() {
+        return queueLength.get() * averageCompileTime / CTPS;
+    }
+
+    /**
+     * Removes the pending compilation of the hottest method, dropping stale compilations on the way.
+     * Must be called with the lock on {@link #pending} held.
+     *
+     * @return {@code null} if there is no pending compilation
+     */
+    private Compilation takeHottest() {
+        Compilation c;
+        while ((c = incoming.poll()) != null) {
+            pending.add(c);
+        }
+        int hottest = -1;
+        int hottestCount = -1;
+        int i = 0;
+        while (i < pending.size()) {
+            c = pending.get(i);
+            if (isStale(c)) {
+                pending.remove(i);
+                queueLength.decrementAndGet();
+                logDroppedCompilation(c);
+                c.abandon();
+                continue;
+            }
+            int count = overflowCount(c);
+            // Strictly greater, so that the oldest of equally hot compilations is taken
+            if (count > hottestCount) {
+                hottest = i;
+                hottestCount = count;
+            }
+            i++;
+        }
+        if (hottest < 0) {
+            return null;
         }
+        queueLength.decrementAndGet();
+        return pending.remove(hottest);
+    }
+
+    /**
+     * Determines if a pending compilation is no longer needed, i.e. it was superseded by another compilation
+     * of the method or the method already has valid optimized code.
+     */
+    private static boolean isStale(Compilation c) {
+        ClassMethodActor cma = c.classMethodActor;
+        synchronized (cma) {
+            if (cma.compiledState != c) {
+                return true;
+            }
+            TargetMethod optimized = c.prevCompilations.optimized;
+            return optimized != null && optimized.invalidated() == null;
+        }
+    }
+
+    private static int overflowCount(Compilation c) {
+        TargetMethod baseline = c.prevCompilations.baseline;
+        MethodProfile mpo = baseline == null ? null : baseline.profile();
+        return mpo == null ? 0 : mpo.overflowCount;
     }
 
     /**
@@ -119,23 +226,34 @@ public class CompilationThreadPool {
          */
         void compileOne() throws InterruptedException {
             compilation = null;
-            synchronized (pending) {
-                while (compilation == null) {
-                    compilation = pending.poll();
-                    if (compilation == null) {
-                        pending.wait();
-                    }
+            while (compilation == null) {
+                available.acquire();
+                synchronized (pending) {
+                    compilation = takeHottest();
                 }
             }
             compilation.compilingThread = Thread.currentThread();
             if (GCOnRecompilation) {
                 System.gc();
             }
+            long start = System.nanoTime();
             TargetMethod tm = compilation.compile();
+            long time = System.nanoTime() - start;
+            // Updates by concurrent compilation threads may get lost, which is harmless for an estimate
+            averageCompileTime += (time - averageCompileTime) >> 3;
             VMTI.handler().methodCompiled(tm.classMethodActor);
         }
     }
 
+    private static void logDroppedCompilation(Compilation c) {
+        if (VMOptions.verboseOption.verboseCompilation) {
+            boolean lockDisabledSafepoints = Log.lock();
+            Log.printCurrentThread(false);
+            Log.println(": Dropped stale compilation of " + c.classMethodActor);
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+
     private void logCompilationError(ClassMethodActor cma, Throwable t) {
         if (VMOptions.verboseOption.verboseCompilation) {
             boolean lockDisabledSafepoints = Log.lock();
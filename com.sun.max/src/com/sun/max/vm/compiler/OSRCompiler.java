@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.compiler;
+
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.target.*;
+
+/**
+ * A compiler that can compile a method for on-stack replacement (OSR). Code compiled for OSR has an additional
+ * entry point at the head of a loop through which an activation of the method running in baseline code continues
+ * in the compiled code.
+ */
+public interface OSRCompiler {
+
+    /**
+     * Compiles a method for on-stack replacement at a given loop header. The OSR entry point of the compiled code
+     * is called with a pointer to a buffer holding the values of the local variables, one word per local variable
+     * index, as its only argument. The compiled code is installed in the code cache but does not replace the
+     * current compiled code of the method.
+     *
+     * @param classMethodActor the method to compile
+     * @param osrBCI the bytecode index of the loop header at which the compiled code is entered
+     * @return the compiled code or {@code null} if the method cannot be compiled for on-stack replacement at {@code osrBCI}
+     */
+    TargetMethod compileForOSR(ClassMethodActor classMethodActor, int osrBCI);
+}
@@ -22,6 +22,7 @@
 package com.sun.max.vm.compiler.deopt;
 
 import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
 import com.sun.max.Utils;
 import com.sun.max.annotate.*;
 import com.sun.max.lang.ISA;
@@ -30,25 +31,33 @@ import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.code.*;
+import com.sun.max.vm.compiler.RuntimeCompiler.Nature;
 import com.sun.max.vm.compiler.WordUtil;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.compiler.target.TargetMethod.FrameAccess;
 import com.sun.max.vm.compiler.target.amd64.AMD64TargetMethodUtil;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.intrinsics.*;
 import com.sun.max.vm.log.VMLog.Record;
 import com.sun.max.vm.log.hosted.*;
+import com.sun.max.vm.monitor.*;
+import com.sun.max.vm.object.*;
 import com.sun.max.vm.profile.MethodProfile;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.stack.*;
 import com.sun.max.vm.thread.VmThread;
+import com.sun.max.vm.type.Kind;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import static com.sun.max.platform.Platform.platform;
 import static com.sun.max.platform.Platform.target;
 import static com.sun.max.vm.MaxineVM.vm;
 import static com.sun.max.vm.compiler.CallEntryPoint.VTABLE_ENTRY_POINT;
 import static com.sun.max.vm.compiler.target.Stub.Type.*;
+import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.UNCOMMON_TRAP;
 import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.UNSAFE_CAST;
 import static com.sun.max.vm.stack.JVMSFrameLayout.JVMS_SLOT_SIZE;
 import static com.sun.max.vm.stack.VMFrameLayout.STACK_SLOT_SIZE;
@@ -745,6 +754,16 @@ public class Deoptimization extends VmOperation {
      *                    deoptimizing upon return)
      */
     public static void deoptimize(CodePointer ip, Pointer sp, Pointer fp, Pointer csa, CiCalleeSaveLayout csl, CiConstant returnValue) {
+        deoptimize(ip, sp, fp, csa, csl, returnValue, false);
+    }
+
+    /**
+     * Variant of {@link #deoptimize(CodePointer, Pointer, Pointer, Pointer, CiCalleeSaveLayout, CiConstant)} that is
+     * also told if the deoptimization is for an {@linkplain #uncommonTrap uncommon trap}. An uncommon trap guards
+     * the bytecode its frame state refers to, so that bytecode is re-executed in the deoptimized frame, unless it is the
+     * call to the {@link Infopoints#uncommonTrap()} intrinsic itself.
+     */
+    private static void deoptimize(CodePointer ip, Pointer sp, Pointer fp, Pointer csa, CiCalleeSaveLayout csl, CiConstant returnValue, boolean uncommonTrap) {
         assert sp.isAligned(target().stackAlignment) : sp.to0xHexString();
         SafepointPoll.disable();
         Info info = new Info(VmThread.current(), ip.toPointer(), sp, fp);
@@ -769,6 +788,7 @@ public class Deoptimization extends VmOperation {
         CiDebugInfo debugInfo = tm.debugInfoAt(safepointIndex, fa);
         CiFrame topFrame = debugInfo.frame();
         FatalError.check(topFrame != null, "No frame info found at deopt site: " + tm.posFor(ip));
+        materializeVirtualObjects(topFrame, new HashMap<Integer, Object>());
 
         Throwable pendingException = null;
         if (topFrame.rethrowException) {
@@ -826,6 +846,9 @@ public class Deoptimization extends VmOperation {
                         reexecute = true;
                     }
                 }
+                if (uncommonTrap && !isUncommonTrapIntrinsic(frame)) {
+                    reexecute = true;
+                }
             }
             cont = compiledMethod.createDeoptimizedFrame(info, frame, cont, pendingException, reexecute);
             // The exception (if any) must be handled in the top frame
@@ -881,6 +904,106 @@ public class Deoptimization extends VmOperation {
         FatalError.unexpected("should not reach here: unrolled deopt error");
     }
 
+    /**
+     * Allocates and initializes the objects whose allocation was removed by escape analysis and replaces their
+     * description in a frame and its callers by the allocated objects. The locks that were elided on such an object are
+     * re-acquired, starting with the outermost frame so that the locks are acquired in the order of the bytecode.
+     *
+     * @param frame the frame whose values are to be materialized, after the frames of its callers
+     * @param objects the objects already materialized, keyed by {@linkplain CiVirtualObject#id() id}
+     */
+    private static void materializeVirtualObjects(CiFrame frame, HashMap<Integer, Object> objects) {
+        if (frame.caller() != null) {
+            materializeVirtualObjects(frame.caller(), objects);
+        }
+        int firstLock = frame.numLocals + frame.numStack;
+        for (int i = 0; i < frame.values.length; i++) {
+            if (frame.values[i] instanceof CiVirtualObject) {
+                Object object = materialize((CiVirtualObject) frame.values[i], objects);
+                frame.values[i] = CiConstant.forObject(object);
+                if (i >= firstLock) {
+                    Monitor.enter(object);
+                }
+            }
+        }
+    }
+
+    /**
+     * Allocates and initializes the object described by a given {@link CiVirtualObject}, unless it was already.
+     * The values of an instance are ordered by the declared fields of its class and its superclasses, starting with
+     * {@link Object}.
+     */
+    private static Object materialize(CiVirtualObject vobj, HashMap<Integer, Object> objects) {
+        Object object = objects.get(vobj.id());
+        if (object != null) {
+            return object;
+        }
+        ClassActor classActor = (ClassActor) vobj.type();
+        CiValue[] values = vobj.values();
+        if (classActor.isArrayClass()) {
+            object = Heap.createArray(classActor.dynamicHub(), values.length);
+            objects.put(vobj.id(), object);
+            Kind kind = classActor.componentClassActor().kind;
+            for (int i = 0; i < values.length; i++) {
+                long bits = ((CiConstant) values[i]).asPrimitive();
+                // Checkstyle: stop
+                switch (kind.asEnum) {
+                    case BOOLEAN: ArrayAccess.setBoolean(object, i, bits != 0); break;
+                    case BYTE:    ArrayAccess.setByte(object, i, (byte) bits); break;
+                    case SHORT:   ArrayAccess.setShort(object, i, (short) bits); break;
+                    case CHAR:    ArrayAccess.setChar(object, i, (char) bits); break;
+                    case INT:     ArrayAccess.setInt(object, i, (int) bits); break;
+                    case FLOAT:   ArrayAccess.setFloat(object, i, Float.intBitsToFloat((int) bits)); break;
+                    case LONG:    ArrayAccess.setLong(object, i, bits); break;
+                    case DOUBLE:  ArrayAccess.setDouble(object, i, Double.longBitsToDouble(bits)); break;
+                    default:      throw FatalError.unexpected("Unexpected virtual array kind: " + kind);
+                }
+                // Checkstyle: resume
+            }
+            return object;
+        }
+
+        object = Heap.createTuple(classActor.dynamicHub());
+        objects.put(vobj.id(), object);
+        ArrayList<ClassActor> hierarchy = new ArrayList<ClassActor>();
+        for (ClassActor c = classActor; c != null; c = c.superClassActor) {
+            hierarchy.add(0, c);
+        }
+        int i = 0;
+        for (ClassActor c : hierarchy) {
+            for (RiResolvedField field : c.declaredFields()) {
+                FieldActor fieldActor = (FieldActor) field;
+                if (fieldActor.isStatic()) {
+                    continue;
+                }
+                CiValue value = values[i++];
+                if (fieldActor.kind.isReference) {
+                    Object fieldValue = ((CiConstant) value).asObject();
+                    if (fieldValue != null) {
+                        fieldActor.setObject(object, fieldValue);
+                    }
+                    continue;
+                }
+                long bits = ((CiConstant) value).asPrimitive();
+                // Checkstyle: stop
+                switch (fieldActor.kind.asEnum) {
+                    case BOOLEAN: fieldActor.setBoolean(object, bits != 0); break;
+                    case BYTE:    fieldActor.setByte(object, (byte) bits); break;
+                    case SHORT:   fieldActor.setShort(object, (short) bits); break;
+                    case CHAR:    fieldActor.setChar(object, (char) bits); break;
+                    case INT:     fieldActor.setInt(object, (int) bits); break;
+                    case FLOAT:   fieldActor.setFloat(object, Float.intBitsToFloat((int) bits)); break;
+                    case LONG:    fieldActor.setLong(object, bits); break;
+                    case DOUBLE:  fieldActor.setDouble(object, Double.longBitsToDouble(bits)); break;
+                    default:      throw FatalError.unexpected("Unexpected virtual field kind: " + fieldActor);
+                }
+                // Checkstyle: resume
+            }
+        }
+        assert i == values.length : "wrong number of values for " + vobj;
+        return object;
+    }
+
     /**
      * Finds the frame containing a handler for an exception thrown at the current BCI or
      * of a synchronized method (so that an extra exception handler exists in order to exit a monitor).
@@ -946,7 +1069,53 @@ public class Deoptimization extends VmOperation {
      */
     public static void uncommonTrap(Pointer csa, Pointer ip, Pointer sp, Pointer fp) {
         FatalError.check(!csa.isZero(), "callee save area expected for uncommon trap");
-        deoptimize(CodePointer.from(ip), sp, fp, csa, vm().registerConfigs.uncommonTrapStub.getCalleeSaveLayout(), null);
+        invalidateAtUncommonTrap(CodePointer.from(ip));
+        deoptimize(CodePointer.from(ip), sp, fp, csa, vm().registerConfigs.uncommonTrapStub.getCalleeSaveLayout(), null, true);
+    }
+
+    /**
+     * Invalidates an optimized method that hit an uncommon trap guarding a speculation, so that the trap is not hit
+     * over and over again. The trap is recorded in the {@linkplain MethodProfile#uncommonTrapCount profile} of the
+     * method whose bytecode is guarded by the trap, which stops the optimizing compiler from speculating on that
+     * profile when the method is recompiled. Methods in the boot code region and explicit uses of the
+     * {@link Infopoints#uncommonTrap()} intrinsic are left alone.
+     *
+     * @param ip the address of the uncommon trap
+     */
+    private static void invalidateAtUncommonTrap(CodePointer ip) {
+        if (!UseDeopt) {
+            return;
+        }
+        TargetMethod tm = ip.toTargetMethod();
+        if (tm == null || tm.invalidated() != null || tm.isInBootCodeRegion()) {
+            return;
+        }
+        int safepointIndex = tm.findSafepointIndex(ip);
+        if (safepointIndex < 0) {
+            return;
+        }
+        CiFrame topFrame = tm.debugInfoAt(safepointIndex, null).frame();
+        if (topFrame == null || isUncommonTrapIntrinsic(topFrame)) {
+            return;
+        }
+        TargetMethod baseline = Compilations.currentTargetMethod(((ClassMethodActor) topFrame.method).compiledState, Nature.BASELINE);
+        if (baseline != null && baseline.profile() != null) {
+            baseline.profile().uncommonTrapCount++;
+        }
+        if (deoptLogger.enabled()) {
+            deoptLogger.logDoIt("invalidating at uncommon trap ", tm, false);
+        }
+        ArrayList<TargetMethod> methods = new ArrayList<TargetMethod>(1);
+        methods.add(tm);
+        new Deoptimization(methods).go();
+    }
+
+    /**
+     * Determines if a frame denotes a call to the {@link Infopoints#uncommonTrap()} intrinsic.
+     */
+    private static boolean isUncommonTrapIntrinsic(CiFrame frame) {
+        RiMethod callee = ((ClassMethodActor) frame.method).codeAttribute().calleeAt(frame.bci);
+        return callee instanceof MethodActor && UNCOMMON_TRAP.equals(((MethodActor) callee).intrinsic());
     }
 
     @NEVER_INLINE // makes inspecting easier
@@ -118,6 +118,12 @@ public class Compilation {
 
     public final RuntimeCompiler.Nature nature;
 
+    /**
+     * The {@linkplain System#nanoTime() time} this compilation was added to the background compilation queue,
+     * or {@code 0} if it is not compiled in the background.
+     */
+    public long queuedTime;
+
     public Compilation(RuntimeCompiler compiler,
                        ClassMethodActor classMethodActor,
                        Compilations prevCompilations,
@@ -292,10 +298,14 @@ public class Compilation {
 
             startCompilationMetricsCollection();
 
+            long startTime = CompilationEventLog.isEnabled() ? System.nanoTime() : 0L;
             result = compiler.compile(classMethodActor, isDeopt, true, null);
             if (result == null) {
                 throw new InternalError(classMethodActor.format("Result of compiling of %H.%n(%p) is null"));
             }
+            if (startTime != 0L) {
+                CompilationEventLog.compiled(this, startTime, System.nanoTime());
+            }
 
             InspectableCompilationInfo.notifyCompilationEvent(result.classMethodActor, result);
 
@@ -344,6 +354,23 @@ public class Compilation {
         return result;
     }
 
+    /**
+     * Abandons this compilation without running the compiler, e.g. because the method was compiled
+     * by another compilation in the meantime. The compiled state of the method reverts to the previous
+     * compilations if it still denotes this compilation, and any thread waiting for this compilation gets
+     * the current target method of the method.
+     */
+    public void abandon() {
+        synchronized (classMethodActor) {
+            if (classMethodActor.compiledState == this) {
+                classMethodActor.compiledState = prevCompilations;
+            }
+            result = Compilations.currentTargetMethod(classMethodActor.compiledState, null);
+            done = true;
+            classMethodActor.notifyAll();
+        }
+    }
+
     /**
      * Allows a thread to relinquish ownership of a compilation
      * if another thread is to compile it.
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.compiler.target;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+
+/**
+ * The inline cache of an {@code invokeinterface} call site in optimized code.
+ * <p>
+ * Selecting the implementation of an interface method through the itable of the receiver's hub requires hashing the
+ * interface ID into the hub's mtable, which costs an integer division on every call. The cache instead remembers,
+ * for the receiver hubs seen at the call site, the index of the selected implementation in the hub's dispatch tables.
+ * The dispatch code emitted for the call site compares the receiver's hub against the {@linkplain #first most recently
+ * added} entry inline, then against the other entries out of line, and only calls into the runtime
+ * {@linkplain #miss(Hub) on a miss}.
+ * <p>
+ * A call site starts out empty, becomes monomorphic with its first receiver hub and polymorphic as more receiver hubs
+ * are seen. Once the number of receiver hubs exceeds {@code -XX:InterfaceCallCacheSize}, the call site is
+ * {@linkplain #megamorphic megamorphic} and dispatches through the itable without calling into the runtime again.
+ * <p>
+ * Entries are immutable and are only ever published by replacing {@link #first}, so racing updates can at worst lose
+ * an entry, which is simply re-added on the next miss. Caching the table index rather than the entry point keeps the
+ * cache valid when the selected method is recompiled or deoptimized, as the dispatch tables are always kept up to date.
+ */
+public final class InterfaceCallCache {
+
+    public static boolean UseInterfaceCallCaches = true;
+    static int InterfaceCallCacheSize = 4;
+    static {
+        addFieldOption("-XX:", "UseInterfaceCallCaches", InterfaceCallCache.class,
+            "Use inline caches for interface calls in optimized code.", MaxineVM.Phase.PRISTINE);
+        addFieldOption("-XX:", "InterfaceCallCacheSize", InterfaceCallCache.class,
+            "Maximum number of receiver types cached at an interface call site before it is megamorphic (Default: 4)", MaxineVM.Phase.PRISTINE);
+    }
+
+    /**
+     * An entry of an interface call cache, mapping a receiver hub to the word index of the selected method's entry
+     * point in the hub.
+     */
+    public static final class Entry {
+        public final Hub hub;
+        public final int index;
+        public final Entry next;
+
+        Entry(Hub hub, int index, Entry next) {
+            this.hub = hub;
+            this.index = index;
+            this.next = next;
+        }
+    }
+
+    /**
+     * The entry of empty and megamorphic caches. Its hub never matches a receiver hub.
+     */
+    private static final Entry NO_ENTRY = new Entry(null, -1, null);
+
+    /**
+     * The interface method invoked at the call site.
+     */
+    public final InterfaceMethodActor interfaceMethod;
+
+    /**
+     * The most recently added entry, which is the one checked inline at the call site.
+     */
+    public volatile Entry first = NO_ENTRY;
+
+    /**
+     * Non-zero once the call site is megamorphic.
+     */
+    public volatile int megamorphic;
+
+    public InterfaceCallCache(InterfaceMethodActor interfaceMethod) {
+        this.interfaceMethod = interfaceMethod;
+    }
+
+    /**
+     * Handles a miss in the cache by selecting the implementation of the interface method for the given receiver hub and
+     * adding it to the cache, unless the call site is or thereby becomes megamorphic.
+     *
+     * @param hub the hub of the receiver
+     * @return the word index in {@code hub} of the entry point of the selected method
+     */
+    public int miss(Hub hub) {
+        final int index = hub.getITableIndex(interfaceMethod.holder().id) + interfaceMethod.iIndexInInterface();
+        if (megamorphic != 0) {
+            return index;
+        }
+        final Entry current = first;
+        int length = 0;
+        for (Entry e = current; e != null && e != NO_ENTRY; e = e.next) {
+            if (e.hub == hub) {
+                // Raced with another thread adding the same hub
+                return index;
+            }
+            length++;
+        }
+        if (length >= InterfaceCallCacheSize) {
+            megamorphic = 1;
+            first = NO_ENTRY;
+        } else {
+            first = new Entry(hub, index, current == NO_ENTRY ? null : current);
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "InterfaceCallCache[" + interfaceMethod + "]";
+    }
+}
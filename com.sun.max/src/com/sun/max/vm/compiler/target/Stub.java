@@ -118,7 +118,14 @@ public final class Stub extends TargetMethod {
         /**
          * A stub to execute method handle intrinsic invokeBasic methods.
          */
-        InvokeBasic
+        InvokeBasic,
+
+        /**
+         * Transition from the runtime into the OSR entry point of a method compiled for on-stack replacement.
+         *
+         * @see Stubs#osrInvoke(Address, Pointer)
+         */
+        OSRInvokeStub
     }
 
     @HOSTED_ONLY
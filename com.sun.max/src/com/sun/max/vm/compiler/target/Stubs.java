@@ -292,6 +292,20 @@ public class Stubs {
                     } catch (NoSuchMethodError e) {
                         // No unwind method for this kind
                     }
+
+                    if (platform().isa == ISA.AMD64) {
+                        name = "osrInvoke";
+                        if (!kind.isVoid()) {
+                            name = name + kind.name();
+                        }
+                        try {
+                            CriticalMethod osrInvoke = new CriticalMethod(Stubs.class, name, null);
+                            CiValue[] osrInvokeArgs = registerConfigs.standard.getCallingConvention(JavaCall, CiUtil.signatureToKinds(osrInvoke.classMethodActor), target(), false).locations;
+                            osrInvoke.classMethodActor.compiledState = new Compilations(null, genOSRInvoke(osrInvokeArgs, kind));
+                        } catch (NoSuchMethodError e) {
+                            // No OSR invoke method for this kind
+                        }
+                    }
                 }
             }
         }
@@ -1456,6 +1470,85 @@ public class Stubs {
         FatalError.unexpected("stub should be overwritten");
     }
 
+    /**
+     * Calls the OSR entry point of a method compiled for on-stack replacement. The OSR entry point is called with
+     * {@code osrBuffer} as its only argument and the value it returns is passed through to the caller of this method.
+     * Exceptions thrown by the OSR code also pass through the stub to the caller of this method.
+     * <p/>
+     * The variants of this method further below return the value returned by the OSR code.
+     *
+     * @param osrEntry the OSR entry point
+     * @param osrBuffer the buffer holding the values of the local variables
+     */
+    @NEVER_INLINE
+    public static void osrInvoke(Address osrEntry, Pointer osrBuffer) {
+        // This is a placeholder method so that the OSR invoke stub (which is generated by genOSRInvoke)
+        // can be called via a normal method call.
+        FatalError.unexpected("stub should be overwritten");
+    }
+
+    @NEVER_INLINE
+    public static Object osrInvokeObject(Address osrEntry, Pointer osrBuffer) {
+        throw FatalError.unexpected("stub should be overwritten");
+    }
+
+    @NEVER_INLINE
+    public static int osrInvokeInt(Address osrEntry, Pointer osrBuffer) {
+        throw FatalError.unexpected("stub should be overwritten");
+    }
+
+    @NEVER_INLINE
+    public static long osrInvokeLong(Address osrEntry, Pointer osrBuffer) {
+        throw FatalError.unexpected("stub should be overwritten");
+    }
+
+    @NEVER_INLINE
+    public static float osrInvokeFloat(Address osrEntry, Pointer osrBuffer) {
+        throw FatalError.unexpected("stub should be overwritten");
+    }
+
+    @NEVER_INLINE
+    public static double osrInvokeDouble(Address osrEntry, Pointer osrBuffer) {
+        throw FatalError.unexpected("stub should be overwritten");
+    }
+
+    /**
+     * Generates the stub for one of the {@link #osrInvoke(Address, Pointer)} methods. The stub has a frame of its
+     * own so that the OSR code sees a properly aligned stack, and it leaves the return value registers untouched.
+     */
+    @HOSTED_ONLY
+    private Stub genOSRInvoke(CiValue[] osrInvokeArgs, CiKind kind) {
+        if (platform().isa == ISA.AMD64) {
+            CiRegisterConfig registerConfig = MaxineVM.vm().stubs.registerConfigs.standard;
+            AMD64MacroAssembler asm = new AMD64MacroAssembler(target(), registerConfig);
+            int frameSize = platform().target.alignFrameSize(0);
+
+            for (int i = 0; i < prologueSize; ++i) {
+                asm.nop();
+            }
+
+            CiValue[] args = osrInvokeArgs;
+            assert args.length == 2;
+
+            CiRegister osrEntry = args[0].asRegister();
+            CiRegister osrBuffer = args[1].asRegister();
+            CiRegister scratch = registerConfig.getScratchRegister();
+
+            asm.subq(AMD64.rsp, frameSize);
+            asm.movq(scratch, osrEntry);
+            asm.movq(osrEntry, osrBuffer);
+            asm.call(scratch);
+            asm.addq(AMD64.rsp, frameSize);
+            asm.ret(0);
+
+            String name = kind.isVoid() ? "osrInvokeStub" : "osrInvoke" + kind.name() + "Stub";
+            byte[] code = asm.codeBuffer.close(true);
+            return new Stub(OSRInvokeStub, name, frameSize, code, -1, -1, null, -1);
+        } else {
+            throw FatalError.unimplemented("com.sun.max.vm.compiler.target.Stubs.genOSRInvoke");
+        }
+    }
+
     @HOSTED_ONLY
     private Stub genUnwind(CiValue[] unwindArgs) {
         if (platform().isa == ISA.AMD64) {
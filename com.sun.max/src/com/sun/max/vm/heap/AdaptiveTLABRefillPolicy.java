@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+
+/**
+ * A per-thread TLAB refill policy that resizes the thread's TLAB at every TLAB reset (i.e., at every GC) based on the thread's allocation
+ * since the previous reset. The policy keeps a weighted average of the TLAB space used by the thread between two resets, and sizes the
+ * TLAB so that the thread is expected to refill it {@code -XX:TLABTargetRefills} times before the next reset.
+ * Allocation-heavy threads thus get larger TLABs and take the allocation slow path less often, whereas mostly idle threads get smaller TLABs
+ * and waste less heap space.
+ * TLAB sizes are bounded by {@code -XX:MinTLABSize} and {@code -XX:MaxTLABSize}.
+ */
+public final class AdaptiveTLABRefillPolicy extends SimpleTLABRefillPolicy {
+    static int TLABTargetRefills = 50;
+    static int TLABAllocationWeight = 35;
+    static {
+        VMOptions.addFieldOption("-XX:", "TLABTargetRefills", AdaptiveTLABRefillPolicy.class,
+                        "Number of TLAB refills a thread is expected to do between two GCs when TLABs are resized (Default: 50)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TLABAllocationWeight", AdaptiveTLABRefillPolicy.class,
+                        "Weight in percent of the last GC cycle in the average allocation of a thread when TLABs are resized (Default: 35)", Phase.PRISTINE);
+    }
+
+    private static final VMSizeOption minTLABSizeOption = register(new VMSizeOption("-XX:MinTLABSize=", Size.K.times(2),
+        "Minimum size of thread-local allocation buffers when TLABs are resized."), MaxineVM.Phase.PRISTINE);
+
+    private static final VMSizeOption maxTLABSizeOption = register(new VMSizeOption("-XX:MaxTLABSize=", Size.M.times(1),
+        "Maximum size of thread-local allocation buffers when TLABs are resized."), MaxineVM.Phase.PRISTINE);
+
+    private static Size minTLABSize;
+    private static Size maxTLABSize;
+
+    /*
+     * Statistics over all threads, for -XX:+PrintTLABStats. Updated at TLAB reset without synchronization,
+     * as for the other TLAB statistics.
+     */
+    private static long resizeCount;
+    private static long growCount;
+    private static long totalWaste;
+    private static long totalRefills;
+
+    /**
+     * Space of the TLABs the thread was handed since the last reset.
+     */
+    private long allocated;
+
+    /**
+     * Space left unused in the thread's TLABs at refill since the last reset.
+     */
+    private long wasted;
+
+    /**
+     * Number of refills of the thread's TLAB since the last reset.
+     */
+    private int refills;
+
+    /**
+     * Weighted average of the TLAB space used by the thread between two resets.
+     */
+    private long averageUsed;
+
+    /**
+     * Check the options controlling TLAB resizing and clamp the initial TLAB size to the TLAB size bounds.
+     * Must be called at VM startup, before any refill policy is created.
+     * @param initialTlabSize the TLAB size threads start with
+     * @return the initial TLAB size clamped to the TLAB size bounds
+     */
+    static Size initialize(Size initialTlabSize) {
+        minTLABSize = minTLABSizeOption.getValue().alignUp(Word.size());
+        maxTLABSize = maxTLABSizeOption.getValue().alignUp(Word.size());
+        if (minTLABSize.greaterThan(maxTLABSize)) {
+            Log.println("-XX:MinTLABSize must not be larger than -XX:MaxTLABSize");
+            MaxineVM.native_exit(1);
+        }
+        if (TLABTargetRefills <= 0) {
+            Log.println("-XX:TLABTargetRefills must be positive");
+            MaxineVM.native_exit(1);
+        }
+        if (TLABAllocationWeight <= 0 || TLABAllocationWeight > 100) {
+            Log.println("-XX:TLABAllocationWeight must be between 1 and 100");
+            MaxineVM.native_exit(1);
+        }
+        return clamp(initialTlabSize);
+    }
+
+    static Size maxTLABSize() {
+        return maxTLABSize;
+    }
+
+    /**
+     * Lower the bounds of TLAB sizes so that TLABs never exceed the specified size.
+     */
+    static void limitTLABSize(Size size) {
+        if (maxTLABSize.greaterThan(size)) {
+            maxTLABSize = size;
+            if (minTLABSize.greaterThan(size)) {
+                minTLABSize = size;
+            }
+        }
+    }
+
+    private static Size clamp(Size size) {
+        if (size.lessThan(minTLABSize)) {
+            return minTLABSize;
+        }
+        if (size.greaterThan(maxTLABSize)) {
+            return maxTLABSize;
+        }
+        return size.alignUp(Word.size());
+    }
+
+    /**
+     * Creates a refill policy for a thread whose first TLAB was just filled with the specified size.
+     * @param initialTLABSize size of the thread's first TLAB
+     */
+    public AdaptiveTLABRefillPolicy(Size initialTLABSize) {
+        super(initialTLABSize);
+        // Start as if the thread had always been allocating at the rate the initial TLAB size was chosen for.
+        averageUsed = initialTLABSize.toLong() * TLABTargetRefills;
+        // Account for the initial fill, which occurred before the policy was created.
+        allocated = initialTLABSize.toLong();
+        refills = 1;
+    }
+
+    @Override
+    public void notifyRefill(Size leftover) {
+        allocated += nextTlabSize().toLong();
+        wasted += leftover.toLong();
+        refills++;
+    }
+
+    @Override
+    public void notifyReset(Size leftover) {
+        final long used = allocated - wasted - leftover.toLong();
+        averageUsed = (TLABAllocationWeight * (used > 0L ? used : 0L) + (100 - TLABAllocationWeight) * averageUsed) / 100;
+        final Size oldSize = nextTlabSize();
+        final Size newSize = clamp(Size.fromLong(averageUsed / TLABTargetRefills));
+        if (!newSize.equals(oldSize)) {
+            setNextTlabSize(newSize);
+            resizeCount++;
+            if (newSize.greaterThan(oldSize)) {
+                growCount++;
+            }
+        }
+        totalWaste += wasted;
+        totalRefills += refills;
+        allocated = 0L;
+        wasted = 0L;
+        refills = 0;
+    }
+
+    static void printStats() {
+        Log.print("   tlab refill count (resized TLABs) : ");
+        Log.println(totalRefills);
+        Log.print("   tlab resize count                 : ");
+        Log.print(resizeCount);
+        Log.print(" (");
+        Log.print(growCount);
+        Log.println(" grown)");
+        Log.print("   waste at refill (resized TLABs)   : ");
+        Log.print(Size.fromLong(totalWaste).unsignedShiftedRight(10).toLong());
+        Log.println(" K");
+    }
+}
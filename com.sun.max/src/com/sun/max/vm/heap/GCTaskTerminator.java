@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Termination protocol for parallel GC tasks whose workers balance load by stealing work from each other.
+ * A worker that runs out of work offers termination; the task terminates when all its workers have offered termination.
+ * A worker that observes that work is available while waiting for termination withdraws its offer and resumes work.
+ */
+public final class GCTaskTerminator {
+
+    /**
+     * Interface to the work queues of the workers of a parallel task.
+     */
+    public interface WorkSource {
+        /**
+         * Indicates whether some work may be obtained (e.g., stolen) from another worker.
+         */
+        boolean hasWork();
+    }
+
+    /**
+     * Number of spinning iterations before a worker waiting for termination yields its processor.
+     */
+    private static final int SPINS_BEFORE_YIELD = 256;
+
+    /**
+     * Number of workers taking part in the current task.
+     */
+    private int numWorkers;
+
+    /**
+     * Number of workers that have offered termination.
+     */
+    private volatile int offeredTermination;
+
+    @FOLD
+    private static int offeredTerminationOffset() {
+        return ClassActor.fromJava(GCTaskTerminator.class).findLocalInstanceFieldActor("offeredTermination").offset();
+    }
+
+    /**
+     * Resets the terminator for a new task. Must be called before the workers of the task are started.
+     *
+     * @param numWorkers number of workers taking part in the task
+     */
+    public void reset(int numWorkers) {
+        this.numWorkers = numWorkers;
+        offeredTermination = 0;
+    }
+
+    private void addToOfferedTermination(int delta) {
+        final Reference reference = Reference.fromJava(this);
+        int offered;
+        do {
+            offered = offeredTermination;
+        } while (reference.compareAndSwapInt(offeredTerminationOffset(), offered, offered + delta) != offered);
+    }
+
+    /**
+     * Offers termination on behalf of a worker that has run out of work.
+     *
+     * @param workSource interface to the work queues of the workers of the task
+     * @return true if all the workers of the task have terminated, false if work became available and the caller must resume working
+     */
+    public boolean offerTermination(WorkSource workSource) {
+        if (numWorkers == 1) {
+            return true;
+        }
+        addToOfferedTermination(1);
+        int spins = 0;
+        while (true) {
+            if (offeredTermination == numWorkers) {
+                return true;
+            }
+            if (workSource.hasWork()) {
+                // No worker can have work to share once all have offered termination, so withdrawing the offer here is safe.
+                addToOfferedTermination(-1);
+                return false;
+            }
+            if (++spins < SPINS_BEFORE_YIELD) {
+                Intrinsics.pause();
+            } else {
+                spins = 0;
+                Thread.yield();
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.monitor.modal.sync.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * A pool of GC worker threads used by heap schemes to run parallel phases of a garbage collection.
+ * The pool comprises {@link #ParallelGCThreads} workers: the thread requesting the execution of a {@link Task}
+ * (typically, the {@link VmOperationThread} running a {@link GCOperation}) acts as worker 0, and
+ * {@code ParallelGCThreads - 1} daemon threads, started during the {@link MaxineVM.Phase#STARTING} phase, act as the others.
+ *
+ * GC worker threads are system threads: they are created in immortal memory, are never frozen by
+ * {@link VmOperation}s, are not visible to Java code, and run with heap allocation disabled.
+ * Their stacks are not scanned for roots, so a task must not hold references to movable objects in local variables
+ * across the boundaries of a parallel phase.
+ *
+ * When {@link #ParallelGCThreads} is 1 (the default), or before the worker threads are started, tasks are run
+ * by the requesting thread alone.
+ */
+public final class GCThreadPool {
+
+    /**
+     * Number of threads taking part in parallel GC phases, including the thread requesting the GC work.
+     */
+    private static int ParallelGCThreads = 1;
+
+    static {
+        addFieldOption("-XX:", "ParallelGCThreads", GCThreadPool.class,
+            "Number of threads used by parallel phases of the garbage collector (Default: 1, i.e., no parallelism).", MaxineVM.Phase.PRISTINE);
+    }
+
+    /**
+     * A unit of parallel GC work. The {@link #run(int)} method is invoked concurrently by every worker of the pool.
+     */
+    public abstract static class Task {
+        /**
+         * Performs the share of the task's work of a given worker.
+         *
+         * @param workerId index of the worker running the task, between 0 and {@link GCThreadPool#activeWorkers()} - 1.
+         */
+        public abstract void run(int workerId);
+    }
+
+    /**
+     * The daemon threads of the pool.
+     */
+    public final class GCThread extends Thread {
+        final int workerId;
+
+        GCThread(int workerId) {
+            super("GC-worker-" + workerId);
+            this.workerId = workerId;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Heap.disableAllocationForCurrentThread();
+            workerLoop(workerId);
+        }
+    }
+
+    private final Mutex mutex = MutexFactory.create();
+    private final ConditionVariable workAvailable = ConditionVariableFactory.create();
+    private final ConditionVariable workDone = ConditionVariableFactory.create();
+
+    private GCThread[] threads;
+
+    /**
+     * Number of workers of the pool, including the requesting thread.
+     */
+    private int maxWorkers = 1;
+
+    /**
+     * Indicates whether all the worker threads of the pool were started.
+     */
+    private boolean started;
+
+    /**
+     * Task currently run by the pool. Only modified while holding {@link #mutex}.
+     */
+    private Task currentTask;
+
+    /**
+     * Incremented each time a new task is published to the worker threads.
+     */
+    private int epoch;
+
+    /**
+     * Number of worker threads that haven't completed the current task yet.
+     */
+    private int busyWorkers;
+
+    @HOSTED_ONLY
+    public GCThreadPool() {
+    }
+
+    public void initialize(MaxineVM.Phase phase) {
+        if (phase == MaxineVM.Phase.PRISTINE) {
+            if (ParallelGCThreads < 1) {
+                Log.println("-XX:ParallelGCThreads must be at least 1");
+                MaxineVM.native_exit(1);
+            }
+            maxWorkers = ParallelGCThreads;
+        } else if (phase == MaxineVM.Phase.STARTING && maxWorkers > 1) {
+            mutex.init();
+            workAvailable.init();
+            workDone.init();
+            // The worker threads live in immortal memory so that GC never needs to trace (or move) them,
+            // nor their VmThread.
+            final VmThread[] vmThreads;
+            Heap.enableImmortalMemoryAllocation();
+            try {
+                threads = new GCThread[maxWorkers - 1];
+                vmThreads = new VmThread[threads.length];
+                for (int i = 0; i < threads.length; i++) {
+                    threads[i] = new GCThread(i + 1);
+                    // A VmThread is only bound to its Thread when started, so it is created here explicitly
+                    // to be marked as a GC thread before it runs.
+                    vmThreads[i] = VmThreadFactory.create(threads[i]);
+                    vmThreads[i].setAsGCThread();
+                }
+            } finally {
+                Heap.disableImmortalMemoryAllocation();
+            }
+            // Calling VmThread.start0 instead of Thread.start keeps the workers out of any thread group.
+            for (VmThread vmThread : vmThreads) {
+                vmThread.start0();
+            }
+            started = true;
+        }
+    }
+
+    /**
+     * Maximum number of workers that may take part in the execution of a task.
+     * Per-worker data structures of parallel tasks should be sized after this value.
+     */
+    public int maxWorkers() {
+        return maxWorkers;
+    }
+
+    /**
+     * Number of workers that take part in the execution of the next task.
+     * This is 1 until the worker threads are started.
+     */
+    public int activeWorkers() {
+        return started ? maxWorkers : 1;
+    }
+
+    /**
+     * Indicates whether the pool was configured to run tasks with more than one worker.
+     */
+    public boolean isParallel() {
+        return maxWorkers > 1;
+    }
+
+    /**
+     * Runs a task on all the workers of the pool and waits for its completion.
+     * The calling thread acts as worker 0. If the worker threads aren't started yet, the calling thread
+     * is the only worker running the task.
+     *
+     * @param task the task to run
+     */
+    public void run(Task task) {
+        if (!started) {
+            task.run(0);
+            return;
+        }
+        mutex.lock();
+        currentTask = task;
+        busyWorkers = threads.length;
+        epoch++;
+        workAvailable.threadNotify(true);
+        mutex.unlock();
+
+        task.run(0);
+
+        mutex.lock();
+        while (busyWorkers > 0) {
+            workDone.threadWait(mutex, 0);
+        }
+        currentTask = null;
+        mutex.unlock();
+    }
+
+    private void workerLoop(int workerId) {
+        int lastEpoch = 0;
+        while (true) {
+            mutex.lock();
+            while (epoch == lastEpoch) {
+                workAvailable.threadWait(mutex, 0);
+            }
+            lastEpoch = epoch;
+            final Task task = currentTask;
+            mutex.unlock();
+
+            try {
+                task.run(workerId);
+            } catch (Throwable t) {
+                FatalError.unexpected("Unexpected exception in GC worker thread", t);
+            }
+
+            mutex.lock();
+            if (--busyWorkers == 0) {
+                workDone.threadNotify(false);
+            }
+            mutex.unlock();
+        }
+    }
+}
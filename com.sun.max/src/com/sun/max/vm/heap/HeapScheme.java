@@ -328,6 +328,15 @@ public interface HeapScheme extends VMScheme {
 
     void postWriteBarrier(Reference ref,  int displacement, int index, Reference value);
 
+    /**
+     * Notifies the heap scheme that a mutator read the referent of a {@link java.lang.ref.Reference}.
+     * Heap schemes that mark the heap concurrently with mutators must keep the referent alive for the current marking cycle,
+     * since the mutator may store it in an object already traced.
+     *
+     * @param referent the non-null referent
+     */
+    void referentReadBarrier(Object referent);
+
     enum PIN_SUPPORT_FLAG {
         /**
          * Just to indicate that the pin support flag has been initialized (makes the pinningSupportFlags treated as constant when not zero).
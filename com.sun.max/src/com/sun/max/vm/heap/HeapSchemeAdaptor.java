@@ -319,6 +319,10 @@ public abstract class HeapSchemeAdaptor extends AbstractVMScheme implements Heap
     public void postWriteBarrier(Reference ref,  int displacement, int index, Reference value) {
         // do nothing
     }
+    @INLINE
+    public void referentReadBarrier(Object referent) {
+        // do nothing
+    }
 
     public boolean isPinned(Object object) {
         FatalError.check(supportsPinning(PIN_SUPPORT_FLAG.IS_QUERYABLE), "Object pinning support doesn't support querying");
@@ -394,9 +398,9 @@ public abstract class HeapSchemeAdaptor extends AbstractVMScheme implements Heap
     }
 
     public boolean isGcThread(Thread thread) {
-        // Adaptor assume single-threaded GC operating on the VmOperationThread.
+        // Adaptor assume GC operating on the VmOperationThread, possibly helped by the threads of a GCThreadPool.
         // Override if not true.
-        return thread instanceof VmOperationThread;
+        return thread instanceof VmOperationThread || thread instanceof GCThreadPool.GCThread;
     }
 
 }
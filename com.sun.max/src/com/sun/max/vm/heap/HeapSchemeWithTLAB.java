@@ -102,6 +102,14 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         VMOptions.addFieldOption("-XX:", "UseTLAB", HeapSchemeWithTLAB.class, "Use thread-local object allocation", MaxineVM.Phase.PRISTINE);
     }
 
+    /**
+     * A VM option for enabling per-thread resizing of TLABs based on threads' allocation (see {@link AdaptiveTLABRefillPolicy}).
+     */
+    private static boolean ResizeTLAB = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "ResizeTLAB", HeapSchemeWithTLAB.class, "Dynamically resize each thread's TLAB based on its allocation rate", MaxineVM.Phase.PRISTINE);
+    }
+
     /**
      * A VM option for specifying the size of a TLAB. Default is 64 K.
      */
@@ -153,6 +161,17 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
      */
     public static class ResetTLAB implements Pointer.Procedure {
 
+        private static void notifyReset(Pointer etla, Size leftover) {
+            final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
+            if (refillPolicy != null) {
+                final Size tlabSize = refillPolicy.nextTlabSize();
+                refillPolicy.notifyReset(leftover);
+                if (logTLAB() && !tlabSize.equals(refillPolicy.nextTlabSize())) {
+                    logger.logResize(UnsafeCast.asVmThread(VM_THREAD.loadRef(etla).toJava()), tlabSize.toInt(), refillPolicy.nextTlabSize().toInt());
+                }
+            }
+        }
+
         protected void doBeforeReset(Pointer etla, Pointer tlabMark, Pointer tlabTop) {
             // Default is nothing.
         }
@@ -168,7 +187,8 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
                 // TLAB's top can be null in only two cases:
                 // (1) it has never been filled, in which case it's allocation mark is null too
                 if (tlabMark.equals(Address.zero()))  {
-                    // No TLABs, so nothing to reset.
+                    // No TLABs, so nothing to reset. The refill policy may still want to adapt to the thread's allocation.
+                    notifyReset(etla, Size.zero());
                     return;
                 }
                 // (2) allocation has been disabled for the thread.
@@ -181,6 +201,7 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
                     refillPolicy.saveTlabTop(Address.zero());
                 }
             }
+            notifyReset(etla, tlabTop.greaterThan(tlabMark) ? tlabTop.minus(tlabMark).asSize() : Size.zero());
             doBeforeReset(etla, tlabMark, tlabTop);
             TLAB_TOP.store(etla, Address.zero());
             TLAB_MARK.store(etla, Address.zero());
@@ -239,6 +260,11 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
          */
         volatile long tlabOverflowCount = 0L;
 
+        /**
+         * Count TLAB refills, including initial fills.
+         */
+        volatile long refillCount = 0L;
+
         /**
          * Leftover after refill.
          */
@@ -252,6 +278,8 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             Log.println(runtimeSlowPathAllocateCount);
             Log.print("   tlab overflow count               :");
             Log.println(tlabOverflowCount);
+            Log.print("   tlab refill count                 :");
+            Log.println(refillCount);
             Log.print("   leftover at TLAB refill           :");
             if (leftover > Size.K.toLong()) {
                 Log.print(Size.K.plus(leftover).unsignedShiftedRight(10).toLong());
@@ -282,11 +310,17 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             if (initialTlabSize.lessThan(0)) {
                 FatalError.unexpected("Specified TLAB size is too small");
             }
+            if (ResizeTLAB) {
+                initialTlabSize = AdaptiveTLABRefillPolicy.initialize(initialTlabSize);
+            }
         } else if (phase == MaxineVM.Phase.RUNNING) {
             HeapSchemeWithTLAB.setTraceTLAB(false);
         } else if (phase == MaxineVM.Phase.TERMINATING) {
             if (PrintTLABStats) {
                 globalTlabStats.printTLABStats();
+                if (ResizeTLAB) {
+                    AdaptiveTLABRefillPolicy.printStats();
+                }
             }
         }
     }
@@ -357,8 +391,29 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         return initialTlabSize;
     }
 
+    /**
+     * Size no TLAB may exceed.
+     */
+    public Size maxTlabSize() {
+        return ResizeTLAB ? AdaptiveTLABRefillPolicy.maxTLABSize() : initialTlabSize;
+    }
+
     protected void setInitialTlabSize(Size size) {
         initialTlabSize = size;
+        if (ResizeTLAB) {
+            // The heap scheme cannot accommodate larger TLABs.
+            AdaptiveTLABRefillPolicy.limitTLABSize(size);
+        }
+    }
+
+    /**
+     * Create the refill policy of a thread whose TLAB was just filled for the first time.
+     * Heap schemes must associate the policy with the thread (see {@link TLABRefillPolicy#setForCurrentThread(Pointer, TLABRefillPolicy)}).
+     * @param tlabSize size of the thread's first TLAB
+     * @return a new TLAB refill policy
+     */
+    protected final TLABRefillPolicy newTLABRefillPolicy(Size tlabSize) {
+        return ResizeTLAB ? new AdaptiveTLABRefillPolicy(tlabSize) : new SimpleTLABRefillPolicy(tlabSize);
     }
 
     public void refillTLAB(Pointer tlab, Size size) {
@@ -379,14 +434,24 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
     public void refillTLAB(Pointer etla, Pointer tlab, Size size) {
         final Pointer tlabTop = tlab.plus(size); // top of the new TLAB
         final Pointer allocationMark = TLAB_MARK.load(etla);
+        final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
+        globalTlabStats.refillCount++;
         if (!allocationMark.isZero()) {
             final Pointer oldTop = TLAB_TOP.load(etla);
-            globalTlabStats.leftover += oldTop.minus(allocationMark).toLong();
+            final Size leftover = oldTop.minus(allocationMark).asSize();
+            globalTlabStats.leftover += leftover.toLong();
+            if (refillPolicy != null) {
+                refillPolicy.notifyRefill(leftover);
+            }
             // It is a refill, not an initial fill. So invoke handler.
             doBeforeTLABRefill(allocationMark, oldTop);
         } else {
             ProgramError.check(CUSTOM_ALLOCATION_ENABLED.load(etla).isZero(),
                 "Must not refill TLAB when in custom allocator is set");
+            if (refillPolicy != null) {
+                // The previous TLAB was fully used.
+                refillPolicy.notifyRefill(Size.zero());
+            }
         }
 
         TLAB_TOP.store(etla, tlabTop);
@@ -705,6 +770,11 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             @VMLogParam(name = "vmThread") VmThread vmThread,
             @VMLogParam(name = "allocationMark") Pointer tlabMark,
             @VMLogParam(name = "size") int padWords);
+
+        void resize(
+            @VMLogParam(name = "vmThread") VmThread vmThread,
+            @VMLogParam(name = "oldTlabSize") int oldTlabSize,
+            @VMLogParam(name = "newTlabSize") int newTlabSize);
     }
 
     public static final class TLABLogger extends TLabLoggerAuto {
@@ -765,13 +835,22 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             Log.print(initialTlabSize);
             Log.println("]");
         }
+
+        @Override
+        protected void traceResize(VmThread vmThread, int oldTlabSize, int newTlabSize) {
+            Log.printThread(vmThread, false);
+            Log.print(": Resized TLAB from ");
+            Log.print(oldTlabSize);
+            Log.print(" to ");
+            Log.println(newTlabSize);
+        }
     }
 
 // START GENERATED CODE
     private static abstract class TLabLoggerAuto extends com.sun.max.vm.log.VMLogger {
         public enum Operation {
             Allocate, Pad, Refill,
-            Reset;
+            Reset, Resize;
 
             @SuppressWarnings("hiding")
             public static final Operation[] VALUES = values();
@@ -815,6 +894,12 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         }
         protected abstract void traceReset(VmThread vmThread, Pointer tlabTop, Pointer tlabMark);
 
+        @INLINE
+        public final void logResize(VmThread vmThread, int oldTlabSize, int newTlabSize) {
+            log(Operation.Resize.ordinal(), vmThreadArg(vmThread), intArg(oldTlabSize), intArg(newTlabSize));
+        }
+        protected abstract void traceResize(VmThread vmThread, int oldTlabSize, int newTlabSize);
+
         @Override
         protected void trace(Record r) {
             switch (r.getOperation()) {
@@ -834,6 +919,10 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
                     traceReset(toVmThread(r, 1), toPointer(r, 2), toPointer(r, 3));
                     break;
                 }
+                case 4: { //Resize
+                    traceResize(toVmThread(r, 1), toInt(r, 2), toInt(r, 3));
+                    break;
+                }
             }
         }
     }
@@ -102,4 +102,13 @@ public class SimpleTLABRefillPolicy extends TLABRefillPolicy {
         return nextSize;
     }
 
+    /**
+     * Change the size the TLAB should have on next refill. The refill threshold is changed accordingly.
+     * @param size the new TLAB size
+     */
+    protected final void setNextTlabSize(Size size) {
+        nextSize = size;
+        refillThreshold = size.dividedBy(TLAB_REFILL_RATIO);
+    }
+
 }
@@ -65,6 +65,23 @@ public abstract class TLABRefillPolicy {
      */
     public abstract Size nextTlabSize();
 
+    /**
+     * Notification that the TLAB of the thread was refilled.
+     * Nothing is done by default. Policies adapting the TLAB size may override it to gather statistics.
+     * @param leftover space left unused in the TLAB by the refill
+     */
+    public void notifyRefill(Size leftover) {
+    }
+
+    /**
+     * Notification that the TLAB of the thread was reset, typically before a GC.
+     * Nothing is done by default. Policies adapting the TLAB size may override it to resize the TLAB.
+     * Must not allocate.
+     * @param leftover space left unused in the TLAB when reset
+     */
+    public void notifyReset(Size leftover) {
+    }
+
     @INTRINSIC(UNSAFE_CAST)
     private static native TLABRefillPolicy asTLABRefillPolicy(Object object);
 
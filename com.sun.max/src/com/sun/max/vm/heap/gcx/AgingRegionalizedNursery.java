@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * A nursery that allocates objects in a single contiguous space and keeps the survivors of minor collections in a survivor space until they
+ * reach a tenuring threshold, at which point they are promoted to the next generation.
+ * <p>
+ * The nursery is a contiguous range of regions holding the allocation space followed by two survivor spaces of equal size.
+ * A minor collection evacuates both the allocation space and the survivor space holding the survivors of previous collections:
+ * cells younger than the tenuring threshold are copied to the other survivor space, the others are promoted.
+ * The roles of the two survivor spaces are swapped after each minor collection. Cells that don't fit in the survivor space are promoted.
+ * {@link #contains(Address)} only covers the allocation space: after a minor collection, no references to the allocation space are left.
+ * <p>
+ * The age of a cell is the number of minor collections it survived. There are no spare bits in the misc word of a cell's header
+ * (it holds the lock word and the hash code), so the age of cells in the survivor spaces is kept in a side table with a byte per
+ * chunk of the size of the smallest cell. Cells in the allocation space have age 0.
+ * <p>
+ * The tenuring threshold is adapted after each minor collection by the {@link GenHeapSizingPolicy} based on the amount of survivors of each age.
+ * If the policy provides no survivor space, all survivors are promoted, as with a {@link NoAgingRegionalizedNursery}.
+ * <p>
+ * The nursery is not resized after initialization: its survivor spaces follow the allocation space, so growing or shrinking the
+ * allocation space would require moving the survivor spaces and their cells.
+ */
+public final class AgingRegionalizedNursery extends RegionalizedNursery implements HeapManagementMemoryRequirement {
+    /**
+     * Maximum age of a cell.
+     */
+    public static final int MAX_AGE = 15;
+
+    /**
+     * Log 2 of the size of the chunks of survivor space covered by an entry of the age table.
+     * Two cells cannot start in the same chunk.
+     */
+    static final int LOG2_AGE_TABLE_CHUNK = Word.widthValue().log2numberOfBytes + 1;
+
+    private final SpaceBounds bounds;
+
+    /**
+     * Policy computing the tenuring threshold.
+     */
+    private GenHeapSizingPolicy sizingPolicy;
+
+    /**
+     * Size of each survivor space. Zero if the nursery has no survivor spaces.
+     */
+    private Size survivorSpaceSize = Size.zero();
+
+    /**
+     * Start of the first survivor space. The second one immediately follows it.
+     */
+    @INSPECTED
+    private Address survivorSpacesStart = Address.zero();
+
+    /**
+     * Start of the survivor space holding the survivors of the last minor collection.
+     */
+    @INSPECTED
+    private Address fromSurvivorStart = Address.zero();
+
+    /**
+     * End of the survivors of the last minor collection.
+     */
+    @INSPECTED
+    private Address fromSurvivorTop = Address.zero();
+
+    /**
+     * Start of the survivor space the next minor collection copies survivors to.
+     */
+    @INSPECTED
+    private Address toSurvivorStart = Address.zero();
+
+    /**
+     * Allocation hand in the survivor space the current minor collection copies survivors to.
+     */
+    @INSPECTED
+    private volatile Address toSurvivorTop = Address.zero();
+
+    /**
+     * Table of the age of the cells in the survivor spaces.
+     */
+    private Pointer ageTable = Pointer.zero();
+
+    private final MemoryRegion ageTableMemory = new MemoryRegion("Age Table");
+
+    /**
+     * Cells younger than the tenuring threshold are copied to a survivor space, others are promoted.
+     */
+    private int tenuringThreshold;
+
+    /**
+     * Amount of bytes copied to a survivor space by the current minor collection, indexed by age.
+     */
+    private final long [] survivorBytesPerAge = new long[MAX_AGE + 1];
+
+    @FOLD
+    private static int toSurvivorTopOffset() {
+        return ClassActor.fromJava(AgingRegionalizedNursery.class).findLocalInstanceFieldActor("toSurvivorTop").offset();
+    }
+
+    public AgingRegionalizedNursery(HeapAccount<? extends HeapAccountOwner> heapAccount, int regionTag) {
+        super(heapAccount, regionTag);
+        this.bounds = new SpaceBounds() {
+            @Override
+            Address lowestAddress() {
+                return allocator.start();
+            }
+            @Override
+            boolean isIn(Address address) {
+                return (address.greaterEqual(allocator.start()) && address.lessThan(allocator.hardLimit())) ||
+                    (address.greaterEqual(fromSurvivorStart) && address.lessThan(fromSurvivorTop));
+            }
+
+            @Override
+            boolean isContiguous() {
+                return !isAging();
+            }
+            @Override
+            Address highestAddress() {
+                return isAging() ? survivorSpacesStart.plus(survivorSpaceSize.times(2)) : allocator.hardLimit();
+            }
+        };
+    }
+
+    public AgingRegionalizedNursery(HeapAccount<? extends HeapAccountOwner> heapAccount) {
+        this(heapAccount, 0);
+    }
+
+    /**
+     * Initialize the nursery.
+     *
+     * @param genSizingPolicy the policy sizing the nursery and its survivor spaces
+     * @param ageTableStorage start of the storage for the age table. The storage must be at least {@link #memoryRequirement(Size)} large
+     * for twice the size of a survivor space.
+     */
+    public void initialize(GenHeapSizingPolicy genSizingPolicy, Address ageTableStorage) {
+        final Address start = initializeRegions(genSizingPolicy);
+        sizingPolicy = genSizingPolicy;
+        survivorSpaceSize = genSizingPolicy.survivorSpaceSize();
+        final Size allocationSpaceSize = genSizingPolicy.initialYoungGenSize().minus(survivorSpaceSize.times(2));
+        FatalError.check(allocationSpaceSize.greaterThan(survivorSpaceSize), "Survivor spaces too large for the nursery");
+        allocator.initialize(start, allocationSpaceSize, Size.fromInt(HeapRegionConstants.regionSizeInBytes));
+
+        survivorSpacesStart = start.plus(allocationSpaceSize);
+        fromSurvivorStart = survivorSpacesStart;
+        fromSurvivorTop = fromSurvivorStart;
+        toSurvivorStart = survivorSpacesStart.plus(survivorSpaceSize);
+        toSurvivorTop = toSurvivorStart;
+        ageTable = ageTableStorage.asPointer();
+        ageTableMemory.setStart(ageTableStorage);
+        ageTableMemory.setSize(memoryRequirement(survivorSpaceSize.times(2)));
+        tenuringThreshold = genSizingPolicy.initialTenuringThreshold();
+    }
+
+    @Override
+    public Size memoryRequirement(Size maxCoveredAreaSize) {
+        return maxCoveredAreaSize.unsignedShiftedRight(LOG2_AGE_TABLE_CHUNK);
+    }
+
+    @Override
+    public MemoryRegion memory() {
+        return ageTableMemory;
+    }
+
+    /**
+     * Indicates whether survivors of minor collections can be kept in the nursery.
+     */
+    public boolean isAging() {
+        return !survivorSpaceSize.isZero();
+    }
+
+    /**
+     * Cells younger than the returned threshold are copied to a survivor space at the current minor collection.
+     */
+    public int tenuringThreshold() {
+        return tenuringThreshold;
+    }
+
+    /**
+     * Indicates whether an address is in one of the survivor spaces.
+     */
+    @INLINE
+    public boolean inSurvivorSpaces(Address address) {
+        return address.greaterEqual(survivorSpacesStart) && address.lessThan(survivorSpacesStart.plus(survivorSpaceSize.times(2)));
+    }
+
+    @INLINE
+    private int ageTableIndex(Address cell) {
+        return cell.minus(survivorSpacesStart).unsignedShiftedRight(LOG2_AGE_TABLE_CHUNK).toInt();
+    }
+
+    /**
+     * Age of a cell being evacuated from the nursery.
+     * @param origin origin of a cell in the area evacuated by the current minor collection
+     * @return the number of minor collections the cell survived
+     */
+    @INLINE
+    public int ageOf(Pointer origin) {
+        final Pointer cell = Layout.originToCell(origin);
+        if (cell.lessThan(survivorSpacesStart)) {
+            // In the allocation space.
+            return 0;
+        }
+        return ageTable.getByte(ageTableIndex(cell));
+    }
+
+    /**
+     * Set the age of a cell copied to a survivor space.
+     */
+    @INLINE
+    public void setAge(Pointer cell, int age) {
+        ageTable.setByte(ageTableIndex(cell), (byte) age);
+    }
+
+    /**
+     * Allocate a chunk of the survivor space the current minor collection copies survivors to.
+     * Multiple evacuators may allocate concurrently.
+     *
+     * @param size size of the chunk
+     * @return the start of the chunk, or zero if there isn't enough space left in the survivor space
+     */
+    public Pointer allocateSurvivorChunk(Size size) {
+        final Pointer thisAddress = Reference.fromJava(this).toOrigin();
+        final Address end = toSurvivorStart.plus(survivorSpaceSize);
+        Pointer chunk;
+        Pointer newTop;
+        do {
+            chunk = toSurvivorTop.asPointer();
+            newTop = chunk.plus(size);
+            if (newTop.greaterThan(end)) {
+                return Pointer.zero();
+            }
+        } while (!thisAddress.compareAndSwapWord(toSurvivorTopOffset(), chunk, newTop).equals(chunk));
+        return chunk;
+    }
+
+    /**
+     * Account for cells copied to the survivor space by an evacuator. Must be called for each evacuator before the end of the minor collection.
+     * @param bytesPerAge amount of bytes copied to the survivor space, indexed by age. Cleared on return.
+     */
+    public void addSurvivorBytes(long [] bytesPerAge) {
+        for (int age = 1; age <= MAX_AGE; age++) {
+            survivorBytesPerAge[age] += bytesPerAge[age];
+            bytesPerAge[age] = 0L;
+        }
+    }
+
+    /**
+     * The nursery is not resized (see class comment).
+     * @return zero
+     */
+    @Override
+    public Size increaseSize(Size delta) {
+        return Size.zero();
+    }
+
+    /**
+     * The nursery is not resized (see class comment).
+     * @return zero
+     */
+    @Override
+    public Size decreaseSize(Size delta) {
+        return Size.zero();
+    }
+
+    /**
+     * Size of the allocation space plus one survivor space. This bounds the amount of space a minor collection evacuates.
+     */
+    @Override
+    public Size totalSpace() {
+        return allocator.size().plus(survivorSpaceSize);
+    }
+
+    @Override
+    public Size capacity() {
+        return Size.fromInt(HeapRegionConstants.regionSizeInBytes).times(uncommitedNurseryRegionsList.size()).plus(allocator.size()).plus(survivorSpaceSize.times(2));
+    }
+
+    @Override
+    public void doBeforeGC() {
+        allocator.doBeforeGC();
+        if (isAging()) {
+            toSurvivorTop = toSurvivorStart;
+            for (int age = 0; age <= MAX_AGE; age++) {
+                survivorBytesPerAge[age] = 0L;
+            }
+        }
+    }
+
+    @Override
+    public void doAfterGC() {
+        if (MaxineVM.isDebug()) {
+            allocator.zap();
+        }
+        allocator.reset();
+        if (isAging()) {
+            // Swap the survivor spaces.
+            final Address evacuatedSurvivorStart = fromSurvivorStart;
+            if (MaxineVM.isDebug()) {
+                Memory.setWords(evacuatedSurvivorStart.asPointer(), fromSurvivorTop.minus(evacuatedSurvivorStart).unsignedShiftedRight(Word.widthValue().log2numberOfBytes).toInt(), HeapFreeChunk.deadSpaceMark());
+            }
+            fromSurvivorStart = toSurvivorStart;
+            fromSurvivorTop = toSurvivorTop;
+            toSurvivorStart = evacuatedSurvivorStart;
+            toSurvivorTop = toSurvivorStart;
+            tenuringThreshold = sizingPolicy.tenuringThreshold(survivorBytesPerAge);
+            if (Heap.verbose()) {
+                Log.print("Survivor space used: ");
+                Log.print(fromSurvivorTop.minus(fromSurvivorStart).toLong());
+                Log.print(" bytes, new tenuring threshold: ");
+                Log.println(tenuringThreshold);
+            }
+        }
+    }
+
+    @Override
+    public Size usedSpace() {
+        return allocator.usedSpace().plus(fromSurvivorTop.minus(fromSurvivorStart).asSize());
+    }
+
+    @Override
+    public void visit(CellRangeVisitor visitor) {
+        visitor.visitCells(allocator.start(), allocator.top);
+        if (fromSurvivorTop.greaterThan(fromSurvivorStart)) {
+            visitor.visitCells(fromSurvivorStart, fromSurvivorTop);
+        }
+    }
+
+    @Override
+    public SpaceBounds bounds() {
+        return bounds;
+    }
+}
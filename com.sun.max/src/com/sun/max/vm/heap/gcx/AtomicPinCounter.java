@@ -28,7 +28,8 @@ import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
 
 /**
- * Simple debug  utility class to atomically count pin/unpin requests and track unbalanced pinned requests.
+ * Simple utility class to atomically count pin/unpin requests and track unbalanced pinned requests.
+ * Besides debugging, used by heap schemes that move objects to tell whether any object is currently pinned.
  */
 public final class AtomicPinCounter {
     private volatile int pinnedCounter = 0;
@@ -38,6 +39,13 @@ public final class AtomicPinCounter {
         return ClassActor.fromJava(AtomicPinCounter.class).findLocalInstanceFieldActor("pinnedCounter").offset();
     }
 
+    /**
+     * Number of outstanding pin requests.
+     */
+    public int count() {
+        return pinnedCounter;
+    }
+
     public void increment() {
         int newValue;
         int oldValue;
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Log of the memory ranges allocated while the heap is marked concurrently.
+ * <p>
+ * Snapshot-at-the-beginning marking doesn't trace objects allocated after marking started. Instead, these must be considered live at the end
+ * of the marking cycle. The heap scheme logs every range of memory it hands out to mutators (TLAB chunks, or cells allocated directly in the heap)
+ * while marking is in progress, and the final remark {@linkplain #markAllocatedCellsBlack(TricolorHeapMarker) marks black} every cell in the logged ranges.
+ * <p>
+ * The log is a fixed-size array of address pairs allocated off-heap at VM startup. If it fills up, further ranges are dropped and the log records the overflow,
+ * in which case marking must be redone in a stop-the-world pause.
+ */
+public final class BlackAllocationLog {
+    /**
+     * Maximum number of ranges the log can hold.
+     */
+    private static int BlackAllocationLogSize = 16 * 1024;
+
+    static {
+        addFieldOption("-XX:", "BlackAllocationLogSize", BlackAllocationLog.class,
+                        "Number of memory ranges allocated during concurrent marking the heap scheme can record", MaxineVM.Phase.PRISTINE);
+    }
+
+    /**
+     * Off-heap storage of the ranges. Range {@code i} is stored as the pair of words {@code 2*i} (start) and {@code 2*i+1} (end).
+     */
+    private Pointer ranges;
+
+    /**
+     * Number of slots claimed so far. May be greater than {@link #BlackAllocationLogSize} if the log overflowed.
+     */
+    private volatile int numRanges;
+
+    @HOSTED_ONLY
+    public BlackAllocationLog() {
+    }
+
+    @FOLD
+    private static int numRangesOffset() {
+        return ClassActor.fromJava(BlackAllocationLog.class).findLocalInstanceFieldActor("numRanges").offset();
+    }
+
+    /**
+     * Allocates the log. Must be called at the {@link MaxineVM.Phase#STARTING} phase, and only if the heap is marked concurrently.
+     */
+    public void initialize() {
+        FatalError.check(BlackAllocationLogSize > 0, "-XX:BlackAllocationLogSize must be positive");
+        ranges = Memory.allocate(Size.fromLong(2L * BlackAllocationLogSize * Word.size()));
+        if (ranges.isZero()) {
+            FatalError.unexpected("Failed to allocate black allocation log");
+        }
+    }
+
+    public void reset() {
+        numRanges = 0;
+    }
+
+    public boolean overflowed() {
+        return numRanges > BlackAllocationLogSize;
+    }
+
+    /**
+     * Records a range of memory allocated by a mutator.
+     *
+     * @param start start of the range
+     * @param end end of the range
+     */
+    @NO_SAFEPOINT_POLLS("the range must be recorded before a GC can see the log")
+    public void record(Address start, Address end) {
+        final Reference reference = Reference.fromJava(this);
+        int slot;
+        do {
+            slot = numRanges;
+            if (slot > BlackAllocationLogSize) {
+                // Already overflowed.
+                return;
+            }
+        } while (reference.compareAndSwapInt(numRangesOffset(), slot, slot + 1) != slot);
+        if (slot < BlackAllocationLogSize) {
+            ranges.setWord(2 * slot, start);
+            ranges.setWord(2 * slot + 1, end);
+        }
+    }
+
+    /**
+     * Marks black all the cells of the recorded ranges. Free chunks and dark matter in the ranges are skipped, as well as zero-filled space
+     * that wasn't allocated yet. Must be called during a GC pause, once all TLABs have been made parsable.
+     *
+     * @param heapMarker the heap marker doing the final remark
+     */
+    public void markAllocatedCellsBlack(TricolorHeapMarker heapMarker) {
+        FatalError.check(!overflowed(), "Cannot mark cells of an overflowed allocation log");
+        for (int i = 0; i < numRanges; i++) {
+            Pointer cell = ranges.getWord(2 * i).asPointer();
+            final Pointer end = ranges.getWord(2 * i + 1).asPointer();
+            while (cell.lessThan(end)) {
+                final Pointer origin = Layout.cellToOrigin(cell);
+                final Word hubWord = origin.getWord(Layout.hubIndex());
+                if (hubWord.isZero()) {
+                    // Cleared space not allocated yet.
+                    cell = cell.plusWords(1);
+                } else if (HeapFreeChunk.isHeapFreeChunkOrigin(origin)) {
+                    cell = cell.plus(HeapFreeChunk.getFreechunkSize(cell));
+                } else {
+                    if (!DarkMatter.isDarkMatterHub(hubWord)) {
+                        heapMarker.markBlackIfWhite(cell);
+                    }
+                    cell = cell.plus(Layout.size(origin));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.VMOptions.*;
+import static com.sun.max.vm.heap.gcx.HeapFreeChunk.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.monitor.modal.sync.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * Background refinement of the dirty cards of a space covered by a {@link CardTableRSet}, typically the old generation of a
+ * generational heap scheme.
+ * <p>
+ * Between collections, a refinement thread periodically cleans the dirty cards of the space and scans the cells overlapping them
+ * (using the {@link CardFirstObjectTable} to find the first cell of a card) for references to the nursery. The locations of these
+ * references are recorded in a buffer of refined slots. At the next minor collection, the nursery evacuator only needs to update the
+ * recorded slots and to scan the cards that were dirtied again since they were refined.
+ * <p>
+ * The space is refined one region-sized chunk at a time, with safepoints disabled, so that a GC never sees a partially refined chunk.
+ * The chunks are recorded during each GC pause, after the space has been made iterable, and only cover the regions that hold cells at that
+ * point. Refinement relies on the cells of these regions not changing between collections, as the refinement thread reads hubs, lengths and
+ * the {@link CardFirstObjectTable} without synchronizing with allocation. The space is allocated by evacuation during GC, and between
+ * collections only by mutators allocating objects larger than a region (see {@link RegionalizedNursery#setLargeObjectSpace}). Such an
+ * object spans at least two regions, which are only taken from the regions that were empty at the last GC (see
+ * {@link FirstFitMarkSweepSpace}), and a region of the space becomes empty only when swept, which is completed before the chunks are
+ * recorded. So no recorded chunk is allocated into between collections; cards dirtied in the newly allocated regions are left to the
+ * minor collection.
+ * <p>
+ * When the buffer of refined slots is full, the cards holding the references that couldn't be recorded are dirtied again and left to the
+ * minor collection. Cards holding a {@link java.lang.ref.Reference} whose referent is in the nursery are also left dirty, as such references
+ * must be discovered during the GC pause.
+ */
+public final class DirtyCardRefiner implements CellRangeVisitor {
+    /**
+     * Enables refinement of dirty cards by a background thread.
+     */
+    private static boolean ConcurrentCardRefinement = false;
+
+    /**
+     * Delay, in milliseconds, between two refinement passes over the dirty cards.
+     */
+    private static int CardRefinementInterval = 20;
+
+    private static boolean TraceCardRefinement = false;
+
+    static {
+        addFieldOption("-XX:", "ConcurrentCardRefinement", DirtyCardRefiner.class,
+            "Refine dirty cards of the old generation with a background thread between minor collections", MaxineVM.Phase.PRISTINE);
+        addFieldOption("-XX:", "CardRefinementInterval", DirtyCardRefiner.class,
+            "Delay in milliseconds between two passes of the card refinement thread", MaxineVM.Phase.PRISTINE);
+        addFieldOption("-XX:", "TraceCardRefinement", DirtyCardRefiner.class, "Trace card refinement", MaxineVM.Phase.PRISTINE);
+    }
+
+    private static final VMIntOption refinedSlotsBufferSizeOption =
+        register(new VMIntOption("-XX:RefinedSlotsBufferSize=", 64 * 1024, "Maximum number of reference locations recorded by card refinement between two minor collections."),
+                        MaxineVM.Phase.PRISTINE);
+
+    /**
+     * The refinement thread.
+     */
+    final class RefinementThread extends Thread {
+        RefinementThread() {
+            super("Card-refinement");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Heap.disableAllocationForCurrentThread();
+            while (true) {
+                mutex.lock();
+                refinementTimer.threadWait(mutex, CardRefinementInterval);
+                mutex.unlock();
+                try {
+                    refine();
+                } catch (Throwable t) {
+                    FatalError.unexpected("Unexpected exception in card refinement thread", t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans the cells overlapping the refined cards for references to the nursery and records their locations.
+     */
+    final class RefinementScanner extends PointerIndexVisitor implements OverlappingCellVisitor {
+        @Override
+        public void visit(Pointer origin, int wordIndex) {
+            if (nurseryBounds.isIn(origin.getReference(wordIndex).toOrigin())) {
+                if (numRefinedSlots < refinedSlots.length) {
+                    refinedSlots[numRefinedSlots++] = origin.plusWords(wordIndex).toLong();
+                } else {
+                    // Leave the reference to the minor collection.
+                    rset.record(Reference.fromOrigin(origin), 0, wordIndex);
+                }
+            }
+        }
+
+        @Override
+        public Pointer visitCell(Pointer cell, Address start, Address end) {
+            final Pointer origin = Layout.cellToOrigin(cell);
+            final Hub hub = UnsafeCast.asHub(origin.getReference(Layout.hubIndex()));
+            if (hub == heapFreeChunkHub()) {
+                return cell.plus(toHeapFreeChunk(origin).size);
+            }
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout == Layout.tupleLayout()) {
+                // Visit all the references of the tuple, as the write barrier dirties the card holding the tuple's header.
+                hub.visitMappedReferences(origin, this);
+                if (hub.isJLRReference && nurseryBounds.isIn(origin.getReference(SpecialReferenceManager.referentIndex()).toOrigin())) {
+                    // Special references must be discovered by the GC.
+                    rset.record(Reference.fromOrigin(origin), 0, Layout.hubIndex());
+                }
+                return cell.plus(hub.tupleSize);
+            }
+            if (specificLayout == Layout.referenceArrayLayout()) {
+                final int endOfArrayIndex = Layout.readArrayLength(origin) + Layout.firstElementIndex();
+                final Address firstElementAddr = origin.plusWords(Layout.firstElementIndex());
+                final Address endOfArrayAddr = origin.plusWords(endOfArrayIndex);
+                final int firstIndex = start.greaterThan(firstElementAddr) ? start.minus(origin).unsignedShiftedRight(Kind.REFERENCE.width.log2numberOfBytes).toInt() : Layout.firstElementIndex();
+                final int endIndex = endOfArrayAddr.greaterThan(end) ? end.minus(origin).unsignedShiftedRight(Kind.REFERENCE.width.log2numberOfBytes).toInt() : endOfArrayIndex;
+                for (int index = firstIndex; index < endIndex; index++) {
+                    visit(origin, index);
+                }
+            } else if (specificLayout == Layout.hybridLayout()) {
+                hub.visitMappedReferences(origin, this);
+            }
+            return cell.plus(Layout.size(origin));
+        }
+    }
+
+    private final CardTableRSet rset;
+
+    /**
+     * The space whose dirty cards are refined.
+     */
+    private final HeapSpace refinedSpace;
+
+    /**
+     * The nursery whose incoming references are recorded.
+     */
+    private final EvacuatingSpace nursery;
+
+    private EvacuatingSpace.SpaceBounds nurseryBounds;
+
+    private final RefinementScanner scanner = new RefinementScanner();
+
+    private final Mutex mutex = MutexFactory.create();
+    /**
+     * Condition variable the refinement thread waits on between two passes. Never notified.
+     */
+    private final ConditionVariable refinementTimer = ConditionVariableFactory.create();
+
+    private RefinementThread thread;
+
+    /**
+     * Bounds of the region-sized chunks of the refined space, stored as pairs of start and end addresses.
+     * Only modified during GC.
+     */
+    private long[] chunks;
+
+    private int numChunks;
+
+    /**
+     * Incremented at every GC. Used by the refinement thread to detect that the chunks it iterates over were changed by a GC.
+     */
+    private int epoch;
+
+    /**
+     * Locations of references to the nursery recorded by the refinement thread since the last minor collection.
+     */
+    private long[] refinedSlots;
+
+    private int numRefinedSlots;
+
+    @HOSTED_ONLY
+    public DirtyCardRefiner(CardTableRSet rset, HeapSpace refinedSpace, EvacuatingSpace nursery) {
+        this.rset = rset;
+        this.refinedSpace = refinedSpace;
+        this.nursery = nursery;
+    }
+
+    /**
+     * Starts the refinement thread at VM startup if card refinement is enabled.
+     */
+    public void initialize(MaxineVM.Phase phase) {
+        if (phase != MaxineVM.Phase.STARTING || !ConcurrentCardRefinement) {
+            return;
+        }
+        FatalError.check(CardRefinementInterval > 0, "-XX:CardRefinementInterval must be positive");
+        mutex.init();
+        refinementTimer.init();
+        nurseryBounds = nursery.bounds();
+        Heap.enableImmortalMemoryAllocation();
+        try {
+            // Each range of regions adds at most one chunk to the region-sized ones.
+            chunks = new long[4 * numberOfRegions(Heap.maxSize())];
+            refinedSlots = new long[refinedSlotsBufferSizeOption.getValue()];
+            thread = new RefinementThread();
+        } finally {
+            Heap.disableImmortalMemoryAllocation();
+        }
+        thread.start();
+    }
+
+    /**
+     * Indicates whether dirty cards are refined by the refinement thread.
+     */
+    @INLINE
+    public boolean isActive() {
+        return thread != null;
+    }
+
+    /**
+     * Record the chunks of the refined space for the next refinement passes. Must be called at the end of every GC pause.
+     */
+    public void doAfterGC() {
+        if (!isActive()) {
+            return;
+        }
+        FatalError.check(numRefinedSlots == 0, "Refined slots must be processed by minor collections");
+        numChunks = 0;
+        refinedSpace.visit(this);
+        epoch++;
+    }
+
+    @Override
+    public void visitCells(Address start, Address end) {
+        Address chunkStart = start;
+        while (chunkStart.lessThan(end)) {
+            Address chunkEnd = chunkStart.plus(regionSizeInBytes);
+            if (chunkEnd.greaterThan(end)) {
+                chunkEnd = end;
+            }
+            final int index = numChunks << 1;
+            FatalError.check(index < chunks.length, "too many chunks of refined space");
+            chunks[index] = chunkStart.toLong();
+            chunks[index + 1] = chunkEnd.toLong();
+            numChunks++;
+            chunkStart = chunkEnd;
+        }
+    }
+
+    /**
+     * Refine the dirty cards of each chunk of the refined space. The pass ends early if a GC changes the chunks,
+     * or if the buffer of refined slots is full.
+     */
+    private void refine() {
+        final int passEpoch = epoch;
+        final int numSlotsBefore = numRefinedSlots;
+        int refinedChunks = 0;
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            final boolean wasDisabled = SafepointPoll.disable();
+            final boolean done = epoch != passEpoch || numRefinedSlots == refinedSlots.length;
+            if (!done) {
+                final int index = chunk << 1;
+                rset.refineCards(Address.fromLong(chunks[index]), Address.fromLong(chunks[index + 1]), scanner);
+                refinedChunks++;
+            }
+            if (!wasDisabled) {
+                SafepointPoll.enable();
+            }
+            if (done) {
+                break;
+            }
+        }
+        if (MaxineVM.isDebug() && TraceCardRefinement) {
+            Log.print("Card refinement: ");
+            Log.print(refinedChunks);
+            Log.print(" chunks refined, ");
+            Log.print(numRefinedSlots - numSlotsBefore);
+            Log.println(" slots recorded");
+        }
+    }
+
+    /**
+     * Update the references recorded since the last minor collection. Must be called during a minor collection.
+     *
+     * @param evacuator the evacuator of the nursery
+     */
+    void evacuateRefinedSlots(Evacuator evacuator) {
+        for (int i = 0; i < numRefinedSlots; i++) {
+            evacuator.updateEvacuatedRef(Pointer.fromLong(refinedSlots[i]), 0);
+        }
+        numRefinedSlots = 0;
+    }
+
+    /**
+     * Distribute the references recorded since the last minor collection over the specified deques.
+     * Locations that don't fit in the deques are left to the scan of dirty cards. Must be called during a minor collection.
+     *
+     * @param deques the deques of the workers of a parallel evacuation
+     * @param numDeques number of deques to distribute the locations over
+     */
+    void distributeRefinedSlots(MarkingDeque[] deques, int numDeques) {
+        for (int i = 0; i < numRefinedSlots; i++) {
+            final Pointer location = Pointer.fromLong(refinedSlots[i]);
+            if (!deques[i % numDeques].push(location)) {
+                rset.record(Reference.fromOrigin(location), Offset.zero());
+            }
+        }
+        numRefinedSlots = 0;
+    }
+}
@@ -68,7 +68,7 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
 
     @INLINE
     protected final boolean traceEvacVisitedCell() {
-        return MaxineVM.isDebug() && traceEvacVisitedCellEnabled && detailLogger.enabled();
+        return MaxineVM.isDebug() && traceEvacVisitedCellEnabled && detailLogger != null && detailLogger.enabled();
     }
 
     private final SequentialHeapRootsScanner heapRootsScanner = new SequentialHeapRootsScanner(this);
@@ -98,7 +98,7 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
 
     private void updateSpecialReference(Pointer origin) {
         if (refDiscoveryEnabled) {
-            SpecialReferenceManager.discoverSpecialReference(origin);
+            discoverSpecialReference(origin);
         } else {
             // Treat referent as strong reference.
             if (traceEvacVisitedCell()) {
@@ -120,6 +120,20 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
         refDiscoveryEnabled = false;
     }
 
+    final boolean isSpecialRefDiscoveryEnabled() {
+        return refDiscoveryEnabled;
+    }
+
+    /**
+     * Record a special reference discovered while scanning evacuated cells.
+     * The special reference manager isn't thread-safe: evacuators running in parallel must serialize discovery.
+     *
+     * @param origin origin of the special reference
+     */
+    protected void discoverSpecialReference(Pointer origin) {
+        SpecialReferenceManager.discoverSpecialReference(origin);
+    }
+
     @INLINE
     private void updateReferenceArray(Pointer refArrayOrigin, final int firstIndex, final int length) {
         for (int index = firstIndex; index < length; index++) {
@@ -249,7 +263,7 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
                 if (DarkMatter.isDarkMatterHub(hubRef.toOrigin())) {
                     reportDarkMatterForwarding(origin, at, forwardRef.toOrigin());
                 }
-                if (detailLogger.enabled()) {
+                if (detailLogger != null && detailLogger.enabled()) {
                     final Hub hub = UnsafeCast.asHub(hubRef.toJava());
                     detailLogger.logForward(hub.classActor.id, at, origin, toOrigin, Layout.size(toOrigin).toInt());
                 }
@@ -545,7 +559,7 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
             phaseLogger.logScanningCode(VMLogger.Interval.END);
         }
 
-        if (Heap.logGCPhases()) {
+        if (logPhases) {
             phaseLogger.logScanningImmortalHeap(VMLogger.Interval.BEGIN);
         }
         currentEvacuationOperation = IMMORTAL_SCAN;
@@ -553,7 +567,7 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
         evacuateFromImmortalHeap();
         timers.stop(IMMORTAL_SCAN);
         doAfterOperation(IMMORTAL_SCAN);
-        if (Heap.logGCPhases()) {
+        if (logPhases) {
             phaseLogger.logScanningImmortalHeap(VMLogger.Interval.END);
         }
 
@@ -28,12 +28,14 @@ import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.heap.gcx.EvacuatingSpace.SpaceBounds;
 import com.sun.max.vm.heap.gcx.EvacuationTimers.TIMED_OPERATION;
 import com.sun.max.vm.heap.gcx.rset.ctbl.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.log.VMLog.Record;
 import com.sun.max.vm.log.hosted.*;
+import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
 /**
  * A heap space evacuator that evacuates objects from one space to a card-table covered space.
@@ -149,6 +151,49 @@ public class EvacuatorToCardSpace extends Evacuator {
 
     private final EvacuationLogger logger;
 
+    /**
+     * Coordinator of the parallel evacuation this evacuator takes part in, or null if evacuation is sequential.
+     * When set, cells are forwarded atomically and refills of the promotion space are serialized with other evacuators.
+     */
+    ParallelNurseryEvacuator coordinator;
+
+    /**
+     * Nursery keeping survivors in a survivor space until they reach its tenuring threshold, or null if all survivors are promoted to the to-space.
+     */
+    private AgingRegionalizedNursery agingNursery;
+
+    /**
+     * Size of the evacuator's private buffers in the survivor space.
+     */
+    private Size survivorBufferSize;
+
+    /**
+     * Tenuring threshold of the current evacuation.
+     */
+    private int tenuringThreshold;
+
+    /**
+     * Allocation hand to the evacuator's private buffer in the survivor space.
+     */
+    @INSPECTED
+    private Pointer stop = Pointer.zero();
+
+    /**
+     * End of the evacuator's private buffer in the survivor space.
+     */
+    @INSPECTED
+    private Pointer send = Pointer.zero();
+
+    /**
+     * Mark to keep track of survivor ranges in the survivor space.
+     */
+    private Address survivorSpaceRangeStart = Address.zero();
+
+    /**
+     * Amount of bytes copied to the survivor space by this evacuator, indexed by age.
+     */
+    private final long [] survivorBytesPerAge = new long[AgingRegionalizedNursery.MAX_AGE + 1];
+
     private long [] opEvacuationMarks = new long[TIMED_OPERATION.values().length];
 
     @Override
@@ -166,6 +211,32 @@ public class EvacuatorToCardSpace extends Evacuator {
         this.logger = new EvacuationLogger(name);
     }
 
+    /**
+     * Create an evacuator helping another one during parallel evacuation. The helper evacuates the same space to the same destination,
+     * using its own promotion space and its own queue of survivor ranges.
+     *
+     * @param master the evacuator being helped
+     * @param coordinator the coordinator of the parallel evacuation
+     */
+    EvacuatorToCardSpace(EvacuatorToCardSpace master, ParallelNurseryEvacuator coordinator) {
+        this.fromSpace = master.fromSpace;
+        this.toSpace = master.toSpace;
+        this.rset = master.rset;
+        this.cfoTable = master.cfoTable;
+        this.evacuationBufferProvider = master.evacuationBufferProvider;
+        this.evacuatedAreaBounds = master.evacuatedAreaBounds;
+        this.logger = master.logger;
+        this.coordinator = coordinator;
+        this.checkDarkMatterRefs = master.checkDarkMatterRefs;
+        setDumper(master.dumper);
+        setDetailLogger(master.detailLogger);
+        setPhaseLogger(master.phaseLogger);
+        initialize(master.survivorRanges.capacity(), master.alwaysRefill, master.minRefillThreshold, master.retireAfterEvacuation);
+        if (master.agingNursery != null) {
+            enableAging(master.agingNursery, master.survivorBufferSize);
+        }
+    }
+
     public void setEvacuationSpace(EvacuatingSpace fromSpace,  HeapSpace toSpace) {
         this.fromSpace = fromSpace;
         this.toSpace = toSpace;
@@ -187,6 +258,19 @@ public class EvacuatorToCardSpace extends Evacuator {
         this.retireAfterEvacuation = retireAfterEvacuation;
     }
 
+    /**
+     * Copy survivors younger than the tenuring threshold of the specified nursery to its survivor space instead of promoting them.
+     * The nursery must be the evacuated space.
+     *
+     * @param nursery a nursery with survivor spaces
+     * @param survivorBufferSize size of the evacuator's private buffers in the survivor space
+     */
+    public void enableAging(AgingRegionalizedNursery nursery, Size survivorBufferSize) {
+        FatalError.check(nursery == fromSpace && nursery.isAging(), "Aging requires evacuating a nursery with survivor spaces");
+        this.agingNursery = nursery;
+        this.survivorBufferSize = survivorBufferSize;
+    }
+
     /**
      * Number of bytes evacuated in the last evacuation.
      * @return a number of bytes
@@ -210,6 +294,17 @@ public class EvacuatorToCardSpace extends Evacuator {
     @Override
     protected void doBeforeEvacuation() {
         fromSpace.doBeforeGC();
+        prepareEvacuation();
+        if (logger.enabled()) {
+            SpaceBounds toSpaceBounds = toSpace.bounds();
+            logger.logBeginEvacuation(evacuatedAreaBounds.lowestAddress(), evacuatedAreaBounds.highestAddress(), toSpaceBounds.lowestAddress(), toSpaceBounds.highestAddress());
+        }
+    }
+
+    /**
+     * Reset evacuation statistics and get the promotion space ready for allocation.
+     */
+    final void prepareEvacuation() {
         evacuatedBytes = Size.zero();
         lastOverflowAllocatedRangeStart = Pointer.zero();
         lastOverflowAllocatedRangeEnd = Pointer.zero();
@@ -224,20 +319,29 @@ public class EvacuatorToCardSpace extends Evacuator {
         }
         initialEvacuationMark = ptop;
         allocatedRangeStart = ptop;
-        if (logger.enabled()) {
-            SpaceBounds toSpaceBounds = toSpace.bounds();
-            logger.logBeginEvacuation(evacuatedAreaBounds.lowestAddress(), evacuatedAreaBounds.highestAddress(), toSpaceBounds.lowestAddress(), toSpaceBounds.highestAddress());
+        if (agingNursery != null) {
+            tenuringThreshold = agingNursery.tenuringThreshold();
         }
     }
 
     @Override
     protected void doAfterEvacuation() {
         survivorRanges.clear();
+        // The nursery needs the survivor statistics when done with the evacuation.
+        releaseSurvivorBuffer();
         fromSpace.doAfterGC();
-        Pointer limit = pend.plus(evacuationBufferHeadroom());
         if (logger.enabled()) {
-            logger.logEndEvacuation(limit);
+            logger.logEndEvacuation(pend.plus(evacuationBufferHeadroom()));
         }
+        releasePromotionSpace();
+    }
+
+    /**
+     * Leave the unused part of the promotion space in an iterable state, and retire it if it is too small or if evacuation buffers
+     * must not be kept across evacuations.
+     */
+    final void releasePromotionSpace() {
+        Pointer limit = pend.plus(evacuationBufferHeadroom());
         Size spaceLeft = limit.minus(ptop).asSize();
         if ((alwaysRefill && spaceLeft.greaterThan(minObjectSize())) || spaceLeft.greaterEqual(minRefillThreshold)) {
             // Leave remaining space in an iterable format.
@@ -262,6 +366,23 @@ public class EvacuatorToCardSpace extends Evacuator {
         }
     }
 
+    /**
+     * Leave the unused part of the evacuator's buffer in the survivor space in an iterable state and report the amount of survivors
+     * copied to the survivor space to the nursery.
+     */
+    final void releaseSurvivorBuffer() {
+        if (agingNursery == null) {
+            return;
+        }
+        if (!stop.isZero()) {
+            DarkMatter.format(stop, send.plus(evacuationBufferHeadroom()));
+            stop = Pointer.zero();
+            send = Pointer.zero();
+            survivorSpaceRangeStart = Address.zero();
+        }
+        agingNursery.addSurvivorBytes(survivorBytesPerAge);
+    }
+
     private void recordRange(Address start, Address end) {
         final Size rangeSize = end.minus(start).asSize();
         if (rangeSize.isZero()) {
@@ -287,6 +408,10 @@ public class EvacuatorToCardSpace extends Evacuator {
             recordRange(lastOverflowAllocatedRangeStart, lastOverflowAllocatedRangeEnd);
             lastOverflowAllocatedRangeStart = lastOverflowAllocatedRangeEnd;
         }
+        if (stop.greaterThan(survivorSpaceRangeStart)) {
+            recordRange(survivorSpaceRangeStart, stop);
+            survivorSpaceRangeStart = stop;
+        }
     }
 
     /**
@@ -367,6 +492,74 @@ public class EvacuatorToCardSpace extends Evacuator {
         lastOverflowAllocatedRangeEnd = cell.plus(size);
         return cell;
     }
+    /**
+     * Allocate space in the evacuator's buffer in the survivor space, refilling the buffer if needed.
+     *
+     * @param size
+     * @return the allocated cell, or zero if the survivor space is exhausted
+     */
+    private Pointer allocateInSurvivorSpace(Size size) {
+        Pointer cell = stop;
+        if (cell.plus(size).greaterThan(send)) {
+            Size chunkSize = size.plus(evacuationBufferHeadroom());
+            if (chunkSize.lessThan(survivorBufferSize)) {
+                chunkSize = survivorBufferSize;
+            }
+            final Pointer chunk = agingNursery.allocateSurvivorChunk(chunkSize);
+            if (chunk.isZero()) {
+                return Pointer.zero();
+            }
+            if (!stop.isZero()) {
+                if (stop.greaterThan(survivorSpaceRangeStart)) {
+                    recordRange(survivorSpaceRangeStart, stop);
+                }
+                DarkMatter.format(stop, send.plus(evacuationBufferHeadroom()));
+            }
+            survivorSpaceRangeStart = chunk;
+            send = chunk.plus(chunkSize.minus(evacuationBufferHeadroom()));
+            cell = chunk;
+        }
+        stop = cell.plus(size);
+        return cell;
+    }
+
+    /**
+     * Allocate space for the copy of an evacuated cell. Cells younger than the tenuring threshold are copied to the survivor space
+     * if aging is enabled and there is space left, others are promoted.
+     *
+     * @param fromOrigin origin of the evacuated cell
+     * @param size size of the evacuated cell
+     */
+    private Pointer allocateCopy(Pointer fromOrigin, Size size) {
+        if (agingNursery != null) {
+            final int age = agingNursery.ageOf(fromOrigin);
+            if (age < tenuringThreshold) {
+                final Pointer cell = allocateInSurvivorSpace(size);
+                if (!cell.isZero()) {
+                    agingNursery.setAge(cell, age + 1);
+                    survivorBytesPerAge[age + 1] += size.toLong();
+                    return cell;
+                }
+            }
+        }
+        return allocate(size);
+    }
+
+    /**
+     * References from outside the nursery to cells kept in a survivor space must be recorded in the card table,
+     * so that they are found at the next evacuation.
+     */
+    @Override
+    void updateRSet(Pointer refHolderOrigin, int wordIndex, Reference ref) {
+        if (agingNursery != null && agingNursery.inSurvivorSpaces(ref.toOrigin())) {
+            final Pointer location = refHolderOrigin.plusWords(wordIndex);
+            // Locations outside of the card table (e.g., thread stacks) are roots scanned at every evacuation.
+            if (rset.cardTable.isCovered(location) && !agingNursery.inSurvivorSpaces(location)) {
+                rset.record(Reference.fromOrigin(refHolderOrigin), 0, wordIndex);
+            }
+        }
+    }
+
     @INLINE
     @Override
     final boolean inEvacuatedArea(Pointer origin) {
@@ -382,7 +575,14 @@ public class EvacuatorToCardSpace extends Evacuator {
         Pointer cell = ptop;
         Pointer newTop = ptop.plus(size);
         while (newTop.greaterThan(pend)) {
-            cell = refillOrAllocate(size);
+            if (coordinator != null) {
+                // The evacuation buffer provider and the to-space allocator aren't thread-safe.
+                coordinator.lock();
+                cell = refillOrAllocate(size);
+                coordinator.unlock();
+            } else {
+                cell = refillOrAllocate(size);
+            }
             if (!cell.isZero()) {
                 return cell;
             }
@@ -400,20 +600,95 @@ public class EvacuatorToCardSpace extends Evacuator {
         if (MaxineVM.isDebug() && checkDarkMatterRefs) {
             DarkMatter.scanCellForDarkMatter(fromOrigin);
         }
+        if (coordinator != null) {
+            return evacuateAtomically(fromOrigin);
+        }
         final Pointer fromCell = Layout.originToCell(fromOrigin);
         final Size size = Layout.size(fromOrigin);
-        final Pointer toCell = allocate(size);
+        final Pointer toCell = allocateCopy(fromOrigin, size);
         Memory.copyBytes(fromCell, toCell, size);
         return toCell;
     }
 
+    /**
+     * Size of a cell whose hub may have been overwritten by a forwarding reference.
+     */
+    private static Size cellSize(Pointer origin, Hub hub) {
+        final SpecificLayout specificLayout = hub.specificLayout;
+        if (specificLayout == Layout.tupleLayout()) {
+            return hub.tupleSize;
+        }
+        final int length = Layout.readArrayLength(origin);
+        if (specificLayout == Layout.hybridLayout()) {
+            return Layout.hybridLayout().getArraySize(length);
+        }
+        return Layout.getArraySize(hub.classActor.componentClassActor().kind, length);
+    }
+
+    /**
+     * Evacuate a cell that other evacuators may be evacuating concurrently.
+     * The cell is copied to the promotion space first, then its forwarding reference is installed by atomically
+     * replacing its hub. The evacuators that lose the race give back the space they allocated and use the winner's copy.
+     *
+     * @param fromOrigin origin of the cell to evacuate
+     * @return origin of the cell after evacuation
+     */
+    private Pointer evacuateAtomically(Pointer fromOrigin) {
+        final Reference hubRef = Layout.readHubReference(fromOrigin);
+        if (hubRef.isMarked()) {
+            // Already forwarded.
+            return hubRef.unmarked().toOrigin();
+        }
+        final Size size = cellSize(fromOrigin, UnsafeCast.asHub(hubRef.toJava()));
+        final Pointer toCell = allocateCopy(fromOrigin, size);
+        Memory.copyBytes(Layout.originToCell(fromOrigin), toCell, size);
+        final Pointer toOrigin = Layout.cellToOrigin(toCell);
+        // The copy may have caught a forwarding reference installed concurrently. Restore the hub.
+        Layout.writeHubReference(toOrigin, hubRef);
+        final Reference witness = Layout.compareAndSwapForwardRef(fromOrigin, hubRef, Reference.fromOrigin(toOrigin));
+        if (witness.equals(hubRef)) {
+            return toCell;
+        }
+        undoAllocation(toCell, size);
+        return witness.unmarked().toOrigin();
+    }
+
+    /**
+     * Give back the space of the last allocation of this evacuator.
+     */
+    private void undoAllocation(Pointer cell, Size size) {
+        if (cell.plus(size).equals(stop)) {
+            stop = cell;
+            survivorBytesPerAge[agingNursery.ageOf(Layout.cellToOrigin(cell))] -= size.toLong();
+        } else if (cell.plus(size).equals(ptop)) {
+            ptop = cell;
+        } else {
+            // Overflow allocation, which can't be undone. Take it off the survivor range and turn it into dark matter.
+            FatalError.check(cell.plus(size).equals(lastOverflowAllocatedRangeEnd), "must be last overflow allocation");
+            lastOverflowAllocatedRangeEnd = cell;
+            DarkMatter.format(cell, size);
+            rset.notifyRetireDeadSpace(cell, size);
+        }
+    }
+
+    @Override
+    protected void discoverSpecialReference(Pointer origin) {
+        if (coordinator != null) {
+            coordinator.lock();
+            super.discoverSpecialReference(origin);
+            coordinator.unlock();
+        } else {
+            super.discoverSpecialReference(origin);
+        }
+    }
+
     private boolean checkDarkMatterRefs = false;
     public void enableDarkMatterRefCheck(boolean b) {
         checkDarkMatterRefs = MaxineVM.isDebug() && b;
     }
 
     @Override
-    final protected void evacuateReachables() {
+    protected void evacuateReachables() {
         updateSurvivorRanges();
         while (!survivorRanges.isEmpty()) {
             final Pointer start = survivorRanges.start();
@@ -427,6 +702,60 @@ public class EvacuatorToCardSpace extends Evacuator {
         }
     }
 
+    /**
+     * Evacuate the cells referenced from the next survivor range of this evacuator, if any. Used during parallel evacuation.
+     * A range larger than the specified size is split at a cell boundary; the remainder is handed to the coordinator so that idle evacuators can process it.
+     * Ranges are also handed to the coordinator when it has none left to share.
+     *
+     * @param maxRangeSize size above which a survivor range is split
+     * @return false if this evacuator had no survivor range left to process
+     */
+    final boolean evacuateNextSurvivorRange(Size maxRangeSize) {
+        updateSurvivorRanges();
+        if (survivorRanges.isEmpty()) {
+            return false;
+        }
+        final Pointer start = survivorRanges.start();
+        Pointer end = survivorRanges.end();
+        survivorRanges.remove();
+        // Ranges in the survivor space aren't covered by the card first object table, but are bounded by the size of survivor buffers.
+        if (end.minus(start).greaterThan(maxRangeSize) && (agingNursery == null || !agingNursery.inSurvivorSpaces(start))) {
+            final Pointer split = cfoTable.cellStart(rset.cardTable.tableEntryIndex(start.plus(maxRangeSize))).asPointer();
+            if (split.greaterThan(start) && split.lessThan(end)) {
+                coordinator.shareSurvivorRange(split, end);
+                end = split;
+            }
+        }
+        if (!survivorRanges.isEmpty() && coordinator.needsSurvivorRanges()) {
+            coordinator.lock();
+            while (!survivorRanges.isEmpty()) {
+                coordinator.addSharedSurvivorRange(survivorRanges.start(), survivorRanges.end());
+                survivorRanges.remove();
+            }
+            coordinator.unlock();
+        }
+        if (logger.enabled()) {
+            logger.logEvacuateSurvivorRange(start, end);
+        }
+        evacuateRange(start, end);
+        return true;
+    }
+
+    /**
+     * Add a range of survivors to be processed by this evacuator.
+     */
+    final void addSurvivorRange(Address start, Address end) {
+        survivorRanges.add(start, end);
+    }
+
+    final int survivorRangesCapacity() {
+        return survivorRanges.capacity();
+    }
+
+    final void addEvacuatedBytes(Size size) {
+        evacuatedBytes = evacuatedBytes.plus(size);
+    }
+
     /*
      * Interface for logging evacuation ranges.
      * The interface uses long instead of Size to improve human-readability from the inspector's log views.
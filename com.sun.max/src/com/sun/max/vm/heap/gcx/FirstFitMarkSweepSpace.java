@@ -26,6 +26,7 @@ import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionInfo.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionState.*;
 
+import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
@@ -94,6 +95,11 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     private int maxRegionsInSpace;
 
+    /**
+     * Minimum number of regions of this space. The space never gives back regions to the heap account below this number.
+     */
+    private int minRegionsInSpace;
+
     /**
      * Total free space in allocation regions (i.e., regions in both {@link #allocationRegions} and {@link #tlabAllocationRegions} lists).
      * This doesn't count space in regions assigned to allocators (i.e., {@link #tlabAllocator} and {@link #overflowAllocator}).
@@ -101,6 +107,22 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     private Size allocationRegionsFreeSpace;
 
+    /**
+     * Heap marker whose mark bitmap is used to sweep the regions left in the {@link #sweepList} after a lazy sweep.
+     * Null when all regions of the space have been swept.
+     */
+    private TricolorHeapMarker lazySweepHeapMarker;
+
+    /**
+     * Indicate whether regions left unswept by a lazy sweep should be swept imprecisely.
+     */
+    private boolean lazySweepImprecise;
+
+    /**
+     * Free space expected from each region not yet swept. Estimated from the regions swept during the GC pause.
+     */
+    private Size unsweptRegionFreeSpaceEstimate = Size.zero();
+
     final private SpaceBounds bounds;
     /**
      * TLAB refill allocator. Can supplies TLAB refill either as a single contiguous chunk,
@@ -108,6 +130,13 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     final ChunkListAllocator<RegionChunkListRefillManager> tlabAllocator;
 
+    /**
+     * TLAB refill allocators indexed by NUMA node, when heap regions are bound to NUMA nodes (see {@link HeapRegionManager#numNUMANodes()}).
+     * Each allocator is refilled with regions local to its node, and serves the threads running on that node.
+     * The allocator for node 0 is {@link #tlabAllocator}. Null if regions aren't bound to NUMA nodes.
+     */
+    private ChunkListAllocator<RegionChunkListRefillManager> [] numaTLABAllocators;
+
     /**
      * Overflow allocator. Handles direct allocation request and all small overflow of TLABs.
      */
@@ -202,6 +231,8 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
                 if (numContiguousRegionNeeded == 1) {
                     final int numBytesNeeded = size.toInt();
                     // Actually, any region with a chunk large enough can do in that case.
+                    // Objects allocated by mutators between collections are larger than a region and never take this path:
+                    // the DirtyCardRefiner relies on non-empty regions not being allocated into between collections.
                     while (regionInfoIterable.hasNext()) {
                         final HeapRegionInfo rinfo = regionInfoIterable.next();
                         if (rinfo.isEmpty()) {
@@ -294,7 +325,8 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
                 if (MaxineVM.isDebug()) {
                     checkForSuspisciousGC(gcCount++);
                 }
-            } while (Heap.collectGarbage()); // Always collect for at least one region.
+                // Contiguous empty regions may be found among the regions left unswept by the last GC. Try these before collecting.
+            } while (completeLazySweep() || Heap.collectGarbage()); // Always collect for at least one region.
             // Not enough freed memory.
             throw outOfMemoryError;
         }
@@ -391,6 +423,7 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         }
 
         numRegionsInSpace = initialNumberOfRegions;
+        minRegionsInSpace = initialNumberOfRegions;
         minReclaimableSpace = Size.fromInt(freeChunkMinSizeOption.getValue());
         overflowAllocator.refillManager().setMinRefillSize(minOverflowRefillSize);
         // Set the iterable to the list of committed regions. This is the default. Any exception to this should
@@ -404,12 +437,61 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         // The following two are connected: if you deny refill after overflow, the only solution left is allocating large.
         minLargeObjectSize = regionSize;
         minOverflowRefillSize = regionSize.dividedBy(4);
-        RegionChunkListRefillManager refillManager = tlabAllocator.refillManager();
+        final int numNUMANodes = HeapRegionManager.theHeapRegionManager().numNUMANodes();
+        if (numNUMANodes > 1) {
+            initializeNUMATLABAllocators(numNUMANodes);
+        } else {
+            initializeTLABAllocator(tlabAllocator, RegionChunkListRefillManager.ANY_NUMA_NODE);
+        }
+        overflowAllocator.initialize(Address.zero(), Size.zero(), Size.zero());
+    }
+
+    private void initializeTLABAllocator(ChunkListAllocator<RegionChunkListRefillManager> allocator, int numaNode) {
+        final Size regionSize = Size.fromInt(regionSizeInBytes);
+        RegionChunkListRefillManager refillManager = allocator.refillManager();
         refillManager.setRefillPolicy(minReclaimableSpace);
         refillManager.setMinChunkSize(minReclaimableSpace);
+        refillManager.setNUMANode(numaNode);
         // Initialize the tlab allocator with a first region.
-        tlabAllocator.initialize(regionSize, regionSize);
-        overflowAllocator.initialize(Address.zero(), Size.zero(), Size.zero());
+        allocator.initialize(regionSize, regionSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void initializeNUMATLABAllocators(int numNUMANodes) {
+        numaTLABAllocators = new ChunkListAllocator[numNUMANodes];
+        numaTLABAllocators[0] = tlabAllocator;
+        for (int node = 1; node < numNUMANodes; node++) {
+            final ChunkListAllocator<RegionChunkListRefillManager> allocator =
+                new ChunkListAllocator<RegionChunkListRefillManager>(new RegionChunkListRefillManager(deadSpaceListener));
+            allocator.refillManager.setRegionProvider(this);
+            numaTLABAllocators[node] = allocator;
+        }
+        for (int node = 0; node < numNUMANodes; node++) {
+            initializeTLABAllocator(numaTLABAllocators[node], node);
+        }
+    }
+
+    /**
+     * Number of TLAB refill allocators of the space.
+     */
+    private int numTLABAllocators() {
+        return numaTLABAllocators == null ? 1 : numaTLABAllocators.length;
+    }
+
+    private ChunkListAllocator<RegionChunkListRefillManager> tlabAllocator(int index) {
+        return numaTLABAllocators == null ? tlabAllocator : numaTLABAllocators[index];
+    }
+
+    /**
+     * TLAB refill allocator serving the current thread, i.e., the allocator of the NUMA node the thread runs on if regions are bound to NUMA nodes.
+     */
+    @INLINE
+    private ChunkListAllocator<RegionChunkListRefillManager> currentTLABAllocator() {
+        if (numaTLABAllocators == null) {
+            return tlabAllocator;
+        }
+        final int node = HeapRegionManager.currentNUMANode();
+        return node < numaTLABAllocators.length ? numaTLABAllocators[node] : tlabAllocator;
     }
 
     public Pointer allocate(Size size) {
@@ -420,12 +502,15 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public Pointer allocateTLAB(Size size) {
-        return tlabAllocator.allocateTLAB(size);
+        return currentTLABAllocator().allocateTLAB(size);
     }
 
     public void retireTLAB(Pointer start, Size size) {
-        if (tlabAllocator.retireTop(start, size)) {
-            return;
+        // The thread may have migrated to another NUMA node since its TLAB was allocated: try all the allocators.
+        for (int i = 0; i < numTLABAllocators(); i++) {
+            if (tlabAllocator(i).retireTop(start, size)) {
+                return;
+            }
         }
         if (size.lessThan(minRetiredFreeChunkSize())) {
             DarkMatter.format(start, size);
@@ -457,7 +542,15 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public Size freeSpace() {
-        return allocationRegionsFreeSpace.plus(tlabAllocator.refillManager.freeSpace().plus(tlabAllocator.freeSpace().plus(overflowAllocator.freeSpace())));
+        Size freeSpace = allocationRegionsFreeSpace;
+        if (lazySweepHeapMarker != null) {
+            freeSpace = freeSpace.plus(unsweptRegionFreeSpaceEstimate.times(sweepList.size()));
+        }
+        for (int i = 0; i < numTLABAllocators(); i++) {
+            final ChunkListAllocator<RegionChunkListRefillManager> allocator = tlabAllocator(i);
+            freeSpace = freeSpace.plus(allocator.refillManager.freeSpace().plus(allocator.freeSpace()));
+        }
+        return freeSpace.plus(overflowAllocator.freeSpace());
     }
 
     public Size usedSpace() {
@@ -465,9 +558,14 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public void doBeforeGC() {
+        // Regions left unswept by the previous GC are still on the sweep list and will be swept based on the next marking.
+        lazySweepHeapMarker = null;
         overflowAllocator.doBeforeGC();
-        tlabAllocator.doBeforeGC();
-        FatalError.check(tlabAllocator.refillManager.allocatingRegion() == INVALID_REGION_ID, "TLAB allocating region must have been retired");
+        for (int i = 0; i < numTLABAllocators(); i++) {
+            final ChunkListAllocator<RegionChunkListRefillManager> allocator = tlabAllocator(i);
+            allocator.doBeforeGC();
+            FatalError.check(allocator.refillManager.allocatingRegion() == INVALID_REGION_ID, "TLAB allocating region must have been retired");
+        }
         // Move all regions to the sweep list. This tracks all the regions used by the space.
         sweepList.appendAndClear(unavailableRegions);
         sweepList.appendAndClear(allocationRegions);
@@ -484,6 +582,15 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         heapMarker.markAll(regionsRangeIterable);
     }
 
+    /**
+     * Completes the final remark of a concurrent marking cycle over the regions of the space.
+     * @see TricolorHeapMarker#completeRemark(HeapRegionRangeIterable)
+     */
+    public void completeRemark(TricolorHeapMarker heapMarker) {
+        regionsRangeIterable.reset();
+        heapMarker.completeRemark(regionsRangeIterable);
+    }
+
 
     public void sweep(TricolorHeapMarker heapMarker, boolean doImprecise) {
         if (MaxineVM.isDebug()) {
@@ -495,6 +602,73 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         FatalError.check(sweepList.isEmpty(), "Sweeping list must be empty");
     }
 
+    /**
+     * Sweep the space lazily. Only enough regions are swept during the GC pause to provide the specified amount of free space
+     * (and at least one region). The remaining regions are swept on demand by allocators that run out of swept regions, or
+     * all at once before a large object allocation triggers a GC. The regions not swept yet are exactly those left in the
+     * {@link #sweepList}, which no allocator or iterator of the space looks at.
+     * The mark bitmap of the heap marker must not be modified until the next GC.
+     *
+     * @param heapMarker the heap marker whose mark bitmap is used for sweeping
+     * @param doImprecise indicate whether to do an imprecise sweep
+     * @param minFreeSpace amount of free space to obtain during the GC pause
+     */
+    public void lazySweep(TricolorHeapMarker heapMarker, boolean doImprecise, Size minFreeSpace) {
+        if (MaxineVM.isDebug()) {
+            sweepList.checkIsAddressOrdered();
+        }
+        allocationRegionsFreeSpace = Size.zero();
+        csrIsLiveMultiRegionObjectTail = false;
+        final int numRegionsToSweep = sweepList.size();
+        lazySweepHeapMarker = heapMarker;
+        lazySweepImprecise = doImprecise;
+        do {
+            sweepNextRegion();
+        } while (lazySweepHeapMarker != null && allocationRegionsFreeSpace.lessThan(minFreeSpace));
+
+        if (lazySweepHeapMarker != null) {
+            final int numSweptRegions = numRegionsToSweep - sweepList.size();
+            unsweptRegionFreeSpaceEstimate = allocationRegionsFreeSpace.dividedBy(numSweptRegions);
+        }
+        if (TraceSweep) {
+            Log.print("Lazy sweep: swept ");
+            Log.print(numRegionsToSweep - sweepList.size());
+            Log.print(" regions out of ");
+            Log.println(numRegionsToSweep);
+        }
+    }
+
+    /**
+     * Sweep the next unswept region. Must be called either during GC or with the refill lock held.
+     * Safepoints are disabled while sweeping the region so that a GC never sees a partially swept region.
+     */
+    private void sweepNextRegion() {
+        final boolean wasDisabled = SafepointPoll.disable();
+        if (!lazySweepHeapMarker.sweepNextRegion(this, lazySweepImprecise)) {
+            lazySweepHeapMarker = null;
+            FatalError.check(sweepList.isEmpty(), "Sweeping list must be empty");
+        }
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
+    }
+
+    /**
+     * Sweep all the regions left unswept by the last lazy sweep.
+     * Must be called either during GC or with the refill lock held.
+     *
+     * @return true if there were regions left to sweep, false otherwise
+     */
+    private boolean completeLazySweep() {
+        if (lazySweepHeapMarker == null) {
+            return false;
+        }
+        do {
+            sweepNextRegion();
+        } while (lazySweepHeapMarker != null);
+        return true;
+    }
+
     private HeapRegionInfo nextRegionToSweep() {
         return RegionTable.theRegionTable().regionInfo(sweepList.removeHead());
     }
@@ -664,13 +838,161 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
             numRegions = 1;
         }
         int allocated = heapAccount.allocate(numRegions, allocationRegions, false, true, true, regionTag);
-        return Size.fromInt(allocated).shiftedLeft(log2RegionSizeInBytes);
+        final Size allocatedSize = Size.fromInt(allocated).shiftedLeft(log2RegionSizeInBytes);
+        numRegionsInSpace += allocated;
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(allocatedSize);
+        return allocatedSize;
     }
 
+    /**
+     * Give back empty regions to the heap account, highest addresses first. The space never shrinks below its initial size.
+     */
     @Override
     public Size decreaseSize(Size delta) {
-        // TODO
-        return Size.zero();
+        int numRegions = delta.unsignedShiftedRight(log2RegionSizeInBytes).toInt();
+        if (numRegions > numRegionsInSpace - minRegionsInSpace) {
+            numRegions = numRegionsInSpace - minRegionsInSpace;
+        }
+        int numReleased = 0;
+        int regionID = allocationRegions.tail();
+        while (numReleased < numRegions && regionID != INVALID_REGION_ID) {
+            final int prevRegionID = allocationRegions.prev(regionID);
+            if (HeapRegionInfo.fromRegionID(regionID).isEmpty()) {
+                allocationRegions.remove(regionID);
+                heapAccount.free(regionID);
+                allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
+                numRegionsInSpace--;
+                numReleased++;
+            }
+            regionID = prevRegionID;
+        }
+        return Size.fromInt(numReleased).shiftedLeft(log2RegionSizeInBytes);
+    }
+
+    /**
+     * Visit the cells of the space marked black by the last marking. Regions that aren't iterable (e.g., evacuated regions) are skipped.
+     * Must be called during GC, after the space was fully swept.
+     *
+     * @param heapMarker the heap marker whose mark bitmap records the live cells of the space
+     * @param cellVisitor visitor applied to each live cell
+     */
+    void visitLiveCells(TricolorHeapMarker heapMarker, CellVisitor cellVisitor) {
+        final RegionTable regionTable = RegionTable.theRegionTable();
+        regionsRangeIterable.initialize(heapAccount.committedRegions());
+        regionsRangeIterable.resetToFirstIterable(regionTag);
+        while (regionsRangeIterable.hasNext()) {
+            final RegionRange regionsRange = regionsRangeIterable.nextIterableRange(regionTag);
+            final Address start = regionTable.regionAddress(regionsRange.firstRegion());
+            final Address end = start.plus(Address.fromInt(regionsRange.numRegions()).shiftedLeft(log2RegionSizeInBytes));
+            heapMarker.visitBlackCells(start, end, cellVisitor);
+        }
+        regionsRangeIterable.reset();
+    }
+
+    /**
+     * Number of empty regions available for allocation.
+     */
+    int numEmptyRegions() {
+        int numEmptyRegions = 0;
+        regionInfoIterable.initialize(allocationRegions);
+        regionInfoIterable.reset();
+        for (HeapRegionInfo regionInfo : regionInfoIterable) {
+            if (regionInfo.isEmpty()) {
+                numEmptyRegions++;
+            }
+        }
+        return numEmptyRegions;
+    }
+
+    /**
+     * Take the lowest-addressed empty region off the allocation regions to receive evacuated cells.
+     * The region is in the allocating state until retired with {@link #retireEvacuationRegion(int, Pointer)}.
+     *
+     * @return the identifier of an empty region, or {@link HeapRegionConstants#INVALID_REGION_ID} if the space has no empty region
+     */
+    int takeEmptyRegion() {
+        regionInfoIterable.initialize(allocationRegions);
+        regionInfoIterable.reset();
+        for (HeapRegionInfo regionInfo : regionInfoIterable) {
+            if (regionInfo.isEmpty()) {
+                final int regionID = regionInfo.toRegionID();
+                allocationRegions.remove(regionID);
+                allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
+                ALLOCATING_REGION.setState(regionInfo);
+                return regionID;
+            }
+        }
+        return INVALID_REGION_ID;
+    }
+
+    /**
+     * Return a region that received evacuated cells to the space. The space left after the evacuated cells
+     * is made available for allocation if large enough, otherwise it is formatted as dark matter.
+     *
+     * @param regionID a region obtained with {@link #takeEmptyRegion()}
+     * @param top end of the last cell evacuated to the region
+     */
+    void retireEvacuationRegion(int regionID, Pointer top) {
+        final HeapRegionInfo rinfo = HeapRegionInfo.fromRegionID(regionID);
+        final Pointer end = rinfo.regionStart().plus(regionSizeInBytes).asPointer();
+        final Size spaceLeft = end.minus(top).asSize();
+        if (spaceLeft.lessThan(minReclaimableSpace)) {
+            if (!spaceLeft.isZero()) {
+                DarkMatter.format(top, spaceLeft);
+            }
+            FULL_REGION.setState(rinfo);
+            unavailableRegions.append(regionID);
+        } else {
+            HeapFreeChunk.format(top, spaceLeft);
+            rinfo.setFreeChunks(top, spaceLeft, 1);
+            FREE_CHUNKS_REGION.setState(rinfo);
+            if (spaceLeft.lessThan(minOverflowRefillSize)) {
+                tlabAllocationRegions.append(regionID);
+            } else {
+                allocationRegions.append(regionID);
+            }
+            allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(spaceLeft);
+        }
+    }
+
+    /**
+     * Take a swept region with free chunks off the allocation regions to evacuate its live cells.
+     *
+     * @param regionID a region selected by {@link HeapRegionStatistics#selectSparsestRegions(HeapRegionList, int[], int)}
+     */
+    void beginRegionEvacuation(int regionID) {
+        final HeapRegionInfo rinfo = HeapRegionInfo.fromRegionID(regionID);
+        // Same placement as the sweeper's (see endSweep).
+        if (rinfo.numFreeChunks() == 1 && minOverflowRefillSize.lessEqual(rinfo.freeBytesInChunks())) {
+            allocationRegions.remove(regionID);
+        } else {
+            tlabAllocationRegions.remove(regionID);
+        }
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(rinfo.freeBytesInChunks());
+        EVACUATED_REGION.setState(rinfo);
+    }
+
+    /**
+     * Return an evacuated region to the space as an empty region.
+     *
+     * @param regionID a region whose evacuation began with {@link #beginRegionEvacuation(int)}
+     */
+    void endRegionEvacuation(int regionID) {
+        final HeapRegionInfo rinfo = HeapRegionInfo.fromRegionID(regionID);
+        EMPTY_REGION.setState(rinfo);
+        rinfo.resetOccupancy();
+        HeapFreeChunk.format(rinfo.regionStart(), regionSizeInBytes);
+        allocationRegions.append(regionID);
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(regionSizeInBytes);
+    }
+
+    /**
+     * Restore the address ordering of the region lists after an evacuation of regions.
+     */
+    void doAfterRegionEvacuation() {
+        allocationRegions.sort();
+        tlabAllocationRegions.sort();
+        unavailableRegions.sort();
     }
 
     private void iterateRegions(CellRangeVisitor visitor) {
@@ -692,8 +1014,12 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
 
     @Override
     public void visit(CellRangeVisitor visitor) {
+        // Unswept regions may hold dead objects referencing freed space.
+        completeLazySweep();
         // Make allocating regions iterable first.
-        tlabAllocator.unsafeMakeParsable();
+        for (int i = 0; i < numTLABAllocators(); i++) {
+            tlabAllocator(i).unsafeMakeParsable();
+        }
         overflowAllocator.unsafeMakeParsable();
         regionsRangeIterable.addMatchingFlags(Flag.IS_ALLOCATING);
         iterateRegions(visitor);
@@ -703,18 +1029,22 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
 
     private void verifyHeapRegionsBalance() {
         int balance = 0;
-        balance += tlabAllocator.refillManager().allocatingRegion() == INVALID_REGION_ID ? 0 : 1;
+        for (int i = 0; i < numTLABAllocators(); i++) {
+            balance += tlabAllocator(i).refillManager().allocatingRegion() == INVALID_REGION_ID ? 0 : 1;
+        }
         // balance += currentOverflowAllocatingRegion == INVALID_REGION_ID ? 0 : 1;
         balance += overflowAllocator.refillManager().allocatingRegion() == INVALID_REGION_ID ? 0 : 1;
 
         balance += tlabAllocationRegions.size();
         balance += allocationRegions.size();
         balance += unavailableRegions.size();
+        balance += sweepList.size();
         FatalError.check(balance == numRegionsInSpace, "incorrect balance of regions in space");
     }
 
     @Override
     public void verify(AfterMarkSweepVerifier verifier) {
+        completeLazySweep();
         verifyHeapRegionsBalance();
         tlabAllocationRegions.checkIsAddressOrdered();
         allocationRegions.checkIsAddressOrdered();
@@ -734,7 +1064,11 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public int getAllocatingRegion() {
-        final int regionID = tlabAllocationRegionList().removeHead();
+        int regionID = tlabAllocationRegionList().removeHead();
+        while (regionID == INVALID_REGION_ID && lazySweepHeapMarker != null) {
+            sweepNextRegion();
+            regionID = tlabAllocationRegionList().removeHead();
+        }
         if (regionID != INVALID_REGION_ID) {
             final HeapRegionInfo regionInfo = fromRegionID(regionID);
             final int numFreeBytes = regionInfo.isEmpty() ?  regionSizeInBytes : regionInfo.freeBytesInChunks();
@@ -743,7 +1077,48 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         return regionID;
     }
 
+    public int getLocalAllocatingRegion(int numaNode) {
+        int regionID = removeLocalRegion(tlabAllocationRegions, numaNode);
+        if (regionID == INVALID_REGION_ID) {
+            regionID = removeLocalRegion(allocationRegions, numaNode);
+            if (regionID == INVALID_REGION_ID) {
+                // Better a remote region than a GC.
+                return getAllocatingRegion();
+            }
+        }
+        final HeapRegionInfo regionInfo = fromRegionID(regionID);
+        final int numFreeBytes = regionInfo.isEmpty() ?  regionSizeInBytes : regionInfo.freeBytesInChunks();
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(numFreeBytes);
+        return regionID;
+    }
+
+    /**
+     * Remove from a list of allocation regions the first region bound to the specified NUMA node.
+     * @return a region identifier, or {@link HeapRegionConstants#INVALID_REGION_ID} if the list has no region bound to the node
+     */
+    private int removeLocalRegion(HeapRegionList regionList, int numaNode) {
+        final HeapRegionManager regionManager = HeapRegionManager.theHeapRegionManager();
+        int regionID = regionList.head();
+        while (regionID != INVALID_REGION_ID) {
+            if (regionManager.numaNodeOf(regionID) == numaNode) {
+                regionList.remove(regionID);
+                return regionID;
+            }
+            regionID = regionList.next(regionID);
+        }
+        return INVALID_REGION_ID;
+    }
+
     public int getAllocatingRegion(Size minFreeBytes, int maxFreeChunks) {
+        int regionID = findAllocatingRegion(minFreeBytes, maxFreeChunks);
+        while (regionID == INVALID_REGION_ID && lazySweepHeapMarker != null) {
+            sweepNextRegion();
+            regionID = findAllocatingRegion(minFreeBytes, maxFreeChunks);
+        }
+        return regionID;
+    }
+
+    private int findAllocatingRegion(Size minFreeBytes, int maxFreeChunks) {
         final int minFreeSpace = minFreeBytes.toInt();
         regionInfoIterable.initialize(allocationRegions);
         regionInfoIterable.reset();
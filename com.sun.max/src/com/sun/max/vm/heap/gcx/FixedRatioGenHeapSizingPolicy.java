@@ -22,10 +22,32 @@
  */
 package com.sun.max.vm.heap.gcx;
 import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
 import com.sun.max.vm.runtime.*;
 
 
 public class FixedRatioGenHeapSizingPolicy implements GenHeapSizingPolicy {
+    /**
+     * Knob for the maximum number of minor collections a young object can survive before being promoted to the old generation.
+     * Zero disables survivor spaces, i.e., all survivors of a minor collection are promoted.
+     */
+    static int MaxTenuringThreshold = 0;
+    /**
+     * Knob for the ratio of the size of the young generation allocation space to the size of a survivor space.
+     */
+    static int SurvivorRatio = 8;
+    /**
+     * Knob for the desired percentage of a survivor space occupied after a minor collection. Used to adapt the tenuring threshold.
+     */
+    static int TargetSurvivorRatio = 50;
+    static {
+        VMOptions.addFieldOption("-XX:", "MaxTenuringThreshold", FixedRatioGenHeapSizingPolicy.class,
+                        "Maximum number of minor collections a young object survives before promotion (0 promotes all survivors)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "SurvivorRatio", FixedRatioGenHeapSizingPolicy.class, "Ratio of young gen allocation space size to survivor space size", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TargetSurvivorRatio", FixedRatioGenHeapSizingPolicy.class, "Desired percentage of survivor space used after minor collection", Phase.PRISTINE);
+    }
+
     /**
      * Fixed ratio of young to total heap size, expressed as a percentage (value from 1 to 100). The ratio stay fixed throughout heap resizing.
      * Resizing is allowed only if there is enough guaranteed reserve in the old generation.
@@ -71,6 +93,9 @@ public class FixedRatioGenHeapSizingPolicy implements GenHeapSizingPolicy {
         // Run validation of heap sizing parameters.
         FatalError.check(youngGenFixedHeapPercentage > 0 && youngGenFixedHeapPercentage <= 100, "Not a valid percentage of heap size");
         FatalError.check(log2Alignment > 0 && log2Alignment < Word.widthValue().numberOfBits, "Not a valid log2 alignment");
+        FatalError.check(MaxTenuringThreshold >= 0 && MaxTenuringThreshold <= AgingRegionalizedNursery.MAX_AGE, "Not a valid tenuring threshold");
+        FatalError.check(SurvivorRatio > 0, "Not a valid survivor ratio");
+        FatalError.check(TargetSurvivorRatio > 0 && TargetSurvivorRatio <= 100, "Not a valid percentage of survivor space");
         this.youngGenFixedHeapPercentage = youngGenFixedHeapPercentage;
         this.log2Alignment = log2Alignment;
         this.unitSize = Size.fromInt(1).shiftedLeft(log2Alignment);
@@ -113,4 +138,40 @@ public class FixedRatioGenHeapSizingPolicy implements GenHeapSizingPolicy {
     public Size maxOldGenSize() {
         return maxHeapSize.minus(initialYoungGenSize());
     }
+
+    /**
+     * Survivor spaces are carved out of the young generation, each taking 1 / ({@link #SurvivorRatio} + 2) of it.
+     * If this is less than the alignment unit, the young generation has no survivor spaces.
+     */
+    @Override
+    public Size survivorSpaceSize() {
+        if (MaxTenuringThreshold == 0) {
+            return Size.zero();
+        }
+        return alignDown(initialYoungGenSize().dividedBy(SurvivorRatio + 2));
+    }
+
+    @Override
+    public int initialTenuringThreshold() {
+        return survivorSpaceSize().isZero() ? 0 : MaxTenuringThreshold;
+    }
+
+    /**
+     * The threshold is the lowest age such that survivors of that age or younger occupy more than {@link #TargetSurvivorRatio} percent
+     * of a survivor space, bounded by {@link #MaxTenuringThreshold}.
+     */
+    @Override
+    public int tenuringThreshold(long [] survivorBytesPerAge) {
+        final long desiredSurvivorBytes = survivorSpaceSize().toLong() / 100 * TargetSurvivorRatio;
+        long survivorBytes = 0L;
+        int age = 1;
+        while (age < survivorBytesPerAge.length) {
+            survivorBytes += survivorBytesPerAge[age];
+            if (survivorBytes > desiredSurvivorBytes) {
+                break;
+            }
+            age++;
+        }
+        return age < MaxTenuringThreshold ? age : MaxTenuringThreshold;
+    }
 }
@@ -28,6 +28,7 @@ import com.sun.max.annotate.*;
 import com.sun.max.lang.*;
 import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
+import com.sun.max.util.*;
 import com.sun.max.vm.runtime.*;
 
 /**
@@ -240,6 +241,13 @@ class FixedSizeRegionAllocator {
      */
     private int highestAllocated;
 
+    /**
+     * Number of NUMA nodes regions are placed on, or 0 if placement of regions is left to the operating system.
+     * When not 0, regions are interleaved over the nodes, and the memory of a region is bound to its node when committed.
+     */
+    @CONSTANT_WHEN_NOT_ZERO
+    private int numNUMANodes;
+
     FixedSizeRegionAllocator(String name) {
         backingStorage = new MemoryRegion(name);
         allocated = new RegionBitSet();
@@ -280,6 +288,30 @@ class FixedSizeRegionAllocator {
         }
     }
 
+    /**
+     * Interleave regions over the specified number of NUMA nodes. Only regions committed after this call are bound to their node.
+     * @param numNodes number of NUMA nodes of the platform
+     */
+    void enableNUMAPlacement(int numNodes) {
+        FatalError.check(numNodes > 1 && numNUMANodes == 0, "NUMA placement can only be enabled once, for more than one node");
+        numNUMANodes = numNodes;
+    }
+
+    int numNUMANodes() {
+        return numNUMANodes;
+    }
+
+    /**
+     * NUMA node a region is bound to. Regions are interleaved over the nodes, so that any range of contiguous regions
+     * spreads evenly over them.
+     * @param regionId a region identifier
+     * @return a NUMA node, or 0 if NUMA placement isn't enabled
+     */
+    @INLINE
+    int numaNodeOf(int regionId) {
+        return numNUMANodes == 0 ? 0 : regionId % numNUMANodes;
+    }
+
     boolean contains(Address address) {
         return backingStorage.contains(address);
     }
@@ -418,11 +450,25 @@ class FixedSizeRegionAllocator {
         if (VirtualMemory.commitMemory(regionStart(firstRegionId), size, VirtualMemory.Type.HEAP)) {
             committed.set(firstRegionId, firstRegionId + numRegions);
             committedSize += numRegions;
+            if (numNUMANodes != 0) {
+                bindToNUMANodes(firstRegionId, numRegions);
+            }
             return true;
         }
         return false;
     }
 
+    /**
+     * Bind the memory of freshly committed regions to their NUMA node. This must be done before the regions are first touched,
+     * as binding doesn't migrate pages already allocated.
+     */
+    private void bindToNUMANodes(int firstRegionId, int numRegions) {
+        final int end = firstRegionId + numRegions;
+        for (int regionId = firstRegionId; regionId < end; regionId++) {
+            NUMALib.numaBindMemory(validRegionStart(regionId).toLong(), regionSizeInBytes, numaNodeOf(regionId));
+        }
+    }
+
     synchronized boolean uncommit(int firstRegionId, int numRegions) {
         if (isValidCommittedRange(firstRegionId, numRegions)) {
             final Size size = Size.fromInt(numRegions).shiftedLeft(log2RegionSizeInBytes);
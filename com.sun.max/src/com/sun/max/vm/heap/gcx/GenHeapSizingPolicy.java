@@ -52,4 +52,25 @@ public interface GenHeapSizingPolicy {
      */
     Size maxOldGenSize();
 
+    /**
+     * Size of each of the two survivor spaces of the young generation. Survivors of a minor collection are copied to a survivor space until they
+     * reach the tenuring threshold. A size of zero means that the young generation has no survivor spaces and that all survivors are promoted to the old generation.
+     * @return aligned size.
+     */
+    Size survivorSpaceSize();
+
+    /**
+     * Tenuring threshold for the first minor collection.
+     * @return an age between 0 and {@link AgingRegionalizedNursery#MAX_AGE}
+     */
+    int initialTenuringThreshold();
+
+    /**
+     * Compute the tenuring threshold for the next minor collection from the amount of survivors of the last one.
+     * Survivors of age lower than the threshold are copied to a survivor space, the others are promoted to the old generation.
+     *
+     * @param survivorBytesPerAge amount of bytes copied to a survivor space by the last minor collection, indexed by age after the collection
+     * @return an age between 0 and {@link AgingRegionalizedNursery#MAX_AGE}
+     */
+    int tenuringThreshold(long [] survivorBytesPerAge);
 }
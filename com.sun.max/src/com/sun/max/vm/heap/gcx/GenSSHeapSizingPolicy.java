@@ -260,6 +260,22 @@ public final class GenSSHeapSizingPolicy implements GenHeapSizingPolicy {
         return maxHeapOldGenSize;
     }
 
+    @Override
+    public Size survivorSpaceSize() {
+        // Survivors are always promoted.
+        return Size.zero();
+    }
+
+    @Override
+    public int initialTenuringThreshold() {
+        return 0;
+    }
+
+    @Override
+    public int tenuringThreshold(long [] survivorBytesPerAge) {
+        return 0;
+    }
+
     public Size heapSize() {
         return heapSize;
     }
@@ -299,6 +299,25 @@ public class HeapAccount<T extends HeapAccountOwner>{
         add(regionID, uncommitted);
     }
 
+    /**
+     * Give back a committed region of the account to the heap region manager. The region's virtual memory pages are uncommitted first.
+     * The region must not be on any {@link RegionListUse#OWNERSHIP} list.
+     * This throws a FatalError if the region isn't allocated and committed to this account.
+     *
+     * @param regionID the region from this account to free
+     */
+    public synchronized void free(int regionID) {
+        FatalError.check(committed.contains(regionID), "The region must be allocated and committed to this account");
+        final FixedSizeRegionAllocator regionAllocator = theHeapRegionManager.regionAllocator();
+        regionAllocator.uncommit(regionID, 1);
+        regionAllocator.free(regionID, 1);
+        committed.remove(regionID);
+        final HeapRegionInfo rinfo = RegionTable.theRegionTable().regionInfo(regionID);
+        rinfo.resetOccupancy();
+        rinfo.setOwner(null);
+        rinfo.setTag(0);
+    }
+
     /**
      * Commit the memory of the specified contiguous range of regions in virtual space.
      *
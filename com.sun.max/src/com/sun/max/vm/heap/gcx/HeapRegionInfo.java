@@ -68,7 +68,12 @@ public class HeapRegionInfo {
         /**
          * Region is the last region of a multi-regions object. Space after the end of the large object may be used for allocation.
          */
-        IS_TAIL;
+        IS_TAIL,
+        /**
+         * Region is being evacuated by a compaction. References to cells in the region must be forwarded to the cells' new location.
+         * Evacuated regions are not iterable: the hub of their evacuated cells is overwritten with a forwarding reference.
+         */
+        IS_EVACUATED;
 
         private final int mask = 1 << ordinal();
 
@@ -204,6 +209,10 @@ public class HeapRegionInfo {
         return IS_TAIL.isSet(flags);
     }
 
+    public final boolean isEvacuated() {
+        return IS_EVACUATED.isSet(flags);
+    }
+
     HeapRegionInfo() {
         // Not a class one can allocate. Allocation is the responsibility of the region table.
     }
@@ -22,15 +22,21 @@
  */
 package com.sun.max.vm.heap.gcx;
 
+import static com.sun.max.platform.Platform.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
 
 import com.sun.max.annotate.*;
+import com.sun.max.lang.*;
 import com.sun.max.memory.*;
+import com.sun.max.platform.*;
 import com.sun.max.unsafe.*;
+import com.sun.max.util.*;
 import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.heap.*;
 import com.sun.max.vm.heap.gcx.rset.*;
+import com.sun.max.vm.intrinsics.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
@@ -43,8 +49,18 @@ import com.sun.max.vm.type.*;
  * heap accounts, return free space to it, and may grow or shrink their accounts.
  * The heap region manager may also request a heap account to trade or free some specific
  * regions.
+ *
+ * With {@code -XX:+NUMAAwareHeap}, regions are interleaved over the NUMA nodes of the platform and the memory of each region
+ * is bound to its node when committed (see {@link #numaNodeOf(int)}). Heap spaces can then hand out memory local to the node
+ * of the allocating thread (see {@link #currentNUMANode()}).
  */
 public final class HeapRegionManager implements HeapAccountOwner {
+    static boolean NUMAAwareHeap = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "NUMAAwareHeap", HeapRegionManager.class,
+                        "Bind heap regions to NUMA nodes and allocate TLABs from regions local to the allocating thread (Linux/AMD64 only)", Phase.PRISTINE);
+    }
+
     /**
      * The single instance of the heap region manager.
      */
@@ -147,6 +163,51 @@ public final class HeapRegionManager implements HeapAccountOwner {
         return regionAllocator.isValidRegionId(regionID);
     }
 
+    /**
+     * Number of NUMA nodes heap regions are bound to.
+     * @return a number of NUMA nodes, or 0 if regions aren't bound to NUMA nodes
+     */
+    public int numNUMANodes() {
+        return regionAllocator.numNUMANodes();
+    }
+
+    /**
+     * NUMA node the memory of a region is bound to.
+     * @param regionID a region identifier
+     * @return a NUMA node, or 0 if regions aren't bound to NUMA nodes
+     */
+    @INLINE
+    public int numaNodeOf(int regionID) {
+        return regionAllocator.numaNodeOf(regionID);
+    }
+
+    /**
+     * NUMA node of the CPU the current thread runs on. Only meaningful if regions are bound to NUMA nodes.
+     * The result is only a hint, as the thread may migrate to another node at any time.
+     */
+    @INLINE
+    public static int currentNUMANode() {
+        return Intrinsics.getCpuID() >> MaxineIntrinsicIDs.NUMA_NODE_SHIFT;
+    }
+
+    /**
+     * Enable NUMA placement of regions if requested and supported by the platform.
+     */
+    private void initializeNUMAPlacement() {
+        if (platform().os != OS.LINUX || platform().isa != ISA.AMD64) {
+            Log.println("-XX:+NUMAAwareHeap is only supported on Linux/AMD64");
+            MaxineVM.native_exit(1);
+        }
+        if (NUMALib.numalib_available() < 0) {
+            Log.println("Warning: libnuma unavailable, ignoring -XX:+NUMAAwareHeap");
+            return;
+        }
+        final int numNodes = NUMALib.numaConfiguredNodes();
+        if (numNodes > 1) {
+            regionAllocator.enableNUMAPlacement(numNodes);
+        }
+    }
+
     private HeapRegionManager() {
         regionAllocator = new FixedSizeRegionAllocator("Heap Backing Storage");
         managerHeapAccount = new HeapAccount<HeapRegionManager>(this);
@@ -259,6 +320,9 @@ public final class HeapRegionManager implements HeapAccountOwner {
             heapScheme.enableCustomAllocation(Reference.fromJava(managerAllocator).toOrigin());
             // Record initial space usage.
             regionAllocator.initialize(startOfManagedSpace, numTotalRegions, initialNumRegions);
+            if (NUMAAwareHeap) {
+                initializeNUMAPlacement();
+            }
             RegionTable.initialize(regionInfoClass, regionAllocator.bounds(), numTotalRegions);
             // Allocate the backing storage for the region lists.
             HeapRegionList.initializeListStorage(numTotalRegions);
@@ -143,6 +143,55 @@ public final class HeapRegionStatistics {
         doFullStats(heapAccount.committedRegions());
     }
 
+    /**
+     * Amount of space occupied by live data and dark matter in a region with free chunks.
+     */
+    private static int occupiedBytes(int regionID) {
+        return HeapRegionConstants.regionSizeInBytes - HeapRegionInfo.fromRegionID(regionID).freeBytesInChunks();
+    }
+
+    /**
+     * Select the sparsest regions of a list, i.e., the regions with free chunks with the least occupied space.
+     * Regions holding part of a large object are never selected.
+     * The identifiers of the selected regions are stored in the candidates array by increasing amount of occupied space.
+     *
+     * @param regionList the list of regions to select from
+     * @param candidates array where the selected regions are stored. Its length is the maximum number of regions selected.
+     * @param maxOccupiedBytes maximum amount of space occupied in a selected region
+     * @return the number of regions selected
+     */
+    public int selectSparsestRegions(HeapRegionList regionList, int [] candidates, int maxOccupiedBytes) {
+        int numCandidates = 0;
+        regionInfoIterable.initialize(regionList);
+        regionInfoIterable.reset();
+        while (regionInfoIterable.hasNext()) {
+            final HeapRegionInfo rinfo = regionInfoIterable.next();
+            if (!rinfo.hasFreeChunks() || rinfo.isLarge()) {
+                continue;
+            }
+            final int occupiedBytes = HeapRegionConstants.regionSizeInBytes - rinfo.freeBytesInChunks();
+            if (occupiedBytes > maxOccupiedBytes) {
+                continue;
+            }
+            int i = numCandidates;
+            if (numCandidates == candidates.length) {
+                if (occupiedBytes >= occupiedBytes(candidates[numCandidates - 1])) {
+                    continue;
+                }
+                // Drop the densest candidate.
+                i--;
+            } else {
+                numCandidates++;
+            }
+            while (i > 0 && occupiedBytes(candidates[i - 1]) > occupiedBytes) {
+                candidates[i] = candidates[i - 1];
+                i--;
+            }
+            candidates[i] = rinfo.toRegionID();
+        }
+        return numCandidates;
+    }
+
     public void dump() {
         Log.println("[ min, max ]      :  # fragments         # regions");
         for (int i = log2MinFragmentSize; i < log2LargestChunkSize; i++) {
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Fixed size work-stealing deque of cells used by parallel heap tracers.
+ * The owner of the deque pushes and pops cells at its bottom end, without synchronization in the common case;
+ * other workers steal cells from the top end by atomically advancing the top index.
+ * This follows the algorithm of Chase and Lev ("Dynamic Circular Work-Stealing Deque", SPAA 2005), without growing the deque:
+ * the owner is told when the deque is full and is responsible for handling the overflow.
+ */
+final class MarkingDeque {
+    private Address base;
+    private int mask;
+
+    /**
+     * Index of the next cell to steal. Only ever incremented, with a compare-and-swap.
+     */
+    private volatile int top;
+    /**
+     * Index of the next free slot. Only modified by the owner of the deque.
+     */
+    private volatile int bottom;
+
+    @FOLD
+    private static int topOffset() {
+        return ClassActor.fromJava(MarkingDeque.class).findLocalInstanceFieldActor("top").offset();
+    }
+
+    MarkingDeque() {
+    }
+
+    /**
+     * Allocates the backing storage of the deque.
+     * @param length number of cells the deque can hold. Rounded up to the next power of two.
+     */
+    void initialize(int length) {
+        int capacity = 1;
+        while (capacity < length) {
+            capacity <<= 1;
+        }
+        final Size size = Size.fromInt(capacity).shiftedLeft(Word.widthValue().log2numberOfBytes);
+        base = Memory.allocate(size);
+        if (base.isZero()) {
+            MaxineVM.reportPristineMemoryFailure("marking deque", "allocate", size);
+        }
+        mask = capacity - 1;
+    }
+
+    private boolean casTop(int expectedTop, int newTop) {
+        return Reference.fromJava(this).compareAndSwapInt(topOffset(), expectedTop, newTop) == expectedTop;
+    }
+
+    /**
+     * Resets the deque to empty. Must only be called when no other thread may access the deque.
+     */
+    void reset() {
+        top = 0;
+        bottom = 0;
+    }
+
+    boolean isEmpty() {
+        return bottom - top <= 0;
+    }
+
+    /**
+     * Pushes a cell at the bottom of the deque. Must only be called by the owner of the deque.
+     * @param cell a cell
+     * @return true if the cell was pushed, false if the deque is full
+     */
+    boolean push(Pointer cell) {
+        final int b = bottom;
+        if (b - top > mask) {
+            return false;
+        }
+        base.asPointer().setWord(b & mask, cell);
+        // Make the cell visible to thieves before the new bottom.
+        MemoryBarriers.barrier(MemoryBarriers.STORE_STORE);
+        bottom = b + 1;
+        return true;
+    }
+
+    /**
+     * Pops a cell from the bottom of the deque. Must only be called by the owner of the deque.
+     * @return a cell, or zero if the deque is empty
+     */
+    Pointer pop() {
+        final int b = bottom - 1;
+        bottom = b;
+        // The new bottom must be visible to thieves before reading top.
+        MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+        final int t = top;
+        if (b - t < 0) {
+            // Empty. Restore bottom.
+            bottom = t;
+            return Pointer.zero();
+        }
+        Pointer cell = base.asPointer().getWord(b & mask).asPointer();
+        if (b != t) {
+            return cell;
+        }
+        // Last cell in the deque. Race against thieves for it.
+        if (!casTop(t, t + 1)) {
+            cell = Pointer.zero();
+        }
+        bottom = t + 1;
+        return cell;
+    }
+
+    /**
+     * Steals a cell from the top of the deque. May be called by any thread.
+     * @return a cell, or zero if the deque was empty or if another thread won the race for the top cell
+     */
+    Pointer steal() {
+        final int t = top;
+        MemoryBarriers.barrier(MemoryBarriers.LOAD_LOAD);
+        final int b = bottom;
+        if (b - t <= 0) {
+            return Pointer.zero();
+        }
+        final Pointer cell = base.asPointer().getWord(t & mask).asPointer();
+        if (!casTop(t, t + 1)) {
+            return Pointer.zero();
+        }
+        return cell;
+    }
+}
@@ -113,6 +113,11 @@ public class NoAgingNurseryEvacuator extends EvacuatorToCardSpace {
     private final DirtyCardEvacuationClosure heapSpaceDirtyCardClosure;
     private final BootRegionDirtyCardEvacuationClosure bootRegionDirtyCardClosure;
 
+    /**
+     * Refiner of the dirty cards of the old generation, if any.
+     */
+    DirtyCardRefiner cardRefiner;
+
     public NoAgingNurseryEvacuator(EvacuatingSpace fromSpace, HeapSpace toSpace, EvacuationBufferProvider evacuationBufferProvider, CardTableRSet rset, String name) {
         super(fromSpace, toSpace, evacuationBufferProvider, rset, name);
         this.heapSpaceDirtyCardClosure = new DirtyCardEvacuationClosure();
@@ -126,6 +131,16 @@ public class NoAgingNurseryEvacuator extends EvacuatorToCardSpace {
             traceDirtyCardWalk = TraceDirtyCardWalk && TraceFromGCInvocation <= gcOperation.invocationCount();
         }
     }
+
+    /**
+     * Set the refiner of the dirty cards of the old generation. When the refiner is active, the references it recorded
+     * are updated before the remaining dirty cards are scanned.
+     */
+    @HOSTED_ONLY
+    public void setCardRefiner(DirtyCardRefiner cardRefiner) {
+        this.cardRefiner = cardRefiner;
+    }
+
     @Override
     protected void evacuateFromBootHeap() {
         // NOTE: if immortal region happens to grow very large, it may be sensible to also scan it using the
@@ -138,6 +153,9 @@ public class NoAgingNurseryEvacuator extends EvacuatorToCardSpace {
 
     @Override
     protected void evacuateFromRSets() {
+        if (cardRefiner != null && cardRefiner.isActive()) {
+            cardRefiner.evacuateRefinedSlots(this);
+        }
         // Visit the dirty cards of the old gen (i.e., the toSpace).
         final boolean traceRSet = CardTableRSet.traceCardTableRSet();
         if (traceDirtyCardWalk()) {
@@ -22,68 +22,20 @@
  */
 package com.sun.max.vm.heap.gcx;
 
-import com.sun.max.annotate.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.heap.*;
-import com.sun.max.vm.heap.HeapScheme.GCRequest;
-import com.sun.max.vm.runtime.*;
 
 /**
  * A simple nursery implementation that allocates objects in a single contiguous space and evacuate all survivors to the next generation on minor collections.
  * The next generation is responsible for keeping a reserve large enough to accommodate the worst-case evacuation.
  */
-public final class NoAgingRegionalizedNursery implements HeapSpace {
-
-    final class NurseryRefiller extends Refiller {
-        @Override
-        public Address allocateRefill(Size requestedSize, Pointer startOfSpaceLeft, Size spaceLeft) {
-            GCRequest.setGCRequest(requestedSize);
-            if (!Heap.collectGarbage()) {
-                throw new OutOfMemoryError();
-            }
-            // We're out of safepoint. The current thread hold the refill lock and will do the refill of the allocator.
-            return Address.zero();
-        }
-
-        @Override
-        protected void doBeforeGC() {
-            // Nothing to do.
-        }
-
-        @Override
-        public Address allocateLargeRaw(Size size) {
-            FatalError.unimplemented();
-            return Address.zero();
-        }
-    }
-
-    /**
-     * The heap account space for this nursery is allocated from.
-     */
-    private final HeapAccount<? extends HeapAccountOwner> heapAccount;
-
-    private final int regionTag;
-    /**
-     * List of region allocated to the nursery.
-     */
-    private HeapRegionList nurseryRegionsList;
-    /**
-     * List of regions allocated to the nursery but uncommitted.
-     */
-    private HeapRegionList uncommitedNurseryRegionsList;
-
-    /**
-     * Atomic bump pointer allocator over the nursery space. The current bounds and size of the nursery are obtained from the allocator's start and end addresses.
-     */
-    @INSPECTED
-    private final AtomicBumpPointerAllocator<NurseryRefiller> allocator = new AtomicBumpPointerAllocator<NurseryRefiller>(new NurseryRefiller());
+public final class NoAgingRegionalizedNursery extends RegionalizedNursery {
 
     private final SpaceBounds bounds;
 
     public NoAgingRegionalizedNursery(HeapAccount<? extends HeapAccountOwner> heapAccount, int regionTag) {
-        this.heapAccount = heapAccount;
-        this.regionTag = regionTag;
+        super(heapAccount, regionTag);
         this.bounds = new SpaceBounds() {
             @Override
             Address lowestAddress() {
@@ -110,38 +62,54 @@ public final class NoAgingRegionalizedNursery implements HeapSpace {
     }
 
     public void initialize(GenHeapSizingPolicy genSizingPolicy) {
-        nurseryRegionsList = HeapRegionList.RegionListUse.OWNERSHIP.createList();
-        uncommitedNurseryRegionsList = HeapRegionList.RegionListUse.OWNERSHIP.createList();
-        if (!heapAccount.allocateContiguous(HeapRegionConstants.numberOfRegions(genSizingPolicy.maxYoungGenSize()), nurseryRegionsList, false, false, regionTag)) {
-            FatalError.unexpected("Couldn't allocate contiguous range to the nursery");
-        }
-        int regionID = nurseryRegionsList.head();
-        int numCommittedRegions = HeapRegionConstants.numberOfRegions(genSizingPolicy.initialYoungGenSize());
-        heapAccount.commit(RegionRange.from(regionID, numCommittedRegions));
-
-        int lastCommittedRegion = regionID + numCommittedRegions - 1;
-        while (nurseryRegionsList.tail() != lastCommittedRegion) {
-            uncommitedNurseryRegionsList.prepend(nurseryRegionsList.removeTail());
-        }
-        allocator.initialize(RegionTable.theRegionTable().regionAddress(nurseryRegionsList.head()), genSizingPolicy.initialYoungGenSize(), Size.fromInt(HeapRegionConstants.regionSizeInBytes));
-    }
-
-    public Pointer allocate(Size size) {
-        return allocator.allocateCleared(size);
+        final Address start = initializeRegions(genSizingPolicy);
+        allocator.initialize(start, genSizingPolicy.initialYoungGenSize(), Size.fromInt(HeapRegionConstants.regionSizeInBytes));
     }
 
+    /**
+     * Commit uncommitted regions of the nursery and grow the allocation space over them.
+     * Must only be called when no allocation can take place, e.g., at the end of a minor collection.
+     */
     @Override
     public Size increaseSize(Size delta) {
-        // TODO
-        FatalError.unimplemented();
-        return Size.zero();
+        int numRegions = HeapRegionConstants.numberOfRegions(delta);
+        if (numRegions > uncommitedNurseryRegionsList.size()) {
+            numRegions = uncommitedNurseryRegionsList.size();
+        }
+        if (numRegions == 0) {
+            return Size.zero();
+        }
+        heapAccount.commit(RegionRange.from(uncommitedNurseryRegionsList.head(), numRegions));
+        for (int i = 0; i < numRegions; i++) {
+            nurseryRegionsList.append(uncommitedNurseryRegionsList.removeHead());
+        }
+        final Size growth = Size.fromInt(HeapRegionConstants.regionSizeInBytes).times(numRegions);
+        allocator.grow(growth);
+        return growth;
     }
 
+    /**
+     * Shrink the allocation space by whole regions and uncommit them. The nursery keeps at least one region, and doesn't shrink below the allocated space.
+     * Must only be called when no allocation can take place, e.g., at the end of a minor collection.
+     */
     @Override
     public Size decreaseSize(Size delta) {
-        // TODO
-        FatalError.unimplemented();
-        return Size.zero();
+        int numRegions = delta.unsignedShiftedRight(HeapRegionConstants.log2RegionSizeInBytes).toInt();
+        if (numRegions > nurseryRegionsList.size() - 1) {
+            numRegions = nurseryRegionsList.size() - 1;
+        }
+        if (numRegions <= 0) {
+            return Size.zero();
+        }
+        final Size shrinkage = Size.fromInt(HeapRegionConstants.regionSizeInBytes).times(numRegions);
+        if (!allocator.shrink(shrinkage)) {
+            return Size.zero();
+        }
+        heapAccount.uncommit(RegionRange.from(nurseryRegionsList.tail() - numRegions + 1, numRegions));
+        for (int i = 0; i < numRegions; i++) {
+            uncommitedNurseryRegionsList.prepend(nurseryRegionsList.removeTail());
+        }
+        return shrinkage;
     }
 
     @Override
@@ -154,25 +122,6 @@ public final class NoAgingRegionalizedNursery implements HeapSpace {
         return Size.fromInt(HeapRegionConstants.regionSizeInBytes).times(uncommitedNurseryRegionsList.size()).plus(allocator.size());
     }
 
-    @Override
-    public Pointer allocateTLAB(Size size) {
-        final Pointer tlab = allocator.allocateRaw(size);
-        HeapFreeChunk.format(tlab, size);
-        return tlab;
-    }
-
-    public void retireTLAB(Pointer start, Size size) {
-        FatalError.check(allocator.inCurrentContiguousChunk(start), "Retired TLAB Space must be in allocating space");
-        if (!allocator.retireTop(start, size)) {
-            DarkMatter.format(start, size);
-        }
-    }
-
-    @Override
-    public boolean contains(Address address) {
-        return allocator.inCurrentContiguousChunk(address);
-    }
-
     @Override
     public void doBeforeGC() {
         allocator.doBeforeGC();
@@ -186,11 +135,6 @@ public final class NoAgingRegionalizedNursery implements HeapSpace {
         allocator.reset();
     }
 
-    @Override
-    public Size freeSpace() {
-        return allocator.freeSpace();
-    }
-
     @Override
     public Size usedSpace() {
         return allocator.usedSpace();
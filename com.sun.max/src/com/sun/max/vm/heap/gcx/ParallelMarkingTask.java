@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Parallel tracing of the objects marked grey by the root scan of a {@link TricolorHeapMarker}.
+ * <p>
+ * Each worker of a {@link GCThreadPool} owns a {@link MarkingDeque}. Workers first share the scan of the color map
+ * for the grey marks left by root marking: the area between the leftmost and rightmost roots is split into fixed-size chunks
+ * of the color map that workers claim atomically. A worker claims a grey object by atomically clearing its grey bit,
+ * and marks the white objects it references by atomically setting their black bit before pushing them on its deque. Hence,
+ * every live object is visited exactly once, and objects are black as soon as they are owned by some worker.
+ * A worker drains its deque after each visit, claims another chunk when its deque is empty, and steals from the deques of
+ * other workers when there are no more chunks to claim. Termination is detected with a {@link GCTaskTerminator}.
+ * <p>
+ * When a worker's deque is full, the object is marked grey (from black) and the overflow is recorded. Another parallel round over
+ * the chunks covering the overflowed objects then takes place, until no more overflow occurs.
+ * <p>
+ * Parallel marking leaves no grey objects behind, so the sequential forward scan of the heap marker can resume
+ * from the rightmost marked object, e.g., to process special references.
+ */
+final class ParallelMarkingTask extends GCThreadPool.Task implements GCTaskTerminator.WorkSource {
+    private static final VMIntOption markingDequeSizeOption =
+        register(new VMIntOption("-XX:MarkingDequeSize=", 32 * 1024, "Size of the per-thread marking deques of parallel marking in number of references."),
+                        MaxineVM.Phase.PRISTINE);
+
+    /**
+     * Log 2 of the number of words of the color map in a chunk claimed by a worker.
+     */
+    private static final int LOG2_CHUNK_BITMAP_WORDS = 6;
+
+    final TricolorHeapMarker heapMarker;
+
+    private final GCThreadPool gcThreadPool;
+
+    private final GCTaskTerminator terminator = new GCTaskTerminator();
+
+    /**
+     * Per-worker marking state. Allocated in immortal memory at VM startup.
+     */
+    private MarkingWorker[] workers;
+
+    /**
+     * Number of workers taking part in the current marking.
+     */
+    private int numWorkers;
+
+    /**
+     * Index of the first color map word of the area scanned for grey marks.
+     */
+    private int firstChunkWordIndex;
+
+    /**
+     * Index of the color map word following the area scanned for grey marks.
+     */
+    private int endChunkWordIndex;
+
+    private int numChunks;
+
+    /**
+     * Next chunk to be claimed by a worker.
+     */
+    private volatile int nextChunk;
+
+    /**
+     * Spin lock protecting the overflow state and the discovery of special references.
+     */
+    private volatile int lock;
+
+    private boolean overflowed;
+    private Address overflowLeftmost;
+    private Address overflowRightmost;
+
+    @FOLD
+    private static int nextChunkOffset() {
+        return ClassActor.fromJava(ParallelMarkingTask.class).findLocalInstanceFieldActor("nextChunk").offset();
+    }
+
+    @FOLD
+    private static int lockOffset() {
+        return ClassActor.fromJava(ParallelMarkingTask.class).findLocalInstanceFieldActor("lock").offset();
+    }
+
+    @HOSTED_ONLY
+    ParallelMarkingTask(TricolorHeapMarker heapMarker, GCThreadPool gcThreadPool) {
+        this.heapMarker = heapMarker;
+        this.gcThreadPool = gcThreadPool;
+    }
+
+    /**
+     * Allocates the per-worker marking state. Must be called at VM startup, after the number of GC workers is known.
+     */
+    void initialize() {
+        final int maxWorkers = gcThreadPool.maxWorkers();
+        Heap.enableImmortalMemoryAllocation();
+        try {
+            workers = new MarkingWorker[maxWorkers];
+            for (int i = 0; i < maxWorkers; i++) {
+                workers[i] = new MarkingWorker(i);
+            }
+        } finally {
+            Heap.disableImmortalMemoryAllocation();
+        }
+        final int dequeSize = markingDequeSizeOption.getValue();
+        for (MarkingWorker worker : workers) {
+            worker.deque.initialize(dequeSize);
+        }
+    }
+
+    /**
+     * Indicates whether the next marking can be done in parallel.
+     */
+    boolean isEnabled() {
+        return workers != null && gcThreadPool.activeWorkers() > 1;
+    }
+
+    /**
+     * Visit in parallel all the objects reachable from the objects marked grey by root marking.
+     *
+     * @param leftmost leftmost cell marked grey by root marking
+     * @param rightmost rightmost cell marked grey by root marking
+     * @return the rightmost cell marked black
+     */
+    Address visitGreyObjectsAfterRootMarking(Address leftmost, Address rightmost) {
+        numWorkers = gcThreadPool.activeWorkers();
+        for (int i = 0; i < numWorkers; i++) {
+            workers[i].reset(rightmost);
+        }
+        if (leftmost.greaterThan(rightmost)) {
+            // No roots in the covered area.
+            return rightmost;
+        }
+        setChunks(leftmost, rightmost);
+        while (true) {
+            overflowed = false;
+            terminator.reset(numWorkers);
+            gcThreadPool.run(this);
+            if (!overflowed) {
+                break;
+            }
+            if (Heap.logGCPhases()) {
+                Log.print("Parallel marking overflow, rescanning [");
+                Log.print(overflowLeftmost);
+                Log.print(", ");
+                Log.print(overflowRightmost);
+                Log.println("]");
+            }
+            setChunks(overflowLeftmost, overflowRightmost);
+        }
+        Address result = rightmost;
+        for (int i = 0; i < numWorkers; i++) {
+            if (workers[i].rightmost.greaterThan(result)) {
+                result = workers[i].rightmost;
+            }
+        }
+        return result;
+    }
+
+    private void setChunks(Address leftmost, Address rightmost) {
+        firstChunkWordIndex = heapMarker.bitmapWordIndex(leftmost);
+        endChunkWordIndex = heapMarker.bitmapWordIndex(rightmost) + 1;
+        final int chunkWords = 1 << LOG2_CHUNK_BITMAP_WORDS;
+        numChunks = (endChunkWordIndex - firstChunkWordIndex + chunkWords - 1) >> LOG2_CHUNK_BITMAP_WORDS;
+        nextChunk = 0;
+    }
+
+    /**
+     * Claims a chunk of the color map to scan for grey marks.
+     * @return a chunk number, or -1 if all chunks have been claimed
+     */
+    private int claimChunk() {
+        final Reference reference = Reference.fromJava(this);
+        int chunk;
+        do {
+            chunk = nextChunk;
+            if (chunk >= numChunks) {
+                return -1;
+            }
+        } while (reference.compareAndSwapInt(nextChunkOffset(), chunk, chunk + 1) != chunk);
+        return chunk;
+    }
+
+    private void lock() {
+        final Reference reference = Reference.fromJava(this);
+        while (reference.compareAndSwapInt(lockOffset(), 0, 1) != 0) {
+            Intrinsics.pause();
+        }
+    }
+
+    private void unlock() {
+        lock = 0;
+    }
+
+    private void recordOverflow(Pointer cell) {
+        lock();
+        if (!overflowed) {
+            overflowed = true;
+            overflowLeftmost = cell;
+            overflowRightmost = cell;
+        } else if (cell.lessThan(overflowLeftmost)) {
+            overflowLeftmost = cell;
+        } else if (cell.greaterThan(overflowRightmost)) {
+            overflowRightmost = cell;
+        }
+        unlock();
+    }
+
+    private void discoverSpecialReference(Pointer cell) {
+        // The special reference manager isn't thread-safe.
+        lock();
+        SpecialReferenceManager.discoverSpecialReference(cell);
+        unlock();
+    }
+
+    /**
+     * Determines whether the first bit of a word of the color map is the second bit of a color that spans two words,
+     * i.e., the grey bit of an object whose mark is the last bit of the previous word.
+     * This is the case if the run of set bits that ends with the last bit of the previous word has an odd length.
+     * Words are read from highest to lowest so that a grey bit observed in a word is always observed with its
+     * black bit.
+     */
+    private boolean isGreyBitOfSpanningColor(int wordIndex) {
+        final Pointer colorMapBase = heapMarker.base.asPointer();
+        int runLength = 0;
+        for (int index = wordIndex - 1; index >= 0; index--) {
+            final int highestClearBit = Address.fromLong(~colorMapBase.getLong(index)).mostSignificantBitSet();
+            runLength += TricolorHeapMarker.LAST_BIT_INDEX_IN_WORD - highestClearBit;
+            if (highestClearBit >= 0) {
+                break;
+            }
+        }
+        return (runLength & 1) != 0;
+    }
+
+    @Override
+    public void run(int workerId) {
+        final MarkingWorker worker = workers[workerId];
+        while (true) {
+            worker.drain();
+            final int chunk = claimChunk();
+            if (chunk >= 0) {
+                worker.scanChunk(chunk);
+            } else if (!worker.steal() && terminator.offerTermination(this)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean hasWork() {
+        if (nextChunk < numChunks) {
+            return true;
+        }
+        for (int i = 0; i < numWorkers; i++) {
+            if (!workers[i].deque.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marking state of a worker.
+     */
+    final class MarkingWorker extends PointerIndexVisitor {
+        final int workerId;
+        final MarkingDeque deque = new MarkingDeque();
+
+        /**
+         * Rightmost cell marked by this worker.
+         */
+        Address rightmost;
+
+        MarkingWorker(int workerId) {
+            this.workerId = workerId;
+        }
+
+        void reset(Address rightmost) {
+            this.rightmost = rightmost;
+            deque.reset();
+        }
+
+        @INLINE
+        private void markCell(Pointer cell) {
+            // Note: this also filters out null references.
+            if (!heapMarker.isCovered(cell)) {
+                return;
+            }
+            final int bitIndex = heapMarker.bitIndexOf(cell);
+            if (heapMarker.atomicMarkBlackIfWhite(bitIndex)) {
+                if (cell.greaterThan(rightmost)) {
+                    rightmost = cell;
+                }
+                if (!deque.push(cell)) {
+                    // Leave the object grey for the next round.
+                    heapMarker.atomicMarkGreyFromBlack(bitIndex);
+                    recordOverflow(cell);
+                }
+            }
+        }
+
+        @INLINE
+        private void markRef(Reference ref) {
+            markCell(Layout.originToCell(ref.toOrigin()));
+        }
+
+        @Override
+        public void visit(Pointer pointer, int wordIndex) {
+            markRef(pointer.getReference(wordIndex));
+        }
+
+        private void visitCell(Pointer cell) {
+            if (MaxineVM.isDebug() && Heap.logAllGC()) {
+                TricolorHeapMarker.printVisitedCell(cell, "Visiting cell ");
+            }
+            final Pointer origin = Layout.cellToOrigin(cell);
+            final Reference hubRef = Layout.readHubReference(origin);
+            markRef(hubRef);
+            final Hub hub = UnsafeCast.asHub(hubRef.toJava());
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout.isTupleLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+                if (hub.isJLRReference) {
+                    discoverSpecialReference(cell);
+                }
+                return;
+            }
+            if (specificLayout.isReferenceArrayLayout()) {
+                final int length = Layout.readArrayLength(origin);
+                for (int index = 0; index < length; index++) {
+                    markRef(Layout.getReference(origin, index));
+                }
+            } else if (specificLayout.isHybridLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+            }
+        }
+
+        void drain() {
+            Pointer cell = deque.pop();
+            while (!cell.isZero()) {
+                visitCell(cell);
+                cell = deque.pop();
+            }
+        }
+
+        boolean steal() {
+            for (int i = 1; i < numWorkers; i++) {
+                final Pointer cell = workers[(workerId + i) % numWorkers].deque.steal();
+                if (!cell.isZero()) {
+                    visitCell(cell);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Claim and visit the grey objects whose marks are in a chunk of the color map.
+         * A set bit that follows a clear bit is the mark of an object, and marks are at least two bits apart,
+         * so the objects' marks can be found from the first word of the chunk without parsing the heap.
+         */
+        void scanChunk(int chunk) {
+            final Pointer colorMapBase = heapMarker.base.asPointer();
+            int wordIndex = firstChunkWordIndex + (chunk << LOG2_CHUNK_BITMAP_WORDS);
+            final int endWordIndex = Math.min(wordIndex + (1 << LOG2_CHUNK_BITMAP_WORDS), endChunkWordIndex);
+            boolean lastBitIsMark = false;
+            while (wordIndex < endWordIndex) {
+                final long bitmapWord = colorMapBase.getLong(wordIndex);
+                int bitIndexInWord = 0;
+                if ((bitmapWord & 1L) != 0L && (lastBitIsMark || isGreyBitOfSpanningColor(wordIndex))) {
+                    bitIndexInWord = 1;
+                }
+                lastBitIsMark = false;
+                while (bitIndexInWord <= TricolorHeapMarker.LAST_BIT_INDEX_IN_WORD) {
+                    final long remaining = bitmapWord >>> bitIndexInWord;
+                    if (remaining == 0L) {
+                        break;
+                    }
+                    bitIndexInWord += Address.fromLong(remaining).leastSignificantBitSet();
+                    final int bitIndex = (wordIndex << Word.widthValue().log2numberOfBits) + bitIndexInWord;
+                    final boolean mayBeGrey;
+                    if (bitIndexInWord == TricolorHeapMarker.LAST_BIT_INDEX_IN_WORD) {
+                        lastBitIsMark = true;
+                        mayBeGrey = (colorMapBase.getLong(wordIndex + 1) & 1L) != 0L;
+                    } else {
+                        mayBeGrey = (bitmapWord & (2L << bitIndexInWord)) != 0L;
+                    }
+                    if (mayBeGrey && heapMarker.atomicMarkBlackFromGrey(bitIndex)) {
+                        visitCell(heapMarker.addressOf(bitIndex).asPointer());
+                        drain();
+                    }
+                    bitIndexInWord += 2;
+                }
+                wordIndex++;
+            }
+        }
+    }
+}
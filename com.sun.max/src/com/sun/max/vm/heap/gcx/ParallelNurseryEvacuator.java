@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.VMOptions.*;
+import static com.sun.max.vm.heap.gcx.HeapFreeChunk.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * A nursery evacuator that evacuates survivors with the workers of a {@link GCThreadPool}.
+ * <p>
+ * Roots (thread stacks, boot heap, code and immortal heap) are scanned by the evacuator itself, as with a {@link NoAgingNurseryEvacuator}.
+ * The dirty cards of the old generation are then scanned in parallel: the old generation is split into region-sized chunks that workers claim
+ * atomically. Workers don't evacuate while scanning dirty cards, as allocating in their promotion space would break the iterability of cards
+ * scanned by other workers. Instead, each worker records on its own {@link MarkingDeque} the locations of the references to the nursery it finds.
+ * <p>
+ * Evacuation then proceeds in parallel. Each worker has its own evacuation buffer and its own queue of survivor ranges. Cells are forwarded
+ * with a compare-and-swap on their hub word so that racing workers agree on a single copy. Workers first update the references they recorded,
+ * then scan their survivor ranges. Large survivor ranges are split at cell boundaries and shared, so that idle workers can help, either by taking
+ * shared survivor ranges or by stealing recorded references from other workers. Termination is detected with a {@link GCTaskTerminator}.
+ * <p>
+ * When a worker's deque is full, the card holding the reference is dirtied again. These cards are scanned by the evacuator alone once
+ * the recorded references have been processed.
+ */
+public final class ParallelNurseryEvacuator extends NoAgingNurseryEvacuator implements GCTaskTerminator.WorkSource {
+    private static final VMIntOption evacuationDequeSizeOption =
+        register(new VMIntOption("-XX:EvacuationDequeSize=", 32 * 1024, "Size of the per-thread deques of references recorded by parallel nursery evacuation."),
+                        MaxineVM.Phase.PRISTINE);
+
+    /**
+     * Log 2 of the number of cards of a survivor range above which the range is split and shared with other workers.
+     */
+    private static final int LOG2_MAX_SURVIVOR_RANGE_CARDS = 5;
+
+    private final GCThreadPool gcThreadPool;
+
+    private final GCTaskTerminator terminator = new GCTaskTerminator();
+
+    private final CardScanTask cardScanTask = new CardScanTask();
+
+    private final EvacuationTask evacuationTask = new EvacuationTask();
+
+    private final CardScanChunkRecorder cardScanChunkRecorder = new CardScanChunkRecorder();
+
+    /**
+     * Per-worker evacuators. The first one is this evacuator. Allocated in immortal memory at VM startup.
+     */
+    private EvacuatorToCardSpace[] evacuators;
+
+    /**
+     * Per-worker deques of locations of references to the nursery found while scanning dirty cards.
+     */
+    private MarkingDeque[] referenceDeques;
+
+    private DirtyCardScanner[] dirtyCardScanners;
+
+    /**
+     * Survivor ranges shared by the workers.
+     */
+    private SurvivorRangesQueue sharedSurvivorRanges;
+
+    /**
+     * Number of workers taking part in the current evacuation.
+     */
+    private int numWorkers;
+
+    private Size maxSurvivorRangeSize;
+
+    /**
+     * Bounds of the chunks of the old generation whose dirty cards are scanned in parallel, stored as pairs of start and end addresses.
+     */
+    private long[] cardScanChunks;
+
+    private int numCardScanChunks;
+
+    /**
+     * Next chunk to be claimed by a worker.
+     */
+    private volatile int nextCardScanChunk;
+
+    /**
+     * Spin lock serializing refills of evacuation buffers, discovery of special references, and accesses to shared survivor ranges.
+     */
+    private volatile int lock;
+
+    /**
+     * Set when some references to the nursery couldn't be recorded during the parallel scan of dirty cards.
+     */
+    private volatile boolean overflowed;
+
+    @FOLD
+    private static int nextCardScanChunkOffset() {
+        return ClassActor.fromJava(ParallelNurseryEvacuator.class).findLocalInstanceFieldActor("nextCardScanChunk").offset();
+    }
+
+    @FOLD
+    private static int lockOffset() {
+        return ClassActor.fromJava(ParallelNurseryEvacuator.class).findLocalInstanceFieldActor("lock").offset();
+    }
+
+    @HOSTED_ONLY
+    public ParallelNurseryEvacuator(EvacuatingSpace fromSpace, HeapSpace toSpace, EvacuationBufferProvider evacuationBufferProvider, CardTableRSet rset, String name,
+                    GCThreadPool gcThreadPool) {
+        super(fromSpace, toSpace, evacuationBufferProvider, rset, name);
+        this.gcThreadPool = gcThreadPool;
+    }
+
+    /**
+     * Allocates the per-worker evacuation state at VM startup. Must be called after the {@link GCThreadPool} is initialized
+     * and after the evacuator itself is initialized.
+     */
+    public void initialize(MaxineVM.Phase phase) {
+        if (phase != MaxineVM.Phase.STARTING || !gcThreadPool.isParallel()) {
+            return;
+        }
+        final int maxWorkers = gcThreadPool.maxWorkers();
+        Heap.enableImmortalMemoryAllocation();
+        try {
+            evacuators = new EvacuatorToCardSpace[maxWorkers];
+            referenceDeques = new MarkingDeque[maxWorkers];
+            dirtyCardScanners = new DirtyCardScanner[maxWorkers];
+            evacuators[0] = this;
+            for (int i = 0; i < maxWorkers; i++) {
+                if (i > 0) {
+                    evacuators[i] = new EvacuatorToCardSpace(this, this);
+                }
+                referenceDeques[i] = new MarkingDeque();
+                dirtyCardScanners[i] = new DirtyCardScanner(referenceDeques[i]);
+            }
+            sharedSurvivorRanges = new SurvivorRangesQueue(2 * maxWorkers * survivorRangesCapacity());
+            // Each range of regions adds at most one chunk to the region-sized ones.
+            cardScanChunks = new long[4 * numberOfRegions(Heap.maxSize())];
+        } finally {
+            Heap.disableImmortalMemoryAllocation();
+        }
+        final int dequeSize = evacuationDequeSizeOption.getValue();
+        for (MarkingDeque deque : referenceDeques) {
+            deque.initialize(dequeSize);
+        }
+        maxSurvivorRangeSize = Size.fromInt(1 << (CardTableRSet.LOG2_CARD_SIZE + LOG2_MAX_SURVIVOR_RANGE_CARDS));
+        coordinator = this;
+    }
+
+    /**
+     * Indicates whether the current evacuation can be done in parallel.
+     */
+    private boolean isParallel() {
+        return evacuators != null && gcThreadPool.activeWorkers() > 1;
+    }
+
+    @Override
+    public void doBeforeGC() {
+        super.doBeforeGC();
+        if (evacuators != null) {
+            for (int i = 1; i < evacuators.length; i++) {
+                evacuators[i].doBeforeGC();
+            }
+        }
+    }
+
+    void lock() {
+        final Reference reference = Reference.fromJava(this);
+        while (reference.compareAndSwapInt(lockOffset(), 0, 1) != 0) {
+            Intrinsics.pause();
+        }
+    }
+
+    void unlock() {
+        lock = 0;
+    }
+
+    /**
+     * Indicates whether workers should share their survivor ranges.
+     */
+    boolean needsSurvivorRanges() {
+        return sharedSurvivorRanges.isEmpty();
+    }
+
+    /**
+     * Add a survivor range to the shared ones. The lock must be held.
+     */
+    void addSharedSurvivorRange(Address start, Address end) {
+        sharedSurvivorRanges.add(start, end);
+    }
+
+    void shareSurvivorRange(Address start, Address end) {
+        lock();
+        sharedSurvivorRanges.add(start, end);
+        unlock();
+    }
+
+    private boolean takeSharedSurvivorRange(EvacuatorToCardSpace evacuator) {
+        if (sharedSurvivorRanges.isEmpty()) {
+            return false;
+        }
+        lock();
+        if (sharedSurvivorRanges.isEmpty()) {
+            unlock();
+            return false;
+        }
+        final Pointer start = sharedSurvivorRanges.start();
+        final Pointer end = sharedSurvivorRanges.end();
+        sharedSurvivorRanges.remove();
+        unlock();
+        evacuator.addSurvivorRange(start, end);
+        return true;
+    }
+
+    private boolean stealReference(int workerId, EvacuatorToCardSpace evacuator) {
+        for (int i = 1; i < numWorkers; i++) {
+            final Pointer location = referenceDeques[(workerId + i) % numWorkers].steal();
+            if (!location.isZero()) {
+                evacuator.updateEvacuatedRef(location, 0);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasWork() {
+        if (!sharedSurvivorRanges.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < numWorkers; i++) {
+            if (!referenceDeques[i].isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int claimCardScanChunk() {
+        final Reference reference = Reference.fromJava(this);
+        int chunk;
+        do {
+            chunk = nextCardScanChunk;
+            if (chunk >= numCardScanChunks) {
+                return -1;
+            }
+        } while (reference.compareAndSwapInt(nextCardScanChunkOffset(), chunk, chunk + 1) != chunk);
+        return chunk;
+    }
+
+    @Override
+    protected void evacuateFromRSets() {
+        if (!isParallel()) {
+            super.evacuateFromRSets();
+            return;
+        }
+        numWorkers = gcThreadPool.activeWorkers();
+        for (int i = 0; i < numWorkers; i++) {
+            referenceDeques[i].reset();
+        }
+        if (cardRefiner != null && cardRefiner.isActive()) {
+            cardRefiner.distributeRefinedSlots(referenceDeques, numWorkers);
+        }
+        numCardScanChunks = 0;
+        toSpace.visit(cardScanChunkRecorder);
+        nextCardScanChunk = 0;
+        overflowed = false;
+        gcThreadPool.run(cardScanTask);
+        if (overflowed) {
+            if (Heap.logGCPhases()) {
+                Log.println("Parallel dirty card scan overflow, rescanning dirty cards");
+            }
+            // Cards holding references that couldn't be recorded were left dirty.
+            evacuateInParallel();
+            super.evacuateFromRSets();
+        }
+    }
+
+    @Override
+    protected void evacuateReachables() {
+        if (!isParallel()) {
+            super.evacuateReachables();
+            return;
+        }
+        evacuateInParallel();
+    }
+
+    private void evacuateInParallel() {
+        numWorkers = gcThreadPool.activeWorkers();
+        final boolean specialRefDiscoveryEnabled = isSpecialRefDiscoveryEnabled();
+        for (int i = 1; i < numWorkers; i++) {
+            final EvacuatorToCardSpace helper = evacuators[i];
+            helper.prepareEvacuation();
+            if (specialRefDiscoveryEnabled) {
+                helper.enableSpecialRefDiscovery();
+            } else {
+                helper.disableSpecialRefDiscovery();
+            }
+        }
+        terminator.reset(numWorkers);
+        gcThreadPool.run(evacuationTask);
+        for (int i = 1; i < numWorkers; i++) {
+            final EvacuatorToCardSpace helper = evacuators[i];
+            // Leave the helper's evacuation buffer iterable, as dirty cards may be walked over it before the next evacuation.
+            helper.releasePromotionSpace();
+            helper.releaseSurvivorBuffer();
+            addEvacuatedBytes(helper.evacuatedBytes());
+        }
+    }
+
+    /**
+     * Records the chunks of the old generation to be scanned for dirty cards. Each contiguous range of regions is split into region-sized chunks.
+     */
+    final class CardScanChunkRecorder implements CellRangeVisitor {
+        @Override
+        public void visitCells(Address start, Address end) {
+            Address chunkStart = start;
+            while (chunkStart.lessThan(end)) {
+                Address chunkEnd = chunkStart.plus(regionSizeInBytes);
+                if (chunkEnd.greaterThan(end)) {
+                    chunkEnd = end;
+                }
+                final int index = numCardScanChunks << 1;
+                FatalError.check(index < cardScanChunks.length, "too many chunks of dirty cards");
+                cardScanChunks[index] = chunkStart.toLong();
+                cardScanChunks[index + 1] = chunkEnd.toLong();
+                numCardScanChunks++;
+                chunkStart = chunkEnd;
+            }
+        }
+    }
+
+    final class CardScanTask extends GCThreadPool.Task {
+        @Override
+        public void run(int workerId) {
+            final DirtyCardScanner scanner = dirtyCardScanners[workerId];
+            int chunk = claimCardScanChunk();
+            while (chunk >= 0) {
+                final int index = chunk << 1;
+                rset.cleanAndVisitCards(Address.fromLong(cardScanChunks[index]), Address.fromLong(cardScanChunks[index + 1]), scanner);
+                chunk = claimCardScanChunk();
+            }
+        }
+    }
+
+    final class EvacuationTask extends GCThreadPool.Task {
+        @Override
+        public void run(int workerId) {
+            final EvacuatorToCardSpace evacuator = evacuators[workerId];
+            final MarkingDeque deque = referenceDeques[workerId];
+            while (true) {
+                Pointer location = deque.pop();
+                while (!location.isZero()) {
+                    evacuator.updateEvacuatedRef(location, 0);
+                    location = deque.pop();
+                }
+                if (evacuator.evacuateNextSurvivorRange(maxSurvivorRangeSize)) {
+                    continue;
+                }
+                if (takeSharedSurvivorRange(evacuator) || stealReference(workerId, evacuator)) {
+                    continue;
+                }
+                if (terminator.offerTermination(ParallelNurseryEvacuator.this)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans the cells overlapping dirty cards for references to the nursery and records their locations.
+     * Same as the evacuator's scan of dirty cards, except that nothing is evacuated.
+     */
+    final class DirtyCardScanner extends PointerIndexVisitor implements OverlappingCellVisitor {
+        private final MarkingDeque deque;
+
+        DirtyCardScanner(MarkingDeque deque) {
+            this.deque = deque;
+        }
+
+        @Override
+        public void visit(Pointer origin, int wordIndex) {
+            if (inEvacuatedArea(origin.getReference(wordIndex).toOrigin()) && !deque.push(origin.plusWords(wordIndex))) {
+                // Dirty the card again so that the reference is found by the sequential scan of dirty cards.
+                rset.record(Reference.fromOrigin(origin), 0, wordIndex);
+                overflowed = true;
+            }
+        }
+
+        @Override
+        public Pointer visitCell(Pointer cell, Address start, Address end) {
+            if (cell.equals(ptop)) {
+                // Skip the evacuator's allocating area.
+                return pend;
+            }
+            final Pointer origin = Layout.cellToOrigin(cell);
+            if (origin.plusWords(Layout.hubIndex()).greaterEqual(start)) {
+                visit(origin, Layout.hubIndex());
+            }
+            final Hub hub = UnsafeCast.asHub(origin.getReference(Layout.hubIndex()));
+            if (hub == heapFreeChunkHub()) {
+                return cell.plus(toHeapFreeChunk(origin).size);
+            }
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout == Layout.tupleLayout()) {
+                // Visit all the references of the tuple, as the write barrier dirties the card holding the tuple's header.
+                hub.visitMappedReferences(origin, this);
+                if (hub.isJLRReference) {
+                    if (isSpecialRefDiscoveryEnabled()) {
+                        discoverSpecialReference(origin);
+                    } else {
+                        // Treat referent as strong reference.
+                        visit(origin, SpecialReferenceManager.referentIndex());
+                    }
+                }
+                return cell.plus(hub.tupleSize);
+            }
+            if (specificLayout == Layout.referenceArrayLayout()) {
+                final int endOfArrayIndex = Layout.readArrayLength(origin) + Layout.firstElementIndex();
+                final Address firstElementAddr = origin.plusWords(Layout.firstElementIndex());
+                final Address endOfArrayAddr = origin.plusWords(endOfArrayIndex);
+                final int firstIndex = start.greaterThan(firstElementAddr) ? start.minus(origin).unsignedShiftedRight(Kind.REFERENCE.width.log2numberOfBytes).toInt() : Layout.firstElementIndex();
+                final int endIndex = endOfArrayAddr.greaterThan(end) ? end.minus(origin).unsignedShiftedRight(Kind.REFERENCE.width.log2numberOfBytes).toInt() : endOfArrayIndex;
+                for (int index = firstIndex; index < endIndex; index++) {
+                    visit(origin, index);
+                }
+            } else if (specificLayout == Layout.hybridLayout()) {
+                hub.visitMappedReferences(origin, this);
+            }
+            return cell.plus(Layout.size(origin));
+        }
+    }
+}
@@ -76,6 +76,13 @@ public final class RegionChunkListRefillManager extends ChunkListRefillManager {
      */
     private Size wastedSpace;
 
+    /**
+     * NUMA node the regions refilling the allocator should be local to, or {@link #ANY_NUMA_NODE}.
+     */
+    private int numaNode = ANY_NUMA_NODE;
+
+    static final int ANY_NUMA_NODE = -1;
+
     private static final OutOfMemoryError outOfMemoryError = new OutOfMemoryError();
 
     public void setRegionProvider(RegionProvider regionProvider) {
@@ -104,6 +111,10 @@ public final class RegionChunkListRefillManager extends ChunkListRefillManager {
         this.refillThreshold = refillThreshold;
     }
 
+    void setNUMANode(int numaNode) {
+        this.numaNode = numaNode;
+    }
+
     static private void checkForSuspisciousGC(int gcCount) {
         if (gcCount > 1) {
             FatalError.breakpoint();
@@ -133,7 +144,7 @@ public final class RegionChunkListRefillManager extends ChunkListRefillManager {
             int gcCount = 0;
             retireCurrentAllocatingRegion();
             do {
-                allocatingRegion = regionProvider.getAllocatingRegion();
+                allocatingRegion = numaNode == ANY_NUMA_NODE ? regionProvider.getAllocatingRegion() : regionProvider.getLocalAllocatingRegion(numaNode);
                 if (allocatingRegion != INVALID_REGION_ID) {
                     if (allocatingRegion == DebuggedRegion) {
                         TLABLog.TraceTLABAllocation = true;
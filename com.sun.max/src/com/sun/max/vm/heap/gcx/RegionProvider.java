@@ -43,6 +43,14 @@ public interface RegionProvider {
      */
     int getAllocatingRegion();
 
+    /**
+     * Obtain a region with free space, preferably one whose memory is bound to the specified NUMA node.
+     * A region on another node is returned if none local to the node is available.
+     * @param numaNode a NUMA node
+     * @return an region identifier, or {@link HeapRegionConstants#INVALID_REGION_ID} if free space is exhausted.
+     */
+    int getLocalAllocatingRegion(int numaNode);
+
     /**
      * Obtain a region with at least the specified amount of free space, and at most the specified number of chunks.
      * @param minFreeBytes
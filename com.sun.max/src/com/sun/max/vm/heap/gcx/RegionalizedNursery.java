@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.HeapScheme.GCRequest;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Base class for nurseries made of a contiguous range of regions of a heap account, in which objects are allocated with an atomic bump pointer allocator.
+ * A full allocator triggers a minor collection, after which the allocator is reset.
+ * Objects larger than a region are not allocated in the nursery but in the {@linkplain #setLargeObjectSpace(HeapSpace) large object space}, typically the next generation.
+ */
+public abstract class RegionalizedNursery implements HeapSpace {
+
+    final class NurseryRefiller extends Refiller {
+        @Override
+        public Address allocateRefill(Size requestedSize, Pointer startOfSpaceLeft, Size spaceLeft) {
+            GCRequest.setGCRequest(requestedSize);
+            if (!Heap.collectGarbage()) {
+                throw new OutOfMemoryError();
+            }
+            // We're out of safepoint. The current thread hold the refill lock and will do the refill of the allocator.
+            return Address.zero();
+        }
+
+        @Override
+        protected void doBeforeGC() {
+            // Nothing to do.
+        }
+
+        @Override
+        public Address allocateLargeRaw(Size size) {
+            if (largeObjectSpace == null) {
+                throw new OutOfMemoryError();
+            }
+            return largeObjectSpace.allocate(size);
+        }
+    }
+
+    /**
+     * The heap account space for this nursery is allocated from.
+     */
+    protected final HeapAccount<? extends HeapAccountOwner> heapAccount;
+
+    protected final int regionTag;
+    /**
+     * List of region allocated to the nursery.
+     */
+    protected HeapRegionList nurseryRegionsList;
+    /**
+     * List of regions allocated to the nursery but uncommitted.
+     */
+    protected HeapRegionList uncommitedNurseryRegionsList;
+
+    /**
+     * Atomic bump pointer allocator over the space of the nursery objects are allocated in.
+     */
+    @INSPECTED
+    protected final AtomicBumpPointerAllocator<NurseryRefiller> allocator = new AtomicBumpPointerAllocator<NurseryRefiller>(new NurseryRefiller());
+
+    /**
+     * Space where objects larger than a region are allocated.
+     */
+    private HeapSpace largeObjectSpace;
+
+    protected RegionalizedNursery(HeapAccount<? extends HeapAccountOwner> heapAccount, int regionTag) {
+        this.heapAccount = heapAccount;
+        this.regionTag = regionTag;
+    }
+
+    /**
+     * Set the space where objects too large for the nursery's allocator are allocated.
+     * Cells allocated there are not evacuated by minor collections.
+     *
+     * @param largeObjectSpace a heap space that keeps track of cross-generational references from the cells it allocates
+     */
+    public void setLargeObjectSpace(HeapSpace largeObjectSpace) {
+        this.largeObjectSpace = largeObjectSpace;
+    }
+
+    /**
+     * Allocate to the nursery a contiguous range of regions large enough for the maximum size of the young generation
+     * and commit the regions for its initial size.
+     *
+     * @param genSizingPolicy the policy sizing the young generation
+     * @return the address of the first region of the nursery
+     */
+    protected final Address initializeRegions(GenHeapSizingPolicy genSizingPolicy) {
+        nurseryRegionsList = HeapRegionList.RegionListUse.OWNERSHIP.createList();
+        uncommitedNurseryRegionsList = HeapRegionList.RegionListUse.OWNERSHIP.createList();
+        if (!heapAccount.allocateContiguous(HeapRegionConstants.numberOfRegions(genSizingPolicy.maxYoungGenSize()), nurseryRegionsList, false, false, regionTag)) {
+            FatalError.unexpected("Couldn't allocate contiguous range to the nursery");
+        }
+        int regionID = nurseryRegionsList.head();
+        int numCommittedRegions = HeapRegionConstants.numberOfRegions(genSizingPolicy.initialYoungGenSize());
+        heapAccount.commit(RegionRange.from(regionID, numCommittedRegions));
+
+        int lastCommittedRegion = regionID + numCommittedRegions - 1;
+        while (nurseryRegionsList.tail() != lastCommittedRegion) {
+            uncommitedNurseryRegionsList.prepend(nurseryRegionsList.removeTail());
+        }
+        return RegionTable.theRegionTable().regionAddress(nurseryRegionsList.head());
+    }
+
+    public Pointer allocate(Size size) {
+        return allocator.allocateCleared(size);
+    }
+
+    @Override
+    public Pointer allocateTLAB(Size size) {
+        final Pointer tlab = allocator.allocateRaw(size);
+        HeapFreeChunk.format(tlab, size);
+        return tlab;
+    }
+
+    public void retireTLAB(Pointer start, Size size) {
+        FatalError.check(allocator.inCurrentContiguousChunk(start), "Retired TLAB Space must be in allocating space");
+        if (!allocator.retireTop(start, size)) {
+            DarkMatter.format(start, size);
+        }
+    }
+
+    @Override
+    public boolean contains(Address address) {
+        return allocator.inCurrentContiguousChunk(address);
+    }
+
+    @Override
+    public Size freeSpace() {
+        return allocator.freeSpace();
+    }
+}
@@ -78,7 +78,8 @@ abstract class RootCellVisitor extends PointerIndexVisitor implements CellVisito
             heapMarker.markGrey(cell);
             if (cell.lessThan(leftmost)) {
                 leftmost = cell;
-            } else if (cell.greaterThan(rightmost)) {
+            }
+            if (cell.greaterThan(rightmost)) {
                 rightmost = cell;
             }
         }
@@ -111,7 +112,12 @@ abstract class RootCellVisitor extends PointerIndexVisitor implements CellVisito
         if (specificLayout == Layout.tupleLayout()) {
             TupleReferenceMap.visitReferences(hub, origin, this);
             if (hub.isJLRReference) {
-                SpecialReferenceManager.discoverSpecialReference(cell);
+                if (heapMarker.concurrentMarking) {
+                    // Special references can't be discovered concurrently. Treat the referent as strongly reachable instead.
+                    markExternalRoot(Layout.originToCell(origin.getReference(SpecialReferenceManager.referentIndex()).toOrigin()));
+                } else {
+                    SpecialReferenceManager.discoverSpecialReference(cell);
+                }
             }
             return cell.plus(hub.tupleSize);
         }
@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.VMOptions.*;
+import static com.sun.max.vm.thread.VmThread.*;
+import static com.sun.max.vm.thread.VmThreadLocal.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.cri.ci.CiAddress.Scale;
+import com.sun.cri.ci.*;
+import com.sun.cri.xir.*;
+import com.sun.cri.xir.CiXirAssembler.XirLabel;
+import com.sun.cri.xir.CiXirAssembler.XirOperand;
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+import com.sun.max.vm.thread.VmThreadLocal.Nature;
+
+/**
+ * Snapshot-at-the-beginning (SATB) queues of the references overwritten by mutator threads while the heap is marked concurrently.
+ * <p>
+ * While the queue set is {@linkplain #isActive() active}, the pre-write barrier of the heap scheme enqueues the previous value of every updated
+ * reference field. Marking all the enqueued references guarantees that every object reachable when marking started is marked.
+ * <p>
+ * Each thread fills its own buffer, identified by the {@link #SATB_BUFFER} and {@link #SATB_BUFFER_INDEX} thread locals. The index counts
+ * down to zero, so that a single test tells whether the thread has room left in a buffer. Full buffers are added to a list of completed buffers
+ * that the concurrent marker drains, and replaced with buffers taken from a pool allocated off-heap at VM startup. Hence, enqueuing never allocates
+ * from the heap. Enqueuing runs with safepoints disabled, so that a GC never sees a thread in the middle of an update of its buffer.
+ * <p>
+ * If the pool of buffers is exhausted, the queue set records the overflow and drops the references it cannot buffer. Marking must then be
+ * redone in a stop-the-world pause.
+ */
+public final class SATBQueueSet {
+    /**
+     * Number of entries of an SATB buffer.
+     */
+    private static int SATBBufferSize = 256;
+
+    /**
+     * Number of SATB buffers allocated at VM startup.
+     */
+    private static int SATBBuffers = 1024;
+
+    static {
+        addFieldOption("-XX:", "SATBBufferSize", SATBQueueSet.class, "Number of references recorded by a thread's SATB buffer", MaxineVM.Phase.PRISTINE);
+        addFieldOption("-XX:", "SATBBuffers", SATBQueueSet.class, "Number of SATB buffers shared by all threads", MaxineVM.Phase.PRISTINE);
+    }
+
+    /**
+     * One plus the number of the current SATB buffer of a thread, or zero if the thread doesn't have a buffer.
+     */
+    public static final VmThreadLocal SATB_BUFFER
+        = new VmThreadLocal("SATB_BUFFER", false, "SATBQueueSet: number of current SATB buffer plus one, zero if none", Nature.Single);
+
+    /**
+     * Number of free entries in the current SATB buffer of a thread. Entries are filled from the end of the buffer.
+     */
+    public static final VmThreadLocal SATB_BUFFER_INDEX
+        = new VmThreadLocal("SATB_BUFFER_INDEX", false, "SATBQueueSet: number of free entries of current SATB buffer", Nature.Single);
+
+    /**
+     * Non-zero when the pre-write barrier must enqueue overwritten references.
+     * Read by the barrier code generated for the optimizing compiler, hence an int.
+     */
+    private int active;
+
+    /**
+     * Indicates that some references couldn't be enqueued because the pool of buffers was exhausted.
+     */
+    private boolean overflowed;
+
+    /**
+     * Off-heap storage of the buffers. The entries of buffer {@code b} are the words {@code [b * SATBBufferSize, (b + 1) * SATBBufferSize[}.
+     */
+    private Pointer entries;
+
+    private int[] freeBuffers;
+    private int numFreeBuffers;
+
+    private int[] completedBuffers;
+    private int numCompletedBuffers;
+
+    /**
+     * Spin lock protecting the lists of free and completed buffers.
+     */
+    private volatile int lock;
+
+    private final ResetThreadBuffer resetThreadBuffer = new ResetThreadBuffer();
+
+    @HOSTED_ONLY
+    public SATBQueueSet() {
+    }
+
+    @FOLD
+    private static int activeOffset() {
+        return ClassActor.fromJava(SATBQueueSet.class).findLocalInstanceFieldActor("active").offset();
+    }
+
+    @FOLD
+    private static int lockOffset() {
+        return ClassActor.fromJava(SATBQueueSet.class).findLocalInstanceFieldActor("lock").offset();
+    }
+
+    /**
+     * Allocates the pool of buffers. Must be called at the {@link MaxineVM.Phase#STARTING} phase, and only if the heap is marked concurrently.
+     */
+    public void initialize() {
+        FatalError.check(SATBBufferSize > 0 && SATBBuffers > 0, "-XX:SATBBufferSize and -XX:SATBBuffers must be positive");
+        entries = Memory.allocate(Size.fromLong((long) SATBBufferSize * SATBBuffers * Word.size()));
+        if (entries.isZero()) {
+            FatalError.unexpected("Failed to allocate SATB buffers");
+        }
+        Heap.enableImmortalMemoryAllocation();
+        try {
+            freeBuffers = new int[SATBBuffers];
+            completedBuffers = new int[SATBBuffers];
+        } finally {
+            Heap.disableImmortalMemoryAllocation();
+        }
+        for (int i = 0; i < SATBBuffers; i++) {
+            freeBuffers[i] = i;
+        }
+        numFreeBuffers = SATBBuffers;
+    }
+
+    @INLINE
+    public boolean isActive() {
+        return active != 0;
+    }
+
+    public boolean overflowed() {
+        return overflowed;
+    }
+
+    /**
+     * Starts recording overwritten references. Must be called during a GC pause.
+     */
+    public void activate() {
+        overflowed = false;
+        active = 1;
+    }
+
+    /**
+     * Stops recording overwritten references. Must be called during a GC pause, before draining the buffers of all threads.
+     */
+    public void deactivate() {
+        active = 0;
+    }
+
+    private void lock() {
+        final Reference reference = Reference.fromJava(this);
+        while (reference.compareAndSwapInt(lockOffset(), 0, 1) != 0) {
+            Intrinsics.pause();
+        }
+    }
+
+    private void unlock() {
+        lock = 0;
+    }
+
+    @INLINE
+    private Pointer bufferStart(int buffer) {
+        return entries.plusWords(buffer * SATBBufferSize);
+    }
+
+    /**
+     * Records the previous value of an updated reference.
+     *
+     * @param previous a non-null reference about to be overwritten
+     */
+    public void enqueue(Reference previous) {
+        final boolean wasDisabled = SafepointPoll.disable();
+        final Pointer etla = ETLA.load(currentTLA());
+        int index = SATB_BUFFER_INDEX.load(etla).toInt();
+        int buffer = SATB_BUFFER.load(etla).toInt() - 1;
+        if (index == 0) {
+            buffer = swapBuffer(buffer);
+            if (buffer < 0) {
+                SATB_BUFFER.store(etla, Address.zero());
+                overflowed = true;
+            } else {
+                SATB_BUFFER.store(etla, Address.fromInt(buffer + 1));
+                index = SATBBufferSize;
+            }
+        }
+        if (buffer >= 0) {
+            index--;
+            bufferStart(buffer).setWord(index, previous.toOrigin());
+            SATB_BUFFER_INDEX.store(etla, Address.fromInt(index));
+        }
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
+    }
+
+    /**
+     * Hands off a full buffer to the list of completed buffers and takes a free buffer.
+     *
+     * @param fullBuffer a full buffer, or -1 if the thread has no buffer
+     * @return a free buffer, or -1 if there are none left
+     */
+    private int swapBuffer(int fullBuffer) {
+        lock();
+        if (fullBuffer >= 0) {
+            completedBuffers[numCompletedBuffers++] = fullBuffer;
+        }
+        final int buffer = numFreeBuffers == 0 ? -1 : freeBuffers[--numFreeBuffers];
+        unlock();
+        return buffer;
+    }
+
+    /**
+     * Hands off the partially filled buffer of the current thread to the list of completed buffers.
+     * Called when the current thread detaches from the VM.
+     */
+    public void flushCurrentThread() {
+        final boolean wasDisabled = SafepointPoll.disable();
+        final Pointer etla = ETLA.load(currentTLA());
+        final int buffer = SATB_BUFFER.load(etla).toInt() - 1;
+        if (buffer >= 0) {
+            // Entries are filled from the end: clear the unused ones so that the buffer can be drained as a full one.
+            Memory.clearWords(bufferStart(buffer), SATB_BUFFER_INDEX.load(etla).toInt());
+            lock();
+            completedBuffers[numCompletedBuffers++] = buffer;
+            unlock();
+            SATB_BUFFER.store(etla, Address.zero());
+            SATB_BUFFER_INDEX.store(etla, Address.zero());
+        }
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
+    }
+
+    public boolean hasCompletedBuffers() {
+        return numCompletedBuffers > 0;
+    }
+
+    private void drainBuffer(int buffer, int firstIndex, TricolorHeapMarker heapMarker) {
+        final Pointer start = bufferStart(buffer);
+        for (int i = firstIndex; i < SATBBufferSize; i++) {
+            final Pointer origin = start.getWord(i).asPointer();
+            if (!origin.isZero()) {
+                heapMarker.markOverwrittenReference(origin);
+            }
+        }
+    }
+
+    /**
+     * Marks the references held in the completed buffers, and returns these buffers to the pool of free buffers.
+     * Called by the concurrent marker.
+     *
+     * @param heapMarker the heap marker marking the heap concurrently
+     */
+    public void drainCompletedBuffers(TricolorHeapMarker heapMarker) {
+        while (true) {
+            lock();
+            if (numCompletedBuffers == 0) {
+                unlock();
+                return;
+            }
+            final int buffer = completedBuffers[--numCompletedBuffers];
+            unlock();
+            drainBuffer(buffer, 0, heapMarker);
+            lock();
+            freeBuffers[numFreeBuffers++] = buffer;
+            unlock();
+        }
+    }
+
+    final class ResetThreadBuffer implements Pointer.Procedure {
+        TricolorHeapMarker heapMarker;
+
+        public void run(Pointer tla) {
+            final Pointer etla = ETLA.load(tla);
+            final int buffer = SATB_BUFFER.load(etla).toInt() - 1;
+            if (buffer >= 0) {
+                drainBuffer(buffer, SATB_BUFFER_INDEX.load(etla).toInt(), heapMarker);
+                freeBuffers[numFreeBuffers++] = buffer;
+                SATB_BUFFER.store(etla, Address.zero());
+                SATB_BUFFER_INDEX.store(etla, Address.zero());
+            }
+        }
+    }
+
+    /**
+     * Marks the references held in the buffers of all threads and in the completed buffers, and returns all buffers to the pool of free buffers.
+     * Must be called during a GC pause, after the queue set was {@linkplain #deactivate() deactivated}.
+     *
+     * @param heapMarker the heap marker doing the final remark
+     */
+    public void drainAllBuffers(TricolorHeapMarker heapMarker) {
+        resetThreadBuffer.heapMarker = heapMarker;
+        VmThreadMap.ACTIVE.forAllThreadLocals(null, resetThreadBuffer);
+        drainCompletedBuffers(heapMarker);
+        FatalError.check(numFreeBuffers == SATBBuffers, "SATB buffers leaked");
+    }
+
+    /**
+     * Generates the out-of-line path of a pre-write barrier, which enqueues the reference about to be overwritten if not null.
+     */
+    @HOSTED_ONLY
+    private void genEnqueue(CiXirAssembler asm, XirOperand previous, XirLabel done, ClassMethodActor enqueueMethod) {
+        asm.jeq(done, previous, asm.o(null));
+        asm.callRuntime(enqueueMethod, null, previous);
+        asm.jmp(done);
+        asm.bindInline(done);
+    }
+
+    @HOSTED_ONLY
+    private void genIsActive(CiXirAssembler asm, XirLabel enqueue) {
+        final XirOperand queueSet = asm.createTemp("satbQueueSet", CiKind.Object);
+        final XirOperand isActive = asm.createTemp("satbActive", CiKind.Int);
+        asm.mov(queueSet, asm.o(this));
+        asm.pload(CiKind.Int, isActive, queueSet, asm.i(activeOffset()), false);
+        asm.jneq(enqueue, isActive, asm.i(0));
+    }
+
+    /**
+     * Generates the pre-write barrier for the update of a reference field of a tuple.
+     *
+     * @param asm the XIR assembler
+     * @param tupleCell the tuple holding the updated field
+     * @param fieldOffset offset to the updated field
+     * @param enqueueMethod static method taking the overwritten reference as argument and {@linkplain #enqueue(Reference) enqueuing} it
+     */
+    @HOSTED_ONLY
+    public void genTuplePreWriteBarrier(CiXirAssembler asm, XirOperand tupleCell, XirOperand fieldOffset, ClassMethodActor enqueueMethod) {
+        final XirLabel enqueue = asm.createOutOfLineLabel("satbEnqueue");
+        final XirLabel done = asm.createInlineLabel("satbDone");
+        final XirOperand previous = asm.createTemp("previous", CiKind.Object);
+        genIsActive(asm, enqueue);
+        asm.jmp(done);
+        asm.bindOutOfLine(enqueue);
+        asm.pload(CiKind.Object, previous, tupleCell, fieldOffset, false);
+        genEnqueue(asm, previous, done, enqueueMethod);
+    }
+
+    /**
+     * Generates the pre-write barrier for the update of an element of a reference array.
+     *
+     * @param asm the XIR assembler
+     * @param arrayCell the array holding the updated element
+     * @param elemIndex index of the updated element
+     * @param enqueueMethod static method taking the overwritten reference as argument and {@linkplain #enqueue(Reference) enqueuing} it
+     */
+    @HOSTED_ONLY
+    public void genArrayPreWriteBarrier(CiXirAssembler asm, XirOperand arrayCell, XirOperand elemIndex, ClassMethodActor enqueueMethod) {
+        final XirLabel enqueue = asm.createOutOfLineLabel("satbEnqueue");
+        final XirLabel done = asm.createInlineLabel("satbDone");
+        final XirOperand previous = asm.createTemp("previous", CiKind.Object);
+        final int disp = Layout.referenceArrayLayout().getElementOffsetInCell(0).toInt();
+        genIsActive(asm, enqueue);
+        asm.jmp(done);
+        asm.bindOutOfLine(enqueue);
+        asm.pload(CiKind.Object, previous, arrayCell, elemIndex, disp, Scale.fromInt(Word.size()), false);
+        genEnqueue(asm, previous, done, enqueueMethod);
+    }
+
+    /**
+     * Generates the pre-write barrier for the update of a reference at a precise address.
+     *
+     * @param asm the XIR assembler
+     * @param address address of the updated reference
+     * @param enqueueMethod static method taking the overwritten reference as argument and {@linkplain #enqueue(Reference) enqueuing} it
+     */
+    @HOSTED_ONLY
+    public void genPrecisePreWriteBarrier(CiXirAssembler asm, XirOperand address, ClassMethodActor enqueueMethod) {
+        final XirLabel enqueue = asm.createOutOfLineLabel("satbEnqueue");
+        final XirLabel done = asm.createInlineLabel("satbDone");
+        final XirOperand previous = asm.createTemp("previous", CiKind.Object);
+        genIsActive(asm, enqueue);
+        asm.jmp(done);
+        asm.bindOutOfLine(enqueue);
+        asm.pload(CiKind.Object, previous, address, false);
+        genEnqueue(asm, previous, done, enqueueMethod);
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Incremental compaction of a {@link FirstFitMarkSweepSpace}.
+ * After the space is swept, its sparsest regions (see {@link HeapRegionStatistics#selectSparsestRegions(HeapRegionList, int[], int)})
+ * are evacuated into empty regions of the space, then become empty regions themselves. At most {@code -XX:MaxCompactedRegions} regions
+ * are evacuated per GC, and only if doing so frees at least one region. Empty regions in excess are given back to the heap region manager
+ * when the space shrinks (see {@link FirstFitMarkSweepSpace#decreaseSize(Size)}).
+ *
+ * The space has no remembered set: references to the evacuated regions from the rest of the space are found by visiting the cells marked
+ * black by the marking of the current GC. The mark bitmap must be left intact between the sweep and the compaction.
+ * References from special references are treated as strong, as reference processing was already done by the marking.
+ */
+public final class SparseRegionEvacuator extends Evacuator {
+    static int MaxCompactedRegions = 8;
+    static int CompactionOccupancyThreshold = 25;
+    static boolean TraceRegionCompaction = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "MaxCompactedRegions", SparseRegionEvacuator.class,
+                        "Maximum number of regions evacuated by a compaction (Default: 8)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "CompactionOccupancyThreshold", SparseRegionEvacuator.class,
+                        "Percentage of occupied space above which a region isn't evacuated by a compaction (Default: 25)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TraceRegionCompaction", SparseRegionEvacuator.class, "Trace region compactions", Phase.PRISTINE);
+    }
+
+    /**
+     * Space compacted by this evacuator.
+     */
+    private final FirstFitMarkSweepSpace<? extends HeapAccountOwner> space;
+
+    /**
+     * Heap marker whose mark bitmap records the live cells of the space.
+     */
+    private final TricolorHeapMarker heapMarker;
+
+    /**
+     * Used to select the regions to evacuate.
+     */
+    private HeapRegionStatistics regionStatistics;
+
+    /**
+     * Regions evacuated by the current compaction, sorted by increasing occupied space.
+     */
+    private int [] evacuatedRegions;
+
+    private int numEvacuatedRegions;
+
+    /**
+     * Region where cells are currently evacuated to.
+     */
+    private int toRegion = INVALID_REGION_ID;
+
+    /**
+     * Allocation hand in the current to-region.
+     */
+    private Pointer top = Pointer.zero();
+
+    /**
+     * End of the current to-region.
+     */
+    private Pointer end = Pointer.zero();
+
+    /**
+     * Start of the evacuated cells of the current to-region not yet recorded in {@link #survivorRanges}.
+     */
+    private Pointer allocatedRangeStart = Pointer.zero();
+
+    /**
+     * Ranges of evacuated cells whose references haven't been processed yet.
+     */
+    private SurvivorRangesQueue survivorRanges;
+
+    /**
+     * Number of regions that received evacuated cells during the current compaction.
+     */
+    private int numToRegions;
+
+    private long evacuatedBytes;
+
+    public SparseRegionEvacuator(FirstFitMarkSweepSpace<? extends HeapAccountOwner> space, TricolorHeapMarker heapMarker) {
+        this.space = space;
+        this.heapMarker = heapMarker;
+    }
+
+    /**
+     * Initialization of those elements that relies on parameters available at VM start only.
+     */
+    public void initialize() {
+        if (MaxCompactedRegions < 2) {
+            Log.println("-XX:MaxCompactedRegions must be at least 2");
+            MaxineVM.native_exit(1);
+        }
+        if (CompactionOccupancyThreshold <= 0 || CompactionOccupancyThreshold >= 100) {
+            Log.println("-XX:CompactionOccupancyThreshold must be between 1 and 99");
+            MaxineVM.native_exit(1);
+        }
+        regionStatistics = new HeapRegionStatistics(space.minReclaimableSpace());
+        evacuatedRegions = new int[MaxCompactedRegions];
+        // Ranges of to-regions are processed in order; at most one unprocessed range per to-region is left in the queue.
+        survivorRanges = new SurvivorRangesQueue(MaxCompactedRegions * 2);
+    }
+
+    /**
+     * Select the regions to evacuate. Regions are taken by increasing occupied space for as long as their live cells are expected to fit in fewer empty
+     * regions than the number of regions evacuated, allowing for an eighth of each empty region to be lost to fragmentation.
+     *
+     * @return the number of regions to evacuate
+     */
+    private int selectEvacuatedRegions() {
+        final int maxOccupiedBytes = (int) (((long) regionSizeInBytes * CompactionOccupancyThreshold) / 100);
+        final int numCandidates = regionStatistics.selectSparsestRegions(space.heapAccount().committedRegions(), evacuatedRegions, maxOccupiedBytes);
+        final int numEmptyRegions = space.numEmptyRegions();
+        final long usableBytesPerRegion = regionSizeInBytes - (regionSizeInBytes >> 3);
+        long occupiedBytes = 0L;
+        int numSelected = 0;
+        for (int i = 0; i < numCandidates; i++) {
+            occupiedBytes += regionSizeInBytes - HeapRegionInfo.fromRegionID(evacuatedRegions[i]).freeBytesInChunks();
+            final long numToRegionsNeeded = (occupiedBytes + usableBytesPerRegion - 1) / usableBytesPerRegion;
+            if (numToRegionsNeeded > numEmptyRegions) {
+                break;
+            }
+            if (numToRegionsNeeded < i + 1) {
+                numSelected = i + 1;
+            }
+        }
+        return numSelected;
+    }
+
+    /**
+     * Evacuate the sparsest regions of the space, if any. Must be called during GC, after the space was fully swept.
+     *
+     * @param gcOperation the GC operation performing the compaction
+     * @return the number of regions evacuated
+     */
+    public int compact(GCOperation gcOperation) {
+        numEvacuatedRegions = selectEvacuatedRegions();
+        if (numEvacuatedRegions == 0) {
+            if (TraceRegionCompaction) {
+                Log.println("Region compaction: no region to evacuate");
+            }
+            return 0;
+        }
+        setGCOperation(gcOperation);
+        // The heap scheme logs the compaction as a single phase.
+        evacuate(false);
+        setGCOperation(null);
+        if (TraceRegionCompaction) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print("Region compaction: evacuated ");
+            Log.print(evacuatedBytes);
+            Log.print(" bytes from ");
+            Log.print(numEvacuatedRegions);
+            Log.print(" regions to ");
+            Log.print(numToRegions);
+            Log.println(" regions");
+            Log.unlock(lockDisabledSafepoints);
+        }
+        return numEvacuatedRegions;
+    }
+
+    @Override
+    boolean inEvacuatedArea(Pointer origin) {
+        return HeapRegionInfo.fromAddress(origin).isEvacuated();
+    }
+
+    private void recordAllocatedRange() {
+        if (top.greaterThan(allocatedRangeStart)) {
+            survivorRanges.add(allocatedRangeStart, top);
+            allocatedRangeStart = top;
+        }
+    }
+
+    /**
+     * Retire the current to-region, if any, and take another empty region of the space to evacuate cells to.
+     */
+    private void nextToRegion() {
+        if (toRegion != INVALID_REGION_ID) {
+            recordAllocatedRange();
+            space.retireEvacuationRegion(toRegion, top);
+        }
+        toRegion = space.takeEmptyRegion();
+        if (toRegion == INVALID_REGION_ID) {
+            FatalError.unexpected("Out of empty regions while compacting regions");
+        }
+        numToRegions++;
+        top = RegionTable.theRegionTable().regionAddress(toRegion).asPointer();
+        end = top.plus(regionSizeInBytes);
+        allocatedRangeStart = top;
+    }
+
+    @Override
+    Pointer evacuate(Pointer fromOrigin) {
+        final Pointer fromCell = Layout.originToCell(fromOrigin);
+        final Size size = Layout.size(fromOrigin);
+        if (top.plus(size).greaterThan(end)) {
+            nextToRegion();
+        }
+        final Pointer toCell = top;
+        top = top.plus(size);
+        Memory.copyBytes(fromCell, toCell, size);
+        evacuatedBytes += size.toLong();
+        return Layout.cellToOrigin(toCell);
+    }
+
+    /**
+     * Evacuate the cells of the evacuated regions referenced from the live cells of the rest of the space.
+     */
+    @Override
+    protected void evacuateFromRSets() {
+        space.visitLiveCells(heapMarker, this);
+    }
+
+    @Override
+    protected void evacuateReachables() {
+        recordAllocatedRange();
+        while (!survivorRanges.isEmpty()) {
+            final Pointer rangeStart = survivorRanges.start();
+            final Pointer rangeEnd = survivorRanges.end();
+            survivorRanges.remove();
+            evacuateRange(rangeStart, rangeEnd);
+            recordAllocatedRange();
+        }
+    }
+
+    @Override
+    protected void doBeforeEvacuation() {
+        for (int i = 0; i < numEvacuatedRegions; i++) {
+            space.beginRegionEvacuation(evacuatedRegions[i]);
+        }
+        // Reachability of special references' referents was already established by the marking.
+        disableSpecialRefDiscovery();
+        survivorRanges.clear();
+        toRegion = INVALID_REGION_ID;
+        top = Pointer.zero();
+        end = Pointer.zero();
+        allocatedRangeStart = Pointer.zero();
+        numToRegions = 0;
+        evacuatedBytes = 0L;
+    }
+
+    @Override
+    protected void doAfterEvacuation() {
+        if (toRegion != INVALID_REGION_ID) {
+            space.retireEvacuationRegion(toRegion, top);
+            toRegion = INVALID_REGION_ID;
+        }
+        for (int i = 0; i < numEvacuatedRegions; i++) {
+            space.endRegionEvacuation(evacuatedRegions[i]);
+        }
+        space.doAfterRegionEvacuation();
+    }
+}
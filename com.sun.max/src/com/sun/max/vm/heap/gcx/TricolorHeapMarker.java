@@ -335,6 +335,18 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
 
     MARK_PHASE markPhase = MARK_PHASE.DONE;
 
+    /**
+     * Indicates that the heap is being traced concurrently with mutators, between the {@linkplain #initialMark() initial mark}
+     * and the {@linkplain #beginRemark() final remark}. Special references aren't discovered during that time: their referent are
+     * treated as strongly reachable instead.
+     */
+    boolean concurrentMarking;
+
+    /**
+     * Rightmost grey object left by the concurrent tracing when the final remark begins.
+     */
+    private Address concurrentRightmost;
+
 
     private static String colorName(long color) {
         return COLOR_NAMES[(int) color & 0x3];
@@ -727,6 +739,21 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         return false;
     }
 
+    /**
+     * Mark a cell black if it is white. Used to mark live the objects allocated during concurrent marking.
+     * @param cell a cell in the covered area
+     */
+    @INLINE
+    final void markBlackIfWhite(Pointer cell) {
+        final int bitIndex = bitIndexOf(cell);
+        if (isWhite(bitIndex)) {
+            traceBlackMark(cell, bitIndex);
+            final Pointer basePointer = base.asPointer();
+            final int wordIndex = bitmapWordIndex(bitIndex);
+            basePointer.setLong(wordIndex, basePointer.getLong(wordIndex) | bitmaskFor(bitIndex));
+        }
+    }
+
     @INLINE
     final void markBlackFromGrey(int bitIndex) {
         final Pointer basePointer = base.asPointer();
@@ -743,6 +770,75 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markBlackFromGrey(bitIndex);
     }
 
+    // Atomic color updates, for marking with multiple threads.
+
+    /**
+     * Atomically set a bit of the color map.
+     * @param bitIndex a bit index
+     * @return true if the bit was set by the caller, false if it was already set
+     */
+    private boolean atomicSetBit(int bitIndex) {
+        final Pointer bitmapWordPointer = bitmapWordPointerAt(bitIndex);
+        final long bitmask = bitmaskFor(bitIndex);
+        long bitmapWord;
+        do {
+            bitmapWord = bitmapWordPointer.getLong(0);
+            if ((bitmapWord & bitmask) != 0L) {
+                return false;
+            }
+        } while (bitmapWordPointer.compareAndSwapLong(0, bitmapWord, bitmapWord | bitmask) != bitmapWord);
+        return true;
+    }
+
+    /**
+     * Atomically clear a bit of the color map.
+     * @param bitIndex a bit index
+     * @return true if the bit was cleared by the caller, false if it was already clear
+     */
+    private boolean atomicClearBit(int bitIndex) {
+        final Pointer bitmapWordPointer = bitmapWordPointerAt(bitIndex);
+        final long bitmask = bitmaskFor(bitIndex);
+        long bitmapWord;
+        do {
+            bitmapWord = bitmapWordPointer.getLong(0);
+            if ((bitmapWord & bitmask) == 0L) {
+                return false;
+            }
+        } while (bitmapWordPointer.compareAndSwapLong(0, bitmapWord, bitmapWord & ~bitmask) != bitmapWord);
+        return true;
+    }
+
+    /**
+     * Atomically paint black a white object. Only one of several threads racing to mark the same object succeeds.
+     * @param bitIndex bit index of the object's color
+     * @return true if the caller painted the object black, false if the object wasn't white
+     */
+    @INLINE
+    final boolean atomicMarkBlackIfWhite(int bitIndex) {
+        return atomicSetBit(bitIndex);
+    }
+
+    /**
+     * Atomically paint grey an object that the caller painted black.
+     * @param bitIndex bit index of the object's color
+     */
+    @INLINE
+    final void atomicMarkGreyFromBlack(int bitIndex) {
+        // The grey bit may be in the next word of the color map.
+        atomicSetBit(bitIndex + 1);
+    }
+
+    /**
+     * Atomically paint black a grey object. Only one of several threads racing to blacken the same object succeeds,
+     * which lets threads claim grey objects found in the color map.
+     * @param bitIndex bit index of the object's color
+     * @return true if the caller painted the object black, false if the object wasn't grey
+     */
+    @INLINE
+    final boolean atomicMarkBlackFromGrey(int bitIndex) {
+        return atomicClearBit(bitIndex + 1);
+    }
+
     final boolean isGrey(int bitIndex) {
         int bitIndexInWord = bitIndexInWord(bitIndex);
         if (bitIndexInWord == LAST_BIT_INDEX_IN_WORD) {
@@ -858,6 +954,26 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
 
     private final RootCellVisitor rootCellVisitor;
 
+    /**
+     * Parallel tracing of objects marked grey by root marking. Null if parallel marking isn't enabled.
+     */
+    private ParallelMarkingTask parallelMarking;
+
+    /**
+     * Enables parallel marking with the workers of the specified pool of GC threads.
+     * @param gcThreadPool a pool of GC threads
+     */
+    @HOSTED_ONLY
+    public void enableParallelMarking(GCThreadPool gcThreadPool) {
+        parallelMarking = new ParallelMarkingTask(this, gcThreadPool);
+    }
+
+    public void initialize(MaxineVM.Phase phase) {
+        if (phase == MaxineVM.Phase.STARTING && parallelMarking != null) {
+            parallelMarking.initialize();
+        }
+    }
+
     public RootCellVisitor rootCellVisitor() {
         return rootCellVisitor;
     }
@@ -986,7 +1102,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
             if (specificLayout.isTupleLayout()) {
                 TupleReferenceMap.visitReferences(hub, origin, this);
                 if (hub.isJLRReference) {
-                    SpecialReferenceManager.discoverSpecialReference(cell);
+                    if (heapMarker.concurrentMarking) {
+                        markRefGrey(origin.getReference(SpecialReferenceManager.referentIndex()));
+                    } else {
+                        SpecialReferenceManager.discoverSpecialReference(cell);
+                    }
                 }
             } else if (specificLayout.isHybridLayout()) {
                 TupleReferenceMap.visitReferences(hub, origin, this);
@@ -1143,6 +1263,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
             if (specificLayout.isTupleLayout()) {
                 TupleReferenceMap.visitReferences(hub, origin, this);
                 if (hub.isJLRReference) {
+                    if (heapMarker.concurrentMarking) {
+                        // Special references can't be discovered while mutators run. Treat the referent as strongly reachable instead.
+                        markRefGrey(origin.getReference(SpecialReferenceManager.referentIndex()));
+                        return cell.plus(hub.tupleSize);
+                    }
                     // The marking stack might have overflow before reaching this point, and doing so, it
                     // might have already register this reference to the SpecialReferenceManager
                     // (e.g., if using deep mark stack flush).
@@ -1476,6 +1601,18 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         overflowScanState.numMarkinkgStackOverflow = 0;
     }
 
+    /**
+     * Visit in parallel all objects marked grey during root marking.
+     * Parallel marking leaves no grey marks, so the forward scan state is left with both the finger and
+     * the rightmost set to the rightmost marked object, as if a sequential forward scan had completed.
+     */
+    private void visitGreyObjectsInParallelAfterRootMarking() {
+        final Address rightmost = parallelMarking.visitGreyObjectsAfterRootMarking(rootCellVisitor.leftmost, rootCellVisitor.rightmost);
+        initAfterRootMarking();
+        forwardScanState.rightmost = rightmost;
+        forwardScanState.finger = rightmost;
+    }
+
     private void visitGreyObjects() {
         currentScanState = forwardScanState;
         overflowScanState.markingStackFlusher().setScanState(currentScanState);
@@ -1535,6 +1672,34 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         return -1;
     }
 
+    /**
+     * Visit the cells marked black in the specified range of the covered area. The range must begin on a cell boundary.
+     * Only valid once marking is complete (i.e., when there are no grey marks left) and until the color map is cleared.
+     * Unlike walking the range, this never visits dead objects left behind by an imprecise sweep.
+     *
+     * @param start start of the range
+     * @param end end of the range
+     * @param cellVisitor visitor applied to each black cell of the range
+     */
+    void visitBlackCells(Address start, Address end, CellVisitor cellVisitor) {
+        final Pointer colorMapBase = base.asPointer();
+        final int endBitIndex = bitIndexOf(end);
+        int bitIndex = bitIndexOf(start);
+        while (bitIndex < endBitIndex) {
+            final int bitmapWordIndex = bitmapWordIndex(bitIndex);
+            final long bitmapWord = colorMapBase.getLong(bitmapWordIndex) >>> bitIndexInWord(bitIndex);
+            if (bitmapWord == 0L) {
+                bitIndex = (bitmapWordIndex + 1) << Word.widthValue().log2numberOfBits;
+            } else {
+                bitIndex += Pointer.fromLong(bitmapWord).leastSignificantBitSet();
+                if (bitIndex >= endBitIndex) {
+                    return;
+                }
+                bitIndex = bitIndexOf(cellVisitor.visitCell(addressOf(bitIndex).asPointer()));
+            }
+        }
+    }
+
     private void preciseSweep(Sweeper sweeper, int leftmostBitIndex, int rightmostBitIndex) {
         final Pointer colorMapBase = base.asPointer();
         final int rightmostBitmapWordIndex = bitmapWordIndex(rightmostBitIndex);
@@ -1635,18 +1800,36 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
      * This can server region-based heap as well as contiguous heap, wherein a single region is passed in this case.
      */
     public void sweep(HeapRegionSweeper regionsSweeper, boolean doImprecise) {
+        while (sweepNextRegion(regionsSweeper, doImprecise)) {
+            // Keep sweeping.
+        }
+    }
+
+    /**
+     * Sweep the next region of the heap region sweeper. This allows a sweeper to interleave sweeping of regions
+     * with other work (e.g., mutator allocation), as long as the mark bitmap isn't modified until sweeping is complete.
+     * When the swept region is the last one holding live objects, the sweeper is notified that the rightmost live region
+     * was reached.
+     *
+     * @param regionsSweeper the sweeper of the heap regions
+     * @param doImprecise indicate whether to do an imprecise sweep
+     * @return true if more regions remain to be swept, false otherwise
+     */
+    public boolean sweepNextRegion(HeapRegionSweeper regionsSweeper, boolean doImprecise) {
         final Address endOfRightmostLiveObject = endOfCell(forwardScanState.rightmost);
-        do {
-            assert regionsSweeper.hasNextSweepingRegion();
-            regionsSweeper.beginSweep();
-            if (doImprecise) {
-                impreciseRegionSweep(regionsSweeper);
-            } else {
-                preciseRegionSweep(regionsSweeper);
-            }
-            regionsSweeper.endSweep();
-        } while (regionsSweeper.endOfSweepingRegion().lessThan(endOfRightmostLiveObject));
+        assert regionsSweeper.hasNextSweepingRegion();
+        regionsSweeper.beginSweep();
+        if (doImprecise) {
+            impreciseRegionSweep(regionsSweeper);
+        } else {
+            preciseRegionSweep(regionsSweeper);
+        }
+        regionsSweeper.endSweep();
+        if (regionsSweeper.endOfSweepingRegion().lessThan(endOfRightmostLiveObject)) {
+            return true;
+        }
         regionsSweeper.reachedRightmostLiveRegion();
+        return false;
     }
 
     /**
@@ -1789,7 +1972,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
         markPhase.traceBegin(traceGCPhases);
         startTimer(heapMarkingTimer);
-        visitGreyObjectsAfterRootMarking();
+        if (parallelMarking != null && parallelMarking.isEnabled()) {
+            visitGreyObjectsInParallelAfterRootMarking();
+        } else {
+            visitGreyObjectsAfterRootMarking();
+        }
         stopTimer(heapMarkingTimer);
         markPhase.traceEnd(traceGCPhases);
 
@@ -1835,7 +2022,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
         markPhase.traceBegin(traceGCPhases);
         startTimer(heapMarkingTimer);
-        visitGreyObjectsAfterRootMarking(regionsRanges);
+        if (parallelMarking != null && parallelMarking.isEnabled()) {
+            visitGreyObjectsInParallelAfterRootMarking();
+        } else {
+            visitGreyObjectsAfterRootMarking(regionsRanges);
+        }
         stopTimer(heapMarkingTimer);
         markPhase.traceEnd(traceGCPhases);
 
@@ -1909,6 +2100,136 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.DONE;
     }
 
+    /**
+     * Initial mark of a concurrent marking cycle. Clears the color map and marks grey all the objects directly reachable from the roots.
+     * Must be called during a GC pause. Tracing then proceeds concurrently with mutators via {@link #visitGreyObjectsConcurrently(int)}.
+     * <p>
+     * Since the set of committed heap regions may change while mutators run, concurrent tracing recovers from marking stack overflow
+     * with a linear scan of the color map instead of iterating over region ranges.
+     */
+    public void initialMark() {
+        traceGCTimes = Heap.logGCTime();
+        markingStack.reset();
+        clearColorMap();
+        overflowScanState.setHeapRegionsRanges(null);
+        concurrentMarking = true;
+        markRoots();
+        markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
+        initAfterRootMarking();
+        currentScanState = forwardScanState;
+        overflowScanState.markingStackFlusher().setScanState(currentScanState);
+    }
+
+    /**
+     * Visits the grey objects of a bounded slice of the color map, starting at the finger of the forward scan.
+     * Called by the concurrent marker between two checks for pending pauses.
+     *
+     * @param maxBitmapWords maximum number of words of the color map to scan
+     * @return true if there are no grey objects left to visit
+     */
+    public boolean visitGreyObjectsConcurrently(int maxBitmapWords) {
+        if (forwardScanState.finger.greaterThan(forwardScanState.rightmost)) {
+            // No roots in the covered area.
+            return markingStack.isEmpty();
+        }
+        final int rightmostBitmapWordIndex = forwardScanState.rightmostBitmapWordIndex();
+        final int fingerBitmapWordIndex = bitmapWordIndex(forwardScanState.finger);
+        final int limit = rightmostBitmapWordIndex - fingerBitmapWordIndex > maxBitmapWords ? fingerBitmapWordIndex + maxBitmapWords : rightmostBitmapWordIndex;
+        forwardScanState.visitGreyObjects(limit);
+        return limit == rightmostBitmapWordIndex && forwardScanState.rightmostBitmapWordIndex() <= rightmostBitmapWordIndex;
+    }
+
+    /**
+     * Marks an object whose reference was overwritten by a mutator while marking was in progress.
+     *
+     * @param origin origin of a non-null reference recorded by the pre-write barrier
+     */
+    void markOverwrittenReference(Pointer origin) {
+        final Pointer cell = Layout.originToCell(origin);
+        if (concurrentMarking) {
+            if (isCovered(cell)) {
+                forwardScanState.visit(Reference.fromOrigin(origin));
+            }
+        } else {
+            rootCellVisitor.markExternalRoot(cell);
+        }
+    }
+
+    /**
+     * Begins the final remark of a concurrent marking cycle. Must be called during a GC pause, once the concurrent marker has stopped.
+     * Rescans the roots. The caller must then mark the objects recorded by the pre-write barrier (see {@link SATBQueueSet#drainAllBuffers(TricolorHeapMarker)})
+     * and the objects allocated during the marking cycle (see {@link BlackAllocationLog#markAllocatedCellsBlack(TricolorHeapMarker)}) before calling
+     * {@link #completeRemark(HeapRegionRangeIterable)}.
+     */
+    public void beginRemark() {
+        traceGCTimes = Heap.logGCTime();
+        if (traceGCTimes) {
+            recoveryScanTimer.reset();
+        }
+        concurrentMarking = false;
+        concurrentRightmost = forwardScanState.rightmost;
+        markingStack.reset();
+        // Roots are marked grey blindly. This may turn black roots grey again, which only cost a revisit.
+        markRoots();
+    }
+
+    /**
+     * Completes the final remark of a concurrent marking cycle: visits all the objects left grey, then processes special references.
+     *
+     * @param regionsRanges enumerate ranges of heap regions holding objects to trace
+     */
+    public void completeRemark(HeapRegionRangeIterable regionsRanges) {
+        final boolean traceGCPhases = Heap.logGCPhases();
+        overflowScanState.setHeapRegionsRanges(regionsRanges);
+        Address rightmost = concurrentRightmost;
+        if (rootCellVisitor.rightmost.greaterThan(rightmost)) {
+            rightmost = rootCellVisitor.rightmost;
+        }
+
+        markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
+        markPhase.traceBegin(traceGCPhases);
+        startTimer(heapMarkingTimer);
+        if (parallelMarking != null && parallelMarking.isEnabled()) {
+            rightmost = parallelMarking.visitGreyObjectsAfterRootMarking(coveredAreaStart, rightmost);
+            initAfterRootMarking();
+            forwardScanState.rightmost = rightmost;
+            forwardScanState.finger = rightmost;
+        } else {
+            // Grey objects may be anywhere below the rightmost: start the forward scan from the first region of the ranges.
+            initAfterRootMarking();
+            forwardScanState.rightmost = rightmost;
+            regionsRanges.reset();
+            if (regionsRanges.hasNext()) {
+                final int firstRegion = regionsRanges.next().firstRegion();
+                forwardScanState.finger = coveredAreaStart.plus(Address.fromInt(firstRegion).shiftedLeft(HeapRegionConstants.log2RegionSizeInBytes)).asPointer();
+            }
+            regionsRanges.reset();
+            visitGreyObjects(regionsRanges);
+        }
+        stopTimer(heapMarkingTimer);
+        markPhase.traceEnd(traceGCPhases);
+        FatalError.check(markingStack.isEmpty(), "Marking Stack must be empty after visiting grey objects.");
+
+        markPhase = MARK_PHASE.SPECIAL_REF;
+        markPhase.traceBegin(traceGCPhases);
+        startTimer(weakRefTimer);
+        SpecialReferenceManager.processDiscoveredSpecialReferences(forwardScanState);
+        regionsRanges.reset();
+        visitGreyObjects(regionsRanges);
+        stopTimer(weakRefTimer);
+        markPhase.traceEnd(traceGCPhases);
+        FatalError.check(markingStack.isEmpty(), "Marking Stack must be empty after special references are processed.");
+        markPhase = MARK_PHASE.DONE;
+    }
+
+    /**
+     * Abandons a concurrent marking cycle, e.g., to redo marking in a single pause. Must be called during a GC pause.
+     */
+    public void abortConcurrentMarking() {
+        concurrentMarking = false;
+        markingStack.reset();
+    }
+
     /**
      * Contiguous region of memory used by the heap marker for the color map.
      * @return a non-null {@link MemoryRegion}
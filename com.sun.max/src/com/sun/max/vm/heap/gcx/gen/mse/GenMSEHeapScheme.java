@@ -86,7 +86,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
      * Young generation.
      */
     @INSPECTED
-    private final NoAgingRegionalizedNursery youngSpace;
+    private final AgingRegionalizedNursery youngSpace;
     /**
      * Tenured generation.
      */
@@ -106,7 +106,12 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     /**
      * Implementation of young space evacuation. Used by minor collection operations.
      */
-    private final NoAgingNurseryEvacuator youngSpaceEvacuator;
+    private final ParallelNurseryEvacuator youngSpaceEvacuator;
+
+    /**
+     * Background refinement of the dirty cards of the old generation. Only active if enabled with -XX:+ConcurrentCardRefinement.
+     */
+    private final DirtyCardRefiner cardRefiner;
 
     /**
      * Operation to submit to the {@link VmOperationThread} to perform a generational collection.
@@ -118,6 +123,11 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
      */
     private final TricolorHeapMarker heapMarker;
 
+    /**
+     * GC threads used to mark the heap in parallel during full collections, and to evacuate the young generation in parallel.
+     */
+    private final GCThreadPool gcThreadPool = new GCThreadPool();
+
     /**
      * Support for heap verification.
      */
@@ -128,8 +138,9 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     public GenMSEHeapScheme() {
         heapAccount = new HeapAccount<GenMSEHeapScheme>(this);
         heapMarker = new TricolorHeapMarker(WORDS_COVERED_PER_BIT, new HeapAccounRootCellVisitor(this));
+        heapMarker.enableParallelMarking(gcThreadPool);
         cardTableRSet = new CardTableRSet();
-        youngSpace = new NoAgingRegionalizedNursery(heapAccount, YOUNG.tag());
+        youngSpace = new AgingRegionalizedNursery(heapAccount, YOUNG.tag());
 
         final ChunkListAllocator<RegionChunkListRefillManager> tlabAllocator =
             new ChunkListAllocator<RegionChunkListRefillManager>(new RegionChunkListRefillManager(cardTableRSet));
@@ -137,7 +148,11 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             new CardSpaceAllocator<RegionOverflowAllocatorRefiller>(new RegionOverflowAllocatorRefiller(cardTableRSet), cardTableRSet);
 
         oldSpace = new FirstFitMarkSweepSpace<GenMSEHeapScheme>(heapAccount, tlabAllocator, overflowAllocator, true, cardTableRSet, OLD.tag());
-        youngSpaceEvacuator = new NoAgingNurseryEvacuator(youngSpace, oldSpace, this, cardTableRSet, "Young");
+        // Objects larger than a region are allocated directly in the old generation, which maintains the card table for them.
+        youngSpace.setLargeObjectSpace(oldSpace);
+        youngSpaceEvacuator = new ParallelNurseryEvacuator(youngSpace, oldSpace, this, cardTableRSet, "Young", gcThreadPool);
+        cardRefiner = new DirtyCardRefiner(cardTableRSet, oldSpace, youngSpace);
+        youngSpaceEvacuator.setCardRefiner(cardRefiner);
         noYoungReferencesVerifier = new NoEvacuatedSpaceReferenceVerifier(cardTableRSet, youngSpace);
         fotVerifier = new FOTVerifier(cardTableRSet);
         genCollection = new GenCollection();
@@ -147,6 +162,10 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     public void initialize(MaxineVM.Phase phase) {
         super.initialize(phase);
         cardTableRSet.initialize(phase);
+        gcThreadPool.initialize(phase);
+        heapMarker.initialize(phase);
+        youngSpaceEvacuator.initialize(phase);
+        cardRefiner.initialize(phase);
     }
 
     /**
@@ -202,6 +221,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             enableCustomAllocation(theHeapRegionManager().allocator());
             final MemoryRegion heapBounds = theHeapRegionManager().bounds();
             final Size applicationHeapMaxSize = heapBounds.size().minus(theHeapRegionManager().size());
+            heapResizingPolicy = new FixedRatioGenHeapSizingPolicy(initSize, maxSize, YoungGenHeapPercent, log2RegionSizeInBytes);
 
             // Compute space needed by the heap marker. This is proportional to the size of the space traced by the heap marker.
             // The boot image isn't traced (it is assumed a permanent root of collection).
@@ -210,8 +230,12 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             // Heap Marker Data are allocated after the remembered set's.
             final Address heapMarkerDataStart = cardTableRSet.memory().end().roundedUpBy(pageSize);
 
+            // The age table of the young generation's survivor spaces is allocated after the heap marker data.
+            final Address ageTableDataStart = heapMarkerDataStart.plus(heapMarkerDatasize).roundedUpBy(pageSize);
+            final Size ageTableDataSize = youngSpace.memoryRequirement(heapResizingPolicy.survivorSpaceSize().times(2));
+
             // Address to the first reserved byte unused by the heap scheme.
-            Address unusedReservedSpaceStart = heapMarkerDataStart.plus(heapMarkerDatasize).roundedUpBy(pageSize);
+            Address unusedReservedSpaceStart = ageTableDataStart.plus(ageTableDataSize).roundedUpBy(pageSize);
 
             if (unusedReservedSpaceStart.greaterThan(endOfReservedSpace)) {
                 MaxineVM.reportPristineMemoryFailure("Can't allocate heap marker", "reserve", heapMarkerDatasize);
@@ -220,6 +244,9 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
                 if (!VirtualMemory.commitMemory(heapMarkerDataStart, heapMarkerDatasize,  VirtualMemory.Type.DATA)) {
                     MaxineVM.reportPristineMemoryFailure("heap marker space", "commit", heapMarkerDatasize);
                 }
+                if (!ageTableDataSize.isZero() && !VirtualMemory.commitMemory(ageTableDataStart, ageTableDataSize,  VirtualMemory.Type.DATA)) {
+                    MaxineVM.reportPristineMemoryFailure("age table space", "commit", ageTableDataSize);
+                }
             }
             heapMarker.initialize(heapBounds.start(), heapBounds.end(), heapMarkerDataStart, heapMarkerDatasize);
 
@@ -236,17 +263,19 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
                 MaxineVM.reportPristineMemoryFailure("reserved space leftover", "deallocate", leftoverSize);
             }
 
-            heapResizingPolicy = new FixedRatioGenHeapSizingPolicy(initSize, maxSize, YoungGenHeapPercent, log2RegionSizeInBytes);
             if (!heapAccount().open(numberOfRegions(applicationHeapMaxSize))) {
                 FatalError.unexpected("Failed to create application heap");
             }
-            youngSpace.initialize(heapResizingPolicy);
+            youngSpace.initialize(heapResizingPolicy, ageTableDataStart);
             oldSpace.initialize(heapResizingPolicy.initialOldGenSize(), heapResizingPolicy.maxOldGenSize());
 
             // FIXME: the capacity of the survivor range queues should be dynamic. Its upper bound could be computed based on the
             // worst case evacuation and the number of fragments of old space available for allocation.
             // Same with the lab size. In non parallel evacuators, this should be all the space available for allocation in a region.
             youngSpaceEvacuator.initialize(1000, false, oldSpace.minReclaimableSpace(), false);
+            if (youngSpace.isAging()) {
+                youngSpaceEvacuator.enableAging(youngSpace, ELABSize);
+            }
 
             if (HeapRangeDumper.DumpOnError) {
                 MemoryRegion dumpingCoverage = new MemoryRegion();
@@ -292,7 +321,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
         private void verifyAfterEvacuation() {
             // Verify that:
             // 1. offset table is correctly setup
-            // 2. there are no pointer from old to young.
+            // 2. there are no pointer from old to the young allocation space (survivor spaces may be referenced from dirty cards).
             // 3. cards are all cleaned (except for those holding special references, which may have been dirtied during reference discovery)
             oldSpace.visit(fotVerifier);
             oldSpace.visit(noYoungReferencesVerifier);
@@ -365,6 +394,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
                     FatalError.unimplemented();
                 }
             }
+            cardRefiner.doAfterGC();
             final GCRequest gcRequest = callingThread().gcRequest;
             gcRequest.lastInvocationCount = invocationCount;
         }
@@ -458,7 +488,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the TLAB allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the TLAB.
             return tlabAllocate(size);
@@ -53,6 +53,11 @@ public final class MSHeapScheme extends HeapSchemeWithTLABAdaptor {
     @INSPECTED
     final TricolorHeapMarker heapMarker;
 
+    /**
+     * GC threads used to mark the heap in parallel.
+     */
+    private final GCThreadPool gcThreadPool = new GCThreadPool();
+
     /**
      * Space where objects are allocated from by default.
      * Implements the {@link Sweeper} interface to be notified by a sweeper of
@@ -70,6 +75,7 @@ public final class MSHeapScheme extends HeapSchemeWithTLABAdaptor {
     @HOSTED_ONLY
     public MSHeapScheme() {
         heapMarker = new TricolorHeapMarker(WORDS_COVERED_PER_BIT, new ContiguousHeapRootCellVisitor());
+        heapMarker.enableParallelMarking(gcThreadPool);
         objectSpace = new FreeHeapSpaceManager();
         afterGCVerifier = new AfterMarkSweepVerifier(heapMarker, objectSpace, AfterMarkSweepBootHeapVerifier.makeVerifier(heapMarker));
 
@@ -79,6 +85,8 @@ public final class MSHeapScheme extends HeapSchemeWithTLABAdaptor {
     @Override
     public void initialize(MaxineVM.Phase phase) {
         super.initialize(phase);
+        gcThreadPool.initialize(phase);
+        heapMarker.initialize(phase);
     }
 
     /**
@@ -410,7 +418,7 @@ public final class MSHeapScheme extends HeapSchemeWithTLABAdaptor {
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of dirty meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the tlab allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the tlab.
             return tlabAllocate(size);
@@ -26,11 +26,14 @@ import static com.sun.max.vm.VMConfiguration.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionManager.*;
 import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.*;
 
+import com.sun.cri.xir.*;
+import com.sun.cri.xir.CiXirAssembler.XirOperand;
 import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.platform.*;
 import com.sun.max.program.*;
 import com.sun.max.unsafe.*;
+import com.sun.max.util.*;
 import com.sun.max.util.timer.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.MaxineVM.Phase;
@@ -39,6 +42,7 @@ import com.sun.max.vm.heap.*;
 import com.sun.max.vm.heap.gcx.*;
 import com.sun.max.vm.heap.gcx.rset.*;
 import com.sun.max.vm.layout.*;
+import com.sun.max.vm.monitor.modal.sync.*;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.thread.*;
@@ -46,32 +50,109 @@ import com.sun.max.vm.thread.*;
 /**
  * Region-based Mark Sweep + Evacuation-based defragmentation Heap Scheme.
  * Used for testing region-based support.
+ *
+ * With {@code -XX:+ConcurrentMarking}, the heap is marked mostly concurrently with mutators: a marker thread starts a marking cycle
+ * when heap occupancy reaches {@code -XX:ConcurrentMarkingOccupancy}. The cycle begins with a short initial mark pause that marks the roots,
+ * then traces the heap concurrently. A snapshot-at-the-beginning pre-write barrier records in per-thread {@link SATBQueueSet} buffers the references
+ * overwritten by mutators, and objects allocated during the cycle are logged in a {@link BlackAllocationLog}. The cycle ends with a final remark pause
+ * that rescans the roots, marks the recorded references and the allocated objects, completes the tracing, then sweeps.
+ * Any garbage collection requested while a cycle is in progress does the final remark.
+ *
+ * With {@code -XX:+CompactSparseRegions}, each collection evacuates the live objects of a few of the sparsest regions into empty regions after sweeping
+ * (see {@link SparseRegionEvacuator}). The emptied regions are given back to the heap region manager when the heap shrinks.
+ * Pinned objects must not move: the compaction is skipped by any collection that finds an object pinned.
  */
-public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements HeapAccountOwner {
+public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements HeapAccountOwner, XirWriteBarrierSpecification {
     private static final int WORDS_COVERED_PER_BIT = 1;
     static boolean DumpFragStatsAfterGC = false;
     static boolean DumpFragStatsAtGCFailure = false;
     static boolean DoImpreciseSweep = false;
+    static boolean LazySweep = false;
+    static boolean ConcurrentMarking = false;
+    static int ConcurrentMarkingOccupancy = 45;
+    static boolean CompactSparseRegions = false;
     static {
         VMOptions.addFieldOption("-XX:", "DumpFragStatsAfterGC", MSEHeapScheme.class, "Dump region fragmentation stats after GC", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "DumpFragStatsAtGCFailure", MSEHeapScheme.class, "Dump region fragmentation when GC failed to reclaim enough space", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "DoImpreciseSweep", MSEHeapScheme.class, "Control whether to do precise or imprecise sweep", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "LazySweep", MSEHeapScheme.class, "Sweep only enough regions during GC to satisfy the allocation request; sweep the others on demand", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentMarking", MSEHeapScheme.class, "Mark the heap mostly concurrently with mutators", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentMarkingOccupancy", MSEHeapScheme.class,
+                        "Percentage of heap occupancy that starts a concurrent marking cycle (Default: 45)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "CompactSparseRegions", MSEHeapScheme.class, "Evacuate the sparsest regions of the heap after sweeping", Phase.PRISTINE);
     }
 
+    /**
+     * Number of words of the color map traced by the concurrent marker between two checks for a pending pause.
+     */
+    private static final int CONCURRENT_MARKING_STEP = 1024;
+
+    /**
+     * Interval in milliseconds at which the concurrent marker checks the heap occupancy when no marking cycle is in progress.
+     */
+    private static final int CONCURRENT_MARKING_POLL_INTERVAL = 20;
+
     /**
      * Marking algorithm used to trace the heap.
      */
     private final TricolorHeapMarker heapMarker;
 
+    /**
+     * GC threads used to mark the heap in parallel.
+     */
+    private final GCThreadPool gcThreadPool = new GCThreadPool();
+
     /**
      * Space where objects are allocated from by default.
      */
     private final FirstFitMarkSweepSpace<MSEHeapScheme> markSweepSpace;
 
-    private final AtomicPinCounter pinnedCounter = MaxineVM.isDebug() ? new AtomicPinCounter() : null;
+    /**
+     * Count of pinned objects. Maintained in product builds when {@link #CompactSparseRegions} is enabled, as a collection cannot
+     * compact while an object is pinned.
+     */
+    private final AtomicPinCounter pinnedCounter = new AtomicPinCounter();
 
     final MarkSweepCollection collect = new MarkSweepCollection();
 
+    /**
+     * Queues of references overwritten by mutators during a concurrent marking cycle.
+     */
+    private final SATBQueueSet satbQueueSet = new SATBQueueSet();
+
+    /**
+     * Memory allocated during a concurrent marking cycle.
+     */
+    private final BlackAllocationLog blackAllocationLog = new BlackAllocationLog();
+
+    private final InitialMark initialMark = new InitialMark();
+
+    private final FinalRemark finalRemark = new FinalRemark();
+
+    private static final CriticalMethod satbEnqueue = new CriticalMethod(MSEHeapScheme.class, "satbEnqueue", null);
+
+    /**
+     * Lock and condition variable used to synchronize the concurrent marker with pauses.
+     */
+    private final Mutex concurrentMarkingLock = MutexFactory.create();
+    private final ConditionVariable concurrentMarkerIdle = ConditionVariableFactory.create();
+
+    /**
+     * Indicates that a concurrent marking cycle is in progress, i.e., that the initial mark was done but not the final remark.
+     * Only modified during pauses.
+     */
+    private boolean markingCycleActive;
+
+    /**
+     * Indicates that the concurrent marker is tracing the heap. Protected by {@link #concurrentMarkingLock}.
+     */
+    private boolean concurrentMarkerBusy;
+
+    /**
+     * Request to the concurrent marker to stop tracing. Protected by {@link #concurrentMarkingLock}.
+     */
+    private boolean concurrentMarkingAbortRequested;
+
     /**
      * An instance of an after mark sweep verifier to use for heap verification after a mark sweep.
      * @see Sweeper
@@ -80,6 +161,11 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
     private HeapRegionStatistics fragmentationStats;
 
+    /**
+     * Evacuator compacting the sparsest regions of the heap after sweeping.
+     */
+    private final SparseRegionEvacuator regionCompactor;
+
     /**
      * The application heap. Currently, where all dynamic allocation takes place.
      */
@@ -95,13 +181,45 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             new AtomicBumpPointerAllocator<RegionOverflowAllocatorRefiller>(new RegionOverflowAllocatorRefiller());
         markSweepSpace = new FirstFitMarkSweepSpace<MSEHeapScheme>(heapAccount, tlabAllocator, overflowAllocator, false, NullDeadSpaceListener.nullDeadSpaceListener(), 0);
         heapMarker = new TricolorHeapMarker(WORDS_COVERED_PER_BIT, new HeapAccounRootCellVisitor(this));
+        heapMarker.enableParallelMarking(gcThreadPool);
         afterGCVerifier = new AfterMarkSweepVerifier(heapMarker, markSweepSpace, AfterMarkSweepBootHeapVerifier.makeVerifier(heapMarker, this));
+        regionCompactor = new SparseRegionEvacuator(markSweepSpace, heapMarker);
+        regionCompactor.setTimers(new EvacuationTimers());
         pinningSupportFlags = PIN_SUPPORT_FLAG.makePinSupportFlags(true, false, true);
     }
 
     @Override
     public void initialize(MaxineVM.Phase phase) {
         super.initialize(phase);
+        gcThreadPool.initialize(phase);
+        heapMarker.initialize(phase);
+        if (phase == MaxineVM.Phase.PRISTINE) {
+            if (ConcurrentMarking && LazySweep) {
+                // Regions left unswept would be swept based on the color map cleared by the initial mark.
+                Log.println("-XX:+ConcurrentMarking cannot be used with -XX:+LazySweep");
+                MaxineVM.native_exit(1);
+            }
+            if (CompactSparseRegions && LazySweep) {
+                // Regions must all be swept to select the regions to evacuate.
+                Log.println("-XX:+CompactSparseRegions cannot be used with -XX:+LazySweep");
+                MaxineVM.native_exit(1);
+            }
+        } else if (phase == MaxineVM.Phase.STARTING && ConcurrentMarking) {
+            satbQueueSet.initialize();
+            blackAllocationLog.initialize();
+            concurrentMarkingLock.init();
+            concurrentMarkerIdle.init();
+            final VmThread concurrentMarker;
+            Heap.enableImmortalMemoryAllocation();
+            try {
+                // See GCThreadPool: the VmThread must exist to be marked as a GC thread before it is started.
+                concurrentMarker = VmThreadFactory.create(new ConcurrentMarkerThread());
+                concurrentMarker.setAsGCThread();
+            } finally {
+                Heap.disableImmortalMemoryAllocation();
+            }
+            concurrentMarker.start0();
+        }
     }
 
     /**
@@ -158,6 +276,9 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             if (DumpFragStatsAfterGC || DumpFragStatsAtGCFailure) {
                 fragmentationStats = new HeapRegionStatistics(markSweepSpace.minReclaimableSpace());
             }
+            if (CompactSparseRegions) {
+                regionCompactor.initialize();
+            }
             // Free leftover of reserved space we will not be using.
             Size leftoverSize = endOfReservedSpace.minus(unusedReservedSpaceStart).asSize();
             if (VirtualMemory.deallocate(unusedReservedSpaceStart, leftoverSize, VirtualMemory.Type.DATA).isZero()) {
@@ -243,8 +364,8 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
     @INLINE
     public boolean pin(Object object) {
-        // Objects never relocate. So this is always safe.
-        if (MaxineVM.isDebug()) {
+        // Objects only relocate when compacting, which doesn't happen while an object is pinned. So this is always safe.
+        if (MaxineVM.isDebug() || CompactSparseRegions) {
             pinnedCounter.increment();
         }
         return true;
@@ -252,7 +373,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
     @INLINE
     public void unpin(Object object) {
-        if (MaxineVM.isDebug()) {
+        if (MaxineVM.isDebug() || CompactSparseRegions) {
             pinnedCounter.decrement();
         }
     }
@@ -271,6 +392,253 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
     public void writeBarrier(Reference from, Reference to) {
     }
 
+    @INTRINSIC(UNSAFE_CAST)
+    private static native MSEHeapScheme asMSEHeapScheme(HeapScheme heapScheme);
+
+    /**
+     * Runtime entry point of the pre-write barrier generated for the optimizing compiler.
+     *
+     * @param previous a non-null reference about to be overwritten
+     */
+    public static void satbEnqueue(Object previous) {
+        asMSEHeapScheme(vmConfig().heapScheme()).satbQueueSet.enqueue(Reference.fromJava(previous));
+    }
+
+    /**
+     * The SATB pre-write barrier is only needed with {@link #ConcurrentMarking}. Code compiled into the boot image
+     * always gets the barrier as the option is only known at VM startup.
+     */
+    @INLINE
+    @Override
+    public boolean needsBarrier(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec) {
+        return writeBarrierSpec.isSet(WriteBarrierSpec.PRE_WRITE) && (MaxineVM.isHosted() || ConcurrentMarking);
+    }
+
+    @INLINE
+    @Override
+    public void preWriteBarrier(Reference ref, Offset offset, Reference value) {
+        if (satbQueueSet.isActive()) {
+            final Reference previous = ref.readReference(offset);
+            if (!previous.isZero()) {
+                satbQueueSet.enqueue(previous);
+            }
+        }
+    }
+
+    @INLINE
+    @Override
+    public void preWriteBarrier(Reference ref,  int displacement, int index, Reference value) {
+        if (satbQueueSet.isActive()) {
+            final Reference previous = ref.getReference(displacement, index);
+            if (!previous.isZero()) {
+                satbQueueSet.enqueue(previous);
+            }
+        }
+    }
+
+    @INLINE
+    @Override
+    public void referentReadBarrier(Object referent) {
+        if (satbQueueSet.isActive()) {
+            satbQueueSet.enqueue(Reference.fromJava(referent));
+        }
+    }
+
+    @Override
+    public void notifyCurrentThreadDetach() {
+        super.notifyCurrentThreadDetach();
+        if (ConcurrentMarking) {
+            satbQueueSet.flushCurrentThread();
+        }
+    }
+
+    @HOSTED_ONLY
+    public XirWriteBarrierGenerator barrierGenerator(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec) {
+        if (writeBarrierSpec.equals(TUPLE_PRE_BARRIER)) {
+            return new XirWriteBarrierGenerator() {
+                @Override
+                public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
+                    satbQueueSet.genTuplePreWriteBarrier(asm, operands[0], operands[1], satbEnqueue.classMethodActor);
+                }
+            };
+        } else if (writeBarrierSpec.equals(ARRAY_PRE_BARRIER)) {
+            return new XirWriteBarrierGenerator() {
+                @Override
+                public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
+                    satbQueueSet.genArrayPreWriteBarrier(asm, operands[0], operands[1], satbEnqueue.classMethodActor);
+                }
+            };
+        } else if (writeBarrierSpec.equals(PRECISE_PRE_BARRIER)) {
+            return new XirWriteBarrierGenerator() {
+                @Override
+                public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
+                    satbQueueSet.genPrecisePreWriteBarrier(asm, operands[0], satbEnqueue.classMethodActor);
+                }
+            };
+        }
+        return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
+    }
+
+    /**
+     * Tells whether heap occupancy is high enough to start a concurrent marking cycle.
+     */
+    private boolean shouldStartMarkingCycle() {
+        final long totalSpace = markSweepSpace.totalSpace().toLong();
+        return markSweepSpace.usedSpace().toLong() * 100 >= totalSpace * ConcurrentMarkingOccupancy;
+    }
+
+    /**
+     * Initial mark pause of a concurrent marking cycle.
+     */
+    final class InitialMark extends GCOperation {
+        InitialMark() {
+            super("InitialMark");
+        }
+
+        @Override
+        protected boolean doItPrologue(boolean nested) {
+            // Special references aren't processed by the initial mark: no need for the reference lock.
+            return true;
+        }
+
+        @Override
+        protected void doItEpilogue(boolean nested) {
+        }
+
+        @Override
+        protected void collect(int invocationCount) {
+            if (markingCycleActive || !shouldStartMarkingCycle()) {
+                return;
+            }
+            // Retire all TLABs so that memory allocated from now on is logged.
+            VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
+            theHeapRegionManager().checkOutgoingReferences();
+            blackAllocationLog.reset();
+            heapMarker.initialMark();
+            satbQueueSet.activate();
+            markingCycleActive = true;
+            // The concurrent marker is blocked until the end of this operation.
+            concurrentMarkingAbortRequested = false;
+            concurrentMarkerBusy = true;
+        }
+    }
+
+    /**
+     * Final remark pause requested by the concurrent marker once it has traced the heap.
+     */
+    final class FinalRemark extends GCOperation {
+        FinalRemark() {
+            super("FinalRemark");
+        }
+
+        @Override
+        protected void collect(int invocationCount) {
+            if (markingCycleActive) {
+                // Otherwise, a GC requested meanwhile already completed the marking cycle.
+                collect.collect(invocationCount, callingThread().gcRequest);
+            }
+        }
+    }
+
+    /**
+     * The concurrent marker. A daemon GC thread that starts marking cycles and traces the heap concurrently with mutators.
+     * Like the GC worker threads of the {@link GCThreadPool}, it lives in immortal memory and is never frozen by VM operations.
+     * Pauses stop it with {@link #stopConcurrentMarker()}.
+     */
+    final class ConcurrentMarkerThread extends Thread {
+        ConcurrentMarkerThread() {
+            super("Concurrent-marker");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Heap.disableAllocationForCurrentThread();
+            while (true) {
+                concurrentMarkingLock.lock();
+                do {
+                    concurrentMarkerIdle.threadWait(concurrentMarkingLock, CONCURRENT_MARKING_POLL_INTERVAL);
+                } while (!shouldStartMarkingCycle());
+                concurrentMarkingLock.unlock();
+                initialMark.submit();
+                if (traceGreyObjects()) {
+                    finalRemark.submit();
+                }
+            }
+        }
+
+        /**
+         * Traces the heap until no grey objects are left or a pause requests to stop.
+         *
+         * @return true if the heap was traced, false if tracing was stopped, or if the initial mark didn't start a marking cycle
+         */
+        private boolean traceGreyObjects() {
+            while (true) {
+                concurrentMarkingLock.lock();
+                if (!concurrentMarkerBusy) {
+                    concurrentMarkingLock.unlock();
+                    return false;
+                }
+                if (concurrentMarkingAbortRequested) {
+                    concurrentMarkerBusy = false;
+                    concurrentMarkerIdle.threadNotify(true);
+                    concurrentMarkingLock.unlock();
+                    return false;
+                }
+                concurrentMarkingLock.unlock();
+                satbQueueSet.drainCompletedBuffers(heapMarker);
+                if (heapMarker.visitGreyObjectsConcurrently(CONCURRENT_MARKING_STEP)) {
+                    concurrentMarkingLock.lock();
+                    concurrentMarkerBusy = false;
+                    concurrentMarkerIdle.threadNotify(true);
+                    concurrentMarkingLock.unlock();
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the concurrent marker and waits until it is done with its current tracing step. Called during a pause.
+     */
+    private void stopConcurrentMarker() {
+        concurrentMarkingLock.lock();
+        concurrentMarkingAbortRequested = true;
+        while (concurrentMarkerBusy) {
+            concurrentMarkerIdle.threadWait(concurrentMarkingLock, 0);
+        }
+        concurrentMarkingLock.unlock();
+    }
+
+    /**
+     * Completes the marking of the heap in a pause, either by finishing the current concurrent marking cycle, or by marking
+     * the whole heap if no cycle is in progress.
+     */
+    private void markHeap() {
+        if (!markingCycleActive) {
+            markSweepSpace.mark(heapMarker);
+            return;
+        }
+        stopConcurrentMarker();
+        markingCycleActive = false;
+        satbQueueSet.deactivate();
+        if (satbQueueSet.overflowed() || blackAllocationLog.overflowed()) {
+            // Some overwritten references or allocated objects weren't recorded. Mark the whole heap in this pause instead.
+            if (Heap.logGCPhases()) {
+                Log.println("Concurrent marking overflow: marking the heap in the pause");
+            }
+            heapMarker.abortConcurrentMarking();
+            // Return the buffers to the pool. The marks are discarded by the full marking.
+            satbQueueSet.drainAllBuffers(heapMarker);
+            markSweepSpace.mark(heapMarker);
+            return;
+        }
+        heapMarker.beginRemark();
+        satbQueueSet.drainAllBuffers(heapMarker);
+        blackAllocationLog.markAllocatedCellsBlack(heapMarker);
+        markSweepSpace.completeRemark(heapMarker);
+    }
+
     /**
      * Class implementing the garbage collection routine.
      * This is the {@link VmOperationThread}'s entry point to garbage collection.
@@ -320,6 +688,10 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
         @Override
         protected void collect(int invocationCount) {
+            collect(invocationCount, callingThread().gcRequest);
+        }
+
+        void collect(int invocationCount, GCRequest gcRequest) {
             final boolean traceGCPhases = Heap.logGCPhases();
             traceGCTimes = Heap.logGCTime();
             startTimer(totalPauseTime);
@@ -333,7 +705,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
             theHeapRegionManager().checkOutgoingReferences();
 
-            markSweepSpace.mark(heapMarker);
+            markHeap();
 
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.RECLAIMING);
 
@@ -341,8 +713,11 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
                 Log.println("BEGIN: Sweeping");
             }
             startTimer(reclaimTimer);
-            markSweepSpace.sweep(heapMarker, DoImpreciseSweep);
-            Size freeSpaceAfterGC = markSweepSpace.freeSpace();
+            if (LazySweep && !VerifyAfterGC) {
+                markSweepSpace.lazySweep(heapMarker, DoImpreciseSweep, gcRequest.requestedBytes);
+            } else {
+                markSweepSpace.sweep(heapMarker, DoImpreciseSweep);
+            }
             stopTimer(reclaimTimer);
             if (traceGCPhases) {
                 Log.println("END: Sweeping");
@@ -351,12 +726,28 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             if (VerifyAfterGC) {
                 afterGCVerifier.run();
             }
+
+            if (CompactSparseRegions && pinnedCounter.count() > 0) {
+                // Threads in native code may be accessing pinned objects directly: they must not move.
+                if (traceGCPhases) {
+                    Log.println("SKIP: Compacting (pinned objects)");
+                }
+            } else if (CompactSparseRegions) {
+                // Evacuated objects aren't marked: compact after verifying the marks.
+                if (traceGCPhases) {
+                    Log.println("BEGIN: Compacting");
+                }
+                regionCompactor.compact(this);
+                if (traceGCPhases) {
+                    Log.println("END: Compacting");
+                }
+            }
+            Size freeSpaceAfterGC = markSweepSpace.freeSpace();
             vmConfig().monitorScheme().afterGarbageCollection();
 
             heapResizingPolicy.resizeAfterCollection(freeSpaceAfterGC, markSweepSpace);
             markSweepSpace.doAfterGC();
 
-            final GCRequest gcRequest = callingThread().gcRequest;
             gcRequest.lastInvocationCount = invocationCount;
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.MUTATING);
             stopTimer(totalPauseTime);
@@ -403,7 +794,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         Size chunkSize =  HeapFreeChunk.getFreechunkSize(chunk);
         if (size.greaterThan(chunkSize.minus(minObjectSize())))  {
             // Don't bother with searching another TLAB chunk that fits. Allocate directly in the heap.
-            return markSweepSpace.allocate(size);
+            return allocateInHeap(size);
         }
         // Otherwise, the chunk can accommodate the request AND
         // we'll have enough room left in the chunk to format a dead object or to store the next chunk pointer.
@@ -418,6 +809,17 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         return tlabAllocate(size);
     }
 
+    /**
+     * Allocates directly in the heap, bypassing the TLAB. The allocated cell is logged if a concurrent marking cycle is in progress.
+     */
+    private Pointer allocateInHeap(Size size) {
+        final Pointer cell = markSweepSpace.allocate(size);
+        if (satbQueueSet.isActive()) {
+            blackAllocationLog.record(cell, cell.plus(size));
+        }
+        return cell;
+    }
+
     @Override
     protected boolean logTLABEvents(Address tlabStart) {
         return RegionTable.inDebuggedRegion(tlabStart);
@@ -430,6 +832,14 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
      */
     protected void allocateAndRefillTLAB(Pointer etla, Size tlabSize) {
         Pointer tlab = markSweepSpace.allocateTLAB(tlabSize);
+        if (satbQueueSet.isActive()) {
+            // Log all the chunks of the TLAB before the first one is zapped.
+            Address chunk = tlab;
+            do {
+                blackAllocationLog.record(chunk, chunk.plus(HeapFreeChunk.getFreechunkSize(chunk)));
+                chunk = HeapFreeChunk.getFreeChunkNext(chunk);
+            } while (!chunk.isZero());
+        }
         if (MaxineVM.isDebug() && logTLABEvents(tlab)) {
             TLABLog.doOnRefillTLAB(etla, tlabSize, true);
         }
@@ -452,14 +862,14 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             if (!usesTLAB()) {
                 // We're not using TLAB. So let's assign the never refill tlab policy.
                 TLABRefillPolicy.setForCurrentThread(etla, NEVER_REFILL_TLAB);
-                return markSweepSpace.allocate(size);
+                return allocateInHeap(size);
             }
             // Allocate an initial TLAB and a refill policy. For simplicity, this one is allocated from the TLAB (see comment below).
             final Size tlabSize = initialTlabSize();
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of dirty meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the tlab allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the tlab.
             return tlabAllocate(size);
@@ -468,7 +878,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         final Size nextTLABSize = refillPolicy.nextTlabSize();
         if (size.greaterThan(nextTLABSize)) {
             // This couldn't be allocated in a TLAB, so go directly to direct allocation routine.
-            return markSweepSpace.allocate(size);
+            return allocateInHeap(size);
         }
         // TLAB may have been wiped out by a previous direct allocation routine.
         if (!tlabEnd.isZero()) {
@@ -495,7 +905,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
             if (!refillPolicy.shouldRefill(size, tlabMark)) {
                 // Size would fit in a new tlab, but the policy says we shouldn't refill the tlab yet, so allocate directly in the heap.
-                return markSweepSpace.allocate(size);
+                return allocateInHeap(size);
             }
         }
         if (MaxineVM.isDebug() && RegionTable.inDebuggedRegion(tlabMark)) {
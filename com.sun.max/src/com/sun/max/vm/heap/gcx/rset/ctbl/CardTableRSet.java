@@ -24,6 +24,7 @@ import static com.sun.max.vm.heap.HeapSchemeAdaptor.*;
 
 import java.util.*;
 
+import com.oracle.max.cri.intrinsics.*;
 import com.sun.cri.ci.CiAddress.Scale;
 import com.sun.cri.ci.*;
 import com.sun.cri.xir.*;
@@ -231,6 +232,8 @@ public final class CardTableRSet extends DeadSpaceListener implements HeapManage
         for (XirBiasedCardTableConstant c : biasedCardTableAddressXirConstants) {
             c.setStartupValue(biasedCardTableCiConstant);
         }
+        // Code compiled from now on embeds the address, so persisted code is only valid for the same card table
+        PersistentCodeCache.recordStartupConstant(cardTable.biasedTableAddress.toLong());
     }
 
     @HOSTED_ONLY
@@ -415,6 +418,33 @@ public final class CardTableRSet extends DeadSpaceListener implements HeapManage
         }
     }
 
+    /**
+     * Same as {@link #cleanAndVisitCards(Address, Address, OverlappingCellVisitor)}, but safe to use concurrently with mutators.
+     * Cards are cleaned before the cells overlapping them are visited, so that reference stores racing with the visit dirty the cards again.
+     *
+     * @param start start of the refined range
+     * @param end end of the refined range
+     * @param cellVisitor the logic to apply to the cells overlapping dirty cards
+     */
+    public void refineCards(Address start, Address end, OverlappingCellVisitor cellVisitor) {
+        final int endOfRange = cardTable.tableEntryIndex(end);
+        int startCardIndex = cardTable.first(cardTable.tableEntryIndex(start), endOfRange, CardState.DIRTY_CARD);
+        while (startCardIndex < endOfRange) {
+            int endCardIndex = cardTable.firstNot(startCardIndex + 1, endOfRange, CardState.DIRTY_CARD);
+            if (traceCardTableRSet()) {
+                traceVisitedCard(startCardIndex, endCardIndex, CardState.DIRTY_CARD);
+            }
+            cardTable.clean(startCardIndex, endCardIndex);
+            // The cleaning of the cards must be visible before the references they cover are read.
+            MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+            visitCards(startCardIndex, endCardIndex, cellVisitor);
+            if (++endCardIndex >= endOfRange) {
+                return;
+            }
+            startCardIndex = cardTable.first(endCardIndex, endOfRange, CardState.DIRTY_CARD);
+        }
+    }
+
     public void visitCards(Address start, Address end, CardState cardState, OverlappingCellVisitor cellVisitor) {
         final int endOfRange = cardTable.tableEntryIndex(end);
         int startCardIndex = cardTable.first(cardTable.tableEntryIndex(start), endOfRange, cardState);
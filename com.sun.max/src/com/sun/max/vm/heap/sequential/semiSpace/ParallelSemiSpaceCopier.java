@@ -0,0 +1,498 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.sequential.semiSpace;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.debug.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Parallel copying of the objects reachable from the roots of a {@link SemiSpaceHeapScheme} collection with the workers of a {@link GCThreadPool}.
+ * <p>
+ * Roots are scanned by the collector alone, which copies the objects they reference at the bottom of to-space.
+ * These objects form the first gray range, which the workers share. Each worker then copies objects to its own local allocation buffer (LAB),
+ * a chunk of to-space claimed with a compare-and-swap on the allocation mark of to-space. Objects too large for a LAB are copied directly to to-space.
+ * Objects are forwarded with a compare-and-swap on their hub word so that racing workers agree on a single copy; the losers give back the space of their copy.
+ * <p>
+ * A worker scans the objects copied to its LAB in allocation order, as a Cheney scan does. Gray ranges are shared with the other workers
+ * when a worker retires a LAB whose objects weren't all scanned, when it copies an object directly to to-space, and when it is scanning a long range
+ * while no gray range is shared. Termination is detected with a {@link GCTaskTerminator}.
+ * <p>
+ * The unused part of a retired LAB is filled with a dead object, so that to-space remains iterable up to its allocation mark.
+ */
+final class ParallelSemiSpaceCopier implements GCTaskTerminator.WorkSource {
+    private static final VMSizeOption labSizeOption =
+        register(new VMSizeOption("-XX:SemiSpaceLABSize=", Size.K.times(32), "Size of the to-space allocation buffers of the workers of parallel semi-space collections."),
+                        MaxineVM.Phase.PRISTINE);
+
+    private static final VMIntOption grayRangesSizeOption =
+        register(new VMIntOption("-XX:SemiSpaceGrayRanges=", 4096, "Maximum number of gray ranges shared by the workers of parallel semi-space collections."),
+                        MaxineVM.Phase.PRISTINE);
+
+    /**
+     * Number of bytes of a gray range a worker scans before offering the rest of the range to idle workers.
+     */
+    private static final int MAX_UNSHARED_SCAN_BYTES = 8 * 1024;
+
+    private final GCThreadPool gcThreadPool;
+
+    private final DebugHeap.RefVerifier refVerifier;
+
+    private final GCTaskTerminator terminator = new GCTaskTerminator();
+
+    private final CopyTask copyTask = new CopyTask();
+
+    /**
+     * Per-worker copiers. Allocated in immortal memory at VM startup.
+     */
+    private Copier[] copiers;
+
+    /**
+     * Gray ranges shared by the workers, stored as pairs of start and end addresses. Only accessed while holding {@link #lock}.
+     */
+    private long[] grayRanges;
+
+    /**
+     * Number of gray ranges in {@link #grayRanges}.
+     */
+    private volatile int numGrayRanges;
+
+    /**
+     * Spin lock serializing accesses to the shared gray ranges and discovery of special references.
+     */
+    private volatile int lock;
+
+    /**
+     * Number of workers taking part in the current copy.
+     */
+    private int numWorkers;
+
+    private Size labSize;
+
+    /**
+     * Size above which objects are copied directly to to-space instead of to the worker's LAB.
+     */
+    private Size maxLABAllocationSize;
+
+    /**
+     * Space kept at the end of a LAB so that its unused part can always be filled with a dead object.
+     */
+    private Size labReserve;
+
+    private LinearAllocationMemoryRegion fromSpace;
+
+    private LinearAllocationMemoryRegion toSpace;
+
+    /**
+     * Allocation limit of to-space for the current copy.
+     */
+    private Address top;
+
+    @FOLD
+    private static int lockOffset() {
+        return ClassActor.fromJava(ParallelSemiSpaceCopier.class).findLocalInstanceFieldActor("lock").offset();
+    }
+
+    @HOSTED_ONLY
+    ParallelSemiSpaceCopier(GCThreadPool gcThreadPool, DebugHeap.RefVerifier refVerifier) {
+        this.gcThreadPool = gcThreadPool;
+        this.refVerifier = refVerifier;
+    }
+
+    /**
+     * Allocates the per-worker copiers at VM startup. Must be called after the {@link GCThreadPool} is initialized.
+     */
+    void initialize(MaxineVM.Phase phase) {
+        if (phase != MaxineVM.Phase.STARTING || !gcThreadPool.isParallel()) {
+            return;
+        }
+        labSize = labSizeOption.getValue().alignUp(Word.size());
+        if (labSize.lessThan(Size.K)) {
+            Log.println("-XX:SemiSpaceLABSize must be at least 1K");
+            MaxineVM.native_exit(1);
+        }
+        final int maxGrayRanges = grayRangesSizeOption.getValue();
+        if (maxGrayRanges < gcThreadPool.maxWorkers()) {
+            Log.println("-XX:SemiSpaceGrayRanges must be at least -XX:ParallelGCThreads");
+            MaxineVM.native_exit(1);
+        }
+        labReserve = DebugHeap.adjustForDebugTag(Pointer.zero()).plus(HeapSchemeAdaptor.minObjectSize()).asSize();
+        maxLABAllocationSize = labSize.unsignedShiftedRight(2);
+
+        final int maxWorkers = gcThreadPool.maxWorkers();
+        Heap.enableImmortalMemoryAllocation();
+        try {
+            copiers = new Copier[maxWorkers];
+            for (int i = 0; i < maxWorkers; i++) {
+                copiers[i] = new Copier();
+            }
+            grayRanges = new long[2 * maxGrayRanges];
+        } finally {
+            Heap.disableImmortalMemoryAllocation();
+        }
+    }
+
+    /**
+     * Indicates whether the next copy can be done in parallel.
+     */
+    boolean isParallel() {
+        return copiers != null && gcThreadPool.activeWorkers() > 1;
+    }
+
+    /**
+     * Copy the objects reachable from the objects already copied to to-space, and update their references.
+     * On return, all the workers' LABs are retired and to-space is iterable up to its allocation mark.
+     *
+     * @param fromSpace the space being evacuated
+     * @param toSpace the space objects are copied to
+     * @param top allocation limit in to-space
+     */
+    void copyReachableObjects(LinearAllocationMemoryRegion fromSpace, LinearAllocationMemoryRegion toSpace, Address top) {
+        this.fromSpace = fromSpace;
+        this.toSpace = toSpace;
+        this.top = top;
+        numWorkers = gcThreadPool.activeWorkers();
+        numGrayRanges = 0;
+        final Pointer start = toSpace.start().asPointer();
+        final Pointer end = toSpace.mark();
+        if (end.greaterThan(start)) {
+            addGrayRange(start, end);
+        }
+        terminator.reset(numWorkers);
+        gcThreadPool.run(copyTask);
+        for (int i = 0; i < numWorkers; i++) {
+            copiers[i].retireLAB();
+        }
+        this.fromSpace = null;
+        this.toSpace = null;
+    }
+
+    private void lock() {
+        final Reference reference = Reference.fromJava(this);
+        while (reference.compareAndSwapInt(lockOffset(), 0, 1) != 0) {
+            Intrinsics.pause();
+        }
+    }
+
+    private void unlock() {
+        lock = 0;
+    }
+
+    /**
+     * Add a gray range to the shared ones. The lock must be held.
+     */
+    private void addGrayRange(Address start, Address end) {
+        final int index = numGrayRanges << 1;
+        if (index == grayRanges.length) {
+            FatalError.unexpected("Too many gray ranges in parallel semi-space collection, increase -XX:SemiSpaceGrayRanges");
+        }
+        grayRanges[index] = start.toLong();
+        grayRanges[index + 1] = end.toLong();
+        numGrayRanges++;
+    }
+
+    private void shareGrayRange(Address start, Address end) {
+        lock();
+        addGrayRange(start, end);
+        unlock();
+    }
+
+    private boolean takeGrayRange(Copier copier) {
+        if (numGrayRanges == 0) {
+            return false;
+        }
+        lock();
+        if (numGrayRanges == 0) {
+            unlock();
+            return false;
+        }
+        numGrayRanges--;
+        final int index = numGrayRanges << 1;
+        final Pointer start = Pointer.fromLong(grayRanges[index]);
+        final Pointer end = Pointer.fromLong(grayRanges[index + 1]);
+        unlock();
+        copier.scanRange(start, end);
+        return true;
+    }
+
+    @Override
+    public boolean hasWork() {
+        return numGrayRanges != 0;
+    }
+
+    /**
+     * Allocate space in to-space. The allocation mark is updated with a compare-and-swap, as other workers allocate concurrently.
+     */
+    private Pointer allocateInToSpace(Size size) {
+        Pointer mark;
+        Pointer end;
+        do {
+            mark = toSpace.mark();
+            end = mark.plus(size);
+            FatalError.check(end.lessThan(top), "GC allocation overflow");
+        } while (!toSpace.mark.compareAndSwap(mark, end).equals(mark));
+        return mark;
+    }
+
+    /**
+     * Size of a cell whose hub may have been overwritten by a forwarding reference.
+     */
+    private static Size cellSize(Pointer origin, Hub hub) {
+        final SpecificLayout specificLayout = hub.specificLayout;
+        if (specificLayout == Layout.tupleLayout()) {
+            return hub.tupleSize;
+        }
+        final int length = Layout.readArrayLength(origin);
+        if (specificLayout == Layout.hybridLayout()) {
+            return Layout.hybridLayout().getArraySize(length);
+        }
+        return Layout.getArraySize(hub.classActor.componentClassActor().kind, length);
+    }
+
+    final class CopyTask extends GCThreadPool.Task {
+        @Override
+        public void run(int workerId) {
+            final Copier copier = copiers[workerId];
+            while (true) {
+                if (copier.scanLAB() || takeGrayRange(copier)) {
+                    continue;
+                }
+                if (terminator.offerTermination(ParallelSemiSpaceCopier.this)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The state of a worker: its LAB, and the procedure that updates references so that they point to objects in to-space.
+     */
+    final class Copier extends PointerIndexVisitor {
+        /**
+         * Start of the cells of the LAB that haven't been scanned yet.
+         */
+        private Pointer labScanned = Pointer.zero();
+
+        /**
+         * Allocation mark of the LAB.
+         */
+        private Pointer labTop = Pointer.zero();
+
+        /**
+         * Allocation limit of the LAB. {@link #labReserve} bytes are left between the limit and the end of the LAB.
+         */
+        private Pointer labEnd = Pointer.zero();
+
+        /**
+         * Start of the last allocation, including the space reserved for the debug tag.
+         */
+        private Pointer lastAllocationStart = Pointer.zero();
+
+        private void refillLAB() {
+            retireLAB();
+            final Pointer lab = allocateInToSpace(labSize);
+            labScanned = lab;
+            labTop = lab;
+            labEnd = lab.plus(labSize).minus(labReserve);
+        }
+
+        /**
+         * Give back the unused part of the LAB to to-space if nothing was allocated after it, or fill it with a dead object otherwise.
+         * The cells of the LAB that weren't scanned yet are shared with other workers.
+         */
+        void retireLAB() {
+            if (labEnd.isZero()) {
+                return;
+            }
+            if (labTop.greaterThan(labScanned)) {
+                shareGrayRange(labScanned, labTop);
+            }
+            final Pointer end = labEnd.plus(labReserve);
+            if (!toSpace.mark.compareAndSwap(end, labTop).equals(end)) {
+                HeapSchemeAdaptor.fillWithDeadObject(labTop, end);
+            }
+            labScanned = Pointer.zero();
+            labTop = Pointer.zero();
+            labEnd = Pointer.zero();
+        }
+
+        private Pointer allocate(Size size) {
+            if (size.greaterThan(maxLABAllocationSize)) {
+                lastAllocationStart = allocateInToSpace(DebugHeap.adjustForDebugTag(Pointer.zero()).plus(size).asSize());
+            } else {
+                if (DebugHeap.adjustForDebugTag(labTop).plus(size).greaterThan(labEnd)) {
+                    refillLAB();
+                }
+                lastAllocationStart = labTop;
+                labTop = DebugHeap.adjustForDebugTag(labTop).plus(size);
+            }
+            final Pointer cell = DebugHeap.adjustForDebugTag(lastAllocationStart);
+            DebugHeap.writeCellTag(cell);
+            return cell;
+        }
+
+        /**
+         * Maps a reference to the reference of an object in to-space, as {@code SemiSpaceHeapScheme.mapRef()} does,
+         * except that the forwarding reference is installed atomically.
+         */
+        private Reference mapRef(Reference ref) {
+            final Pointer fromOrigin = ref.toOrigin();
+            if (!fromSpace.contains(fromOrigin)) {
+                return ref;
+            }
+            final Reference hubRef = Layout.readHubReference(fromOrigin);
+            if (hubRef.isMarked()) {
+                // Already forwarded.
+                return hubRef.unmarked();
+            }
+            if (SemiSpaceHeapScheme.VerifyReferences) {
+                refVerifier.verifyRefAtIndex(Address.zero(), 0, ref);
+            }
+            final Hub hub = UnsafeCast.asHub(hubRef.toJava());
+            final Size size = cellSize(fromOrigin, hub);
+            final Pointer fromCell = Layout.originToCell(fromOrigin);
+            final Pointer toCell = allocate(size);
+            Memory.copyBytes(fromCell, toCell, size);
+            final Pointer toOrigin = Layout.cellToOrigin(toCell);
+            // The copy may have caught a forwarding reference installed concurrently. Restore the hub.
+            Layout.writeHubReference(toOrigin, hubRef);
+            final Reference toRef = Reference.fromOrigin(toOrigin);
+            final Reference witness = Layout.compareAndSwapForwardRef(fromOrigin, hubRef, toRef);
+            if (!witness.equals(hubRef)) {
+                // Another worker copied the object first.
+                if (size.greaterThan(maxLABAllocationSize)) {
+                    HeapSchemeAdaptor.fillWithDeadObject(lastAllocationStart, toCell.plus(size));
+                } else {
+                    labTop = lastAllocationStart;
+                }
+                return witness.unmarked();
+            }
+            if (SemiSpaceHeapScheme.detailLogger.enabled()) {
+                SemiSpaceHeapScheme.detailLogger.logForward(hub.classActor.id, Pointer.zero(), fromCell, toCell, size.toInt());
+            }
+            if (size.greaterThan(maxLABAllocationSize)) {
+                shareGrayRange(lastAllocationStart, toCell.plus(size));
+            }
+            return toRef;
+        }
+
+        @Override
+        public void visit(Pointer pointer, int wordIndex) {
+            final Reference oldRef = pointer.getReference(wordIndex);
+            final Reference newRef = mapRef(oldRef);
+            if (newRef != oldRef) {
+                pointer.setReference(wordIndex, newRef);
+            }
+        }
+
+        private void scanReferenceArray(Pointer origin) {
+            final int length = Layout.readArrayLength(origin);
+            for (int index = 0; index < length; index++) {
+                final Reference oldRef = Layout.getReference(origin, index);
+                final Reference newRef = mapRef(oldRef);
+                if (newRef != oldRef) {
+                    Layout.setReference(origin, index, newRef);
+                }
+            }
+        }
+
+        /**
+         * Update the references of a cell in to-space, copying the objects they refer to.
+         * Same as {@link SemiSpaceHeapScheme#visitCell(Pointer)}.
+         */
+        private Pointer scanCell(Pointer cell) {
+            if (SemiSpaceHeapScheme.detailLogger.enabled()) {
+                SemiSpaceHeapScheme.detailLogger.logVisitCell(cell);
+            }
+            final Pointer origin = Layout.cellToOrigin(cell);
+            final Reference oldHubRef = Layout.readHubReference(origin);
+            final Reference newHubRef = mapRef(oldHubRef);
+            if (newHubRef != oldHubRef) {
+                Layout.writeHubReference(origin, newHubRef);
+            }
+            final Hub hub = UnsafeCast.asHub(newHubRef.toJava());
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout == Layout.tupleLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+                if (hub.isJLRReference) {
+                    lock();
+                    SpecialReferenceManager.discoverSpecialReference(origin);
+                    unlock();
+                }
+                return cell.plus(hub.tupleSize);
+            }
+            if (specificLayout == Layout.referenceArrayLayout()) {
+                scanReferenceArray(origin);
+            } else if (specificLayout == Layout.hybridLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+            }
+            return cell.plus(Layout.size(origin));
+        }
+
+        /**
+         * Scan a range of cells of to-space. If no gray range is shared when the scan has gone past {@link #MAX_UNSHARED_SCAN_BYTES},
+         * the rest of the range is shared with the other workers.
+         */
+        void scanRange(Pointer start, Pointer end) {
+            Pointer cell = start;
+            Pointer shareCheckpoint = start.plus(MAX_UNSHARED_SCAN_BYTES);
+            while (cell.lessThan(end)) {
+                if (cell.greaterThan(shareCheckpoint)) {
+                    if (numGrayRanges == 0) {
+                        shareGrayRange(cell, end);
+                        return;
+                    }
+                    shareCheckpoint = cell.plus(MAX_UNSHARED_SCAN_BYTES);
+                }
+                cell = DebugHeap.checkDebugCellTag(start, cell);
+                cell = scanCell(cell);
+            }
+        }
+
+        /**
+         * Scan the cells copied to the LAB since its last scan.
+         *
+         * @return false if there was nothing to scan
+         */
+        boolean scanLAB() {
+            if (!labTop.greaterThan(labScanned)) {
+                return false;
+            }
+            final Pointer start = labScanned;
+            final Pointer end = labTop;
+            // Cells copied to the LAB while scanning the range are left to the next scan, or shared when the LAB is retired.
+            labScanned = end;
+            scanRange(start, end);
+            return true;
+        }
+    }
+}
@@ -56,6 +56,8 @@ import com.sun.max.vm.ti.*;
 
 /**
  * A simple semispace scavenger heap.
+ * When {@code -XX:ParallelGCThreads} is larger than 1, the objects reachable from the roots are copied by the workers of a {@link GCThreadPool}
+ * (see {@link ParallelSemiSpaceCopier}); roots and special references are always processed by the thread running the collection.
  */
 public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisitor {
 
@@ -99,7 +101,7 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
      * It's enabled by default as the primary goal of this collector are simplicity and robustness,
      * not high performance.
      */
-    private static boolean VerifyReferences = false;
+    static boolean VerifyReferences = false;
     static {
         VMOptions.addFieldOption("-XX:", "VerifyReferences", SemiSpaceHeapScheme.class, "Do extra verification for each reference scanned by the GC", MaxineVM.Phase.PRISTINE);
     }
@@ -176,6 +178,13 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
      */
     private final SequentialHeapRootsScanner gcRootsVerifier = new SequentialHeapRootsScanner(refVerifier);
 
+    private final GCThreadPool gcThreadPool = new GCThreadPool();
+
+    /**
+     * Copies the objects reachable from the roots in parallel, if {@link #gcThreadPool} has more than one worker.
+     */
+    private final ParallelSemiSpaceCopier parallelCopier = new ParallelSemiSpaceCopier(gcThreadPool, refVerifier);
+
     /**
      * A VM option for triggering a GC before every allocation.
      */
@@ -194,11 +203,13 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
     @Override
     public void initialize(MaxineVM.Phase phase) {
         super.initialize(phase);
+        gcThreadPool.initialize(phase);
+        parallelCopier.initialize(phase);
 
         if (phase == MaxineVM.Phase.PRISTINE) {
             allocateHeap();
 
-            safetyZoneSize = Math.max(safetyZoneSizeOption.getValue(), initialTlabSize().toInt());
+            safetyZoneSize = Math.max(safetyZoneSizeOption.getValue(), maxTlabSize().toInt());
 
             top = toSpace.end().minus(safetyZoneSize);
 
@@ -398,7 +409,11 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
                     phaseLogger.logMovingReachable(VMLogger.Interval.BEGIN);
                 }
                 startTimer(copyTimer);
-                moveReachableObjects(toSpace.start().asPointer());
+                if (parallelCopier.isParallel()) {
+                    parallelCopier.copyReachableObjects(fromSpace, toSpace, top);
+                } else {
+                    moveReachableObjects(toSpace.start().asPointer());
+                }
                 stopTimer(copyTimer);
                 if (Heap.logGCPhases()) {
                     phaseLogger.logMovingReachable(VMLogger.Interval.END);
@@ -879,7 +894,7 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the TLAB allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the TLAB.
             return tlabAllocate(size);
@@ -21,6 +21,7 @@
  */
 package com.sun.max.vm.jdk;
 
+import static com.sun.max.vm.VMConfiguration.*;
 import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.*;
 
 import java.lang.ref.*;
@@ -42,6 +43,9 @@ public final class JDK_java_lang_ref_Reference {
     @ALIAS(declaringClass = java.lang.ref.Reference.class, descriptor = "Ljava/lang/ref/Reference$Lock;")
     static          Object                       lock;
 
+    @ALIAS(declaringClass = java.lang.ref.Reference.class)
+    private         Object                       referent;
+
     @ALIAS(declaringClass = java.lang.ref.Reference.class)
     public          java.lang.ref.Reference      next;
 
@@ -54,6 +58,19 @@ public final class JDK_java_lang_ref_Reference {
     @INTRINSIC(UNSAFE_CAST)
     public static native Cleaner asCleaner(Object o);
 
+    /**
+     * Substitute of java.lang.ref.Reference.get that lets the heap scheme keep the referent alive
+     * when the heap is being marked concurrently.
+     */
+    @SUBSTITUTE
+    public Object get() {
+        final Object r = referent;
+        if (r != null) {
+            vmConfig().heapScheme().referentReadBarrier(r);
+        }
+        return r;
+    }
+
     /**
      * Substitute of java.lang.ref.Reference.tryHandlePending.
      * <p>
@@ -288,7 +288,7 @@ public abstract class VMLogArray extends VMLog {
             this.arg5 = arg5;
             this.arg6 = arg6;
             this.arg7 = arg7;
-            this.arg7 = arg8;
+            this.arg8 = arg8;
         }
     }
 
@@ -80,12 +80,46 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
         return decodeLockwordThreadID(biasedLockword.getBiasOwnerID());
     }
 
+    /**
+     * Revokes the bias of an object, if it is still biased, by replacing its lock word with one of the next locking
+     * mode. The bias owner must be the current thread or be stopped, as it updates its biased lock words with plain
+     * stores. Other threads may still update the lock word with a CAS (e.g. to rebias it in a new epoch, or to revoke it
+     * concurrently), so the new lock word is installed with a CAS that is retried until it succeeds or the lock word is
+     * no longer biased.
+     *
+     * @return the lock word of the object after revocation
+     */
     protected ModalLockword revokeBias(Object object) {
         final ModalLockword lockword = ModalLockword.from(ObjectAccess.readMisc(object));
-        if (BiasedLockword.isBiasedLockword(lockword)) {
-            final ModalLockword newLockword = delegate().prepareModalLockword(object, lockword);
-            ObjectAccess.writeMisc(object, newLockword);
-            return newLockword;
+        if (!BiasedLockword.isBiasedLockword(lockword)) {
+            return lockword;
+        }
+        final ModalLockword preparedLockword = delegate().prepareModalLockword(object, lockword);
+        final ModalLockword newLockword = revokeBias(object, preparedLockword);
+        if (!newLockword.equals(preparedLockword)) {
+            delegate().cancelPreparedModalLockword(preparedLockword);
+        }
+        return newLockword;
+    }
+
+    /**
+     * As {@link #revokeBias(Object)}, with the lock word of the next locking mode prepared in advance. Preparing a lock
+     * word may bind a monitor, which can block or trigger a GC, whereas {@linkplain ModeDelegate#reprepareModalLockword
+     * repreparing} it for the current biased lock word does neither. This is what a {@link Handshake} must use.
+     *
+     * @param preparedLockword a lock word {@linkplain ModeDelegate#prepareModalLockword prepared} for {@code object}
+     * @return the lock word of the object after revocation. If it is not {@code preparedLockword}, the caller must
+     *         {@linkplain ModeDelegate#cancelPreparedModalLockword cancel} {@code preparedLockword}.
+     */
+    protected ModalLockword revokeBias(Object object, ModalLockword preparedLockword) {
+        ModalLockword lockword = ModalLockword.from(ObjectAccess.readMisc(object));
+        while (BiasedLockword.isBiasedLockword(lockword)) {
+            final ModalLockword newLockword = delegate().reprepareModalLockword(preparedLockword, lockword, ModalLockword.from(Word.zero()));
+            final ModalLockword witness = ModalLockword.from(ObjectAccess.compareAndSwapMisc(object, lockword, newLockword));
+            if (witness.equals(lockword)) {
+                return newLockword;
+            }
+            lockword = witness;
         }
         return lockword;
     }
@@ -96,37 +130,48 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
         }
     }
 
-    class RevokeBiasOperation extends VmOperation {
+    /**
+     * Revokes a bias at a safepoint of the bias owner only, while all other threads keep running.
+     * The new lock word is prepared by the submitting thread, so the handshake neither blocks nor allocates.
+     */
+    class RevokeBiasHandshake extends Handshake {
         final Object object;
+        final ModalLockword preparedLockword;
         ModalLockword newLockword;
-        RevokeBiasOperation(VmThread thread, Object object) {
-            super("RevokeBias", thread, Mode.Safepoint, false);
+        RevokeBiasHandshake(Object object, ModalLockword preparedLockword) {
+            super("RevokeBias");
             this.object = object;
+            this.preparedLockword = preparedLockword;
         }
         @Override
-        protected void doIt() {
-            newLockword = revokeBias(object);
+        protected void doThread(VmThread vmThread, Pointer ip, Pointer sp, Pointer fp) {
+            newLockword = revokeBias(object, preparedLockword);
         }
     }
 
     protected ModalLockword revokeWithOwnerSafepointed(final Object object, int vmThreadMapThreadID, BiasedLockword biasedLockword) {
+        final VmThread biasOwnerThread;
         synchronized (VmThreadMap.THREAD_LOCK) {
-            final VmThread biasOwnerThread = VmThreadMap.ACTIVE.getVmThreadForID(vmThreadMapThreadID);
-            if (biasOwnerThread == null) {
-                // The bias owner is terminated. No need to safepoint.
-                // Lets try to reset the bias to anon.
-                return ModalLockword.from(ObjectAccess.compareAndSwapMisc(object, biasedLockword, biasedLockword.asAnonBiased()));
-            }
-            final Pointer tla = biasOwnerThread.tla();
-            if (tla.isZero()) {
+            biasOwnerThread = VmThreadMap.ACTIVE.getVmThreadForID(vmThreadMapThreadID);
+            if (biasOwnerThread != null && biasOwnerThread.tla().isZero()) {
                 // The bias holding thread is still starting up, so how can it own biases??
                 FatalError.unexpected("Attempted to revoke bias for still initializing thread.");
             }
-
-            RevokeBiasOperation operation = new RevokeBiasOperation(VmThread.fromTLA(tla), object);
-            operation.submit();
-            return operation.newLockword;
         }
+        if (biasOwnerThread != null) {
+            final ModalLockword preparedLockword = delegate().prepareModalLockword(object, biasedLockword);
+            final RevokeBiasHandshake handshake = new RevokeBiasHandshake(object, preparedLockword);
+            if (handshake.submit(biasOwnerThread)) {
+                if (!handshake.newLockword.equals(preparedLockword)) {
+                    delegate().cancelPreparedModalLockword(preparedLockword);
+                }
+                return handshake.newLockword;
+            }
+            delegate().cancelPreparedModalLockword(preparedLockword);
+        }
+        // The bias owner is terminated. No need to safepoint.
+        // Lets try to reset the bias to anon.
+        return ModalLockword.from(ObjectAccess.compareAndSwapMisc(object, biasedLockword, biasedLockword.asAnonBiased()));
     }
 
     public Word createMisc(Object object) {
@@ -386,8 +431,12 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                     } else if (biasedLockword.getBiasOwnerID() == lockwordThreadID) {
                         // Object is biased and locked by the current thread. Revoke the bias.
                         currentLockword = revokeWithoutSafepointing(object);
+                    } else if (biasedLockword.countUnderflow()) {
+                        // Object is biased to another thread but not locked. The bias owner can no longer
+                        // take the lock without going through the slow path, so no need to stop it.
+                        currentLockword = revokeUnlockedWithoutSafepointing(object, biasedLockword);
                     } else {
-                        // Object is biased to another thread. Revoke the bias.
+                        // Object is biased to and locked by another thread. Revoke the bias.
                         final int vmThreadMapThreadID = decodeLockwordThreadID(biasedLockword.getBiasOwnerID());
                         currentLockword = revokeWithOwnerSafepointed(object, vmThreadMapThreadID, biasedLockword);
                     }
@@ -397,8 +446,10 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                     // We lock as normal. When the lock is released, the object will be rebiased.
                     ObjectAccess.writeMisc(object, biasedLockword.incrementCount());
                     return;
-                } else if (biasedLockword.equals(biasedLockword.asAnonBiased()) || !biasedLockword.getEpoch().equals(classEpoch)) {
-                    // Object is not biased or it's bias is not in the current epoch. Try to get the bias.
+                } else if (biasedLockword.equals(biasedLockword.asAnonBiased()) ||
+                           (!biasedLockword.getEpoch().equals(classEpoch) && biasedLockword.countUnderflow())) {
+                    // Object is not biased or it's bias is not in the current epoch and it is not locked. Try to get the bias.
+                    // (An object locked by another thread under a stale epoch must be revoked, not stolen.)
                     final BiasedLockword newBiasedLockword = biasedLockword.asBiasedAndLockedOnceBy(lockwordThreadID, classEpoch);
                     currentLockword = ModalLockword.from(ObjectAccess.compareAndSwapMisc(object, biasedLockword, newBiasedLockword));
                     if (currentLockword.equals(biasedLockword)) {
@@ -455,20 +506,42 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                     }
                 } else {
                     // We have to revoke to set the hashcode...
-                    final int vmThreadMapThreadID = decodeLockwordThreadID(biasedLockword.getBiasOwnerID());
-                    lockword = revokeWithOwnerSafepointed(object, vmThreadMapThreadID, biasedLockword);
                     if (Monitor.TraceMonitors) {
                         final boolean lockDisabledSafepoints = Log.lock();
                         Log.print("Safepointed revoke for hashcode: ");
                         Log.println(object.getClass().getName());
                         Log.unlock(lockDisabledSafepoints);
                     }
+                    lockword = performRevocation(object, biasedLockword);
                 }
             }
             // Not a biased lock; delegate.
             return delegate().delegateMakeHashcode(object, lockword);
         }
 
+        /**
+         * Revokes the bias of an unlocked object of a class for which biased locking has been
+         * {@linkplain BiasedLockEpoch#isBulkRevocation() revoked in bulk}. The bias owner only updates such a lock word
+         * while holding {@link VmThreadMap#THREAD_LOCK} or with a CAS, so a CAS under that lock suffices.
+         */
+        private ModalLockword revokeUnlockedWithoutSafepointing(Object object, BiasedLockword biasedLockword) {
+            synchronized (VmThreadMap.THREAD_LOCK) {
+                final ModalLockword newLockword = delegate().prepareModalLockword(object, biasedLockword);
+                final ModalLockword witness = ModalLockword.from(ObjectAccess.compareAndSwapMisc(object, biasedLockword, newLockword));
+                if (witness.equals(biasedLockword)) {
+                    if (Monitor.TraceMonitors) {
+                        final boolean lockDisabledSafepoints = Log.lock();
+                        Log.print("Nonsafepointed revoke for bulk revoked class: ");
+                        Log.println(object.getClass().getName());
+                        Log.unlock(lockDisabledSafepoints);
+                    }
+                    return newLockword;
+                }
+                delegate().cancelPreparedModalLockword(newLockword);
+                return witness;
+            }
+        }
+
         private BiasedLockRevocationHeuristics getHeuristics(Object object) {
             final Hub hub = ObjectAccess.readHub(object);
             BiasedLockRevocationHeuristics revocationHeuristics = hub.biasedLockRevocationHeuristics();
@@ -23,16 +23,35 @@
 package com.sun.max.vm.monitor.modal.modehandlers.lightweight.biased;
 
 import com.sun.max.atomic.*;
+import com.sun.max.vm.*;
 
 /**
+ * Per-class counts of the bias revocations caused by contention, deciding when the objects of a class are
+ * rebiased or revoked in bulk rather than one at a time.
+ *
+ * A class whose objects are handed over between threads (e.g. by a producer/consumer queue) reaches the
+ * {@linkplain #BiasedLockingBulkRebiasThreshold bulk rebias threshold} first; the epoch in its hub is then
+ * incremented, which lets threads take the bias of any unlocked object of the class without a safepoint. If
+ * revocations continue within the {@linkplain #BiasedLockingDecayTime decay time}, the class reaches the
+ * {@linkplain #BiasedLockingBulkRevokeThreshold bulk revocation threshold} and biased locking is permanently
+ * disabled for it.
  */
 public class BiasedLockRevocationHeuristics {
 
     enum RevocationType {SINGLE_OBJECT_REVOCATION, BULK_REBIAS, BULK_REVOCATION}
 
-    private static final int BULK_REBIAS_THRESHOLD = 20;
-    private static final int BULK_REVOCATION_THRESHOLD = 40;
-    private static final int BULK_REBIAS_DECAY_TIME = 25000;
+    private static int BiasedLockingBulkRebiasThreshold = 20;
+    private static int BiasedLockingBulkRevokeThreshold = 40;
+    private static int BiasedLockingDecayTime = 25000;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "BiasedLockingBulkRebiasThreshold", BiasedLockRevocationHeuristics.class,
+            "Number of bias revocations of the objects of a class that triggers a bulk rebias of the class.");
+        VMOptions.addFieldOption("-XX:", "BiasedLockingBulkRevokeThreshold", BiasedLockRevocationHeuristics.class,
+            "Number of bias revocations of the objects of a class that disables biased locking for the class.");
+        VMOptions.addFieldOption("-XX:", "BiasedLockingDecayTime", BiasedLockRevocationHeuristics.class,
+            "Time (ms) after a bulk rebias after which the revocation count of the class is reset.");
+    }
 
     private final AtomicInteger revocationCount = new AtomicInteger();
     private long lastBulkRebiasTime = 0;
@@ -44,21 +63,21 @@ public class BiasedLockRevocationHeuristics {
         int currentRevocationCount = revocationCount.get();
         final long bulkRebiasTime = lastBulkRebiasTime;
         final long currentTime = System.currentTimeMillis();
-        if (currentRevocationCount >= BULK_REBIAS_THRESHOLD &&
-            currentRevocationCount < BULK_REVOCATION_THRESHOLD &&
+        if (currentRevocationCount >= BiasedLockingBulkRebiasThreshold &&
+            currentRevocationCount < BiasedLockingBulkRevokeThreshold &&
             lastBulkRebiasTime != 0 &&
-            currentTime - bulkRebiasTime > BULK_REBIAS_DECAY_TIME) {
+            currentTime - bulkRebiasTime > BiasedLockingDecayTime) {
             currentRevocationCount = 0;
             revocationCount.set(0);
         }
 
-        if (currentRevocationCount <= BULK_REVOCATION_THRESHOLD) {
+        if (currentRevocationCount <= BiasedLockingBulkRevokeThreshold) {
             currentRevocationCount = revocationCountAtomicInc();
         }
 
-        if (currentRevocationCount == BULK_REBIAS_THRESHOLD) {
+        if (currentRevocationCount == BiasedLockingBulkRebiasThreshold) {
             return RevocationType.BULK_REBIAS;
-        } else if (currentRevocationCount == BULK_REVOCATION_THRESHOLD) {
+        } else if (currentRevocationCount == BiasedLockingBulkRevokeThreshold) {
             return RevocationType.BULK_REVOCATION;
         }
         return RevocationType.SINGLE_OBJECT_REVOCATION;
@@ -366,8 +366,8 @@ public abstract class ThinLockModeHandler extends AbstractModeHandler {
         }
 
         public ModalLockword reprepareModalLockword(ModalLockword preparedLockword, ModalLockword currentLockword, ModalLockword hash) {
-            // TODO Auto-generated method stub
-            return ModalLockword.from(Word.zero());
+            // A thin lock word is computed from the biased lock word alone
+            return prepareModalLockword(null, currentLockword);
         }
     }
 
@@ -41,7 +41,8 @@ import com.sun.max.vm.thread.*;
  * <p>
  * Binding can be performed at bootstrapping or runtime. If binding is performed while bootstrapping then either a default
  * or specialized monitor can be used. If binding is performed at runtime then an unbound monitor is taken from
- * a free list.
+ * a free list. Each thread {@linkplain VmThread#freeMonitors caches} a few unbound monitors, which it refills from and
+ * returns to the global free list in batches, so that inflation by many threads does not convoy on the global lock.
  * <p>
  * Unbinding is performed at global safepoints. All unowned, unbindable, bound monitors are unbound. Writing of unbound
  * lockwords is delegated to an {@link UnboundMiscWordWriter} object (most likely the inflated mode handler of the ModalMonitorScheme).
@@ -81,6 +82,12 @@ public class JavaMonitorManager {
      */
     private static int unboundListGrowQty = 50;
 
+    /**
+     * The number of unbound monitors moved at once from the global free list to a thread's cache of unbound monitors.
+     * A thread returns its cached monitors to the global free list when it caches more than twice this number.
+     */
+    private static final int THREAD_CACHE_BATCH_QTY = 8;
+
     /**
      * The current number of unbound monitors available.
      */
@@ -182,6 +189,7 @@ public class JavaMonitorManager {
             }
         } else if (phase == MaxineVM.Phase.STARTING) {
             assert numberOfBindableMonitors <= bindableMonitors.length;
+            StandardJavaMonitor.initialize(phase);
             if (Monitor.TraceMonitors && stickyMonitors.length > 0) {
                 final boolean lockDisabledSafepoints = Log.lock();
                 Log.println("Sticky monitors:");
@@ -195,6 +203,8 @@ public class JavaMonitorManager {
                 }
                 Log.unlock(lockDisabledSafepoints);
             }
+        } else if (phase == MaxineVM.Phase.TERMINATING) {
+            StandardJavaMonitor.initialize(phase);
         }
     }
 
@@ -341,16 +351,21 @@ public class JavaMonitorManager {
         if (inGlobalSafepoint) {
             monitor = takeFromUnboundList();
         } else {
-            synchronized (LOCK) {
-                if (numberOfUnboundMonitors < UNBOUNDLIST_MIN_QTY) {
-                    System.gc();
-                }
-
-                // If we didn't free up enough such that we are at least midway between min and hwm, expand
-                if (numberOfUnboundMonitors < (unboundMonitorsHwm + UNBOUNDLIST_MIN_QTY) >> 1) {
-                    expandUnboundList();
+            final VmThread thread = VmThread.current();
+            monitor = takeFromThreadCache(thread);
+            if (monitor == null) {
+                synchronized (LOCK) {
+                    if (numberOfUnboundMonitors < UNBOUNDLIST_MIN_QTY) {
+                        System.gc();
+                    }
+
+                    // If we didn't free up enough such that we are at least midway between min and hwm, expand
+                    if (numberOfUnboundMonitors < (unboundMonitorsHwm + UNBOUNDLIST_MIN_QTY) >> 1) {
+                        expandUnboundList();
+                    }
+                    monitor = takeFromUnboundList();
+                    refillThreadCache(thread);
                 }
-                monitor = takeFromUnboundList();
             }
         }
         monitor.setBoundObject(object);
@@ -379,12 +394,75 @@ public class JavaMonitorManager {
         if (inGlobalSafepoint) {
             addToUnboundList(bindableMonitor);
         } else {
+            final VmThread thread = VmThread.current();
+            addToThreadCache(thread, bindableMonitor);
+            if (thread.numberOfFreeMonitors > 2 * THREAD_CACHE_BATCH_QTY) {
+                synchronized (LOCK) {
+                    flushThreadCache(thread);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the unbound monitors cached by a terminating thread to the global free list.
+     *
+     * @param thread the terminating thread
+     */
+    public static void releaseThreadCache(VmThread thread) {
+        if (thread.freeMonitors != null) {
             synchronized (LOCK) {
-                addToUnboundList(bindableMonitor);
+                flushThreadCache(thread);
             }
         }
     }
 
+    @NO_SAFEPOINT_POLLS("a thread's cache of unbound monitors is drained by GC")
+    private static ManagedMonitor takeFromThreadCache(VmThread thread) {
+        final ManagedMonitor monitor = (ManagedMonitor) thread.freeMonitors;
+        if (monitor != null) {
+            thread.freeMonitors = monitor.next();
+            thread.numberOfFreeMonitors--;
+            monitor.setNext(null);
+        }
+        return monitor;
+    }
+
+    @NO_SAFEPOINT_POLLS("a thread's cache of unbound monitors is drained by GC")
+    private static void addToThreadCache(VmThread thread, ManagedMonitor monitor) {
+        monitor.setNext((ManagedMonitor) thread.freeMonitors);
+        thread.freeMonitors = monitor;
+        thread.numberOfFreeMonitors++;
+    }
+
+    /**
+     * Moves a batch of monitors from the global free list to a thread's cache, leaving at least
+     * {@link #UNBOUNDLIST_MIN_QTY} monitors on the global free list. The caller must hold {@link #LOCK}
+     * or be on a global safepoint.
+     */
+    @NO_SAFEPOINT_POLLS("the free lists must be consistent with respect to GC")
+    private static void refillThreadCache(VmThread thread) {
+        for (int n = Math.min(THREAD_CACHE_BATCH_QTY, numberOfUnboundMonitors - UNBOUNDLIST_MIN_QTY); n > 0; n--) {
+            addToThreadCache(thread, takeFromUnboundList());
+        }
+    }
+
+    /**
+     * Moves all monitors cached by a thread to the global free list. The caller must hold {@link #LOCK}
+     * or be on a global safepoint.
+     */
+    @NO_SAFEPOINT_POLLS("the free lists must be consistent with respect to GC")
+    private static void flushThreadCache(VmThread thread) {
+        ManagedMonitor monitor = (ManagedMonitor) thread.freeMonitors;
+        thread.freeMonitors = null;
+        thread.numberOfFreeMonitors = 0;
+        while (monitor != null) {
+            final ManagedMonitor next = monitor.next();
+            addToUnboundList(monitor);
+            monitor = next;
+        }
+    }
+
     @NO_SAFEPOINT_POLLS("verification requires mutual exclusion with GC")
     private static int verifyBindableMonitors() {
         int errors = 0;
@@ -493,13 +571,27 @@ public class JavaMonitorManager {
 
     private static final ProtectedMonitorGatherer protectedMonitorGatherer = new ProtectedMonitorGatherer();
 
+    private static class ThreadCacheDrainer implements Pointer.Procedure {
+        public void run(Pointer tla) {
+            flushThreadCache(VmThread.fromTLA(tla));
+        }
+    }
+
+    private static final ThreadCacheDrainer threadCacheDrainer = new ThreadCacheDrainer();
+
     /**
      * Must only be called on a global safepoint.
      */
     private static void unbindUnownedMonitors() {
         // Mark all protected monitors
         VmThreadMap.ACTIVE.forAllThreadLocals(null, protectedMonitorGatherer);
-        // Deflate all non-protected and non-sticky monitors with no owner
+        // Return the monitors cached by threads so that they are available to whichever thread inflates next
+        VmThreadMap.ACTIVE.forAllThreadLocals(null, threadCacheDrainer);
+        // Deflate all non-protected and non-sticky monitors with no owner. The deflated monitors
+        // are chained privately and published to the free list in one step at the end.
+        ManagedMonitor deflated = null;
+        ManagedMonitor deflatedTail = null;
+        int numberOfDeflated = 0;
         for (int i = 0; i < numberOfBindableMonitors; i++) {
             final ManagedMonitor monitor = bindableMonitors[i];
             if (monitor.isHardBound() && monitor.bindingProtection() == BindingProtection.PRE_ACQUIRE) {
@@ -519,14 +611,24 @@ public class JavaMonitorManager {
                     unboundMiscWordWriter.writeUnboundHashWord(monitor.boundObject(), monitor.displacedHash());
                 }
                 monitor.reset();
-                // Put the monitor back on the unbound list.
-                // This is thread-safe as mutator thread access to the free-list is
-                // atomic with respect to safepointing.
-                addToUnboundList(monitor);
+                monitor.setNext(deflated);
+                if (deflatedTail == null) {
+                    deflatedTail = monitor;
+                }
+                deflated = monitor;
+                numberOfDeflated++;
             } else if (monitor.isBound()) {
                 monitor.preGCPrepare();
             }
         }
+        if (deflated != null) {
+            // Put the monitors back on the unbound list.
+            // This is thread-safe as mutator thread access to the free-list is
+            // atomic with respect to safepointing.
+            deflatedTail.setNext(unboundList);
+            unboundList = deflated;
+            numberOfUnboundMonitors += numberOfDeflated;
+        }
     }
 
     /**
@@ -54,12 +54,73 @@ import com.sun.max.vm.thread.*;
  * thread A because thread A was removed from the wait set when its timeout expired. So the notify wakes up thread B and
  * all threads can continue. With this implementation, the notify can hit thread A since it could not re-acquire the
  * lock between the timeout and the notify (remember that thread C holds the lock). So the notify does not wake up
- * thread B, and it sleeps forever - thread B remains blocked forever.
+ * thread B, and it sleeps forever - thread B remains blocked forever. <br>
+ * <br>
+ * A contended {@link #monitorEnter()} first spins for a while, re-trying the mutex, before it parks the thread in
+ * {@link Mutex#lock()}. The number of spin iterations is learned per monitor: a spin that acquires the monitor
+ * increases the budget for the next contended enter, and a spin that ends up parking decreases it. Briefly held
+ * monitors thus avoid the park/unpark round trip, while monitors held for long stop wasting cycles on spinning.
  */
 public class StandardJavaMonitor extends AbstractJavaMonitor {
 
+    /**
+     * The maximum number of iterations a contended {@link #monitorEnter()} spins before parking.
+     */
+    private static int MaxMonitorSpin = 5000;
+
+    /**
+     * Determines if the spinning statistics are printed when the VM terminates.
+     */
+    private static boolean PrintMonitorSpinStats;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "MaxMonitorSpin", StandardJavaMonitor.class,
+            "Maximum number of iterations a thread spins on a contended inflated monitor before parking (0 disables spinning).");
+        VMOptions.addFieldOption("-XX:", "PrintMonitorSpinStats", StandardJavaMonitor.class,
+            "Print statistics about spinning on contended inflated monitors when the VM terminates.");
+    }
+
+    /**
+     * Spin budget below which a successful spin resets the budget, so that a monitor that was recently
+     * held for long quickly recovers once its critical sections become short again.
+     */
+    private static final int SPIN_POVERTY = 1000;
+
+    /**
+     * Increase of the spin budget after a spin acquired the monitor.
+     */
+    private static final int SPIN_BONUS = 100;
+
+    /**
+     * Decrease of the spin budget after a spin failed to acquire the monitor.
+     */
+    private static final int SPIN_PENALTY = 200;
+
+    /**
+     * Number of iterations that are always spun, so that a monitor whose budget has decayed can still observe
+     * short critical sections.
+     */
+    private static final int SPIN_PROBE = 16;
+
+    /**
+     * Determines if spinning is worth it at all, i.e. if there is more than one processor.
+     */
+    private static boolean spinOnContention;
+
+    // Statistics counters. They are updated without synchronization and are thus only approximate.
+    private static long contendedEnterCount;
+    private static long spinAcquireCount;
+    private static long parkCount;
+    private static long spinIterationCount;
+
     protected final Mutex mutex;
 
+    /**
+     * The number of iterations the next contended {@link #monitorEnter()} of this monitor spins before parking.
+     * It is updated without synchronization by the contending threads; a lost update only affects the heuristic.
+     */
+    private int spinBudget = SPIN_POVERTY;
+
     /**
      * The list of threads waiting on this monitor as a result of a call to {@link #monitorWait(long)}. A thread is
      * responsible for adding/removing itself to/from this list on either side of the call to
@@ -96,7 +157,9 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
             return;
         }
         currentThread.setState(Thread.State.BLOCKED);
-        mutex.lock();
+        if (!spinLock()) {
+            mutex.lock();
+        }
         currentThread.setState(Thread.State.RUNNABLE);
         ownerThread = currentThread;
         setBindingProtection(BindingProtection.PROTECTED);
@@ -104,6 +167,60 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
         traceEndMonitorEnter(currentThread);
     }
 
+    /**
+     * Tries to acquire {@link #mutex} without parking the current thread, spinning for at most {@link #spinBudget}
+     * iterations if it is held by another thread. The outcome adjusts the spin budget of this monitor.
+     *
+     * @return {@code true} if the mutex was acquired, {@code false} if the caller must block on it
+     */
+    private boolean spinLock() {
+        if (mutex.tryLock()) {
+            return true;
+        }
+        if (!spinOnContention) {
+            return false;
+        }
+        contendedEnterCount++;
+        final int budget = Math.max(Math.min(spinBudget, MaxMonitorSpin), SPIN_PROBE);
+        for (int i = 0; i < budget; i++) {
+            Intrinsics.pause();
+            // Only attempt the (expensive) native try-lock when the monitor looks free
+            if (ownerThread == null && mutex.tryLock()) {
+                spinBudget = Math.min(Math.max(budget, SPIN_POVERTY) + SPIN_BONUS, MaxMonitorSpin);
+                spinAcquireCount++;
+                spinIterationCount += i + 1;
+                return true;
+            }
+        }
+        spinBudget = Math.max(budget - SPIN_PENALTY, 0);
+        parkCount++;
+        spinIterationCount += budget;
+        return false;
+    }
+
+    /**
+     * Performs any initialization of the spinning policy necessary for the given phase.
+     */
+    static void initialize(MaxineVM.Phase phase) {
+        if (phase == MaxineVM.Phase.STARTING) {
+            spinOnContention = MaxMonitorSpin > 0 && Runtime.getRuntime().availableProcessors() > 1;
+        } else if (phase == MaxineVM.Phase.TERMINATING) {
+            if (PrintMonitorSpinStats) {
+                final boolean lockDisabledSafepoints = Log.lock();
+                Log.println("Monitor spinning statistics:");
+                Log.print("  contended enters: ");
+                Log.println(contendedEnterCount);
+                Log.print("  acquired by spinning: ");
+                Log.println(spinAcquireCount);
+                Log.print("  parked after spinning: ");
+                Log.println(parkCount);
+                Log.print("  spin iterations: ");
+                Log.println(spinIterationCount);
+                Log.unlock(lockDisabledSafepoints);
+            }
+        }
+    }
+
     @Override
     public void monitorExit() {
         final VmThread currentThread = VmThread.current();
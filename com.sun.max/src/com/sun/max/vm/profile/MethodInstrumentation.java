@@ -35,6 +35,12 @@ import com.sun.max.vm.object.ObjectAccess;
 public class MethodInstrumentation {
 
     public static int initialEntryBackedgeCount = 5000;
+
+    /**
+     * The number of backward branches taken in a method before a loop is compiled for on-stack replacement.
+     * {@link Integer#MAX_VALUE} if on-stack replacement is disabled.
+     */
+    public static int initialOSRBackedgeCount = Integer.MAX_VALUE;
     public static final int DEFAULT_RECEIVER_METHOD_PROFILE_ENTRIES = 3;
 
     /**
@@ -47,6 +53,17 @@ public class MethodInstrumentation {
 
     private static boolean enabled;
 
+    private static boolean osrEnabled;
+
+    public static void enableOSR(int initialBackedgeCount) {
+        osrEnabled = true;
+        MethodInstrumentation.initialOSRBackedgeCount = initialBackedgeCount;
+    }
+
+    public static boolean isOSREnabled() {
+        return osrEnabled;
+    }
+
     public static void enable(int initialEntryCount) {
         enabled = true;
         MethodInstrumentation.initialEntryBackedgeCount = initialEntryCount;
@@ -90,6 +90,28 @@ public class MethodProfile {
      */
     public int entryBackedgeCount;
 
+    /**
+     * The backward branch counter that triggers on-stack replacement. Decremented by profiling code.
+     * This is a separate counter since {@link #entryBackedgeCount} is reset when the method is
+     * recompiled, whereas a long running loop must still be able to reach the OSR threshold.
+     */
+    public int osrBackedgeCount;
+
+    /**
+     * The number of times {@link #entryBackedgeCount} overflowed. While a recompilation of the method is
+     * pending, the counter is reset to a fixed, small value after each overflow, so this is a measure of how hot
+     * the method is while waiting to be recompiled.
+     */
+    public int overflowCount;
+
+    /**
+     * The number of times optimized code of the method hit an
+     * {@linkplain com.sun.max.vm.compiler.deopt.Deoptimization#uncommonTrap uncommon trap}. Once non-zero,
+     * the profile is no longer {@linkplain com.sun.max.vm.actor.member.ClassMethodActor#compilerProfile() offered}
+     * to the optimizing compiler, so that recompilations of the method do not speculate on it again.
+     */
+    public int uncommonTrapCount;
+
     /**
      * Records actual counts of a count entry.
      */
@@ -215,6 +237,23 @@ public class MethodProfile {
         return deoptimizationCounts[deoptReasonId];
     }
 
+    /**
+     * Returns the number of deoptimizations of the method for all deoptimization reasons.
+     */
+    public int totalDeoptimizationCount() {
+        if (deoptimizationCounts == null) {
+            return 0;
+        }
+        int total = 0;
+        for (int count : deoptimizationCounts) {
+            total += count;
+            if (total < 0) {
+                return Integer.MAX_VALUE;
+            }
+        }
+        return total;
+    }
+
     /**
      * Returns an index of exception seen counter for a given bci.
      */
@@ -586,6 +625,7 @@ public class MethodProfile {
 
         public void addEntryBackedgeCounter(int initialValue) {
             mpo.entryBackedgeCount = initialValue;
+            mpo.osrBackedgeCount = MethodInstrumentation.initialOSRBackedgeCount;
         }
 
         public int addGotoCounter(int bci) {
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.runtime;
+
+import static com.sun.max.vm.intrinsics.Infopoints.*;
+import static com.sun.max.vm.runtime.VMRegister.*;
+import static com.sun.max.vm.runtime.VmOperation.*;
+import static com.sun.max.vm.runtime.VmOperationThread.*;
+import static com.sun.max.vm.thread.VmThreadLocal.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.stack.*;
+import com.sun.max.vm.thread.*;
+import com.sun.max.vm.thread.VmThreadLocal.Nature;
+
+/**
+ * An operation performed for a single thread without stopping any other thread and without involving the
+ * {@linkplain VmOperationThread VM operation thread}.
+ * <p>
+ * A handshake is installed in the {@link #HANDSHAKE} thread local of the target thread and a
+ * {@linkplain SafepointPoll safepoint} is triggered for that thread only. The target thread performs the handshake
+ * itself when it next traps at a safepoint. If the target thread is in native code instead, the submitting thread
+ * {@linkplain VmOperation freezes} it and performs the handshake on its behalf. Either way the thread submitting the
+ * handshake waits for its completion, while all other threads keep running.
+ * <p>
+ * The target thread and a handshaking thread race for a pending handshake with a CAS on {@link #HANDSHAKE}, so each
+ * handshake is performed exactly once. As a handshake may run in the trap handler of the target thread with safepoints
+ * disabled, or on its behalf while holding {@link VmThreadMap#THREAD_LOCK}, it must be short and must not wait for
+ * other threads. Like {@link VmOperation}s, handshake classes must be in the boot image.
+ */
+public abstract class Handshake {
+
+    /**
+     * The {@link Handshake} pending for a thread.
+     */
+    public static final VmThreadLocal HANDSHAKE
+        = new VmThreadLocal("HANDSHAKE", true, "Handshake to run when a safepoint is triggered", Nature.Single);
+
+    /**
+     * A descriptive name of this handshake, only used for tracing.
+     */
+    public final String name;
+
+    private volatile boolean done;
+
+    protected Handshake(String name) {
+        if (!MaxineVM.isHosted() && !Heap.isInBootImage(ClassActor.fromJava(getClass()))) {
+            // See the equivalent check in the VmOperation constructor
+            FatalError.unexpected(Handshake.class.getName() + " subclass " + getClass().getName() + " is not in the boot image");
+        }
+        this.name = name;
+    }
+
+    /**
+     * Performs this handshake for a given thread. This is either called on {@code thread} itself at a safepoint, or on
+     * the submitting thread while {@code thread} is frozen in native code.
+     *
+     * @param vmThread the thread for which the handshake is performed
+     * @param ip instruction pointer of the last Java frame of {@code thread}, or {@link Pointer#zero()} if the thread
+     *            was stopped in native code before it executed any Java code
+     * @param sp stack pointer of the last Java frame of {@code thread}
+     * @param fp frame pointer of the last Java frame of {@code thread}
+     */
+    protected abstract void doThread(VmThread vmThread, Pointer ip, Pointer sp, Pointer fp);
+
+    /**
+     * Performs this handshake for a given thread and waits for it to complete.
+     *
+     * @param thread the thread to perform the handshake for
+     * @return {@code true} if the handshake was performed, {@code false} if {@code thread} terminated before
+     */
+    public final boolean submit(VmThread thread) {
+        if (thread == VmThread.current()) {
+            doThread(thread, Pointer.fromLong(here()), getCpuStackPointer(), getCpuFramePointer());
+            return true;
+        }
+        done = false;
+        boolean installed = false;
+        int steps = 0;
+        while (true) {
+            synchronized (VmThreadMap.THREAD_LOCK) {
+                // Holding the thread lock keeps the thread locals of an active thread from being released
+                if (VmThreadMap.ACTIVE.getVmThreadForID(thread.id()) != thread) {
+                    return done;
+                }
+                final Pointer etla = ETLA.load(thread.tla());
+                // Unless another handshake is pending for the thread, install this one
+                if (!installed && etla.compareAndSwapReference(HANDSHAKE.offset, null, Reference.fromJava(this)).isZero()) {
+                    installed = true;
+                    trace("installed for", thread);
+                    SAFEPOINT_LATCH.store(etla, TTLA.load(etla));
+                    MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+                }
+                if (done) {
+                    return true;
+                }
+                if (installed && UseCASBasedThreadFreezing && MUTATOR_STATE.load(etla).equals(THREAD_IN_NATIVE)) {
+                    // The thread may stay in native code for long, so perform the handshake on its behalf.
+                    // Freezing it excludes VM operations, which freeze threads while holding the thread lock.
+                    if (etla.compareAndSwapWord(MUTATOR_STATE.offset, THREAD_IN_NATIVE, THREAD_IS_FROZEN).equals(THREAD_IN_NATIVE)) {
+                        if (claim(etla)) {
+                            trace("performing on behalf of", thread);
+                            runOnBehalf(thread);
+                        }
+                        MUTATOR_STATE.store(etla, THREAD_IN_NATIVE);
+                        if (done) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            if (steps < SafepointSpinBeforeYield) {
+                Intrinsics.pause();
+            } else {
+                Thread.yield();
+            }
+            steps++;
+        }
+    }
+
+    /**
+     * Removes this handshake from the thread locals of its target thread.
+     *
+     * @return {@code true} if the current thread is the one to perform the handshake
+     */
+    private boolean claim(Pointer etla) {
+        return etla.compareAndSwapReference(HANDSHAKE.offset, Reference.fromJava(this), null).toJava() == this;
+    }
+
+    private void runOnBehalf(VmThread thread) {
+        final Pointer frameAnchor = JavaFrameAnchor.from(thread.tla());
+        try {
+            if (frameAnchor.isZero()) {
+                doThread(thread, Pointer.zero(), Pointer.zero(), Pointer.zero());
+            } else {
+                doThread(thread, JavaFrameAnchor.PC.get(frameAnchor), JavaFrameAnchor.SP.get(frameAnchor), JavaFrameAnchor.FP.get(frameAnchor));
+            }
+        } finally {
+            done = true;
+        }
+    }
+
+    /**
+     * Called by the {@linkplain Trap trap} handler on a thread that hit a safepoint to perform any pending handshake.
+     * This is always called with safepoints {@linkplain SafepointPoll#disable() disabled} for the current thread.
+     *
+     * @param etla the safepoints-enabled thread locals of the current thread
+     */
+    static void doAtSafepoint(Pointer etla, Pointer ip, Pointer sp, Pointer fp) {
+        final Handshake handshake = (Handshake) HANDSHAKE.loadRef(etla).toJava();
+        if (handshake != null && handshake.claim(etla)) {
+            handshake.trace("performing on", VmThread.current());
+            try {
+                handshake.doThread(VmThread.current(), ip, sp, fp);
+            } finally {
+                handshake.done = true;
+            }
+        }
+        if (VM_OPERATION.loadRef(etla).isZero()) {
+            // Disarm the safepoint latch, unless a VM operation or another handshake was submitted in the meantime
+            SAFEPOINT_LATCH.store(etla, etla);
+            rearmIfPending(etla);
+        }
+    }
+
+    /**
+     * Re-triggers the safepoint latch of a thread if a handshake or VM operation is pending for it. This must be
+     * called after a thread's safepoint latch has been disarmed, as a concurrent submission may have armed it just
+     * before.
+     *
+     * @param etla the safepoints-enabled thread locals of the thread
+     */
+    @INLINE
+    static void rearmIfPending(Pointer etla) {
+        MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+        if (!HANDSHAKE.loadRef(etla).isZero() || !VM_OPERATION.loadRef(etla).isZero()) {
+            SAFEPOINT_LATCH.store(etla, TTLA.load(etla));
+        }
+    }
+
+    private void trace(String msg, VmThread thread) {
+        if (TraceVmOperations) {
+            boolean lockDisabledSafepoints = Log.lock();
+            Log.print("Handshake[");
+            Log.print(name);
+            Log.print("]: ");
+            Log.print(msg);
+            Log.print(' ');
+            Log.printThread(thread, true);
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.runtime;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.code.*;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.log.VMLog.Record;
+import com.sun.max.vm.log.hosted.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * Latency statistics for the {@linkplain VmOperation VM operations} that freeze threads at a safepoint.
+ * <p>
+ * The time a VM operation takes to start is dominated by the slowest thread to reach a {@linkplain SafepointPoll
+ * safepoint poll}. For each frozen thread, the time-to-safepoint is the time from the start of the
+ * {@linkplain VmOperation#run() synchronization} until the VM operation thread observes the thread frozen. As threads
+ * are checked one after the other, this is an upper bound for all but the slowest thread. The time-to-safepoint of
+ * every thread is added to a histogram and, for the slowest thread of an operation, the {@link TargetMethod} it
+ * stopped in is identified. A thread stopped in native code did not have to reach a poll and is reported without a
+ * method. A compiled loop without a safepoint poll shows up as the method of a slow thread.
+ * <p>
+ * Each operation is split into the time to freeze the threads (sync), the time to {@linkplain VmOperation#doIt() run}
+ * the operation (execute) and the time to thaw the threads (resume). With {@code -XX:+PrintSafepointStatistics} the
+ * totals and the histogram are printed when the VM exits. With {@code -XX:+LogSafepoint} every operation and the
+ * time-to-safepoint of every thread are recorded in the {@link com.sun.max.vm.log.VMLog} and
+ * {@code -XX:+TraceSafepoint} prints them as they occur.
+ * <p>
+ * The statistics are only updated by the VM operation thread, so no synchronization is needed. Nothing is recorded,
+ * not even the time, if neither option is enabled.
+ */
+public final class SafepointStatistics {
+
+    private SafepointStatistics() {
+    }
+
+    /**
+     * Number of buckets in the time-to-safepoint histogram. Bucket 0 counts times below 1 microsecond, bucket
+     * {@code i} times in {@code [2^(i-1), 2^i)} microseconds and the last bucket all longer times.
+     */
+    private static final int BUCKETS = 24;
+
+    static final VMBooleanOption PrintSafepointStatisticsOption = register(new VMBooleanOption("-XX:-PrintSafepointStatistics",
+            "Print a histogram of the time threads take to reach a safepoint and the sync, execute and resume times of VM operations on VM exit.") {
+        @Override
+        protected void beforeExit() {
+            if (getValue()) {
+                print();
+            }
+        }
+    }, MaxineVM.Phase.STARTING);
+
+    static final SafepointLogger logger = new SafepointLogger();
+
+    private static final long[] timeToSafepointHistogram = new long[BUCKETS];
+
+    @RESET
+    private static long operations;
+    @RESET
+    private static long frozenThreads;
+    @RESET
+    private static long totalSyncTime;
+    @RESET
+    private static long totalExecuteTime;
+    @RESET
+    private static long totalResumeTime;
+    @RESET
+    private static long maxSyncTime;
+    @RESET
+    private static long maxTimeToSafepoint;
+
+    /**
+     * The operation, thread and method of {@link #maxTimeToSafepoint}. The method is {@code null} if the thread
+     * was frozen in native code.
+     */
+    private static String maxTimeToSafepointOperation;
+    private static String maxTimeToSafepointThread;
+    private static TargetMethod maxTimeToSafepointMethod;
+
+    /**
+     * Determines if the timings of VM operations are to be recorded.
+     */
+    @INLINE
+    static boolean enabled() {
+        return PrintSafepointStatisticsOption.getValue() || logger.enabled();
+    }
+
+    /**
+     * Gets the method a frozen thread stopped in.
+     *
+     * @param tla the thread locals of the frozen thread
+     * @return the method containing the safepoint poll at which the thread trapped or {@code null} if the thread was
+     *         frozen in native code
+     */
+    static TargetMethod frozenMethod(Pointer tla) {
+        Pointer ip = VmThreadLocal.TRAP_INSTRUCTION_POINTER.load(tla);
+        return ip.isZero() ? null : Code.codePointerToTargetMethod(ip);
+    }
+
+    /**
+     * Records the time-to-safepoint of a thread.
+     *
+     * @param operation the operation that froze the thread
+     * @param thread the frozen thread
+     * @param timeToSafepoint the time-to-safepoint in nanoseconds
+     * @param method the method {@code thread} stopped in, {@code null} if it was frozen in native code
+     */
+    static void recordThread(VmOperation operation, VmThread thread, long timeToSafepoint, TargetMethod method) {
+        frozenThreads++;
+        timeToSafepointHistogram[bucket(timeToSafepoint)]++;
+        if (timeToSafepoint > maxTimeToSafepoint) {
+            maxTimeToSafepoint = timeToSafepoint;
+            maxTimeToSafepointOperation = operation.name;
+            maxTimeToSafepointThread = thread.getName();
+            maxTimeToSafepointMethod = method;
+        }
+        if (logger.enabled()) {
+            logger.logThreadSafepoint(operation.name, thread, timeToSafepoint, method);
+        }
+    }
+
+    /**
+     * Records the phase timings of an operation.
+     *
+     * @param operation the operation
+     * @param threads the number of threads frozen by {@code operation}
+     * @param syncTime the time in nanoseconds to freeze the threads
+     * @param executeTime the time in nanoseconds to run the operation
+     * @param resumeTime the time in nanoseconds to thaw the threads
+     * @param slowestThread the thread with the longest time-to-safepoint, {@code null} if {@code threads == 0}
+     * @param slowestTime the time-to-safepoint of {@code slowestThread}
+     * @param slowestMethod the method {@code slowestThread} stopped in, {@code null} if it was frozen in native code
+     */
+    static void recordOperation(VmOperation operation, int threads, long syncTime, long executeTime, long resumeTime,
+                    VmThread slowestThread, long slowestTime, TargetMethod slowestMethod) {
+        operations++;
+        totalSyncTime += syncTime;
+        totalExecuteTime += executeTime;
+        totalResumeTime += resumeTime;
+        if (syncTime > maxSyncTime) {
+            maxSyncTime = syncTime;
+        }
+        if (logger.enabled()) {
+            int slowestThreadId = slowestThread == null ? -1 : slowestThread.id();
+            logger.logVmOperation(operation.name, threads, syncTime, executeTime, resumeTime, slowestThreadId, slowestTime, slowestMethod);
+        }
+    }
+
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        if (micros == 0) {
+            return 0;
+        }
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return bucket < BUCKETS ? bucket : BUCKETS - 1;
+    }
+
+    private static void printMicros(long nanos) {
+        Log.print(nanos / 1000);
+        Log.print("us");
+    }
+
+    private static void printMethod(TargetMethod method) {
+        if (method == null) {
+            Log.print("<native>");
+        } else {
+            Log.printMethod(method, false);
+        }
+    }
+
+    /**
+     * Prints the statistics gathered so far to the {@link Log}.
+     */
+    public static void print() {
+        boolean lockDisabledSafepoints = Log.lock();
+        Log.println("Safepoint statistics:");
+        Log.print("  VM operations: ");
+        Log.print(operations);
+        Log.print(", threads frozen: ");
+        Log.println(frozenThreads);
+        if (operations != 0) {
+            Log.print("  sync total ");
+            printMicros(totalSyncTime);
+            Log.print(", avg ");
+            printMicros(totalSyncTime / operations);
+            Log.print(", max ");
+            printMicros(maxSyncTime);
+            Log.println();
+            Log.print("  execute total ");
+            printMicros(totalExecuteTime);
+            Log.print(", avg ");
+            printMicros(totalExecuteTime / operations);
+            Log.println();
+            Log.print("  resume total ");
+            printMicros(totalResumeTime);
+            Log.print(", avg ");
+            printMicros(totalResumeTime / operations);
+            Log.println();
+        }
+        if (frozenThreads != 0) {
+            Log.print("  slowest thread to safepoint: ");
+            printMicros(maxTimeToSafepoint);
+            Log.print(" for ");
+            Log.print(maxTimeToSafepointOperation);
+            Log.print(" in thread \"");
+            Log.print(maxTimeToSafepointThread);
+            Log.print("\" at ");
+            printMethod(maxTimeToSafepointMethod);
+            Log.println();
+            Log.println("  time-to-safepoint histogram:");
+            for (int i = 0; i < BUCKETS; i++) {
+                if (timeToSafepointHistogram[i] != 0) {
+                    Log.print("    ");
+                    if (i == 0) {
+                        Log.print("< 1us");
+                    } else if (i == BUCKETS - 1) {
+                        Log.print(">= ");
+                        Log.print(1L << (i - 1));
+                        Log.print("us");
+                    } else {
+                        Log.print(1L << (i - 1));
+                        Log.print("-");
+                        Log.print((1L << i) - 1);
+                        Log.print("us");
+                    }
+                    Log.print(": ");
+                    Log.println(timeToSafepointHistogram[i]);
+                }
+            }
+        }
+        Log.unlock(lockDisabledSafepoints);
+    }
+
+    @HOSTED_ONLY
+    @VMLoggerInterface
+    private interface SafepointLoggerInterface {
+        void vmOperation(
+            @VMLogParam(name = "name") String name,
+            @VMLogParam(name = "threads") int threads,
+            @VMLogParam(name = "syncTime") long syncTime,
+            @VMLogParam(name = "executeTime") long executeTime,
+            @VMLogParam(name = "resumeTime") long resumeTime,
+            @VMLogParam(name = "slowestThreadId") int slowestThreadId,
+            @VMLogParam(name = "slowestTime") long slowestTime,
+            @VMLogParam(name = "slowestMethod") TargetMethod slowestMethod);
+
+        void threadSafepoint(
+            @VMLogParam(name = "name") String name,
+            @VMLogParam(name = "thread") VmThread thread,
+            @VMLogParam(name = "timeToSafepoint") long timeToSafepoint,
+            @VMLogParam(name = "method") TargetMethod method);
+    }
+
+    static final class SafepointLogger extends SafepointLoggerAuto {
+
+        SafepointLogger() {
+            super("Safepoint", "VM operation sync/execute/resume times and per thread time-to-safepoint.");
+        }
+
+        @Override
+        protected void traceVmOperation(String name, int threads, long syncTime, long executeTime, long resumeTime,
+                        int slowestThreadId, long slowestTime, TargetMethod slowestMethod) {
+            Log.print("VmOperation[");
+            Log.print(name);
+            Log.print("]: threads ");
+            Log.print(threads);
+            Log.print(", sync ");
+            printMicros(syncTime);
+            Log.print(", execute ");
+            printMicros(executeTime);
+            Log.print(", resume ");
+            printMicros(resumeTime);
+            if (slowestThreadId >= 0) {
+                Log.print(", slowest thread \"");
+                Log.print(toVmThreadName(slowestThreadId));
+                Log.print("\" ");
+                printMicros(slowestTime);
+                Log.print(" at ");
+                printMethod(slowestMethod);
+            }
+            Log.println();
+        }
+
+        @Override
+        protected void traceThreadSafepoint(String name, VmThread thread, long timeToSafepoint, TargetMethod method) {
+            Log.print("VmOperation[");
+            Log.print(name);
+            Log.print("]: ");
+            Log.printThread(thread, false);
+            Log.print(" reached safepoint after ");
+            printMicros(timeToSafepoint);
+            Log.print(" at ");
+            printMethod(method);
+            Log.println();
+        }
+    }
+
+// START GENERATED CODE
+    private static abstract class SafepointLoggerAuto extends com.sun.max.vm.log.VMLogger {
+        public enum Operation {
+            ThreadSafepoint, VmOperation;
+
+            @SuppressWarnings("hiding")
+            public static final Operation[] VALUES = values();
+        }
+
+        private static final int[] REFMAPS = new int[] {0x9, 0x81};
+
+        protected SafepointLoggerAuto(String name, String optionDescription) {
+            super(name, Operation.VALUES.length, optionDescription, REFMAPS);
+        }
+
+        @Override
+        public String operationName(int opCode) {
+            return Operation.VALUES[opCode].name();
+        }
+
+        @INLINE
+        public final void logThreadSafepoint(String name, VmThread thread, long timeToSafepoint, TargetMethod method) {
+            log(Operation.ThreadSafepoint.ordinal(), objectArg(name), vmThreadArg(thread), longArg(timeToSafepoint), objectArg(method));
+        }
+        protected abstract void traceThreadSafepoint(String name, VmThread thread, long timeToSafepoint, TargetMethod method);
+
+        @INLINE
+        public final void logVmOperation(String name, int threads, long syncTime, long executeTime, long resumeTime, int slowestThreadId,
+                long slowestTime, TargetMethod slowestMethod) {
+            log(Operation.VmOperation.ordinal(), objectArg(name), intArg(threads), longArg(syncTime), longArg(executeTime), longArg(resumeTime),
+                intArg(slowestThreadId), longArg(slowestTime), objectArg(slowestMethod));
+        }
+        protected abstract void traceVmOperation(String name, int threads, long syncTime, long executeTime, long resumeTime, int slowestThreadId,
+                long slowestTime, TargetMethod slowestMethod);
+
+        @Override
+        protected void trace(Record r) {
+            switch (r.getOperation()) {
+                case 0: { //ThreadSafepoint
+                    traceThreadSafepoint(toString(r, 1), toVmThread(r, 2), toLong(r, 3), toTargetMethod(r, 4));
+                    break;
+                }
+                case 1: { //VmOperation
+                    traceVmOperation(toString(r, 1), toInt(r, 2), toLong(r, 3), toLong(r, 4), toLong(r, 5), toInt(r, 6), toLong(r, 7), toTargetMethod(r, 8));
+                    break;
+                }
+            }
+        }
+    }
+
+// END GENERATED CODE
+}
@@ -368,6 +368,7 @@ public abstract class Trap {
             final Reference reference = VM_OPERATION.loadRef(etla);
             final VmOperation vmOperation = (VmOperation) reference.toJava();
             tfa.setTrapNumber(trapFrame, Number.SAFEPOINT);
+            Handshake.doAtSafepoint(etla, instructionPointer.toPointer(), stackPointer, framePointer);
             if (vmOperation != null) {
                 TRAP_INSTRUCTION_POINTER.store3(instructionPointer.toAddress());
                 vmOperation.doAtSafepoint(trapFrame);
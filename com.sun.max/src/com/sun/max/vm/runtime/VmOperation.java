@@ -30,6 +30,7 @@ import com.sun.max.unsafe.*;
 import com.sun.max.unsafe.Pointer.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.heap.*;
 import com.sun.max.vm.object.*;
 import com.sun.max.vm.reference.*;
@@ -109,6 +110,12 @@ import com.sun.max.vm.thread.*;
  * so requires the VM operation thread to be able to find the starting point for the stack walk
  * and this can only reliably be done (through use of the Java frame anchors) when the mutator
  * thread is blocked in native code.
+ * <p>
+ * Work that concerns a single thread and need not be serialized with other VM operations can instead
+ * be performed with a {@link Handshake}, which bypasses the VM operation thread.
+ * <p>
+ * The time each thread takes to freeze and the duration of each phase of an operation are
+ * recorded by {@link SafepointStatistics}.
  */
 public class VmOperation {
 
@@ -334,6 +341,7 @@ public class VmOperation {
             SAFEPOINT_LATCH.store(etla, ETLA.load(tla));
 
             VM_OPERATION.store(etla, Reference.zero());
+            Handshake.rearmIfPending(etla);
 
             if (UseCASBasedThreadFreezing) {
                 MUTATOR_STATE.store(etla, THREAD_IN_NATIVE);
@@ -385,14 +393,14 @@ public class VmOperation {
 
     /**
      * Predicate used with {@linkplain VmThreadMap#forAllThreadLocals(Predicate, com.sun.max.unsafe.Pointer.Procedure)}
-     * to filter out the VM operation thread and all threads for which {@link #operateOnThread(VmThread)} returns
-     * {@code false}.
+     * to filter out the VM operation thread, the {@linkplain VmThread#isGCThread() GC worker threads} and all threads
+     * for which {@link #operateOnThread(VmThread)} returns {@code false}.
      */
     private final Pointer.Predicate threadPredicate = new Pointer.Predicate() {
         @Override
         public boolean evaluate(Pointer tla) {
             VmThread vmThread = VmThread.fromTLA(tla);
-            return !vmThread.isVmOperationThread() && operateOnThread(vmThread);
+            return !vmThread.isVmOperationThread() && !vmThread.isGCThread() && operateOnThread(vmThread);
         }
     };
 
@@ -473,6 +481,25 @@ public class VmOperation {
      */
     private static boolean atSafepoint;
 
+    /**
+     * Determines if the current {@linkplain #run() run} of this operation records {@linkplain SafepointStatistics
+     * safepoint statistics}. The fields below are only updated if so.
+     */
+    private boolean recordingSafepointStatistics;
+
+    /**
+     * The time at which freezing the threads started.
+     */
+    private long syncStartTime;
+
+    /**
+     * The number of threads frozen, and the longest time-to-safepoint, the thread and the method it was frozen in.
+     */
+    private int frozenThreads;
+    private long slowestTimeToSafepoint;
+    private VmThread slowestThread;
+    private TargetMethod slowestMethod;
+
     /**
      * Creates a VM operation.
      *
@@ -549,6 +576,15 @@ public class VmOperation {
 
                 tracePhase("-- Begin --");
 
+                recordingSafepointStatistics = SafepointStatistics.enabled();
+                if (recordingSafepointStatistics) {
+                    frozenThreads = 0;
+                    slowestTimeToSafepoint = 0L;
+                    slowestThread = null;
+                    slowestMethod = null;
+                    syncStartTime = System.nanoTime();
+                }
+
                 freeze();
 
                 // Ensures updates to safepoint-related control variables are visible to all threads
@@ -556,6 +592,7 @@ public class VmOperation {
                 MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
 
                 waitUntilFrozen();
+                final long syncEndTime = recordingSafepointStatistics ? System.nanoTime() : 0L;
 
                 boolean oldAtSafepoint = atSafepoint;
                 try {
@@ -577,9 +614,16 @@ public class VmOperation {
                     error = t;
                 }
                 atSafepoint = oldAtSafepoint;
+                final long executeEndTime = recordingSafepointStatistics ? System.nanoTime() : 0L;
 
                 thaw();
 
+                if (recordingSafepointStatistics) {
+                    SafepointStatistics.recordOperation(this, frozenThreads, syncEndTime - syncStartTime, executeEndTime - syncEndTime,
+                                    System.nanoTime() - executeEndTime, slowestThread, slowestTimeToSafepoint, slowestMethod);
+                    recordingSafepointStatistics = false;
+                }
+
                 tracePhase("-- End --");
             }
 
@@ -764,7 +808,8 @@ public class VmOperation {
         final Pointer etla = ETLA.load(tla);
 
         int steps = 0;
-        if (!frozenByEnclosing(thread)) {
+        final boolean frozenByEnclosing = frozenByEnclosing(thread);
+        if (!frozenByEnclosing) {
             if (UseCASBasedThreadFreezing) {
                 while (true) {
                     Word mutatorState = MUTATOR_STATE.load(etla);
@@ -790,6 +835,10 @@ public class VmOperation {
             }
         }
 
+        if (recordingSafepointStatistics && !frozenByEnclosing) {
+            recordTimeToSafepoint(thread, tla);
+        }
+
         doAfterFrozen(thread);
 
         if (TraceVmOperations) {
@@ -803,6 +852,24 @@ public class VmOperation {
         }
     }
 
+    /**
+     * Records the time a thread took to freeze since the start of this operation and the method it was frozen in.
+     *
+     * @param thread a thread that has just been frozen by this operation
+     * @param tla the thread locals of {@code thread}
+     */
+    private void recordTimeToSafepoint(VmThread thread, Pointer tla) {
+        final long timeToSafepoint = System.nanoTime() - syncStartTime;
+        final TargetMethod method = SafepointStatistics.frozenMethod(tla);
+        frozenThreads++;
+        if (slowestThread == null || timeToSafepoint > slowestTimeToSafepoint) {
+            slowestTimeToSafepoint = timeToSafepoint;
+            slowestThread = thread;
+            slowestMethod = method;
+        }
+        SafepointStatistics.recordThread(this, thread, timeToSafepoint, method);
+    }
+
     /**
      * Called just before a mutator thread is thawed by the VM operation thread.
      * Subclasses can use this to perform extra actions
@@ -844,6 +911,8 @@ public class VmOperation {
         SAFEPOINT_LATCH.store(etla, ETLA.load(tla));
 
         VM_OPERATION.store(etla, Reference.zero());
+        // A handshake submitted while the thread was frozen must still trigger its safepoint
+        Handshake.rearmIfPending(etla);
 
         if (UseCASBasedThreadFreezing) {
             MUTATOR_STATE.store(etla, THREAD_IN_NATIVE);
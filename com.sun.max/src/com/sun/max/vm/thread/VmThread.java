@@ -281,6 +281,18 @@ public class VmThread {
 
     public JavaMonitor protectedMonitor;
 
+    /**
+     * The head of this thread's cache of unbound monitors.
+     *
+     * @see JavaMonitorManager#bindMonitor(Object)
+     */
+    public JavaMonitor freeMonitors;
+
+    /**
+     * The number of monitors in {@link #freeMonitors}.
+     */
+    public int numberOfFreeMonitors;
+
     private ConditionVariable waitingCondition = ConditionVariableFactory.create();
 
     public final HeapScheme.GCRequest gcRequest = VMConfiguration.vmConfig().heapScheme().createThreadLocalGCRequest(this);
@@ -295,6 +307,12 @@ public class VmThread {
      */
     private boolean jvmtiAgent;
 
+    /**
+     * Marks this as a {@linkplain GCThreadPool GC worker} thread. These are not visible to calls like {@link Thread#getThreads},
+     * are never frozen by {@link VmOperation}s and their stacks are not scanned for roots.
+     */
+    private boolean gcThread;
+
     /**
      * Holds the exception object for the exception currently being raised. This value will only be
      * non-null during the unwinding process between calls to {@link #storeExceptionForHandler(Throwable, TargetMethod, int)}
@@ -818,6 +836,9 @@ public class VmThread {
 
         thread.traceThreadAfterTermination();
 
+        // Return any unbound monitors cached by the thread
+        JavaMonitorManager.releaseThreadCache(thread);
+
         // GC may now reclaim or prepare any of its resources before the thread vanishes forever.
         vmConfig().heapScheme().notifyCurrentThreadDetach();
 
@@ -1143,6 +1164,17 @@ public class VmThread {
         jvmtiAgent = true;
     }
 
+    /**
+     * Determines if this is a {@linkplain GCThreadPool GC worker} thread.
+     */
+    public final boolean isGCThread() {
+        return gcThread;
+    }
+
+    public final void setAsGCThread() {
+        gcThread = true;
+    }
+
     /**
      * Bind the given {@code Thread} to this VmThread.
      * @param javaThread thread to be bound
@@ -542,6 +542,7 @@ public class VmThreadLocal implements FormatWithToString {
     public static void scanReferences(Pointer tla, PointerIndexVisitor wordPointerIndexVisitor) {
         final VmThread thread = VmThread.fromTLA(tla);
         boolean isVmOperationThread = thread.isVmOperationThread();
+        boolean isGCThread = thread.isGCThread();
 
         // Note: as a side effect, this lock serializes stack reference map scanning
         boolean tracing = logStackRootScanning();
@@ -558,7 +559,8 @@ public class VmThreadLocal implements FormatWithToString {
         VMLog.scanLogs(tla, wordPointerIndexVisitor);
 
         Pointer anchor = JavaFrameAnchor.from(tla);
-        if (!anchor.isZero()) {
+        if (!anchor.isZero() && !isGCThread) {
+            // GC worker threads are never frozen: their stacks are not scanned (see GCThreadPool).
             final Pointer lastJavaCallerStackPointer = JavaFrameAnchor.SP.get(anchor);
             final Pointer lowestActiveSlot = LOWEST_ACTIVE_STACK_SLOT_ADDRESS.load(tla);
             final Pointer highestSlot = HIGHEST_STACK_SLOT_ADDRESS.load(tla);
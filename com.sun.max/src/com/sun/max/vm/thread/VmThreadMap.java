@@ -449,7 +449,7 @@ public final class VmThreadMap {
         Pointer.Procedure proc = new Pointer.Procedure() {
             public void run(Pointer tla) {
                 VmThread vmThread = VmThread.fromTLA(tla);
-                if (vmThread.javaThread() != null && !vmThread.isVmOperationThread() && (includeJVMTIAgentThreads || !vmThread.isJVMTIAgentThread())) {
+                if (vmThread.javaThread() != null && !vmThread.isVmOperationThread() && !vmThread.isGCThread() && (includeJVMTIAgentThreads || !vmThread.isJVMTIAgentThread())) {
                     threads.add(vmThread.javaThread());
                 }
             }
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jtt.optimize;
+
+/*
+ * Test case for range check elimination. If the limit of the loop exceeds the length of the array, the iterations
+ * within the bounds must be executed before the exception is thrown. The null check of the array must only fail if the
+ * loop is entered.
+ * @Harness: java
+ * @Runs: 0=0; 10=55; 11=-11; -1=0; -2=-101
+ */
+public class ABCE_05 {
+    public static int[] array = new int[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    static int count;
+
+    public static int test(int arg) {
+        int[] a = arg < 0 ? null : array;
+        int limit = arg < 0 ? -arg - 1 : arg;
+        count = 0;
+        try {
+            int r = 0;
+            for (int i = 0; i < limit; i++) {
+                count++;
+                r += a[i];
+            }
+            return r;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return -count;
+        } catch (NullPointerException e) {
+            return -100 - count;
+        }
+    }
+}
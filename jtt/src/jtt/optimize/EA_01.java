@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jtt.optimize;
+
+/*
+ * Test case for escape analysis. The object does not escape, so its fields are replaced by the values stored to them.
+ * Fields that are never stored must read as their default value, and a store to a byte field must narrow the value.
+ * @Harness: java
+ * @Runs: 0=0; 1=6; 2=12; 50=44; 100=344; -3=-18
+ */
+public class EA_01 {
+
+    int x;
+    long y;
+    byte b;
+    int unset;
+
+    public static int test(int arg) {
+        EA_01 o = new EA_01();
+        o.x = arg;
+        o.y = arg * 2L;
+        o.b = (byte) (arg * 3);
+        return o.x + (int) o.y + o.b + o.unset;
+    }
+}
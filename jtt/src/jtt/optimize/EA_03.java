@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jtt.optimize;
+
+/*
+ * Test case for escape analysis. Accessing an array at an index that is not a constant within its bounds makes the
+ * array escape, so that the bounds check is still performed.
+ * @Harness: java
+ * @Runs: 0=10; 1=20; 2=!java.lang.ArrayIndexOutOfBoundsException; -1=!java.lang.ArrayIndexOutOfBoundsException; 3=!java.lang.ArrayIndexOutOfBoundsException
+ */
+public class EA_03 {
+
+    public static int test(int arg) {
+        int[] array = new int[2];
+        array[0] = 10;
+        array[1] = 20;
+        if (arg == 3) {
+            array[2] = arg;
+        }
+        return array[arg];
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jtt.optimize;
+
+/*
+ * Test case for escape analysis. The locking of an object that does not escape is removed, including recursive
+ * locking, but the code in the synchronized blocks must still be executed.
+ * @Harness: java
+ * @Runs: 0=1; 1=4; 10=31
+ */
+public class EA_04 {
+
+    int x;
+
+    public static int test(int arg) {
+        EA_04 o = new EA_04();
+        o.x = arg;
+        int r;
+        synchronized (o) {
+            r = o.x * 2;
+            synchronized (o) {
+                r += o.x + 1;
+            }
+        }
+        return r;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jtt.optimize;
+
+/*
+ * Test case for loop invariant code motion. Invariant computations that can throw an exception, such as a division
+ * or the load of a field of an object that may be null, must not be executed if the loop is not entered.
+ * @Harness: java
+ * @Runs: 0=0; 1=!java.lang.ArithmeticException; 2=0; 3=3; 4=!java.lang.NullPointerException; 5=9
+ */
+public class LICM_02 {
+
+    int value = 3;
+
+    public static int test(int arg) {
+        if (arg < 2) {
+            return divide(arg, 0);
+        }
+        return load(arg - 2, arg % 2 == 0 ? null : new LICM_02());
+    }
+
+    static int divide(int n, int divisor) {
+        int r = 0;
+        for (int i = 0; i < n; i++) {
+            r += 100 / divisor;
+        }
+        return r;
+    }
+
+    static int load(int n, LICM_02 object) {
+        int r = 0;
+        for (int i = 0; i < n; i++) {
+            r += object.value;
+        }
+        return r;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+import java.util.concurrent.*;
+
+/**
+ * This is a test case for the bulk rebiasing and bulk revocation of biased locks. All the objects of a class are locked
+ * by one thread after the other, so that the revocations of their biases reach the thresholds of the bulk operations of
+ * the class, while the threads they were biased to are still alive. The objects are then locked concurrently. The
+ * counts updated while holding the locks and the identity hash codes of the objects must not depend on the states
+ * their locks went through.
+ */
+public class BiasedLockHandoff {
+
+    public static final int ITEMS = 200;
+    public static final int ROUNDS = 5;
+    public static final int CONTENDERS = 4;
+    public static final int ITERATIONS = 100;
+
+    static final class Item {
+        int count;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final Item[] items = new Item[ITEMS];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item();
+        }
+
+        // Each round takes over the biases of the objects from the thread of the previous round, which is still alive.
+        final CountDownLatch release = new CountDownLatch(1);
+        final Locker[] lockers = new Locker[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            lockers[round] = new Locker("Locker-" + round, items, 1, release);
+            lockers[round].start();
+            lockers[round].done.await();
+        }
+        final int[] hashCodes = new int[ITEMS];
+        for (int i = 0; i < items.length; i++) {
+            hashCodes[i] = System.identityHashCode(items[i]);
+        }
+        release.countDown();
+        for (Locker locker : lockers) {
+            locker.join();
+        }
+        System.out.println("count after rounds: " + total(items));
+
+        final Locker[] contenders = new Locker[CONTENDERS];
+        for (int i = 0; i < contenders.length; i++) {
+            contenders[i] = new Locker("Contender-" + i, items, ITERATIONS, null);
+            contenders[i].start();
+        }
+        for (Locker contender : contenders) {
+            contender.join();
+        }
+        System.out.println("count after contention: " + total(items));
+
+        int changedHashCodes = 0;
+        for (int i = 0; i < items.length; i++) {
+            synchronized (items[i]) {
+                if (hashCodes[i] != System.identityHashCode(items[i])) {
+                    changedHashCodes++;
+                }
+            }
+        }
+        System.out.println("changed hash codes: " + changedHashCodes);
+    }
+
+    private static int total(Item[] items) {
+        int total = 0;
+        for (Item item : items) {
+            synchronized (item) {
+                total += item.count;
+            }
+        }
+        return total;
+    }
+
+    static class Locker extends Thread {
+        final Item[] items;
+        final int iterations;
+        final CountDownLatch release;
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Locker(String name, Item[] items, int iterations, CountDownLatch release) {
+            super(name);
+            this.items = items;
+            this.iterations = iterations;
+            this.release = release;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < iterations; i++) {
+                for (Item item : items) {
+                    synchronized (item) {
+                        item.count++;
+                    }
+                }
+            }
+            done.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // do nothing.
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+import java.util.concurrent.*;
+
+/**
+ * This is a test case for revoking the bias of an object while the thread it is biased to holds its lock, which is
+ * done with a handshake with that thread only. The revocation is requested either by a thread contending for the lock
+ * or by a thread asking for the identity hash code of the object. The owner must still own the monitor after the
+ * revocation, and the contender must only acquire it once the owner has released it.
+ */
+public class BiasedLockRevocation {
+
+    public static final int ROUNDS = 20;
+
+    static final class Cell {
+        int value;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int valueErrors = 0;
+        int hashErrors = 0;
+        int monitorErrors = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            final Cell cell = new Cell();
+            final Owner owner = new Owner(cell);
+            owner.start();
+            owner.locked.await();
+
+            int hash = 0;
+            final Contender contender = new Contender(cell);
+            if (round % 2 == 0) {
+                hash = System.identityHashCode(cell);
+                contender.start();
+            } else {
+                contender.start();
+                Thread.sleep(10);
+                hash = System.identityHashCode(cell);
+            }
+            Thread.sleep(10);
+            owner.proceed = true;
+            owner.join();
+            contender.join();
+
+            synchronized (cell) {
+                if (cell.value != 2 || contender.observed != 1) {
+                    valueErrors++;
+                }
+                if (hash != System.identityHashCode(cell)) {
+                    hashErrors++;
+                }
+            }
+            if (owner.monitorError) {
+                monitorErrors++;
+            }
+        }
+        System.out.println("rounds: " + ROUNDS);
+        System.out.println("value errors: " + valueErrors);
+        System.out.println("hash errors: " + hashErrors);
+        System.out.println("monitor errors: " + monitorErrors);
+    }
+
+    /**
+     * Locks the cell, biasing it to this thread, and holds the lock until told to proceed.
+     */
+    static class Owner extends Thread {
+        final Cell cell;
+        final CountDownLatch locked = new CountDownLatch(1);
+        volatile boolean proceed;
+        boolean monitorError;
+
+        Owner(Cell cell) {
+            super("Owner");
+            this.cell = cell;
+        }
+
+        @Override
+        public void run() {
+            synchronized (cell) {
+                locked.countDown();
+                while (!proceed) {
+                    // spin, going through safepoints
+                }
+                try {
+                    // throws IllegalMonitorStateException if the revocation lost the ownership of the monitor
+                    cell.notifyAll();
+                } catch (IllegalMonitorStateException e) {
+                    monitorError = true;
+                }
+                cell.value++;
+            }
+        }
+    }
+
+    static class Contender extends Thread {
+        final Cell cell;
+        int observed;
+
+        Contender(Cell cell) {
+            super("Contender");
+            this.cell = cell;
+        }
+
+        @Override
+        public void run() {
+            synchronized (cell) {
+                observed = cell.value;
+                cell.value++;
+            }
+        }
+    }
+}
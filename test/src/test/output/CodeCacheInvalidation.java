@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * This is a test case for the invalidation of code saved by a previous run in the persistent code cache.
+ * It is only effective if it is run at least twice with the same {@code -XX:CodeCacheFile} (see the "codecache"
+ * maxvm configuration). {@link #STAMP} has a different value in every run, so code that folded its value in a
+ * previous run must not be reused.
+ */
+public class CodeCacheInvalidation {
+
+    private static final long STAMP;
+    private static final int SHORT_STAMP;
+
+    /**
+     * The values of the stamps, read from fields that the compiler cannot fold.
+     */
+    private static long expectedStamp;
+    private static int expectedShortStamp;
+
+    static {
+        STAMP = System.nanoTime() ^ System.currentTimeMillis();
+        SHORT_STAMP = (int) (STAMP >>> 17);
+        expectedStamp = STAMP;
+        expectedShortStamp = SHORT_STAMP;
+    }
+
+    public static void main(String[] args) {
+        // Make 'matches' hot so that it is compiled with the optimizing compiler, and saved when the VM exits.
+        int mismatches = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (!matches()) {
+                mismatches++;
+            }
+        }
+        System.out.println("mismatches: " + mismatches);
+    }
+
+    private static boolean matches() {
+        return STAMP == expectedStamp && SHORT_STAMP == expectedShortStamp;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * A GC test for the compaction of sparse regions, to be run with {@code -XX:+CompactSparseRegions} on the mse heap scheme (see
+ * the "compact" maxvm configuration). Each round fills many regions with objects and arrays, drops most of them so that the
+ * regions become sparse enough to be evacuated, then verifies after several collections that the survivors kept their contents,
+ * their identity hash codes and the references between them, including references from the stack.
+ */
+public class GCTest10 {
+
+    static final int ROUNDS = 5;
+    static final int OBJECTS = 400000;
+    static final int KEPT_EVERY = 16;
+
+    static final class Cell {
+        final int value;
+        final int[] data;
+        Cell next;
+
+        Cell(int value) {
+            this.value = value;
+            this.data = new int[value % 13];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = value + i;
+            }
+        }
+
+        boolean isValid(int expected) {
+            if (value != expected || data.length != expected % 13) {
+                return false;
+            }
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] != value + i) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public static void main(String[] args) {
+        int errors = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            errors += runRound(round);
+        }
+        System.out.println(GCTest10.class.getSimpleName() + ": " + ROUNDS + " rounds, " + errors + " errors");
+    }
+
+    private static int runRound(int round) {
+        final Cell[] cells = new Cell[OBJECTS];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new Cell(i);
+        }
+        // Keep a sparse set of survivors, each referencing the previous one.
+        final int numKept = OBJECTS / KEPT_EVERY;
+        final Cell[] kept = new Cell[numKept];
+        final int[] hashCodes = new int[numKept];
+        for (int k = 0; k < numKept; k++) {
+            final Cell cell = cells[k * KEPT_EVERY];
+            cell.next = k == 0 ? null : kept[k - 1];
+            kept[k] = cell;
+            hashCodes[k] = System.identityHashCode(cell);
+        }
+        // Also referenced from the stack only.
+        final Cell first = kept[0];
+        final Cell last = kept[numKept - 1];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = null;
+        }
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        int errors = 0;
+        for (int k = 0; k < numKept; k++) {
+            final Cell cell = kept[k];
+            if (!cell.isValid(k * KEPT_EVERY) || System.identityHashCode(cell) != hashCodes[k]) {
+                errors++;
+            }
+            if (cell.next != (k == 0 ? null : kept[k - 1])) {
+                errors++;
+            }
+        }
+        if (first != kept[0] || last != kept[numKept - 1]) {
+            errors++;
+        }
+        int length = 0;
+        for (Cell cell = last; cell != null; cell = cell.next) {
+            length++;
+        }
+        if (length != numKept) {
+            errors++;
+        }
+        System.out.println("Round " + round + ": " + numKept + " survivors, " + errors + " errors");
+        return errors;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+import java.util.*;
+
+/**
+ * A GC test for the parallel phases of the collectors, to be run with {@code -XX:ParallelGCThreads} larger than 1 (see
+ * the "pargc" maxvm configuration). Several threads keep a long list, a deep tree and a large array alive while they
+ * create garbage and store young objects into old ones, and verify the structures they keep alive after every round.
+ */
+public class GCTest9 {
+
+    static final int THREADS = 4;
+    static final int ROUNDS = 20;
+    static final int LIST_LENGTH = 100000;
+    static final int TREE_DEPTH = 15;
+    static final int ARRAY_LENGTH = 50000;
+
+    static final class Node {
+        final int value;
+        Node left;
+        Node right;
+
+        Node(int value) {
+            this.value = value;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final Worker[] workers = new Worker[THREADS];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+            workers[i].start();
+        }
+        for (Worker worker : workers) {
+            worker.join();
+            System.out.println(worker.getName() + ": " + worker.rounds + " rounds, " + worker.errors + " errors");
+        }
+        System.out.println(GCTest9.class.getSimpleName() + " done");
+    }
+
+    static class Worker extends Thread {
+        final Random random;
+        int rounds;
+        int errors;
+
+        Worker(int id) {
+            super("Worker #" + id);
+            random = new Random(id);
+        }
+
+        @Override
+        public void run() {
+            Node list = null;
+            for (int i = LIST_LENGTH - 1; i >= 0; i--) {
+                final Node node = new Node(i);
+                node.left = list;
+                list = node;
+            }
+            final Node tree = buildTree(1, TREE_DEPTH);
+            final Object[] array = new Object[ARRAY_LENGTH];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = new Node(i);
+            }
+
+            for (rounds = 0; rounds < ROUNDS; rounds++) {
+                createGarbage();
+                // Young objects referenced from old ones
+                for (int k = 0; k < 1000; k++) {
+                    final int i = random.nextInt(array.length);
+                    array[i] = new Node(i);
+                }
+                Node node = list;
+                for (int k = 0; k < 1000; k++) {
+                    final Node next = new Node(node.value + 1);
+                    next.left = node.left.left;
+                    node.left = next;
+                    node = next;
+                }
+                if (rounds % 5 == 0) {
+                    System.gc();
+                }
+                errors += verifyList(list) + verifyTree(tree, 1, TREE_DEPTH) + verifyArray(array);
+            }
+        }
+
+        private void createGarbage() {
+            final Object[] objects = new Object[1000];
+            for (int i = 0; i < 100000; i++) {
+                objects[random.nextInt(objects.length)] = (i % 7 == 0) ? new int[random.nextInt(100)] : new Node(i);
+            }
+        }
+    }
+
+    private static Node buildTree(int index, int depth) {
+        final Node node = new Node(index);
+        if (depth > 1) {
+            node.left = buildTree(2 * index, depth - 1);
+            node.right = buildTree(2 * index + 1, depth - 1);
+        }
+        return node;
+    }
+
+    private static int verifyList(Node list) {
+        int length = 0;
+        for (Node node = list; node != null; node = node.left) {
+            if (node.value != length) {
+                return 1;
+            }
+            length++;
+        }
+        return length == LIST_LENGTH ? 0 : 1;
+    }
+
+    private static int verifyTree(Node node, int index, int depth) {
+        if (node == null || node.value != index) {
+            return 1;
+        }
+        if (depth == 1) {
+            return node.left == null && node.right == null ? 0 : 1;
+        }
+        return verifyTree(node.left, 2 * index, depth - 1) + verifyTree(node.right, 2 * index + 1, depth - 1);
+    }
+
+    private static int verifyArray(Object[] array) {
+        int errors = 0;
+        for (int i = 0; i < array.length; i++) {
+            if (!(array[i] instanceof Node) || ((Node) array[i]).value != i) {
+                errors++;
+            }
+        }
+        return errors;
+    }
+}
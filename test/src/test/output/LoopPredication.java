@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * This is a test case for loop predication: once {@link #sum} has been recompiled with the bounds checks of its loop
+ * replaced by a guard before the loop, calls that fail the guard must execute the iterations that are within bounds
+ * before the exception of the first failing check is thrown.
+ */
+public class LoopPredication {
+
+    static int iterations;
+
+    public static void main(String[] args) {
+        int[] array = new int[100];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = i;
+        }
+
+        // Make 'sum' hot with accesses that are within bounds so that it is recompiled with the optimizing compiler.
+        long total = 0;
+        for (int i = 0; i < 100000; i++) {
+            total += sum(array, i % 10, 50 + i % 50);
+        }
+        System.out.println("total: " + total);
+
+        run(array, 0, 100);
+        run(array, 90, 110);
+        run(array, -5, 10);
+        run(array, 20, 10);
+        run(null, 0, 0);
+        run(null, 0, 10);
+    }
+
+    private static void run(int[] array, int start, int limit) {
+        iterations = 0;
+        try {
+            System.out.println("sum(" + start + ", " + limit + "): " + sum(array, start, limit));
+        } catch (RuntimeException e) {
+            System.out.println("sum(" + start + ", " + limit + "): " + e.getClass().getName() + " after " + iterations + " iterations");
+        }
+    }
+
+    private static int sum(int[] array, int start, int limit) {
+        int r = 0;
+        for (int i = start; i < limit; i++) {
+            iterations++;
+            r += array[i];
+        }
+        return r;
+    }
+}